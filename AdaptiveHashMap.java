@@ -0,0 +1,456 @@
+package java.util;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+
+/**
+ * Implementation of the <tt>Map</tt> interface for maps that usually hold
+ * only a handful of mappings.  The representation follows the size of the
+ * map:
+ *
+ * <ul>
+ * <li>An empty map shares a single empty array and allocates nothing.
+ * <li>Up to FLAT_MAX (8) mappings are kept in one flat array of
+ *     alternating keys and values, which lookups scan linearly.  The
+ *     array starts at one mapping and doubles as the map grows, up to
+ *     FLAT_MAX mappings.
+ * <li>Beyond that the mappings move into a {@link HashMap}.
+ * </ul>
+ *
+ * <p>The map switches back when it shrinks: a hash table whose map drops
+ * to FLAT_MAX / 2 mappings or fewer is turned back into a flat array, and
+ * a flat array is released when its last mapping is removed.  Since a map
+ * only leaves the flat form again after it has grown past FLAT_MAX, no
+ * sequence of operations switches on every call.
+ *
+ * <p>A scan of the flat array calls <tt>equals</tt> on each key in turn
+ * without comparing hashes first, which is cheaper than hashing for so
+ * few keys when <tt>equals</tt> is.  Like {@link HashMap} this class
+ * permits <tt>null</tt> values and the <tt>null</tt> key and makes no
+ * guarantees as to the order of the map.
+ *
+ * <p><strong>Note that this implementation is not synchronized.</strong>
+ * The iterators returned by this class's collection view methods are
+ * fail-fast in the same way as those of <tt>HashMap</tt>.
+ *
+ * @param <K> the type of keys maintained by this map
+ * @param <V> the type of mapped values
+ *
+ * @see     HashMap
+ */
+public class AdaptiveHashMap<K,V>
+    extends AbstractMap<K,V>
+    implements Map<K,V>, Cloneable, Serializable
+{
+    /**
+     * The largest number of mappings kept in the flat array.
+     */
+    static final int FLAT_MAX = 8;
+
+    /**
+     * The flat array of every empty map.
+     */
+    static final Object[] EMPTY = {};
+
+    /**
+     * The mappings as alternating keys and values, EMPTY if there are
+     * none, or null while the mappings are in table.
+     */
+    transient Object[] flat;
+
+    /**
+     * The hash table holding the mappings once there are more than
+     * FLAT_MAX of them, or null while they are in flat.
+     */
+    transient HashMap<K,V> table;
+
+    /**
+     * The number of mappings in flat.
+     */
+    transient int size;
+
+    /**
+     * The number of times this map has been structurally modified,
+     * including each change of representation.
+     */
+    transient int modCount;
+
+    /**
+     * Constructs an empty map.
+     */
+    public AdaptiveHashMap() {
+        flat = EMPTY;
+    }
+
+    /**
+     * Constructs a new map with the same mappings as the specified
+     * <tt>Map</tt>.
+     *
+     * @param   m the map whose mappings are to be placed in this map
+     * @throws  NullPointerException if the specified map is null
+     */
+    public AdaptiveHashMap(Map<? extends K, ? extends V> m) {
+        flat = EMPTY;
+        putAll(m);
+    }
+
+    public int size() {
+        HashMap<K,V> t = table;
+        return (t != null) ? t.size() : size;
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * Returns the index of key in flat, or -1 if there is none.
+     */
+    final int indexOf(Object key) {
+        Object[] a = flat;
+        int n = size << 1;
+        if (key == null) {
+            for (int i = 0; i < n; i += 2)
+                if (a[i] == null)
+                    return i;
+        } else {
+            for (int i = 0; i < n; i += 2) {
+                Object k = a[i];
+                if (k == key || key.equals(k))
+                    return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the value to which the specified key is mapped,
+     * or {@code null} if this map contains no mapping for the key.
+     */
+    @SuppressWarnings("unchecked")
+    public V get(Object key) {
+        HashMap<K,V> t = table;
+        if (t != null)
+            return t.get(key);
+        int i = indexOf(key);
+        return (i < 0) ? null : (V)flat[i + 1];
+    }
+
+    public boolean containsKey(Object key) {
+        HashMap<K,V> t = table;
+        return (t != null) ? t.containsKey(key) : indexOf(key) >= 0;
+    }
+
+    /**
+     * Associates the specified value with the specified key in this map.
+     * If the map previously contained a mapping for the key, the old
+     * value is replaced.
+     *
+     * @return the previous value associated with <tt>key</tt>, or
+     *         <tt>null</tt> if there was no mapping for <tt>key</tt>.
+     */
+    @SuppressWarnings("unchecked")
+    public V put(K key, V value) {
+        HashMap<K,V> t = table;
+        if (t != null) {
+            int n = t.size();
+            V oldValue = t.put(key, value);
+            if (t.size() != n)
+                modCount++;
+            return oldValue;
+        }
+        int i = indexOf(key);
+        if (i >= 0) {
+            Object oldValue = flat[i + 1];
+            flat[i + 1] = value;
+            return (V)oldValue;
+        }
+        modCount++;
+        if (size == FLAT_MAX) {
+            inflate();
+            table.put(key, value);
+            return null;
+        }
+        Object[] a = flat;
+        int j = size << 1;
+        if (j == a.length)
+            flat = a = Arrays.copyOf(a, (j == 0) ? 2
+                                     : Math.min(j << 1, 2 * FLAT_MAX));
+        a[j] = key;
+        a[j + 1] = value;
+        size++;
+        return null;
+    }
+
+    /**
+     * Moves the mappings of a full flat array into a new hash table.
+     */
+    @SuppressWarnings("unchecked")
+    private void inflate() {
+        HashMap<K,V> t = new HashMap<>(2 * FLAT_MAX);
+        Object[] a = flat;
+        for (int i = 0; i < 2 * FLAT_MAX; i += 2)
+            t.put((K)a[i], (V)a[i + 1]);
+        table = t;
+        flat = null;
+        size = 0;
+    }
+
+    /**
+     * Moves the mappings of the hash table back into a flat array with
+     * room for twice as many.
+     */
+    private void deflate() {
+        HashMap<K,V> t = table;
+        int n = t.size();
+        Object[] a = EMPTY;
+        if (n > 0) {
+            a = new Object[n << 2];
+            int j = 0;
+            for (Map.Entry<K,V> e : t.entrySet()) {
+                a[j++] = e.getKey();
+                a[j++] = e.getValue();
+            }
+        }
+        flat = a;
+        size = n;
+        table = null;
+    }
+
+    /**
+     * Removes the mapping for the specified key from this map if present.
+     *
+     * @return the previous value associated with <tt>key</tt>, or
+     *         <tt>null</tt> if there was no mapping for <tt>key</tt>.
+     */
+    @SuppressWarnings("unchecked")
+    public V remove(Object key) {
+        HashMap<K,V> t = table;
+        if (t != null) {
+            int n = t.size();
+            V oldValue = t.remove(key);
+            if (t.size() == n)
+                return null;
+            modCount++;
+            if (t.size() <= FLAT_MAX / 2)
+                deflate();
+            return oldValue;
+        }
+        int i = indexOf(key);
+        if (i < 0)
+            return null;
+        Object oldValue = flat[i + 1];
+        removeAt(i);
+        return (V)oldValue;
+    }
+
+    /**
+     * Removes the mapping at index i of flat by moving the last mapping
+     * into its place, and releases the array once it is empty.
+     */
+    final void removeAt(int i) {
+        modCount++;
+        Object[] a = flat;
+        int last = (--size) << 1;
+        a[i] = a[last];
+        a[i + 1] = a[last + 1];
+        a[last] = a[last + 1] = null;
+        if (size == 0)
+            flat = EMPTY;
+    }
+
+    /**
+     * Removes all of the mappings from this map, releasing its storage.
+     */
+    public void clear() {
+        modCount++;
+        flat = EMPTY;
+        table = null;
+        size = 0;
+    }
+
+    /**
+     * Returns <tt>true</tt> if this map maps one or more keys to the
+     * specified value.
+     */
+    public boolean containsValue(Object value) {
+        HashMap<K,V> t = table;
+        if (t != null)
+            return t.containsValue(value);
+        Object[] a = flat;
+        int n = size << 1;
+        for (int i = 1; i < n; i += 2) {
+            Object v = a[i];
+            if (v == value || (value != null && value.equals(v)))
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Returns a shallow copy of this map: the keys and values themselves
+     * are not cloned.
+     */
+    @SuppressWarnings("unchecked")
+    public Object clone() {
+        AdaptiveHashMap<K,V> result;
+        try {
+            result = (AdaptiveHashMap<K,V>)super.clone();
+        } catch (CloneNotSupportedException e) {
+            throw new InternalError();
+        }
+        if (table != null)
+            result.table = (HashMap<K,V>)table.clone();
+        else if (size > 0)
+            result.flat = flat.clone();
+        result.keySet = null;
+        result.values = null;
+        result.entrySet = null;
+        result.modCount = 0;
+        return result;
+    }
+
+    /**
+     * Iterates the flat array, or the hash table if the map was in that
+     * form when the iterator was created.  A change of representation
+     * counts as a modification, so the iterator fails fast if the map
+     * switches form underneath it.
+     */
+    private final class EntryIterator implements Iterator<Map.Entry<K,V>> {
+        final Iterator<Map.Entry<K,V>> tableIterator =
+            (table != null) ? table.entrySet().iterator() : null;
+        int next;                   // index in flat of next mapping
+        int last = -1;              // index in flat of last mapping
+        int expectedModCount = modCount;
+
+        public boolean hasNext() {
+            return (tableIterator != null) ? tableIterator.hasNext()
+                                           : next < size << 1;
+        }
+
+        @SuppressWarnings("unchecked")
+        public Map.Entry<K,V> next() {
+            if (modCount != expectedModCount)
+                throw new ConcurrentModificationException();
+            if (tableIterator != null)
+                return tableIterator.next();
+            int i = next;
+            if (i >= size << 1)
+                throw new NoSuchElementException();
+            next = i + 2;
+            last = i;
+            return new MapEntry((K)flat[i], (V)flat[i + 1]);
+        }
+
+        public void remove() {
+            if (modCount != expectedModCount)
+                throw new ConcurrentModificationException();
+            if (tableIterator != null) {
+                tableIterator.remove();
+            } else {
+                if (last < 0)
+                    throw new IllegalStateException();
+                removeAt(last);
+                next = last;
+                last = -1;
+                expectedModCount = modCount;
+            }
+        }
+    }
+
+    /**
+     * Entry returned by the iterator of a flat array.  Since removals move
+     * mappings within the array, setValue finds the key's current index.
+     */
+    private final class MapEntry extends AbstractMap.SimpleEntry<K,V> {
+        private static final long serialVersionUID = 2314780635104852873L;
+
+        MapEntry(K key, V value) {
+            super(key, value);
+        }
+
+        public V setValue(V value) {
+            if (table != null) {
+                if (table.containsKey(getKey()))
+                    table.put(getKey(), value);
+            } else {
+                int i = indexOf(getKey());
+                if (i >= 0)
+                    flat[i + 1] = value;
+            }
+            return super.setValue(value);
+        }
+    }
+
+    // Views
+
+    private transient Set<Map.Entry<K,V>> entrySet = null;
+
+    public Set<Map.Entry<K,V>> entrySet() {
+        Set<Map.Entry<K,V>> es = entrySet;
+        return es != null ? es : (entrySet = new EntrySet());
+    }
+
+    private final class EntrySet extends AbstractSet<Map.Entry<K,V>> {
+        public Iterator<Map.Entry<K,V>> iterator() {
+            return new EntryIterator();
+        }
+        public boolean contains(Object o) {
+            if (!(o instanceof Map.Entry))
+                return false;
+            Map.Entry<?,?> e = (Map.Entry<?,?>) o;
+            Object key = e.getKey();
+            return containsKey(key) && Objects.equals(get(key), e.getValue());
+        }
+        public boolean remove(Object o) {
+            if (!contains(o))
+                return false;
+            AdaptiveHashMap.this.remove(((Map.Entry<?,?>) o).getKey());
+            return true;
+        }
+        public int size() {
+            return AdaptiveHashMap.this.size();
+        }
+        public void clear() {
+            AdaptiveHashMap.this.clear();
+        }
+    }
+
+    private static final long serialVersionUID = -7308418402216548693L;
+
+    /**
+     * Save the state of the map to a stream.
+     *
+     * @serialData The <i>size</i> (int) is emitted, followed by the key
+     *             (Object) and value (Object) for each mapping, in no
+     *             particular order.
+     */
+    private void writeObject(ObjectOutputStream s) throws IOException {
+        s.defaultWriteObject();
+        s.writeInt(size());
+        for (Map.Entry<K,V> e : entrySet()) {
+            s.writeObject(e.getKey());
+            s.writeObject(e.getValue());
+        }
+    }
+
+    /**
+     * Reconstitute the map from a stream.
+     */
+    @SuppressWarnings("unchecked")
+    private void readObject(ObjectInputStream s)
+        throws IOException, ClassNotFoundException
+    {
+        s.defaultReadObject();
+        flat = EMPTY;
+        int n = s.readInt();
+        if (n < 0)
+            throw new java.io.InvalidObjectException("Illegal size: " + n);
+        for (int i = 0; i < n; i++) {
+            K key = (K) s.readObject();
+            V value = (V) s.readObject();
+            put(key, value);
+        }
+    }
+}
@@ -0,0 +1,986 @@
+package java.util;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A {@link HashMap} with a bounded size or total weight, which evicts
+ * mappings according to an {@link EvictionPolicy} once the bound is
+ * exceeded, and which can optionally expire mappings a fixed time after
+ * they were written or last accessed.
+ *
+ * <p>Like {@link LinkedHashMap}, this class keeps its bookkeeping in its
+ * entries, through the <tt>recordAccess</tt>, <tt>recordUpdate</tt> and
+ * <tt>recordRemoval</tt> hooks of <tt>HashMap.Entry</tt> and the
+ * <tt>init</tt> and <tt>onLookup</tt> hooks of <tt>HashMap</tt>.  Each
+ * entry refers to a small node that holds the mapping's weight,
+ * timestamps and position in the policy's queues; the node moves to the
+ * replacement entry when a bucket is converted to or from a tree.
+ *
+ * <p>The bound is enforced on every insertion: {@link #put put} adds the
+ * new mapping and then evicts until the total weight is within the
+ * maximum, so the mapping just added may itself be evicted (always so
+ * if its weight alone exceeds the maximum).  Expired mappings are
+ * treated as absent by {@link #get get}, {@link #containsKey
+ * containsKey} and the single-lookup operations such as
+ * {@link #computeIfAbsent computeIfAbsent} and {@link #merge merge},
+ * and are removed when next looked up, or from the head of
+ * the write or access order on each insertion.  Iteration may still
+ * return expired mappings; {@link #cleanUp} removes all of them.
+ *
+ * <p>Hits, misses, evictions and expirations are counted, and a snapshot
+ * of the counters is returned by {@link #stats}.
+ *
+ * <p><strong>Note that this implementation is not synchronized.</strong>
+ * Since <tt>get</tt> updates the eviction order, even read-only access
+ * from several threads must be synchronized.
+ *
+ * @param <K> the type of keys maintained by this cache
+ * @param <V> the type of cached values
+ *
+ * @see     HashMap
+ * @see     LinkedHashMap
+ */
+public class BoundedCache<K,V> extends HashMap<K,V>
+{
+    /**
+     * Eviction policies.
+     */
+    public enum EvictionPolicy {
+        /**
+         * Evicts the least recently used mapping.
+         */
+        LRU,
+
+        /**
+         * Evicts the least frequently used mapping, and among those the
+         * least recently used one.  Frequencies are exact counts of
+         * accesses since insertion.
+         */
+        LFU,
+
+        /**
+         * Window TinyLFU: new mappings enter a small LRU window (1% of
+         * the maximum weight); mappings leaving the window are admitted
+         * to the main segmented LRU only if their estimated access
+         * frequency, kept in a decaying count-min sketch that also
+         * counts misses, is higher than that of the main segment's
+         * eviction victim.  Resists scans and one-hit wonders better
+         * than LRU and adapts to change faster than LFU.
+         */
+        W_TINY_LFU
+    }
+
+    /**
+     * Computes the weight of a mapping.
+     */
+    public interface Weigher<K,V> {
+        /**
+         * Returns the weight of the mapping, which must not be negative.
+         */
+        int weigh(K key, V value);
+    }
+
+    /**
+     * Weigher giving every mapping weight 1.
+     */
+    enum SingletonWeigher implements Weigher<Object,Object> {
+        INSTANCE;
+
+        public int weigh(Object key, Object value) {
+            return 1;
+        }
+    }
+
+    /**
+     * The maximum total weight.
+     *
+     * @serial
+     */
+    private final long maximumWeight;
+
+    /**
+     * @serial
+     */
+    private final Weigher<? super K, ? super V> weigher;
+
+    /**
+     * @serial
+     */
+    private final EvictionPolicy evictionPolicy;
+
+    /**
+     * Expiration durations in nanoseconds, or 0 if mappings do not
+     * expire.
+     *
+     * @serial
+     */
+    private final long expireAfterWriteNanos;
+    private final long expireAfterAccessNanos;
+
+    private transient Policy<K,V> policy;
+    private transient long totalWeight;
+
+    // Expiration orders, maintained only if the expiration is enabled
+    private transient Node<K,V> writeHead, writeTail;
+    private transient Node<K,V> accessHead, accessTail;
+
+    private transient long hitCount;
+    private transient long missCount;
+    private transient long evictionCount;
+    private transient long expirationCount;
+
+    /**
+     * Constructs an empty cache.
+     *
+     * @param  maximumWeight      the maximum total weight of the mappings
+     * @param  weigher            computes the weight of each mapping
+     * @param  evictionPolicy     the eviction policy
+     * @param  expireAfterWrite   the time after which a mapping expires
+     *                            once written, or 0 if it does not
+     * @param  expireAfterAccess  the time after which a mapping expires
+     *                            once read or written, or 0 if it does
+     *                            not
+     * @param  unit               the unit of both expiration times
+     * @throws IllegalArgumentException if the maximum weight or either
+     *         expiration time is negative
+     * @throws NullPointerException if any of the object arguments is null
+     */
+    public BoundedCache(long maximumWeight,
+                        Weigher<? super K, ? super V> weigher,
+                        EvictionPolicy evictionPolicy,
+                        long expireAfterWrite, long expireAfterAccess,
+                        TimeUnit unit) {
+        super((int)(Math.min(Math.max(maximumWeight, 0), 1 << 16) * 4 / 3 + 1));
+        if (maximumWeight < 0)
+            throw new IllegalArgumentException("Illegal maximum weight: " +
+                                               maximumWeight);
+        if (expireAfterWrite < 0 || expireAfterAccess < 0)
+            throw new IllegalArgumentException("Illegal expiration time");
+        if (weigher == null || evictionPolicy == null || unit == null)
+            throw new NullPointerException();
+        this.maximumWeight = maximumWeight;
+        this.weigher = weigher;
+        this.evictionPolicy = evictionPolicy;
+        this.expireAfterWriteNanos = unit.toNanos(expireAfterWrite);
+        this.expireAfterAccessNanos = unit.toNanos(expireAfterAccess);
+        init();
+    }
+
+    /**
+     * Constructs an empty cache holding at most maximumSize mappings,
+     * which do not expire.
+     *
+     * @param  maximumSize     the maximum number of mappings
+     * @param  evictionPolicy  the eviction policy
+     * @throws IllegalArgumentException if the maximum size is negative
+     */
+    public BoundedCache(long maximumSize, EvictionPolicy evictionPolicy) {
+        this(maximumSize, SingletonWeigher.INSTANCE, evictionPolicy,
+             0, 0, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Constructs an empty cache holding at most maximumSize mappings,
+     * with the W-TinyLFU eviction policy.
+     *
+     * @param  maximumSize  the maximum number of mappings
+     * @throws IllegalArgumentException if the maximum size is negative
+     */
+    public BoundedCache(long maximumSize) {
+        this(maximumSize, EvictionPolicy.W_TINY_LFU);
+    }
+
+    /**
+     * Resets the eviction and expiration state.  Called by the HashMap
+     * constructors before this class's fields are set, in which case it
+     * does nothing, by clone and readObject before the mappings are
+     * added back, and by clear.
+     */
+    @Override
+    void init() {
+        if (evictionPolicy == null)
+            return;
+        switch (evictionPolicy) {
+        case LRU:
+            policy = new LruPolicy<>();
+            break;
+        case LFU:
+            policy = new LfuPolicy<>();
+            break;
+        default:
+            policy = new TinyLfuPolicy<>(maximumWeight);
+        }
+        totalWeight = 0;
+        writeHead = writeTail = accessHead = accessTail = null;
+    }
+
+    long now() {
+        return System.nanoTime();
+    }
+
+    // Entries
+
+    /**
+     * The eviction and expiration state of a mapping.
+     */
+    static final class Node<K,V> {
+        final K key;
+        final int hash;
+        int weight;
+        long writeTime;
+        long accessTime;
+        Node<K,V> prev, next;               // policy queue links
+        Node<K,V> writePrev, writeNext;     // write order links
+        Node<K,V> accessPrev, accessNext;   // access order links
+        int queue;                          // W_TINY_LFU segment
+        FrequencyBucket<K,V> bucket;        // LFU frequency
+
+        Node(K key, int hash) {
+            this.key = key;
+            this.hash = hash;
+        }
+    }
+
+    static final class CacheEntry<K,V> extends HashMap.Entry<K,V> {
+        final Node<K,V> node;
+
+        CacheEntry(int hash, K key, V value, HashMap.Entry<K,V> next,
+                   Node<K,V> node) {
+            super(hash, key, value, next);
+            this.node = node;
+        }
+
+        void recordAccess(HashMap<K,V> m) {
+            ((BoundedCache<K,V>)m).onUpdate(node, value, true);
+        }
+
+        void recordUpdate(HashMap<K,V> m) {
+            ((BoundedCache<K,V>)m).onUpdate(node, value, false);
+        }
+
+        void recordRemoval(HashMap<K,V> m) {
+            ((BoundedCache<K,V>)m).onRemoval(node);
+        }
+    }
+
+    static final class CacheTreeEntry<K,V> extends HashMap.TreeEntry<K,V> {
+        final Node<K,V> node;
+
+        CacheTreeEntry(int hash, K key, V value, HashMap.Entry<K,V> next,
+                       Node<K,V> node) {
+            super(hash, key, value, next);
+            this.node = node;
+        }
+
+        void recordAccess(HashMap<K,V> m) {
+            ((BoundedCache<K,V>)m).onUpdate(node, value, true);
+        }
+
+        void recordUpdate(HashMap<K,V> m) {
+            ((BoundedCache<K,V>)m).onUpdate(node, value, false);
+        }
+
+        void recordRemoval(HashMap<K,V> m) {
+            ((BoundedCache<K,V>)m).onRemoval(node);
+        }
+    }
+
+    static <K,V> Node<K,V> node(HashMap.Entry<K,V> e) {
+        return (e instanceof CacheTreeEntry)
+            ? ((CacheTreeEntry<K,V>)e).node
+            : ((CacheEntry<K,V>)e).node;
+    }
+
+    @Override
+    HashMap.Entry<K,V> newEntry(int hash, K key, V value, HashMap.Entry<K,V> next) {
+        return new CacheEntry<>(hash, key, value, next, onInsertion(hash, key, value));
+    }
+
+    @Override
+    HashMap.Entry<K,V> replacementEntry(HashMap.Entry<K,V> p, HashMap.Entry<K,V> next) {
+        return new CacheEntry<>(p.hash, p.key, p.value, next, node(p));
+    }
+
+    @Override
+    HashMap.TreeEntry<K,V> newTreeEntry(int hash, K key, V value, HashMap.Entry<K,V> next) {
+        return new CacheTreeEntry<>(hash, key, value, next, onInsertion(hash, key, value));
+    }
+
+    @Override
+    HashMap.TreeEntry<K,V> replacementTreeEntry(HashMap.Entry<K,V> p, HashMap.Entry<K,V> next) {
+        return new CacheTreeEntry<>(p.hash, p.key, p.value, next, node(p));
+    }
+
+    // Bookkeeping
+
+    private int weigh(K key, V value) {
+        int w = weigher.weigh(key, value);
+        if (w < 0)
+            throw new IllegalArgumentException("Negative weight: " + w);
+        return w;
+    }
+
+    private Node<K,V> onInsertion(int hash, K key, V value) {
+        Node<K,V> n = new Node<>(key, hash);
+        if (policy != null)     // null while HashMap.readObject runs
+            register(n, value);
+        return n;
+    }
+
+    private void register(Node<K,V> n, V value) {
+        n.weight = weigh(n.key, value);
+        totalWeight += n.weight;
+        if (expireAfterWriteNanos != 0 || expireAfterAccessNanos != 0) {
+            n.writeTime = n.accessTime = now();
+            if (expireAfterWriteNanos != 0)
+                linkWrite(n);
+            if (expireAfterAccessNanos != 0)
+                linkAccess(n);
+        }
+        policy.onInsert(n);
+    }
+
+    /**
+     * Called when the value of an existing mapping is replaced.  Counts
+     * as an access of the mapping if access is true, as it is for put;
+     * the single-lookup operations pass false, since onLookup has
+     * already counted their access.  Evicts if the new value is
+     * heavier, which may evict this mapping.
+     */
+    void onUpdate(Node<K,V> n, V value, boolean access) {
+        int w = weigh(n.key, value);
+        int delta = w - n.weight;
+        if (delta != 0) {
+            policy.onWeightChange(n, delta);
+            totalWeight += delta;
+            n.weight = w;
+        }
+        if (expireAfterWriteNanos != 0 || expireAfterAccessNanos != 0) {
+            n.writeTime = n.accessTime = now();
+            if (expireAfterWriteNanos != 0) {
+                unlinkWrite(n);
+                linkWrite(n);
+            }
+            if (expireAfterAccessNanos != 0) {
+                unlinkAccess(n);
+                linkAccess(n);
+            }
+        }
+        if (access)
+            policy.onAccess(n);
+        if (delta > 0)
+            evictEntries();
+    }
+
+    private void onRead(Node<K,V> n, long now) {
+        if (expireAfterAccessNanos != 0) {
+            n.accessTime = now;
+            unlinkAccess(n);
+            linkAccess(n);
+        }
+        policy.onAccess(n);
+    }
+
+    void onRemoval(Node<K,V> n) {
+        totalWeight -= n.weight;
+        if (expireAfterWriteNanos != 0)
+            unlinkWrite(n);
+        if (expireAfterAccessNanos != 0)
+            unlinkAccess(n);
+        policy.onRemove(n);
+    }
+
+    private boolean isExpired(Node<K,V> n, long now) {
+        return (expireAfterWriteNanos != 0 &&
+                now - n.writeTime >= expireAfterWriteNanos) ||
+               (expireAfterAccessNanos != 0 &&
+                now - n.accessTime >= expireAfterAccessNanos);
+    }
+
+    private void linkWrite(Node<K,V> n) {
+        Node<K,V> t = writeTail;
+        n.writePrev = t;
+        n.writeNext = null;
+        if (t == null)
+            writeHead = n;
+        else
+            t.writeNext = n;
+        writeTail = n;
+    }
+
+    private void unlinkWrite(Node<K,V> n) {
+        Node<K,V> p = n.writePrev, s = n.writeNext;
+        if (p == null)
+            writeHead = s;
+        else
+            p.writeNext = s;
+        if (s == null)
+            writeTail = p;
+        else
+            s.writePrev = p;
+        n.writePrev = n.writeNext = null;
+    }
+
+    private void linkAccess(Node<K,V> n) {
+        Node<K,V> t = accessTail;
+        n.accessPrev = t;
+        n.accessNext = null;
+        if (t == null)
+            accessHead = n;
+        else
+            t.accessNext = n;
+        accessTail = n;
+    }
+
+    private void unlinkAccess(Node<K,V> n) {
+        Node<K,V> p = n.accessPrev, s = n.accessNext;
+        if (p == null)
+            accessHead = s;
+        else
+            p.accessNext = s;
+        if (s == null)
+            accessTail = p;
+        else
+            s.accessPrev = p;
+        n.accessPrev = n.accessNext = null;
+    }
+
+    /**
+     * Removes the expired mappings at the head of the write and access
+     * orders.
+     */
+    private void expireEntries(long now) {
+        Node<K,V> n;
+        while ((n = writeHead) != null && isExpired(n, now)) {
+            removeEntryForKey(n.key);
+            expirationCount++;
+        }
+        while ((n = accessHead) != null && isExpired(n, now)) {
+            removeEntryForKey(n.key);
+            expirationCount++;
+        }
+    }
+
+    private void evictEntries() {
+        while (totalWeight > maximumWeight) {
+            Node<K,V> victim = policy.victim();
+            removeEntryForKey(victim.key);
+            evictionCount++;
+        }
+    }
+
+    // Map operations
+
+    /**
+     * Returns the value to which the specified key is mapped, or
+     * <tt>null</tt> if this cache contains no unexpired mapping for the
+     * key, and records a hit or a miss.
+     */
+    public V get(Object key) {
+        HashMap.Entry<K,V> e = onLookup(getEntry(key), key);
+        return (e == null) ? null : e.value;
+    }
+
+    /**
+     * Records the lookup of key, which found e or nothing, as get does:
+     * an expired entry is removed and treated as absent, and a hit or a
+     * miss is counted.  Also called by getAll and by the HashMap
+     * operations that look a key up once and update the entry in place,
+     * such as computeIfAbsent and merge, so that they too see only
+     * unexpired mappings and refresh the eviction order.
+     */
+    @Override
+    HashMap.Entry<K,V> onLookup(HashMap.Entry<K,V> e, Object key) {
+        if (e != null) {
+            Node<K,V> n = node(e);
+            long now = (expireAfterWriteNanos != 0 ||
+                        expireAfterAccessNanos != 0) ? now() : 0;
+            if (!isExpired(n, now)) {
+                hitCount++;
+                onRead(n, now);
+                return e;
+            }
+            removeEntryForKey(key);
+            expirationCount++;
+        }
+        missCount++;
+        policy.onMiss(hashOf(key));
+        return null;
+    }
+
+    /**
+     * Returns <tt>true</tt> if this cache contains an unexpired mapping
+     * for the specified key.  Does not count as an access.
+     */
+    public boolean containsKey(Object key) {
+        HashMap.Entry<K,V> e = getEntry(key);
+        return e != null && (expireAfterWriteNanos == 0 &&
+                             expireAfterAccessNanos == 0 ||
+                             !isExpired(node(e), now()));
+    }
+
+    /**
+     * Adds the entry, then removes expired mappings and evicts until the
+     * total weight is within the maximum.
+     */
+    @Override
+    void addEntry(int hash, K key, V value, int bucketIndex) {
+        super.addEntry(hash, key, value, bucketIndex);
+        if (expireAfterWriteNanos != 0 || expireAfterAccessNanos != 0)
+            expireEntries(now());
+        evictEntries();
+    }
+
+    /**
+     * Removes all of the mappings from this cache.  The statistics are
+     * kept.
+     */
+    public void clear() {
+        super.clear();
+        init();
+    }
+
+    /**
+     * Removes all expired mappings.
+     */
+    public void cleanUp() {
+        if (expireAfterWriteNanos == 0 && expireAfterAccessNanos == 0)
+            return;
+        long now = now();
+        expireEntries(now);
+        for (Iterator<Map.Entry<K,V>> i = entrySet().iterator(); i.hasNext(); ) {
+            if (isExpired(node((HashMap.Entry<K,V>)i.next()), now)) {
+                i.remove();
+                expirationCount++;
+            }
+        }
+    }
+
+    /**
+     * Returns the maximum total weight of this cache.
+     */
+    public long maximumWeight() {
+        return maximumWeight;
+    }
+
+    /**
+     * Returns the total weight of the mappings in this cache.
+     */
+    public long weightedSize() {
+        return totalWeight;
+    }
+
+    /**
+     * Returns a snapshot of the statistics of this cache.
+     */
+    public Stats stats() {
+        return new Stats(hitCount, missCount, evictionCount, expirationCount);
+    }
+
+    /**
+     * Cache statistics.
+     */
+    public static final class Stats {
+        private final long hitCount;
+        private final long missCount;
+        private final long evictionCount;
+        private final long expirationCount;
+
+        Stats(long hitCount, long missCount, long evictionCount,
+              long expirationCount) {
+            this.hitCount = hitCount;
+            this.missCount = missCount;
+            this.evictionCount = evictionCount;
+            this.expirationCount = expirationCount;
+        }
+
+        /**
+         * Returns the number of lookups that found an unexpired mapping.
+         * Each key looked up by get, getAll, putIfAbsent,
+         * computeIfAbsent, computeIfPresent, compute or merge counts
+         * once.
+         */
+        public long hitCount() {
+            return hitCount;
+        }
+
+        /**
+         * Returns the number of lookups that found no unexpired mapping.
+         * Each key looked up by get, getAll, putIfAbsent,
+         * computeIfAbsent, computeIfPresent, compute or merge counts
+         * once.
+         */
+        public long missCount() {
+            return missCount;
+        }
+
+        /**
+         * Returns the ratio of hits to lookups, or 1 if there were none.
+         */
+        public double hitRate() {
+            long n = hitCount + missCount;
+            return (n == 0) ? 1.0 : (double) hitCount / n;
+        }
+
+        /**
+         * Returns the number of mappings evicted to respect the maximum
+         * weight.
+         */
+        public long evictionCount() {
+            return evictionCount;
+        }
+
+        /**
+         * Returns the number of mappings removed because they expired.
+         */
+        public long expirationCount() {
+            return expirationCount;
+        }
+
+        public String toString() {
+            return "Stats[hits=" + hitCount + ", misses=" + missCount +
+                ", evictions=" + evictionCount + ", expirations=" +
+                expirationCount + "]";
+        }
+    }
+
+    // Policies
+
+    /**
+     * Orders the nodes for eviction.  victim is only called while the
+     * cache holds at least one node, and must return one of them.
+     */
+    abstract static class Policy<K,V> {
+        abstract void onInsert(Node<K,V> n);
+        abstract void onAccess(Node<K,V> n);
+        abstract void onRemove(Node<K,V> n);
+        abstract Node<K,V> victim();
+        void onWeightChange(Node<K,V> n, int delta) {
+        }
+        void onMiss(int hash) {
+        }
+    }
+
+    /**
+     * Doubly linked queue through the policy links of its nodes.
+     */
+    static final class NodeQueue<K,V> {
+        Node<K,V> head, tail;
+
+        void addLast(Node<K,V> n) {
+            Node<K,V> t = tail;
+            n.prev = t;
+            n.next = null;
+            if (t == null)
+                head = n;
+            else
+                t.next = n;
+            tail = n;
+        }
+
+        void remove(Node<K,V> n) {
+            Node<K,V> p = n.prev, s = n.next;
+            if (p == null)
+                head = s;
+            else
+                p.next = s;
+            if (s == null)
+                tail = p;
+            else
+                s.prev = p;
+            n.prev = n.next = null;
+        }
+
+        void moveToLast(Node<K,V> n) {
+            if (n != tail) {
+                remove(n);
+                addLast(n);
+            }
+        }
+
+        boolean isEmpty() {
+            return head == null;
+        }
+    }
+
+    static final class LruPolicy<K,V> extends Policy<K,V> {
+        final NodeQueue<K,V> queue = new NodeQueue<>();
+
+        void onInsert(Node<K,V> n) {
+            queue.addLast(n);
+        }
+        void onAccess(Node<K,V> n) {
+            queue.moveToLast(n);
+        }
+        void onRemove(Node<K,V> n) {
+            queue.remove(n);
+        }
+        Node<K,V> victim() {
+            return queue.head;
+        }
+    }
+
+    /**
+     * The nodes accessed freq times, in LFU's list of buckets of
+     * increasing frequency.
+     */
+    static final class FrequencyBucket<K,V> {
+        final long freq;
+        FrequencyBucket<K,V> prev, next;
+        final NodeQueue<K,V> nodes = new NodeQueue<>();
+
+        FrequencyBucket(long freq) {
+            this.freq = freq;
+        }
+    }
+
+    /**
+     * Constant time LFU: nodes sit in per-frequency LRU queues, and the
+     * queues in a list ordered by frequency.
+     */
+    static final class LfuPolicy<K,V> extends Policy<K,V> {
+        FrequencyBucket<K,V> lowest;
+
+        void onInsert(Node<K,V> n) {
+            FrequencyBucket<K,V> b = lowest;
+            if (b == null || b.freq != 1) {
+                b = new FrequencyBucket<>(1);
+                b.next = lowest;
+                if (lowest != null)
+                    lowest.prev = b;
+                lowest = b;
+            }
+            n.bucket = b;
+            b.nodes.addLast(n);
+        }
+
+        void onAccess(Node<K,V> n) {
+            FrequencyBucket<K,V> b = n.bucket, s = b.next;
+            if (s == null || s.freq != b.freq + 1) {
+                FrequencyBucket<K,V> nb = new FrequencyBucket<>(b.freq + 1);
+                nb.prev = b;
+                nb.next = s;
+                if (s != null)
+                    s.prev = nb;
+                b.next = nb;
+                s = nb;
+            }
+            b.nodes.remove(n);
+            n.bucket = s;
+            s.nodes.addLast(n);
+            if (b.nodes.isEmpty())
+                unlink(b);
+        }
+
+        void onRemove(Node<K,V> n) {
+            FrequencyBucket<K,V> b = n.bucket;
+            b.nodes.remove(n);
+            n.bucket = null;
+            if (b.nodes.isEmpty())
+                unlink(b);
+        }
+
+        private void unlink(FrequencyBucket<K,V> b) {
+            FrequencyBucket<K,V> p = b.prev, s = b.next;
+            if (p == null)
+                lowest = s;
+            else
+                p.next = s;
+            if (s != null)
+                s.prev = p;
+        }
+
+        Node<K,V> victim() {
+            return lowest.nodes.head;
+        }
+    }
+
+    static final int WINDOW = 0, PROBATION = 1, PROTECTED = 2;
+
+    /**
+     * Window TinyLFU with a segmented LRU main space, as described by
+     * Einziger, Friedman and Manes, "TinyLFU: A Highly Efficient Cache
+     * Admission Policy".
+     */
+    static final class TinyLfuPolicy<K,V> extends Policy<K,V> {
+        final NodeQueue<K,V> window = new NodeQueue<>();
+        final NodeQueue<K,V> probation = new NodeQueue<>();
+        final NodeQueue<K,V> protectedQueue = new NodeQueue<>();
+        final FrequencySketch sketch;
+        final long windowMaximum;
+        final long protectedMaximum;
+        long windowWeight;
+        long protectedWeight;
+
+        /**
+         * The node most recently moved from the window to probation,
+         * which competes with the probation victim for admission.
+         */
+        Node<K,V> candidate;
+
+        TinyLfuPolicy(long maximumWeight) {
+            windowMaximum = Math.max(1, maximumWeight / 100);
+            protectedMaximum = (maximumWeight - windowMaximum) * 4 / 5;
+            sketch = new FrequencySketch(maximumWeight);
+        }
+
+        void onInsert(Node<K,V> n) {
+            sketch.increment(n.hash);
+            n.queue = WINDOW;
+            window.addLast(n);
+            windowWeight += n.weight;
+            while (windowWeight > windowMaximum && !window.isEmpty()) {
+                Node<K,V> c = window.head;
+                window.remove(c);
+                windowWeight -= c.weight;
+                c.queue = PROBATION;
+                probation.addLast(c);
+                candidate = c;
+            }
+        }
+
+        void onAccess(Node<K,V> n) {
+            sketch.increment(n.hash);
+            switch (n.queue) {
+            case WINDOW:
+                window.moveToLast(n);
+                break;
+            case PROBATION:
+                probation.remove(n);
+                n.queue = PROTECTED;
+                protectedQueue.addLast(n);
+                protectedWeight += n.weight;
+                while (protectedWeight > protectedMaximum) {
+                    Node<K,V> d = protectedQueue.head;
+                    protectedQueue.remove(d);
+                    protectedWeight -= d.weight;
+                    d.queue = PROBATION;
+                    probation.addLast(d);
+                }
+                break;
+            default:
+                protectedQueue.moveToLast(n);
+            }
+        }
+
+        void onWeightChange(Node<K,V> n, int delta) {
+            if (n.queue == WINDOW)
+                windowWeight += delta;
+            else if (n.queue == PROTECTED)
+                protectedWeight += delta;
+        }
+
+        void onMiss(int hash) {
+            sketch.increment(hash);
+        }
+
+        void onRemove(Node<K,V> n) {
+            if (n == candidate)
+                candidate = null;
+            switch (n.queue) {
+            case WINDOW:
+                window.remove(n);
+                windowWeight -= n.weight;
+                break;
+            case PROBATION:
+                probation.remove(n);
+                break;
+            default:
+                protectedQueue.remove(n);
+                protectedWeight -= n.weight;
+            }
+        }
+
+        Node<K,V> victim() {
+            Node<K,V> victim = probation.head;
+            if (victim == null)
+                victim = protectedQueue.head;
+            if (victim == null)
+                return window.head;
+            Node<K,V> c = candidate;
+            candidate = null;
+            if (c == null || c == victim || c.queue != PROBATION)
+                return victim;
+            return (sketch.frequency(c.hash) > sketch.frequency(victim.hash))
+                ? victim : c;
+        }
+    }
+
+    /**
+     * Count-min sketch of 4-bit counters, four per key, used to estimate
+     * access frequencies.  All counters are halved after a sample of ten
+     * times the table size increments, so that old popularity fades.
+     */
+    static final class FrequencySketch {
+        static final long[] SEED = {
+            0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L,
+            0x9ae16a3b2f90404fL, 0xcbf29ce484222325L };
+        static final long RESET_MASK = 0x7777777777777777L;
+
+        final long[] table;
+        final int sampleSize;
+        int size;
+
+        FrequencySketch(long maximumWeight) {
+            int n = (int)Math.min(Math.max(maximumWeight, 1), 1 << 24);
+            int capacity = 1;
+            while (capacity < n)
+                capacity <<= 1;
+            table = new long[capacity];
+            sampleSize = 10 * capacity;
+        }
+
+        private int indexOf(int hash, int i) {
+            long h = (hash + SEED[i]) * SEED[i];
+            h += h >>> 32;
+            return (int)h & (table.length - 1);
+        }
+
+        int frequency(int hash) {
+            int start = (hash & 3) << 2;
+            int freq = 15;
+            for (int i = 0; i < 4; i++) {
+                int shift = (start + i) << 2;
+                freq = Math.min(freq, (int)((table[indexOf(hash, i)] >>> shift) & 0xf));
+            }
+            return freq;
+        }
+
+        void increment(int hash) {
+            int start = (hash & 3) << 2;
+            boolean added = false;
+            for (int i = 0; i < 4; i++) {
+                int j = indexOf(hash, i);
+                long mask = 0xfL << ((start + i) << 2);
+                if ((table[j] & mask) != mask) {
+                    table[j] += 1L << ((start + i) << 2);
+                    added = true;
+                }
+            }
+            if (added && ++size == sampleSize)
+                reset();
+        }
+
+        private void reset() {
+            for (int i = 0; i < table.length; i++)
+                table[i] = (table[i] >>> 1) & RESET_MASK;
+            size >>>= 1;
+        }
+    }
+
+    private static final long serialVersionUID = 4860290542263451612L;
+
+    /**
+     * Reconstitute the cache from a stream.  HashMap.readObject adds the
+     * mappings before this class's fields are read, so their nodes are
+     * registered with the policy here.
+     */
+    private void readObject(java.io.ObjectInputStream s)
+        throws java.io.IOException, ClassNotFoundException
+    {
+        s.defaultReadObject();
+        init();
+        for (Map.Entry<K,V> e : entrySet())
+            register(node((HashMap.Entry<K,V>)e), e.getValue());
+        evictEntries();
+    }
+}
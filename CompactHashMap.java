@@ -0,0 +1,643 @@
+package java.util;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+
+/**
+ * Hash table based implementation of the <tt>Map</tt> interface that
+ * keeps its mappings in insertion order, laid out like a compact dict:
+ * the hashes, keys and values of the mappings are appended to three
+ * dense parallel arrays in the order they are added, and a separate
+ * open-addressed index maps each hash to a position in those arrays.
+ * Like {@link HashMap} this class permits <tt>null</tt> values and the
+ * <tt>null</tt> key.
+ *
+ * <p>Iteration is a linear pass over the dense arrays, so it takes time
+ * proportional to the number of mappings added since the arrays were
+ * last compacted rather than to the capacity of a table, and returns the
+ * mappings in the order their keys were first inserted.  Replacing the
+ * value of a key keeps its position; removing it and putting it again
+ * moves it to the end.
+ *
+ * <p>No object is allocated per mapping.  The index holds positions
+ * rather than references, in a <tt>byte[]</tt> while the map can hold
+ * no more than 170 mappings, a <tt>short[]</tt> up to 43690 and an
+ * <tt>int[]</tt> beyond that, and is kept at most two thirds full.  A
+ * mapping therefore takes an <tt>int</tt> hash, two references and one
+ * to two index slots, against the 32 or more bytes of a HashMap entry
+ * plus its table slot.
+ *
+ * <p>Removing a mapping leaves a hole in the dense arrays and a marker in
+ * the index; both are reclaimed when the dense arrays fill up and are
+ * rebuilt, at a size chosen from the number of mappings left.
+ *
+ * <p><strong>Note that this implementation is not synchronized.</strong>
+ * The iterators returned by this class's collection view methods are
+ * fail-fast in the same way as those of <tt>HashMap</tt>.
+ *
+ * @param <K> the type of keys maintained by this map
+ * @param <V> the type of mapped values
+ *
+ * @see     HashMap
+ * @see     RobinHoodHashMap
+ */
+public class CompactHashMap<K,V>
+    extends AbstractMap<K,V>
+    implements Map<K,V>, Cloneable, Serializable
+{
+    /**
+     * The smallest length of the index - MUST be a power of two.
+     */
+    static final int MINIMUM_INDEX_LENGTH = 8;
+
+    /**
+     * The largest length of the index.  MUST be a power of two <= 1<<30.
+     */
+    static final int MAXIMUM_INDEX_LENGTH = 1 << 30;
+
+    /**
+     * The index value of a slot that has never been used.  Other slots
+     * hold DUMMY, or the position of a mapping in the dense arrays plus
+     * two.
+     */
+    static final int EMPTY = 0;
+
+    /**
+     * The index value of a slot whose mapping has been removed.  Lookups
+     * probe past it; insertions may reuse it.
+     */
+    static final int DUMMY = 1;
+
+    /**
+     * The key stored at the positions of removed mappings.
+     */
+    static final Object REMOVED = new Object();
+
+    /**
+     * The index: a byte[], short[] or int[] whose length is a power of
+     * two, holding EMPTY, DUMMY or the position of a mapping plus two.
+     */
+    transient Object index;
+
+    /**
+     * The length of the index minus one.
+     */
+    transient int mask;
+
+    /**
+     * The hashes of the mappings, in insertion order.
+     */
+    transient int[] hashes;
+
+    /**
+     * The keys, at the same position as their hashes, or REMOVED.
+     */
+    transient Object[] keys;
+
+    /**
+     * The values, at the same position as their hashes.
+     */
+    transient Object[] vals;
+
+    /**
+     * The number of positions of the dense arrays in use, including
+     * those of removed mappings.
+     */
+    transient int used;
+
+    /**
+     * The number of key-value mappings contained in this map.
+     */
+    transient int size;
+
+    /**
+     * The number of times this map has been structurally modified.
+     */
+    transient int modCount;
+
+    /**
+     * Constructs an empty map able to hold the specified number of
+     * mappings before its arrays are rebuilt.
+     *
+     * @param  initialCapacity the initial capacity
+     * @throws IllegalArgumentException if the initial capacity is negative
+     */
+    public CompactHashMap(int initialCapacity) {
+        if (initialCapacity < 0)
+            throw new IllegalArgumentException("Illegal initial capacity: " +
+                                               initialCapacity);
+        allocate(indexLength(initialCapacity));
+    }
+
+    /**
+     * Constructs an empty map able to hold five mappings before its
+     * arrays are rebuilt.
+     */
+    public CompactHashMap() {
+        allocate(MINIMUM_INDEX_LENGTH);
+    }
+
+    /**
+     * Constructs a new map with the same mappings as the specified
+     * <tt>Map</tt>, in the order its entry set iterates them.
+     *
+     * @param   m the map whose mappings are to be placed in this map
+     * @throws  NullPointerException if the specified map is null
+     */
+    public CompactHashMap(Map<? extends K, ? extends V> m) {
+        this(m.size());
+        putAll(m);
+    }
+
+    /**
+     * Returns the number of mappings an index of length n can serve:
+     * two thirds of its slots, so that probes stay short and every probe
+     * sequence ends at an empty slot.
+     */
+    static int usable(int n) {
+        return (int)((long)n * 2 / 3);
+    }
+
+    /**
+     * Returns the length of the smallest index that can serve the given
+     * number of mappings, or MAXIMUM_INDEX_LENGTH if none can.
+     */
+    static int indexLength(int mappings) {
+        int n = MINIMUM_INDEX_LENGTH;
+        while (n < MAXIMUM_INDEX_LENGTH && usable(n) < mappings)
+            n <<= 1;
+        return n;
+    }
+
+    /**
+     * Allocates an empty index of length n, using the narrowest element
+     * type that can hold every position plus two, and dense arrays of
+     * the matching capacity.
+     */
+    private void allocate(int n) {
+        if (n <= 1 << 8)
+            index = new byte[n];
+        else if (n <= 1 << 16)
+            index = new short[n];
+        else
+            index = new int[n];
+        mask = n - 1;
+        int capacity = usable(n);
+        hashes = new int[capacity];
+        keys = new Object[capacity];
+        vals = new Object[capacity];
+        used = 0;
+    }
+
+    static int slot(Object ix, int i) {
+        if (ix instanceof byte[])
+            return ((byte[]) ix)[i] & 0xff;
+        if (ix instanceof short[])
+            return ((short[]) ix)[i] & 0xffff;
+        return ((int[]) ix)[i];
+    }
+
+    static void setSlot(Object ix, int i, int v) {
+        if (ix instanceof byte[])
+            ((byte[]) ix)[i] = (byte) v;
+        else if (ix instanceof short[])
+            ((short[]) ix)[i] = (short) v;
+        else
+            ((int[]) ix)[i] = v;
+    }
+
+    /**
+     * Returns HashMap's supplemental hash of the hashCode of key, or 0
+     * for the null key.
+     */
+    static int hash(Object key) {
+        return (key == null) ? 0 : HashMap.hash(key.hashCode());
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Returns the position of key in the dense arrays, or -1 if there is
+     * none.  h must be hash(key).
+     */
+    final int positionOf(Object key, int h) {
+        Object ix = index;
+        int m = mask;
+        for (int i = h & m; ; i = (i + 1) & m) {
+            int s = slot(ix, i);
+            if (s == EMPTY)
+                return -1;
+            if (s != DUMMY) {
+                int p = s - 2;
+                if (hashes[p] == h) {
+                    Object k = keys[p];
+                    if (k == key || (key != null && key.equals(k)))
+                        return p;
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the value to which the specified key is mapped,
+     * or {@code null} if this map contains no mapping for the key.
+     */
+    @SuppressWarnings("unchecked")
+    public V get(Object key) {
+        int p = positionOf(key, hash(key));
+        return (p < 0) ? null : (V)vals[p];
+    }
+
+    public boolean containsKey(Object key) {
+        return positionOf(key, hash(key)) >= 0;
+    }
+
+    /**
+     * Associates the specified value with the specified key in this map.
+     * If the map previously contained a mapping for the key, the old
+     * value is replaced and the mapping keeps its place in the order.
+     *
+     * @return the previous value associated with <tt>key</tt>, or
+     *         <tt>null</tt> if there was no mapping for <tt>key</tt>.
+     * @throws IllegalStateException if the map is full
+     */
+    @SuppressWarnings("unchecked")
+    public V put(K key, V value) {
+        int h = hash(key);
+        int p = positionOf(key, h);
+        if (p >= 0) {
+            Object oldValue = vals[p];
+            vals[p] = value;
+            return (V)oldValue;
+        }
+        modCount++;
+        if (used == hashes.length)
+            rebuild(size + (size >>> 1) + 1);
+        append(h, key, value);
+        size++;
+        return null;
+    }
+
+    /**
+     * Appends a mapping known to be absent to the dense arrays and
+     * links its position into the first empty or dummy slot of its probe
+     * sequence.
+     */
+    private void append(int h, Object key, Object value) {
+        int p = used++;
+        hashes[p] = h;
+        keys[p] = key;
+        vals[p] = value;
+        Object ix = index;
+        int m = mask;
+        for (int i = h & m; ; i = (i + 1) & m) {
+            if (slot(ix, i) <= DUMMY) {
+                setSlot(ix, i, p + 2);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Reallocates the index and dense arrays for the given number of
+     * mappings and appends the remaining mappings in order, dropping the
+     * holes left by removals.
+     */
+    private void rebuild(int mappings) {
+        int n = indexLength(mappings);
+        if (size >= usable(n))
+            throw new IllegalStateException("Map is full");
+        int[] oldHashes = hashes;
+        Object[] oldKeys = keys, oldVals = vals;
+        int oldUsed = used;
+        allocate(n);
+        for (int j = 0; j < oldUsed; j++) {
+            if (oldKeys[j] != REMOVED)
+                append(oldHashes[j], oldKeys[j], oldVals[j]);
+        }
+    }
+
+    /**
+     * Copies all of the mappings from the specified map to this map,
+     * rebuilding the arrays at most once beforehand.
+     */
+    public void putAll(Map<? extends K, ? extends V> m) {
+        int n = m.size();
+        if (n == 0)
+            return;
+        if (used + n > hashes.length)
+            rebuild((int)Math.min((long)size + n, Integer.MAX_VALUE));
+        for (Map.Entry<? extends K, ? extends V> e : m.entrySet())
+            put(e.getKey(), e.getValue());
+    }
+
+    /**
+     * Removes the mapping for the specified key from this map if present.
+     *
+     * @return the previous value associated with <tt>key</tt>, or
+     *         <tt>null</tt> if there was no mapping for <tt>key</tt>.
+     */
+    @SuppressWarnings("unchecked")
+    public V remove(Object key) {
+        int p = positionOf(key, hash(key));
+        if (p < 0)
+            return null;
+        Object oldValue = vals[p];
+        removeAt(p);
+        return (V)oldValue;
+    }
+
+    /**
+     * Removes the mapping at position p of the dense arrays, marking its
+     * index slot DUMMY.  Nothing moves, so an iterator past p stays valid.
+     */
+    final void removeAt(int p) {
+        modCount++;
+        size--;
+        Object ix = index;
+        int m = mask;
+        int s = p + 2;
+        for (int i = hashes[p] & m; ; i = (i + 1) & m) {
+            if (slot(ix, i) == s) {
+                setSlot(ix, i, DUMMY);
+                break;
+            }
+        }
+        keys[p] = REMOVED;
+        vals[p] = null;
+    }
+
+    /**
+     * Removes all of the mappings from this map and returns it to the
+     * smallest size.
+     */
+    public void clear() {
+        modCount++;
+        allocate(MINIMUM_INDEX_LENGTH);
+        size = 0;
+    }
+
+    /**
+     * Returns <tt>true</tt> if this map maps one or more keys to the
+     * specified value.
+     */
+    public boolean containsValue(Object value) {
+        Object[] ks = keys, vs = vals;
+        for (int p = 0; p < used; p++) {
+            if (ks[p] != REMOVED) {
+                Object v = vs[p];
+                if (v == value || (value != null && value.equals(v)))
+                    return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns a shallow copy of this map: the keys and values themselves
+     * are not cloned.
+     */
+    @SuppressWarnings("unchecked")
+    public Object clone() {
+        CompactHashMap<K,V> result;
+        try {
+            result = (CompactHashMap<K,V>)super.clone();
+        } catch (CloneNotSupportedException e) {
+            throw new InternalError();
+        }
+        Object ix = index;
+        if (ix instanceof byte[])
+            result.index = ((byte[]) ix).clone();
+        else if (ix instanceof short[])
+            result.index = ((short[]) ix).clone();
+        else
+            result.index = ((int[]) ix).clone();
+        result.hashes = hashes.clone();
+        result.keys = keys.clone();
+        result.vals = vals.clone();
+        result.keySet = null;
+        result.values = null;
+        result.entrySet = null;
+        result.modCount = 0;
+        return result;
+    }
+
+    /**
+     * Iterates the dense arrays in order, skipping the positions of
+     * removed mappings.  Removal through the iterator only marks a
+     * position, so the positions still ahead are unaffected.
+     */
+    private abstract class HashIterator<E> implements Iterator<E> {
+        int next = skip(0);         // position of next mapping
+        int last = -1;              // position of last mapping, -1 if none
+        int expectedModCount = modCount;
+
+        final int skip(int p) {
+            Object[] ks = keys;
+            while (p < used && ks[p] == REMOVED)
+                p++;
+            return p;
+        }
+
+        public final boolean hasNext() {
+            return next < used;
+        }
+
+        final int nextPosition() {
+            if (modCount != expectedModCount)
+                throw new ConcurrentModificationException();
+            int p = next;
+            if (p >= used)
+                throw new NoSuchElementException();
+            next = skip(p + 1);
+            return last = p;
+        }
+
+        public void remove() {
+            if (last < 0)
+                throw new IllegalStateException();
+            if (modCount != expectedModCount)
+                throw new ConcurrentModificationException();
+            removeAt(last);
+            last = -1;
+            expectedModCount = modCount;
+        }
+    }
+
+    private final class KeyIterator extends HashIterator<K> {
+        @SuppressWarnings("unchecked")
+        public K next() {
+            return (K)keys[nextPosition()];
+        }
+    }
+
+    private final class ValueIterator extends HashIterator<V> {
+        @SuppressWarnings("unchecked")
+        public V next() {
+            return (V)vals[nextPosition()];
+        }
+    }
+
+    private final class EntryIterator extends HashIterator<Map.Entry<K,V>> {
+        @SuppressWarnings("unchecked")
+        public Map.Entry<K,V> next() {
+            int p = nextPosition();
+            return new MapEntry((K)keys[p], (V)vals[p]);
+        }
+    }
+
+    /**
+     * Entry returned by the entry set iterator.  Since a rebuild moves
+     * mappings to new positions, setValue finds the key's current one.
+     */
+    private final class MapEntry extends AbstractMap.SimpleEntry<K,V> {
+        private static final long serialVersionUID = 4179563201268549112L;
+
+        MapEntry(K key, V value) {
+            super(key, value);
+        }
+
+        public V setValue(V value) {
+            K key = getKey();
+            int p = positionOf(key, hash(key));
+            if (p >= 0)
+                vals[p] = value;
+            return super.setValue(value);
+        }
+    }
+
+    // Views
+
+    private transient Set<Map.Entry<K,V>> entrySet = null;
+
+    public Set<K> keySet() {
+        Set<K> ks = keySet;
+        return (ks != null ? ks : (keySet = new KeySet()));
+    }
+
+    private final class KeySet extends AbstractSet<K> {
+        public Iterator<K> iterator() {
+            return new KeyIterator();
+        }
+        public int size() {
+            return size;
+        }
+        public boolean contains(Object o) {
+            return containsKey(o);
+        }
+        public boolean remove(Object o) {
+            int p = positionOf(o, hash(o));
+            if (p < 0)
+                return false;
+            removeAt(p);
+            return true;
+        }
+        public void clear() {
+            CompactHashMap.this.clear();
+        }
+    }
+
+    public Collection<V> values() {
+        Collection<V> vs = values;
+        return (vs != null ? vs : (values = new Values()));
+    }
+
+    private final class Values extends AbstractCollection<V> {
+        public Iterator<V> iterator() {
+            return new ValueIterator();
+        }
+        public int size() {
+            return size;
+        }
+        public boolean contains(Object o) {
+            return containsValue(o);
+        }
+        public void clear() {
+            CompactHashMap.this.clear();
+        }
+    }
+
+    public Set<Map.Entry<K,V>> entrySet() {
+        Set<Map.Entry<K,V>> es = entrySet;
+        return es != null ? es : (entrySet = new EntrySet());
+    }
+
+    private final class EntrySet extends AbstractSet<Map.Entry<K,V>> {
+        public Iterator<Map.Entry<K,V>> iterator() {
+            return new EntryIterator();
+        }
+        public boolean contains(Object o) {
+            if (!(o instanceof Map.Entry))
+                return false;
+            Map.Entry<?,?> e = (Map.Entry<?,?>) o;
+            Object key = e.getKey();
+            int p = positionOf(key, hash(key));
+            return p >= 0 && Objects.equals(vals[p], e.getValue());
+        }
+        public boolean remove(Object o) {
+            if (!(o instanceof Map.Entry))
+                return false;
+            Map.Entry<?,?> e = (Map.Entry<?,?>) o;
+            Object key = e.getKey();
+            int p = positionOf(key, hash(key));
+            if (p < 0 || !Objects.equals(vals[p], e.getValue()))
+                return false;
+            removeAt(p);
+            return true;
+        }
+        public int size() {
+            return size;
+        }
+        public void clear() {
+            CompactHashMap.this.clear();
+        }
+    }
+
+    private static final long serialVersionUID = 6042907513782740395L;
+
+    /**
+     * Save the state of the map to a stream.
+     *
+     * @serialData The <i>size</i> (int) is emitted, followed by the key
+     *             (Object) and value (Object) for each mapping, in
+     *             insertion order.
+     */
+    private void writeObject(ObjectOutputStream s) throws IOException {
+        s.defaultWriteObject();
+        s.writeInt(size);
+        for (int p = 0; p < used; p++) {
+            if (keys[p] != REMOVED) {
+                s.writeObject(keys[p]);
+                s.writeObject(vals[p]);
+            }
+        }
+    }
+
+    /**
+     * Reconstitute the map from a stream.
+     */
+    private void readObject(ObjectInputStream s)
+        throws IOException, ClassNotFoundException
+    {
+        s.defaultReadObject();
+        int n = s.readInt();
+        if (n < 0)
+            throw new java.io.InvalidObjectException("Illegal size: " + n);
+        allocate(indexLength(n));
+        for (int i = 0; i < n; i++) {
+            Object key = s.readObject();
+            Object value = s.readObject();
+            if (used == hashes.length)
+                rebuild(size + (size >>> 1) + 1);
+            append(hash(key), key, value);
+            size++;
+        }
+    }
+}
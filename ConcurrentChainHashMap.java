@@ -0,0 +1,851 @@
+package java.util;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A hash table supporting full concurrency of retrievals and high
+ * expected concurrency for updates, built on the same power-of-two table
+ * of entry chains as {@link HashMap}.  This is the map to use instead of
+ * wrapping a <tt>HashMap</tt> with
+ * {@link Collections#synchronizedMap Collections.synchronizedMap} when
+ * many threads share it.
+ *
+ * <p>Retrievals never lock.  The table slots are read with volatile
+ * semantics and chain links and values are volatile, so <tt>get</tt>
+ * always sees the most recently completed update of each mapping.
+ * Updates lock only the first entry of the bucket they modify (or, for
+ * an empty bucket, install the new entry with a single compare-and-set),
+ * so updates to different buckets proceed in parallel.
+ *
+ * <p>When the table needs to grow, the thread that notices starts a
+ * resize and other threads that try to update a bucket already moved, or
+ * that add a mapping while the resize is running, join in: each claims a
+ * range of buckets and moves them.  Moved buckets are replaced by a
+ * forwarding marker through which readers and writers reach the new
+ * table, so neither has to wait for the whole resize to finish.  The
+ * size is kept in a striped counter so that adding and removing mappings
+ * does not serialize on a single shared count.
+ *
+ * <p>Like <tt>Hashtable</tt> but unlike <tt>HashMap</tt>, this class does
+ * <em>not</em> allow <tt>null</tt> to be used as a key or value.
+ * Iterators and the collection views are <i>weakly consistent</i>: they
+ * never throw {@link ConcurrentModificationException}, reflect the state
+ * of each bucket at some point at or since the iterator's creation, and
+ * may or may not reflect later updates.
+ *
+ * @param <K> the type of keys maintained by this map
+ * @param <V> the type of mapped values
+ *
+ * @see     HashMap
+ */
+public class ConcurrentChainHashMap<K,V> extends AbstractMap<K,V>
+    implements ConcurrentMap<K,V>, Serializable
+{
+    /**
+     * The default initial capacity - MUST be a power of two.
+     */
+    static final int DEFAULT_INITIAL_CAPACITY = 16;
+
+    /**
+     * The maximum capacity.  MUST be a power of two <= 1<<30.
+     */
+    static final int MAXIMUM_CAPACITY = 1 << 30;
+
+    /**
+     * The number of buckets a resizing thread claims at a time.
+     */
+    static final int TRANSFER_STRIDE = 16;
+
+    /**
+     * Hash of forwarding entries; spread() keeps real hashes positive.
+     */
+    static final int MOVED = -1;
+
+    /**
+     * Usable bits of an entry hash.
+     */
+    static final int HASH_BITS = 0x7fffffff;
+
+    /**
+     * The table.  Length MUST always be a power of two.
+     */
+    transient volatile AtomicReferenceArray<Node<K,V>> table;
+
+    /**
+     * The table being filled by a resize in progress, else null.
+     */
+    private transient volatile AtomicReferenceArray<Node<K,V>> nextTable;
+
+    /**
+     * Table resizing control.  When non-negative, the number of mappings
+     * at which to resize next.  During a resize, -1 - the number of
+     * threads taking part; -1 itself while the finished resize is being
+     * installed.
+     */
+    private transient volatile int sizeCtl;
+
+    /**
+     * One past the highest bucket of the old table not yet claimed by a
+     * resizing thread.
+     */
+    private transient volatile int transferIndex;
+
+    /**
+     * The number of mappings, striped across cells under contention.
+     */
+    private transient LongAdder counter;
+
+    private static final AtomicIntegerFieldUpdater<ConcurrentChainHashMap>
+        SIZECTL = AtomicIntegerFieldUpdater.newUpdater(
+            ConcurrentChainHashMap.class, "sizeCtl");
+    private static final AtomicIntegerFieldUpdater<ConcurrentChainHashMap>
+        TRANSFERINDEX = AtomicIntegerFieldUpdater.newUpdater(
+            ConcurrentChainHashMap.class, "transferIndex");
+
+    /**
+     * Constructs an empty map with the specified initial capacity.
+     *
+     * @param  initialCapacity the initial capacity
+     * @throws IllegalArgumentException if the initial capacity is negative
+     */
+    public ConcurrentChainHashMap(int initialCapacity) {
+        if (initialCapacity < 0)
+            throw new IllegalArgumentException("Illegal initial capacity: " +
+                                               initialCapacity);
+        if (initialCapacity > MAXIMUM_CAPACITY)
+            initialCapacity = MAXIMUM_CAPACITY;
+        int capacity = 1;
+        while (capacity < initialCapacity)
+            capacity <<= 1;
+        init(capacity);
+    }
+
+    /**
+     * Constructs an empty map with the default initial capacity (16).
+     */
+    public ConcurrentChainHashMap() {
+        init(DEFAULT_INITIAL_CAPACITY);
+    }
+
+    /**
+     * Constructs a new map with the same mappings as the given map.
+     *
+     * @param m the map
+     * @throws NullPointerException if the specified map or any of its
+     *         keys or values are null
+     */
+    public ConcurrentChainHashMap(Map<? extends K, ? extends V> m) {
+        this(Math.max((int)(m.size() / 0.75f) + 1, DEFAULT_INITIAL_CAPACITY));
+        putAll(m);
+    }
+
+    private void init(int capacity) {
+        counter = new LongAdder();
+        table = new AtomicReferenceArray<Node<K,V>>(capacity);
+        sizeCtl = capacity - (capacity >>> 2);  // capacity * 0.75
+    }
+
+    /**
+     * Applies HashMap's supplemental hash function and clears the sign
+     * bit, which is reserved for forwarding entries.
+     */
+    static int spread(int h) {
+        return HashMap.hash(h) & HASH_BITS;
+    }
+
+    /* ---------------- Nodes -------------- */
+
+    /**
+     * Chain entry.  Keys and hashes are final; values and links are
+     * volatile so that lock-free readers see updates made under the
+     * bucket lock.
+     */
+    static class Node<K,V> {
+        final int hash;
+        final K key;
+        volatile V val;
+        volatile Node<K,V> next;
+
+        Node(int hash, K key, V val, Node<K,V> next) {
+            this.hash = hash;
+            this.key = key;
+            this.val = val;
+            this.next = next;
+        }
+    }
+
+    /**
+     * Placed in the old table's buckets once they have been moved.
+     */
+    static final class ForwardingNode<K,V> extends Node<K,V> {
+        final AtomicReferenceArray<Node<K,V>> nextTable;
+
+        ForwardingNode(AtomicReferenceArray<Node<K,V>> tab) {
+            super(MOVED, null, null, null);
+            this.nextTable = tab;
+        }
+    }
+
+    /* ---------------- Public operations -------------- */
+
+    public int size() {
+        long n = counter.sum();
+        return ((n < 0L) ? 0 :
+                (n > (long)Integer.MAX_VALUE) ? Integer.MAX_VALUE :
+                (int)n);
+    }
+
+    public boolean isEmpty() {
+        return counter.sum() <= 0L;
+    }
+
+    /**
+     * Returns the value to which the specified key is mapped, or
+     * {@code null} if this map contains no mapping for the key.
+     *
+     * @throws NullPointerException if the specified key is null
+     */
+    public V get(Object key) {
+        int h = spread(key.hashCode());
+        AtomicReferenceArray<Node<K,V>> tab = table;
+        for (;;) {
+            Node<K,V> e = tab.get((tab.length() - 1) & h);
+            if (e == null)
+                return null;
+            if (e.hash == MOVED) {
+                tab = ((ForwardingNode<K,V>)e).nextTable;
+                continue;
+            }
+            for (; e != null; e = e.next) {
+                K ek;
+                if (e.hash == h && ((ek = e.key) == key || key.equals(ek)))
+                    return e.val;
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Tests if the specified object is a key in this table.
+     *
+     * @throws NullPointerException if the specified key is null
+     */
+    public boolean containsKey(Object key) {
+        return get(key) != null;
+    }
+
+    /**
+     * Returns <tt>true</tt> if this map maps one or more keys to the
+     * specified value.  This requires a full traversal of the map.
+     *
+     * @throws NullPointerException if the specified value is null
+     */
+    public boolean containsValue(Object value) {
+        if (value == null)
+            throw new NullPointerException();
+        for (Iterator<Node<K,V>> it = new NodeIterator(); it.hasNext(); ) {
+            V v = it.next().val;
+            if (v == value || (v != null && value.equals(v)))
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Maps the specified key to the specified value in this table.
+     *
+     * @return the previous value associated with <tt>key</tt>, or
+     *         <tt>null</tt> if there was no mapping for <tt>key</tt>
+     * @throws NullPointerException if the specified key or value is null
+     */
+    public V put(K key, V value) {
+        return putVal(key, value, false);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @return the previous value associated with the specified key,
+     *         or <tt>null</tt> if there was no mapping for the key
+     * @throws NullPointerException if the specified key or value is null
+     */
+    public V putIfAbsent(K key, V value) {
+        return putVal(key, value, true);
+    }
+
+    /** Implementation for put and putIfAbsent */
+    final V putVal(K key, V value, boolean onlyIfAbsent) {
+        if (key == null || value == null)
+            throw new NullPointerException();
+        int hash = spread(key.hashCode());
+        AtomicReferenceArray<Node<K,V>> tab = table;
+        for (;;) {
+            int i = (tab.length() - 1) & hash;
+            Node<K,V> f = tab.get(i);
+            if (f == null) {
+                if (tab.compareAndSet(i, null,
+                                      new Node<K,V>(hash, key, value, null)))
+                    break;                   // no lock when adding to empty bin
+            }
+            else if (f.hash == MOVED)
+                tab = helpTransfer(tab, (ForwardingNode<K,V>)f);
+            else {
+                V oldVal = null;
+                boolean done = false;
+                synchronized (f) {
+                    if (tab.get(i) == f) {
+                        done = true;
+                        for (Node<K,V> e = f;;) {
+                            K ek;
+                            if (e.hash == hash &&
+                                ((ek = e.key) == key || key.equals(ek))) {
+                                oldVal = e.val;
+                                if (!onlyIfAbsent)
+                                    e.val = value;
+                                break;
+                            }
+                            Node<K,V> pred = e;
+                            if ((e = e.next) == null) {
+                                pred.next = new Node<K,V>(hash, key,
+                                                          value, null);
+                                break;
+                            }
+                        }
+                    }
+                }
+                if (done) {
+                    if (oldVal != null)
+                        return oldVal;
+                    break;
+                }
+            }
+        }
+        addCount(1L, true);
+        return null;
+    }
+
+    /**
+     * Removes the key (and its corresponding value) from this map.
+     *
+     * @return the previous value associated with <tt>key</tt>, or
+     *         <tt>null</tt> if there was no mapping for <tt>key</tt>
+     * @throws NullPointerException if the specified key is null
+     */
+    public V remove(Object key) {
+        return replaceNode(key, null, null);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @throws NullPointerException if the specified key is null
+     */
+    public boolean remove(Object key, Object value) {
+        if (key == null)
+            throw new NullPointerException();
+        return value != null && replaceNode(key, null, value) != null;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @throws NullPointerException if any of the arguments are null
+     */
+    public boolean replace(K key, V oldValue, V newValue) {
+        if (key == null || oldValue == null || newValue == null)
+            throw new NullPointerException();
+        return replaceNode(key, newValue, oldValue) != null;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @return the previous value associated with the specified key,
+     *         or <tt>null</tt> if there was no mapping for the key
+     * @throws NullPointerException if the specified key or value is null
+     */
+    public V replace(K key, V value) {
+        if (key == null || value == null)
+            throw new NullPointerException();
+        return replaceNode(key, value, null);
+    }
+
+    /**
+     * Implementation for the four public remove/replace methods:
+     * Replaces node value with v, conditional upon match of cv if
+     * non-null.  If resulting value is null, delete.
+     */
+    final V replaceNode(Object key, V value, Object cv) {
+        int hash = spread(key.hashCode());
+        AtomicReferenceArray<Node<K,V>> tab = table;
+        for (;;) {
+            int i = (tab.length() - 1) & hash;
+            Node<K,V> f = tab.get(i);
+            if (f == null)
+                return null;
+            if (f.hash == MOVED) {
+                tab = helpTransfer(tab, (ForwardingNode<K,V>)f);
+                continue;
+            }
+            V oldVal = null;
+            boolean validated = false;
+            synchronized (f) {
+                if (tab.get(i) == f) {
+                    validated = true;
+                    for (Node<K,V> e = f, pred = null; e != null;
+                         pred = e, e = e.next) {
+                        K ek;
+                        if (e.hash == hash &&
+                            ((ek = e.key) == key || key.equals(ek))) {
+                            V ev = e.val;
+                            if (cv == null || cv == ev || cv.equals(ev)) {
+                                oldVal = ev;
+                                if (value != null)
+                                    e.val = value;
+                                else if (pred != null)
+                                    pred.next = e.next;
+                                else
+                                    tab.set(i, e.next);
+                            }
+                            break;
+                        }
+                    }
+                }
+            }
+            if (validated) {
+                if (oldVal != null && value == null)
+                    addCount(-1L, false);
+                return oldVal;
+            }
+        }
+    }
+
+    /**
+     * Removes all of the mappings from this map.
+     */
+    public void clear() {
+        long delta = 0L;
+        int i = 0;
+        AtomicReferenceArray<Node<K,V>> tab = table;
+        while (i < tab.length()) {
+            Node<K,V> f = tab.get(i);
+            if (f == null)
+                ++i;
+            else if (f.hash == MOVED) {
+                tab = helpTransfer(tab, (ForwardingNode<K,V>)f);
+                i = 0; // restart
+            }
+            else {
+                synchronized (f) {
+                    if (tab.get(i) == f) {
+                        for (Node<K,V> p = f; p != null; p = p.next)
+                            --delta;
+                        tab.set(i++, null);
+                    }
+                }
+            }
+        }
+        if (delta != 0L)
+            counter.add(delta);
+    }
+
+    /* ---------------- Resizing -------------- */
+
+    /**
+     * Adds x to the count.  If adding and the table is now too small,
+     * starts a resize or joins the one in progress, repeating in case
+     * another resize is already needed once it completes.
+     */
+    private void addCount(long x, boolean check) {
+        counter.add(x);
+        if (!check)
+            return;
+        int sc;
+        while (counter.sum() >= (long)(sc = sizeCtl) &&
+               table.length() < MAXIMUM_CAPACITY) {
+            if (sc < 0) {
+                if (sc == -1 || nextTable == null || transferIndex <= 0)
+                    break;
+                if (SIZECTL.compareAndSet(this, sc, sc - 1))
+                    transfer();
+            }
+            else if (SIZECTL.compareAndSet(this, sc, -2)) {
+                int n = table.length();
+                transferIndex = n;
+                nextTable = new AtomicReferenceArray<Node<K,V>>(n << 1);
+                transfer();
+            }
+        }
+    }
+
+    /**
+     * Helps move buckets if a resize is in progress, and returns the
+     * table the caller should retry on.
+     */
+    final AtomicReferenceArray<Node<K,V>> helpTransfer(
+            AtomicReferenceArray<Node<K,V>> tab, ForwardingNode<K,V> f) {
+        AtomicReferenceArray<Node<K,V>> nextTab = f.nextTable;
+        int sc;
+        while (nextTab == nextTable && table == tab &&
+               (sc = sizeCtl) < -1 && transferIndex > 0) {
+            if (SIZECTL.compareAndSet(this, sc, sc - 1)) {
+                transfer();
+                break;
+            }
+        }
+        return nextTab;
+    }
+
+    /**
+     * Moves buckets from table to nextTable, claiming TRANSFER_STRIDE
+     * buckets at a time, then leaves the resize.  The caller must have
+     * counted itself in sizeCtl; while it is counted the resize cannot
+     * complete, so table and nextTable read here belong to the resize it
+     * joined (nextTable may not be published yet, in which case there is
+     * nothing to do).  The last thread to leave installs the new table.
+     */
+    private void transfer() {
+        AtomicReferenceArray<Node<K,V>> tab = table, nextTab = nextTable;
+        if (nextTab != null) {
+            int n = tab.length();
+            ForwardingNode<K,V> fwd = new ForwardingNode<K,V>(nextTab);
+            int start;
+            while ((start = transferIndex) > 0) {
+                int bound = Math.max(0, start - TRANSFER_STRIDE);
+                if (TRANSFERINDEX.compareAndSet(this, start, bound)) {
+                    for (int i = start - 1; i >= bound; --i)
+                        transferBin(tab, nextTab, i, n, fwd);
+                }
+            }
+        }
+        for (;;) {
+            int sc = sizeCtl;
+            if (SIZECTL.compareAndSet(this, sc, sc + 1)) {
+                if (sc + 1 == -1) {               // last one out
+                    AtomicReferenceArray<Node<K,V>> nt = nextTable;
+                    int n = nt.length();
+                    nextTable = null;
+                    table = nt;
+                    sizeCtl = n - (n >>> 2);
+                }
+                return;
+            }
+        }
+    }
+
+    /**
+     * Moves bucket i of tab, of length n, into buckets i and i + n of
+     * nextTab, then marks it forwarded.  Entries are copied rather than
+     * relinked, since lock-free readers may still be walking the old
+     * chain; only the trailing run that lands in a single bucket is
+     * shared.
+     */
+    private void transferBin(AtomicReferenceArray<Node<K,V>> tab,
+                             AtomicReferenceArray<Node<K,V>> nextTab,
+                             int i, int n, ForwardingNode<K,V> fwd) {
+        for (;;) {
+            Node<K,V> f = tab.get(i);
+            if (f == null) {
+                if (tab.compareAndSet(i, null, fwd))
+                    return;
+            }
+            else if (f.hash == MOVED)
+                return;
+            else {
+                synchronized (f) {
+                    if (tab.get(i) == f) {
+                        int runBit = f.hash & n;
+                        Node<K,V> lastRun = f;
+                        for (Node<K,V> p = f.next; p != null; p = p.next) {
+                            int b = p.hash & n;
+                            if (b != runBit) {
+                                runBit = b;
+                                lastRun = p;
+                            }
+                        }
+                        Node<K,V> ln = (runBit == 0) ? lastRun : null;
+                        Node<K,V> hn = (runBit == 0) ? null : lastRun;
+                        for (Node<K,V> p = f; p != lastRun; p = p.next) {
+                            if ((p.hash & n) == 0)
+                                ln = new Node<K,V>(p.hash, p.key, p.val, ln);
+                            else
+                                hn = new Node<K,V>(p.hash, p.key, p.val, hn);
+                        }
+                        nextTab.set(i, ln);
+                        nextTab.set(i + n, hn);
+                        tab.set(i, fwd);
+                        return;
+                    }
+                }
+            }
+        }
+    }
+
+    /* ---------------- Iteration -------------- */
+
+    /**
+     * A bucket still to be visited by an iterator.
+     */
+    static final class Bin<K,V> {
+        final AtomicReferenceArray<Node<K,V>> tab;
+        final int index;
+        final Bin<K,V> next;
+
+        Bin(AtomicReferenceArray<Node<K,V>> tab, int index, Bin<K,V> next) {
+            this.tab = tab;
+            this.index = index;
+            this.next = next;
+        }
+    }
+
+    /**
+     * Weakly consistent traversal of the nodes of the table.  A bucket
+     * found forwarded is replaced by the two buckets of the next table
+     * it was split into.
+     */
+    abstract class BaseIterator {
+        final AtomicReferenceArray<Node<K,V>> baseTable = table;
+        int baseIndex;
+        Bin<K,V> pending;
+        Node<K,V> next;
+        Node<K,V> lastReturned;
+
+        BaseIterator() {
+            advance();
+        }
+
+        private void advance() {
+            Node<K,V> e = (next == null) ? null : next.next;
+            while (e == null) {
+                if (pending == null) {
+                    if (baseIndex >= baseTable.length())
+                        break;
+                    pending = new Bin<K,V>(baseTable, baseIndex++, null);
+                }
+                Bin<K,V> b = pending;
+                pending = b.next;
+                e = b.tab.get(b.index);
+                if (e != null && e.hash == MOVED) {
+                    AtomicReferenceArray<Node<K,V>> nt =
+                        ((ForwardingNode<K,V>)e).nextTable;
+                    int n = b.tab.length();
+                    pending = new Bin<K,V>(nt, b.index,
+                                  new Bin<K,V>(nt, b.index + n, pending));
+                    e = null;
+                }
+            }
+            next = e;
+        }
+
+        public final boolean hasNext() {
+            return next != null;
+        }
+
+        final Node<K,V> nextNode() {
+            Node<K,V> e = next;
+            if (e == null)
+                throw new NoSuchElementException();
+            lastReturned = e;
+            advance();
+            return e;
+        }
+
+        public final void remove() {
+            Node<K,V> p = lastReturned;
+            if (p == null)
+                throw new IllegalStateException();
+            lastReturned = null;
+            replaceNode(p.key, null, null);
+        }
+    }
+
+    final class NodeIterator extends BaseIterator
+        implements Iterator<Node<K,V>> {
+        public Node<K,V> next() {
+            return nextNode();
+        }
+    }
+
+    final class KeyIterator extends BaseIterator implements Iterator<K> {
+        public K next() {
+            return nextNode().key;
+        }
+    }
+
+    final class ValueIterator extends BaseIterator implements Iterator<V> {
+        public V next() {
+            return nextNode().val;
+        }
+    }
+
+    final class EntryIterator extends BaseIterator
+        implements Iterator<Map.Entry<K,V>> {
+        public Map.Entry<K,V> next() {
+            Node<K,V> e = nextNode();
+            return new MapEntry<K,V>(e.key, e.val, ConcurrentChainHashMap.this);
+        }
+    }
+
+    /**
+     * Exported Entry for EntryIterator; setValue writes through to the
+     * map.
+     */
+    static final class MapEntry<K,V> implements Map.Entry<K,V> {
+        final K key;
+        V val;
+        final ConcurrentChainHashMap<K,V> map;
+
+        MapEntry(K key, V val, ConcurrentChainHashMap<K,V> map) {
+            this.key = key;
+            this.val = val;
+            this.map = map;
+        }
+        public K getKey()        { return key; }
+        public V getValue()      { return val; }
+        public int hashCode()    { return key.hashCode() ^ val.hashCode(); }
+        public String toString() { return key + "=" + val; }
+
+        public boolean equals(Object o) {
+            Object k, v; Map.Entry<?,?> e;
+            return ((o instanceof Map.Entry) &&
+                    (k = (e = (Map.Entry<?,?>)o).getKey()) != null &&
+                    (v = e.getValue()) != null &&
+                    (k == key || k.equals(key)) &&
+                    (v == val || v.equals(val)));
+        }
+
+        public V setValue(V value) {
+            if (value == null)
+                throw new NullPointerException();
+            V v = val;
+            val = value;
+            map.put(key, value);
+            return v;
+        }
+    }
+
+    /* ---------------- Views -------------- */
+
+    private transient Set<Map.Entry<K,V>> entrySet;
+
+    public Set<K> keySet() {
+        Set<K> ks = keySet;
+        return (ks != null ? ks : (keySet = new KeySet()));
+    }
+
+    public Collection<V> values() {
+        Collection<V> vs = values;
+        return (vs != null ? vs : (values = new Values()));
+    }
+
+    public Set<Map.Entry<K,V>> entrySet() {
+        Set<Map.Entry<K,V>> es = entrySet;
+        return (es != null ? es : (entrySet = new EntrySet()));
+    }
+
+    private final class KeySet extends AbstractSet<K> {
+        public Iterator<K> iterator() {
+            return new KeyIterator();
+        }
+        public int size() {
+            return ConcurrentChainHashMap.this.size();
+        }
+        public boolean contains(Object o) {
+            return containsKey(o);
+        }
+        public boolean remove(Object o) {
+            return ConcurrentChainHashMap.this.remove(o) != null;
+        }
+        public void clear() {
+            ConcurrentChainHashMap.this.clear();
+        }
+    }
+
+    private final class Values extends AbstractCollection<V> {
+        public Iterator<V> iterator() {
+            return new ValueIterator();
+        }
+        public int size() {
+            return ConcurrentChainHashMap.this.size();
+        }
+        public boolean contains(Object o) {
+            return containsValue(o);
+        }
+        public void clear() {
+            ConcurrentChainHashMap.this.clear();
+        }
+    }
+
+    private final class EntrySet extends AbstractSet<Map.Entry<K,V>> {
+        public Iterator<Map.Entry<K,V>> iterator() {
+            return new EntryIterator();
+        }
+        public boolean contains(Object o) {
+            Object k, v, r; Map.Entry<?,?> e;
+            return ((o instanceof Map.Entry) &&
+                    (k = (e = (Map.Entry<?,?>)o).getKey()) != null &&
+                    (r = get(k)) != null &&
+                    (v = e.getValue()) != null &&
+                    (v == r || v.equals(r)));
+        }
+        public boolean remove(Object o) {
+            Object k, v; Map.Entry<?,?> e;
+            return ((o instanceof Map.Entry) &&
+                    (k = (e = (Map.Entry<?,?>)o).getKey()) != null &&
+                    (v = e.getValue()) != null &&
+                    ConcurrentChainHashMap.this.remove(k, v));
+        }
+        public int size() {
+            return ConcurrentChainHashMap.this.size();
+        }
+        public void clear() {
+            ConcurrentChainHashMap.this.clear();
+        }
+    }
+
+    /* ---------------- Serialization -------------- */
+
+    private static final long serialVersionUID = 5537415947644224468L;
+
+    /**
+     * Save the state of the map to a stream.
+     *
+     * @serialData the key (Object) and value (Object) for each mapping,
+     *             followed by a pair of nulls.  The mappings are emitted
+     *             in no particular order.
+     */
+    private void writeObject(ObjectOutputStream s) throws IOException {
+        s.defaultWriteObject();
+        for (Iterator<Node<K,V>> it = new NodeIterator(); it.hasNext(); ) {
+            Node<K,V> e = it.next();
+            s.writeObject(e.key);
+            s.writeObject(e.val);
+        }
+        s.writeObject(null);
+        s.writeObject(null);
+    }
+
+    /**
+     * Reconstitute the map from a stream.
+     */
+    @SuppressWarnings("unchecked")
+    private void readObject(ObjectInputStream s)
+        throws IOException, ClassNotFoundException
+    {
+        s.defaultReadObject();
+        init(DEFAULT_INITIAL_CAPACITY);
+        for (;;) {
+            K k = (K)s.readObject();
+            V v = (V)s.readObject();
+            if (k == null || v == null)
+                break;
+            putVal(k, v, false);
+        }
+    }
+}
@@ -0,0 +1,352 @@
+package java.util;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+
+/**
+ * Priority queue of primitive <tt>double</tt> keys, each with an optional
+ * object payload, whose head is the least key.  Unlike
+ * <tt>PriorityQueue&lt;Double&gt;</tt>, keys are never boxed and are
+ * compared inline with <tt>&lt;</tt> rather than through
+ * <tt>compareTo</tt> or a comparator: they are kept as a binary heap in a
+ * flat <tt>double[]</tt>, and payloads, if any, in a parallel
+ * <tt>Object[]</tt> that is only allocated once a payload is first
+ * offered.  Neither {@link #offer(double)} nor {@link #pollKey} allocates
+ * except when the arrays grow.
+ *
+ * <p>Since a key and its payload cannot be returned together without an
+ * allocation, the head is read with {@link #peekKey} and
+ * {@link #peekValue}, and removed with {@link #pollKey} or
+ * {@link #pollValue}, whichever of the two the caller needs.  Keys that
+ * compare equal come out in no particular order.  Permits <tt>null</tt>
+ * payloads.
+ *
+ * <p>Because keys are compared with <tt>&lt;</tt>, <tt>NaN</tt> keys,
+ * which are unordered, are rejected, and <tt>-0.0</tt> and <tt>0.0</tt>
+ * count as equal keys rather than as distinct ones the way
+ * {@link Double#compare} orders them.
+ *
+ * <p><strong>Note that this implementation is not synchronized.</strong>
+ *
+ * @param <V> the type of payloads
+ *
+ * @see     PriorityQueue
+ * @see     LongPriorityQueue
+ */
+public class DoublePriorityQueue<V> implements Cloneable, Serializable
+{
+    /**
+     * The default initial capacity.
+     */
+    static final int DEFAULT_INITIAL_CAPACITY = 16;
+
+    /**
+     * The heap of keys.  The key at index N (0-based) has two direct
+     * children, at 2N+1 and 2N+2, and is not greater than either.  Only
+     * the first size slots are in use.
+     */
+    transient double[] keys;
+
+    /**
+     * The payloads, at the same index as their keys, or null if no
+     * payload has been offered yet.
+     */
+    transient Object[] vals;
+
+    /**
+     * The number of keys in this queue.
+     */
+    transient int size;
+
+    /**
+     * Constructs an empty queue with the specified initial capacity.
+     *
+     * @param  initialCapacity the initial capacity
+     * @throws IllegalArgumentException if the initial capacity is negative
+     */
+    public DoublePriorityQueue(int initialCapacity) {
+        if (initialCapacity < 0)
+            throw new IllegalArgumentException("Illegal initial capacity: " +
+                                               initialCapacity);
+        keys = new double[Math.max(initialCapacity, 2)];
+    }
+
+    /**
+     * Constructs an empty queue with the default initial capacity (16).
+     */
+    public DoublePriorityQueue() {
+        this(DEFAULT_INITIAL_CAPACITY);
+    }
+
+    /**
+     * Returns the number of keys in this queue.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns <tt>true</tt> if this queue holds no keys.
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Adds the specified key, with no payload.
+     *
+     * @throws IllegalArgumentException if the key is NaN
+     */
+    public void offer(double key) {
+        if (key != key)
+            throw new IllegalArgumentException("NaN key");
+        int i = size;
+        if (i == keys.length)
+            grow();
+        if (vals != null)
+            vals[i] = null;
+        size = i + 1;
+        siftUp(i, key, null);
+    }
+
+    /**
+     * Adds the specified key with the specified payload.
+     *
+     * @throws IllegalArgumentException if the key is NaN
+     */
+    public void offer(double key, V value) {
+        if (key != key)
+            throw new IllegalArgumentException("NaN key");
+        int i = size;
+        if (i == keys.length)
+            grow();
+        if (vals == null)
+            vals = new Object[keys.length];
+        size = i + 1;
+        siftUp(i, key, value);
+    }
+
+    /**
+     * Returns the least key in this queue.
+     *
+     * @throws NoSuchElementException if this queue is empty
+     */
+    public double peekKey() {
+        if (size == 0)
+            throw new NoSuchElementException();
+        return keys[0];
+    }
+
+    /**
+     * Returns the payload of the least key in this queue, or
+     * <tt>null</tt> if it has none.
+     *
+     * @throws NoSuchElementException if this queue is empty
+     */
+    @SuppressWarnings("unchecked")
+    public V peekValue() {
+        if (size == 0)
+            throw new NoSuchElementException();
+        return (vals == null) ? null : (V)vals[0];
+    }
+
+    /**
+     * Removes the least key from this queue and returns it.
+     *
+     * @throws NoSuchElementException if this queue is empty
+     */
+    public double pollKey() {
+        if (size == 0)
+            throw new NoSuchElementException();
+        double result = keys[0];
+        removeHead();
+        return result;
+    }
+
+    /**
+     * Removes the least key from this queue and returns its payload, or
+     * <tt>null</tt> if it has none.
+     *
+     * @throws NoSuchElementException if this queue is empty
+     */
+    @SuppressWarnings("unchecked")
+    public V pollValue() {
+        if (size == 0)
+            throw new NoSuchElementException();
+        V result = (vals == null) ? null : (V)vals[0];
+        removeHead();
+        return result;
+    }
+
+    /**
+     * Removes all of the keys and payloads from this queue.
+     */
+    public void clear() {
+        if (vals != null)
+            Arrays.fill(vals, 0, size, null);
+        size = 0;
+    }
+
+    /**
+     * Returns a new array holding the keys of this queue, in no
+     * particular order.
+     */
+    public double[] keys() {
+        return Arrays.copyOf(keys, size);
+    }
+
+    private void grow() {
+        int capacity = 2 * keys.length;
+        if (capacity < 0)
+            throw new OutOfMemoryError("Queue is full");
+        keys = Arrays.copyOf(keys, capacity);
+        if (vals != null)
+            vals = Arrays.copyOf(vals, capacity);
+    }
+
+    /**
+     * Moves the last key and its payload into the freed head slot and
+     * sifts them down.
+     */
+    private void removeHead() {
+        int last = --size;
+        double key = keys[last];
+        Object value = null;
+        if (vals != null) {
+            value = vals[last];
+            vals[last] = null;
+        }
+        if (last > 0)
+            siftDown(0, key, value);
+    }
+
+    /**
+     * Places key and value at index i, which is free, or at the first
+     * ancestor of i whose parent's key is not greater, shifting the
+     * ancestors passed over down one level.
+     */
+    private void siftUp(int i, double key, Object value) {
+        double[] ks = keys;
+        Object[] vs = vals;
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            double p = ks[parent];
+            if (p <= key)
+                break;
+            ks[i] = p;
+            if (vs != null)
+                vs[i] = vs[parent];
+            i = parent;
+        }
+        ks[i] = key;
+        if (vs != null)
+            vs[i] = value;
+    }
+
+    /**
+     * Places key and value at index i, which is free, or at the first
+     * descendant of i whose children's keys are not less, promoting the
+     * lesser child at each level passed.
+     */
+    private void siftDown(int i, double key, Object value) {
+        double[] ks = keys;
+        Object[] vs = vals;
+        int n = size;
+        int half = n >>> 1;     // Slots below half have a child.
+        while (i < half) {
+            int child = 2 * i + 1;
+            double c = ks[child];
+            int right = child + 1;
+            if (right < n && ks[right] < c)
+                c = ks[child = right];
+            if (key <= c)
+                break;
+            ks[i] = c;
+            if (vs != null)
+                vs[i] = vs[child];
+            i = child;
+        }
+        ks[i] = key;
+        if (vs != null)
+            vs[i] = value;
+    }
+
+    /**
+     * Returns a shallow copy of this queue: the payloads themselves are
+     * not cloned.
+     */
+    @SuppressWarnings("unchecked")
+    public Object clone() {
+        DoublePriorityQueue<V> result;
+        try {
+            result = (DoublePriorityQueue<V>)super.clone();
+        } catch (CloneNotSupportedException e) {
+            throw new InternalError();
+        }
+        result.keys = keys.clone();
+        if (vals != null)
+            result.vals = vals.clone();
+        return result;
+    }
+
+    public String toString() {
+        StringBuilder sb = new StringBuilder("[");
+        for (int j = 0; j < size; j++) {
+            if (j > 0)
+                sb.append(", ");
+            sb.append(keys[j]);
+            if (vals != null && vals[j] != null) {
+                Object v = vals[j];
+                sb.append('=').append(v == this ? "(this Queue)" : v);
+            }
+        }
+        return sb.append(']').toString();
+    }
+
+    private static final long serialVersionUID = -3790514316735521942L;
+
+    /**
+     * Save the state of this queue to a stream.
+     *
+     * @serialData The <i>size</i> (int) is emitted, then whether there
+     *             are payloads (boolean), followed by the key (double) and,
+     *             if there are payloads, the payload (Object) for each
+     *             entry, in heap order.
+     */
+    private void writeObject(ObjectOutputStream s) throws IOException {
+        s.defaultWriteObject();
+        s.writeInt(size);
+        s.writeBoolean(vals != null);
+        for (int j = 0; j < size; j++) {
+            s.writeDouble(keys[j]);
+            if (vals != null)
+                s.writeObject(vals[j]);
+        }
+    }
+
+    /**
+     * Reconstitute this queue from a stream.
+     */
+    private void readObject(ObjectInputStream s)
+        throws IOException, ClassNotFoundException
+    {
+        s.defaultReadObject();
+        int n = s.readInt();
+        if (n < 0)
+            throw new java.io.InvalidObjectException("Illegal size: " + n);
+        boolean hasVals = s.readBoolean();
+        keys = new double[Math.max(n, 2)];
+        if (hasVals)
+            vals = new Object[keys.length];
+        // Keys written in heap order stay where they were.
+        for (int j = 0; j < n; j++) {
+            double key = s.readDouble();
+            if (key != key)
+                throw new java.io.InvalidObjectException("NaN key");
+            Object value = hasVals ? s.readObject() : null;
+            size = j + 1;
+            siftUp(j, key, value);
+        }
+    }
+}
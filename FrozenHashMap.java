@@ -0,0 +1,416 @@
+package java.util;
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+
+/**
+ * An immutable map built over a minimal perfect hash of its keys, as
+ * returned by {@link HashMap#freeze}.  Keys and values are kept in two
+ * dense arrays with one slot per mapping and no empty slots, and a
+ * lookup reads one displacement from a small seed array, computes the
+ * key's slot from it, and compares the key found there: one probe and
+ * one <tt>equals</tt> call whether or not the key is present.
+ *
+ * <p>The hash function follows the hash-and-displace (CHD) scheme.  The
+ * key's hashCode selects one of about <i>size</i>/4 buckets, and each
+ * bucket stores the seed that places all of its keys on distinct free
+ * slots when mixed into their hashes.  Buckets are placed largest first;
+ * buckets holding a single key take the next free slot directly, stored
+ * as a negative seed.  Building takes expected linear time.
+ *
+ * <p>Keys whose hashCode equals that of another key cannot be told apart
+ * by any function of the hashCode.  The first of them is placed as usual
+ * and the rest are kept in a small overflow map, consulted only when the
+ * probed slot does not hold the key.
+ *
+ * <p>Mutators throw <tt>UnsupportedOperationException</tt>.  The
+ * <tt>null</tt> key and <tt>null</tt> values are permitted.  Iteration
+ * is in slot order, which is unrelated to the order of the source map.
+ *
+ * <p>The serialized form is the seed array followed by the keys and
+ * values in slot order, so deserialization fills the arrays directly.
+ * Since the slots depend on hashCode, each key is checked against its
+ * slot as it is read; if a key hashes differently in the reading VM, the
+ * table is rebuilt instead.
+ *
+ * @param <K> the type of keys maintained by this map
+ * @param <V> the type of mapped values
+ *
+ * @see     HashMap#freeze
+ */
+public final class FrozenHashMap<K,V>
+    extends AbstractMap<K,V>
+    implements Map<K,V>, Serializable
+{
+    /**
+     * The average number of keys per bucket aimed for.  Larger buckets
+     * mean a smaller seed array but longer searches for their seeds.
+     */
+    static final int KEYS_PER_BUCKET = 4;
+
+    /**
+     * The number of seeds tried for one bucket before the build starts
+     * over with twice as many buckets.
+     */
+    static final int MAX_SEED = 1 << 20;
+
+    /**
+     * The seed of each bucket, or ~slot for a bucket whose only key is
+     * stored at that slot directly.
+     */
+    private transient int[] seeds;
+
+    /**
+     * The keys, one per slot.
+     */
+    private transient Object[] keys;
+
+    /**
+     * The values, at the same slot as their keys.
+     */
+    private transient Object[] vals;
+
+    /**
+     * The mappings whose key shares its hashCode with a key in a slot,
+     * or null if there are none.
+     */
+    private transient HashMap<K,V> overflow;
+
+    FrozenHashMap(Map<? extends K, ? extends V> m) {
+        int n = m.size();
+        Object[] ks = new Object[n];
+        Object[] vs = new Object[n];
+        int i = 0;
+        for (Map.Entry<? extends K, ? extends V> e : m.entrySet()) {
+            ks[i] = e.getKey();
+            vs[i] = e.getValue();
+            i++;
+        }
+        build(ks, vs, i);
+    }
+
+    /**
+     * Applies the finalization step of MurmurHash3 to h, so that every
+     * bit of the hashCode affects the bucket and slot chosen.
+     */
+    static int mix(int h) {
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+
+    /**
+     * Maps the 32-bit value h onto [0, n) without a division.
+     */
+    static int reduce(int h, int n) {
+        return (int)(((h & 0xffffffffL) * n) >>> 32);
+    }
+
+    static int hashOf(Object key) {
+        return (key == null) ? 0 : key.hashCode();
+    }
+
+    /**
+     * Returns the slot of a key with hashCode h.
+     */
+    private int slotFor(int h) {
+        int seed = seeds[reduce(mix(h), seeds.length)];
+        return (seed < 0) ? ~seed : slotFor(h, seed, keys.length);
+    }
+
+    static int slotFor(int h, int seed, int slots) {
+        return reduce(mix(h + (seed + 1) * 0x9e3779b9), slots);
+    }
+
+    /**
+     * Builds the table over the first n of the given keys, which must be
+     * distinct, and their values.
+     */
+    @SuppressWarnings("unchecked")
+    private void build(Object[] ks, Object[] vs, int n) {
+        // Sort by hashCode to find keys that share one
+        long[] order = new long[n];
+        for (int i = 0; i < n; i++)
+            order[i] = ((long) hashOf(ks[i]) << 32) | i;
+        Arrays.sort(order, 0, n);
+        int m = 0;
+        long prev = 0;
+        for (int i = 0; i < n; i++) {
+            long h = order[i] >> 32;
+            int j = (int) order[i];
+            if (i > 0 && h == prev) {
+                if (overflow == null)
+                    overflow = new HashMap<>();
+                overflow.put((K) ks[j], (V) vs[j]);
+            } else {
+                order[m++] = j;
+            }
+            prev = h;
+        }
+
+        int[] hs = new int[m];
+        for (int i = 0; i < m; i++)
+            hs[i] = hashOf(ks[(int) order[i]]);
+        int buckets = Math.max(1, (m + KEYS_PER_BUCKET - 1) / KEYS_PER_BUCKET);
+        int[] slotOf;
+        while ((slotOf = place(hs, buckets)) == null)
+            buckets *= 2;
+
+        keys = new Object[m];
+        vals = new Object[m];
+        for (int i = 0; i < m; i++) {
+            int j = (int) order[i];
+            keys[slotOf[i]] = ks[j];
+            vals[slotOf[i]] = vs[j];
+        }
+    }
+
+    /**
+     * Chooses the seed of each of the given number of buckets so that the
+     * hashes hs land on distinct slots, one per hash.  Sets seeds and
+     * returns the slot of each hash, or returns null if some bucket found
+     * no seed within MAX_SEED tries.
+     */
+    private int[] place(int[] hs, int buckets) {
+        int m = hs.length;
+        // Group the hashes by bucket, with a counting sort
+        int[] start = new int[buckets + 1];
+        for (int i = 0; i < m; i++)
+            start[reduce(mix(hs[i]), buckets) + 1]++;
+        int maxBucket = 0;
+        for (int b = 0; b < buckets; b++) {
+            maxBucket = Math.max(maxBucket, start[b + 1]);
+            start[b + 1] += start[b];
+        }
+        int[] members = new int[m];
+        int[] fill = Arrays.copyOf(start, buckets);
+        for (int i = 0; i < m; i++)
+            members[fill[reduce(mix(hs[i]), buckets)]++] = i;
+
+        // Order the buckets by size, largest first
+        int[] bySize = new int[maxBucket + 2];
+        for (int b = 0; b < buckets; b++)
+            bySize[maxBucket - (start[b + 1] - start[b]) + 1]++;
+        for (int s = 0; s <= maxBucket; s++)
+            bySize[s + 1] += bySize[s];
+        int[] bucketOrder = new int[buckets];
+        for (int b = 0; b < buckets; b++)
+            bucketOrder[bySize[maxBucket - (start[b + 1] - start[b])]++] = b;
+
+        int[] seeds = new int[buckets];
+        int[] slotOf = new int[m];
+        boolean[] taken = new boolean[m];
+        int[] tried = new int[maxBucket];
+        int nextFree = 0;
+        for (int b : bucketOrder) {
+            int from = start[b], len = start[b + 1] - from;
+            if (len == 0)
+                break;
+            if (len == 1) {
+                while (taken[nextFree])
+                    nextFree++;
+                taken[nextFree] = true;
+                slotOf[members[from]] = nextFree;
+                seeds[b] = ~nextFree;
+                continue;
+            }
+            int seed = 0;
+            search:
+            for (;; seed++) {
+                if (seed == MAX_SEED)
+                    return null;
+                int k = 0;
+                for (; k < len; k++) {
+                    int slot = slotFor(hs[members[from + k]], seed, m);
+                    if (taken[slot])
+                        break;
+                    taken[slot] = true;
+                    tried[k] = slot;
+                }
+                if (k == len)
+                    break search;
+                while (--k >= 0)
+                    taken[tried[k]] = false;
+            }
+            seeds[b] = seed;
+            for (int k = 0; k < len; k++)
+                slotOf[members[from + k]] = tried[k];
+        }
+        this.seeds = seeds;
+        return slotOf;
+    }
+
+    public int size() {
+        return keys.length + (overflow == null ? 0 : overflow.size());
+    }
+
+    /**
+     * Returns the slot holding key, or -1 if it is in none.
+     */
+    private int indexOf(Object key) {
+        if (keys.length == 0)
+            return -1;
+        int i = slotFor(hashOf(key));
+        Object k = keys[i];
+        return (k == key || (key != null && key.equals(k))) ? i : -1;
+    }
+
+    @SuppressWarnings("unchecked")
+    public V get(Object key) {
+        int i = indexOf(key);
+        if (i >= 0)
+            return (V) vals[i];
+        return (overflow == null) ? null : overflow.get(key);
+    }
+
+    public boolean containsKey(Object key) {
+        return indexOf(key) >= 0 ||
+            (overflow != null && overflow.containsKey(key));
+    }
+
+    public boolean containsValue(Object value) {
+        for (Object v : vals)
+            if (Objects.equals(v, value))
+                return true;
+        return overflow != null && overflow.containsValue(value);
+    }
+
+    // Views
+
+    private transient Set<Map.Entry<K,V>> entrySet = null;
+
+    public Set<Map.Entry<K,V>> entrySet() {
+        Set<Map.Entry<K,V>> es = entrySet;
+        return es != null ? es : (entrySet = new EntrySet());
+    }
+
+    private final class EntrySet extends AbstractSet<Map.Entry<K,V>> {
+        public Iterator<Map.Entry<K,V>> iterator() {
+            return new EntryIterator();
+        }
+        public boolean contains(Object o) {
+            if (!(o instanceof Map.Entry))
+                return false;
+            Map.Entry<?,?> e = (Map.Entry<?,?>) o;
+            Object key = e.getKey();
+            return containsKey(key) && Objects.equals(get(key), e.getValue());
+        }
+        public int size() {
+            return FrozenHashMap.this.size();
+        }
+    }
+
+    private final class EntryIterator implements Iterator<Map.Entry<K,V>> {
+        private int next;
+        private Iterator<Map.Entry<K,V>> overflowIterator;
+
+        public boolean hasNext() {
+            if (next < keys.length)
+                return true;
+            if (overflow == null)
+                return false;
+            if (overflowIterator == null)
+                overflowIterator = overflow.entrySet().iterator();
+            return overflowIterator.hasNext();
+        }
+
+        @SuppressWarnings("unchecked")
+        public Map.Entry<K,V> next() {
+            if (!hasNext())
+                throw new NoSuchElementException();
+            if (overflowIterator != null) {
+                Map.Entry<K,V> e = overflowIterator.next();
+                return new AbstractMap.SimpleImmutableEntry<>(e);
+            }
+            int i = next++;
+            return new AbstractMap.SimpleImmutableEntry<>((K) keys[i],
+                                                          (V) vals[i]);
+        }
+    }
+
+    private static final long serialVersionUID = 4472158391427781569L;
+
+    /**
+     * Save the state of the map to a stream.
+     *
+     * @serialData The seed array (int[]) is emitted, followed by the
+     *             number of slots (int) and the key (Object) and value
+     *             (Object) of each slot in slot order, followed by the
+     *             number of overflow mappings (int) and the key and value
+     *             of each.
+     */
+    private void writeObject(ObjectOutputStream s) throws IOException {
+        s.defaultWriteObject();
+        s.writeObject(seeds);
+        s.writeInt(keys.length);
+        for (int i = 0; i < keys.length; i++) {
+            s.writeObject(keys[i]);
+            s.writeObject(vals[i]);
+        }
+        if (overflow == null) {
+            s.writeInt(0);
+        } else {
+            s.writeInt(overflow.size());
+            for (Map.Entry<K,V> e : overflow.entrySet()) {
+                s.writeObject(e.getKey());
+                s.writeObject(e.getValue());
+            }
+        }
+    }
+
+    /**
+     * Reconstitute the map from a stream.
+     */
+    @SuppressWarnings("unchecked")
+    private void readObject(ObjectInputStream s)
+        throws IOException, ClassNotFoundException
+    {
+        s.defaultReadObject();
+        seeds = (int[]) s.readObject();
+        int m = s.readInt();
+        if (seeds == null || seeds.length == 0 || m < 0)
+            throw new InvalidObjectException("Corrupt frozen map");
+        keys = new Object[m];
+        vals = new Object[m];
+        boolean placed = true;
+        for (int i = 0; i < m; i++) {
+            keys[i] = s.readObject();
+            vals[i] = s.readObject();
+            if (placed) {
+                int seed = seeds[reduce(mix(hashOf(keys[i])), seeds.length)];
+                if (seed < -m || seed >= MAX_SEED)
+                    throw new InvalidObjectException("Corrupt frozen map");
+                placed = slotFor(hashOf(keys[i])) == i;
+            }
+        }
+        int n = s.readInt();
+        if (n < 0)
+            throw new InvalidObjectException("Corrupt frozen map");
+        Object[] ks = null, vs = null;
+        if (!placed) {
+            ks = Arrays.copyOf(keys, m + n);
+            vs = Arrays.copyOf(vals, m + n);
+        }
+        for (int i = 0; i < n; i++) {
+            Object key = s.readObject();
+            Object value = s.readObject();
+            if (placed) {
+                if (overflow == null)
+                    overflow = new HashMap<>();
+                overflow.put((K) key, (V) value);
+            } else {
+                ks[m + i] = key;
+                vs[m + i] = value;
+            }
+        }
+        if (!placed) {
+            overflow = null;
+            build(ks, vs, m + n);
+        }
+    }
+}
@@ -1,1026 +1,3595 @@
-   26   package java.util;
-   27   import java.io;
-   28   
-   29   /**
-   30    * Hash table based implementation of the <tt>Map</tt> interface.  This
-   31    * implementation provides all of the optional map operations, and permits
-   32    * <tt>null</tt> values and the <tt>null</tt> key.  (The <tt>HashMap</tt>
-   33    * class is roughly equivalent to <tt>Hashtable</tt>, except that it is
-   34    * unsynchronized and permits nulls.)  This class makes no guarantees as to
-   35    * the order of the map; in particular, it does not guarantee that the order
-   36    * will remain constant over time.
-   37    *
-   38    * <p>This implementation provides constant-time performance for the basic
-   39    * operations (<tt>get</tt> and <tt>put</tt>), assuming the hash function
-   40    * disperses the elements properly among the buckets.  Iteration over
-   41    * collection views requires time proportional to the "capacity" of the
-   42    * <tt>HashMap</tt> instance (the number of buckets) plus its size (the number
-   43    * of key-value mappings).  Thus, it's very important not to set the initial
-   44    * capacity too high (or the load factor too low) if iteration performance is
-   45    * important.
-   46    *
-   47    * <p>An instance of <tt>HashMap</tt> has two parameters that affect its
-   48    * performance: <i>initial capacity</i> and <i>load factor</i>.  The
-   49    * <i>capacity</i> is the number of buckets in the hash table, and the initial
-   50    * capacity is simply the capacity at the time the hash table is created.  The
-   51    * <i>load factor</i> is a measure of how full the hash table is allowed to
-   52    * get before its capacity is automatically increased.  When the number of
-   53    * entries in the hash table exceeds the product of the load factor and the
-   54    * current capacity, the hash table is <i>rehashed</i> (that is, internal data
-   55    * structures are rebuilt) so that the hash table has approximately twice the
-   56    * number of buckets.
-   57    *
-   58    * <p>As a general rule, the default load factor (.75) offers a good tradeoff
-   59    * between time and space costs.  Higher values decrease the space overhead
-   60    * but increase the lookup cost (reflected in most of the operations of the
-   61    * <tt>HashMap</tt> class, including <tt>get</tt> and <tt>put</tt>).  The
-   62    * expected number of entries in the map and its load factor should be taken
-   63    * into account when setting its initial capacity, so as to minimize the
-   64    * number of rehash operations.  If the initial capacity is greater
-   65    * than the maximum number of entries divided by the load factor, no
-   66    * rehash operations will ever occur.
-   67    *
-   68    * <p>If many mappings are to be stored in a <tt>HashMap</tt> instance,
-   69    * creating it with a sufficiently large capacity will allow the mappings to
-   70    * be stored more efficiently than letting it perform automatic rehashing as
-   71    * needed to grow the table.
-   72    *
-   73    * <p><strong>Note that this implementation is not synchronized.</strong>
-   74    * If multiple threads access a hash map concurrently, and at least one of
-   75    * the threads modifies the map structurally, it <i>must</i> be
-   76    * synchronized externally.  (A structural modification is any operation
-   77    * that adds or deletes one or more mappings; merely changing the value
-   78    * associated with a key that an instance already contains is not a
-   79    * structural modification.)  This is typically accomplished by
-   80    * synchronizing on some object that naturally encapsulates the map.
-   81    *
-   82    * If no such object exists, the map should be "wrapped" using the
-   83    * {@link Collections#synchronizedMap Collections.synchronizedMap}
-   84    * method.  This is best done at creation time, to prevent accidental
-   85    * unsynchronized access to the map:<pre>
-   86    *   Map m = Collections.synchronizedMap(new HashMap(...));</pre>
-   87    *
-   88    * <p>The iterators returned by all of this class's "collection view methods"
-   89    * are <i>fail-fast</i>: if the map is structurally modified at any time after
-   90    * the iterator is created, in any way except through the iterator's own
-   91    * <tt>remove</tt> method, the iterator will throw a
-   92    * {@link ConcurrentModificationException}.  Thus, in the face of concurrent
-   93    * modification, the iterator fails quickly and cleanly, rather than risking
-   94    * arbitrary, non-deterministic behavior at an undetermined time in the
-   95    * future.
-   96    *
-   97    * <p>Note that the fail-fast behavior of an iterator cannot be guaranteed
-   98    * as it is, generally speaking, impossible to make any hard guarantees in the
-   99    * presence of unsynchronized concurrent modification.  Fail-fast iterators
-  100    * throw <tt>ConcurrentModificationException</tt> on a best-effort basis.
-  101    * Therefore, it would be wrong to write a program that depended on this
-  102    * exception for its correctness: <i>the fail-fast behavior of iterators
-  103    * should be used only to detect bugs.</i>
-  104    *
-  105    * <p>This class is a member of the
-  106    * <a href="{@docRoot}/../technotes/guides/collections/index.html">
-  107    * Java Collections Framework</a>.
-  108    *
-  109    * @param <K> the type of keys maintained by this map
-  110    * @param <V> the type of mapped values
-  111    *
-  112    * @author  Doug Lea
-  113    * @author  Josh Bloch
-  114    * @author  Arthur van Hoff
-  115    * @author  Neal Gafter
-  116    * @see     Object#hashCode()
-  117    * @see     Collection
-  118    * @see     Map
-  119    * @see     TreeMap
-  120    * @see     Hashtable
-  121    * @since   1.2
-  122    */
-  123   
-  124   public class HashMap<K,V>
-  125       extends AbstractMap<K,V>
-  126       implements Map<K,V>, Cloneable, Serializable
-  127   {
-  128   
-  129       /**
-  130        * The default initial capacity - MUST be a power of two.
-  131        */
-  132       static final int DEFAULT_INITIAL_CAPACITY = 16;
-  133   
-  134       /**
-  135        * The maximum capacity, used if a higher value is implicitly specified
-  136        * by either of the constructors with arguments.
-  137        * MUST be a power of two <= 1<<30.
-  138        */
-  139       static final int MAXIMUM_CAPACITY = 1 << 30;
-  140   
-  141       /**
-  142        * The load factor used when none specified in constructor.
-  143        */
-  144       static final float DEFAULT_LOAD_FACTOR = 0.75f;
-  145   
-  146       /**
-  147        * The table, resized as necessary. Length MUST Always be a power of two.
-  148        */
-  149       transient Entry[] table;
-  150   
-  151       /**
-  152        * The number of key-value mappings contained in this map.
-  153        */
-  154       transient int size;
-  155   
-  156       /**
-  157        * The next size value at which to resize (capacity * load factor).
-  158        * @serial
-  159        */
-  160       int threshold;
-  161   
-  162       /**
-  163        * The load factor for the hash table.
-  164        *
-  165        * @serial
-  166        */
-  167       final float loadFactor;
-  168   
-  169       /**
-  170        * The number of times this HashMap has been structurally modified
-  171        * Structural modifications are those that change the number of mappings in
-  172        * the HashMap or otherwise modify its internal structure (e.g.,
-  173        * rehash).  This field is used to make iterators on Collection-views of
-  174        * the HashMap fail-fast.  (See ConcurrentModificationException).
-  175        */
-  176       transient int modCount;
-  177   
-  178       /**
-  179        * Constructs an empty <tt>HashMap</tt> with the specified initial
-  180        * capacity and load factor.
-  181        *
-  182        * @param  initialCapacity the initial capacity
-  183        * @param  loadFactor      the load factor
-  184        * @throws IllegalArgumentException if the initial capacity is negative
-  185        *         or the load factor is nonpositive
-  186        */
-  187       public HashMap(int initialCapacity, float loadFactor) {
-  188           if (initialCapacity < 0)
-  189               throw new IllegalArgumentException("Illegal initial capacity: " +
-  190                                                  initialCapacity);
-  191           if (initialCapacity > MAXIMUM_CAPACITY)
-  192               initialCapacity = MAXIMUM_CAPACITY;
-  193           if (loadFactor <= 0 || Float.isNaN(loadFactor))
-  194               throw new IllegalArgumentException("Illegal load factor: " +
-  195                                                  loadFactor);
-  196   
-  197           // Find a power of 2 >= initialCapacity
-  198           int capacity = 1;
-  199           while (capacity < initialCapacity)
-  200               capacity <<= 1;
-  201   
-  202           this.loadFactor = loadFactor;
-  203           threshold = (int)(capacity * loadFactor);
-  204           table = new Entry[capacity];
-  205           init();
-  206       }
-  207   
-  208       /**
-  209        * Constructs an empty <tt>HashMap</tt> with the specified initial
-  210        * capacity and the default load factor (0.75).
-  211        *
-  212        * @param  initialCapacity the initial capacity.
-  213        * @throws IllegalArgumentException if the initial capacity is negative.
-  214        */
-  215       public HashMap(int initialCapacity) {
-  216           this(initialCapacity, DEFAULT_LOAD_FACTOR);
-  217       }
-  218   
-  219       /**
-  220        * Constructs an empty <tt>HashMap</tt> with the default initial capacity
-  221        * (16) and the default load factor (0.75).
-  222        */
-  223       public HashMap() {
-  224           this.loadFactor = DEFAULT_LOAD_FACTOR;
-  225           threshold = (int)(DEFAULT_INITIAL_CAPACITY * DEFAULT_LOAD_FACTOR);
-  226           table = new Entry[DEFAULT_INITIAL_CAPACITY];
-  227           init();
-  228       }
-  229   
-  230       /**
-  231        * Constructs a new <tt>HashMap</tt> with the same mappings as the
-  232        * specified <tt>Map</tt>.  The <tt>HashMap</tt> is created with
-  233        * default load factor (0.75) and an initial capacity sufficient to
-  234        * hold the mappings in the specified <tt>Map</tt>.
-  235        *
-  236        * @param   m the map whose mappings are to be placed in this map
-  237        * @throws  NullPointerException if the specified map is null
-  238        */
-  239       public HashMap(Map<? extends K, ? extends V> m) {
-  240           this(Math.max((int) (m.size() / DEFAULT_LOAD_FACTOR) + 1,
-  241                         DEFAULT_INITIAL_CAPACITY), DEFAULT_LOAD_FACTOR);
-  242           putAllForCreate(m);
-  243       }
-  244   
-  245       // internal utilities
-  246   
-  247       /**
-  248        * Initialization hook for subclasses. This method is called
-  249        * in all constructors and pseudo-constructors (clone, readObject)
-  250        * after HashMap has been initialized but before any entries have
-  251        * been inserted.  (In the absence of this method, readObject would
-  252        * require explicit knowledge of subclasses.)
-  253        */
-  254       void init() {
-  255       }
-  256   
-  257       /**
-  258        * Applies a supplemental hash function to a given hashCode, which
-  259        * defends against poor quality hash functions.  This is critical
-  260        * because HashMap uses power-of-two length hash tables, that
-  261        * otherwise encounter collisions for hashCodes that do not differ
-  262        * in lower bits. Note: Null keys always map to hash 0, thus index 0.
-  263        */
-  264       static int hash(int h) {
-  265           // This function ensures that hashCodes that differ only by
-  266           // constant multiples at each bit position have a bounded
-  267           // number of collisions (approximately 8 at default load factor).
-  268           h ^= (h >>> 20) ^ (h >>> 12);
-  269           return h ^ (h >>> 7) ^ (h >>> 4);
-  270       }
-  271   
-  272       /**
-  273        * Returns index for hash code h.
-  274        */
-  275       static int indexFor(int h, int length) {
-  276           return h & (length-1);
-  277       }
-  278   
-  279       /**
-  280        * Returns the number of key-value mappings in this map.
-  281        *
-  282        * @return the number of key-value mappings in this map
-  283        */
-  284       public int size() {
-  285           return size;
-  286       }
-  287   
-  288       /**
-  289        * Returns <tt>true</tt> if this map contains no key-value mappings.
-  290        *
-  291        * @return <tt>true</tt> if this map contains no key-value mappings
-  292        */
-  293       public boolean isEmpty() {
-  294           return size == 0;
-  295       }
-  296   
-  297       /**
-  298        * Returns the value to which the specified key is mapped,
-  299        * or {@code null} if this map contains no mapping for the key.
-  300        *
-  301        * <p>More formally, if this map contains a mapping from a key
-  302        * {@code k} to a value {@code v} such that {@code (key==null ? k==null :
-  303        * key.equals(k))}, then this method returns {@code v}; otherwise
-  304        * it returns {@code null}.  (There can be at most one such mapping.)
-  305        *
-  306        * <p>A return value of {@code null} does not <i>necessarily</i>
-  307        * indicate that the map contains no mapping for the key; it's also
-  308        * possible that the map explicitly maps the key to {@code null}.
-  309        * The {@link #containsKey containsKey} operation may be used to
-  310        * distinguish these two cases.
-  311        *
-  312        * @see #put(Object, Object)
-  313        */
-  314       public V get(Object key) {
-  315           if (key == null)
-  316               return getForNullKey();
-  317           int hash = hash(key.hashCode());
-  318           for (Entry<K,V> e = table[indexFor(hash, table.length)];
-  319                e != null;
-  320                e = e.next) {
-  321               Object k;
-  322               if (e.hash == hash && ((k = e.key) == key || key.equals(k)))
-  323                   return e.value;
-  324           }
-  325           return null;
-  326       }
-  327   
-  328       /**
-  329        * Offloaded version of get() to look up null keys.  Null keys map
-  330        * to index 0.  This null case is split out into separate methods
-  331        * for the sake of performance in the two most commonly used
-  332        * operations (get and put), but incorporated with conditionals in
-  333        * others.
-  334        */
-  335       private V getForNullKey() {
-  336           for (Entry<K,V> e = table[0]; e != null; e = e.next) {
-  337               if (e.key == null)
-  338                   return e.value;
-  339           }
-  340           return null;
-  341       }
-  342   
-  343       /**
-  344        * Returns <tt>true</tt> if this map contains a mapping for the
-  345        * specified key.
-  346        *
-  347        * @param   key   The key whose presence in this map is to be tested
-  348        * @return <tt>true</tt> if this map contains a mapping for the specified
-  349        * key.
-  350        */
-  351       public boolean containsKey(Object key) {
-  352           return getEntry(key) != null;
-  353       }
-  354   
-  355       /**
-  356        * Returns the entry associated with the specified key in the
-  357        * HashMap.  Returns null if the HashMap contains no mapping
-  358        * for the key.
-  359        */
-  360       final Entry<K,V> getEntry(Object key) {
-  361           int hash = (key == null) ? 0 : hash(key.hashCode());
-  362           for (Entry<K,V> e = table[indexFor(hash, table.length)];
-  363                e != null;
-  364                e = e.next) {
-  365               Object k;
-  366               if (e.hash == hash &&
-  367                   ((k = e.key) == key || (key != null && key.equals(k))))
-  368                   return e;
-  369           }
-  370           return null;
-  371       }
-  372   
-  373   
-  374       /**
-  375        * Associates the specified value with the specified key in this map.
-  376        * If the map previously contained a mapping for the key, the old
-  377        * value is replaced.
-  378        *
-  379        * @param key key with which the specified value is to be associated
-  380        * @param value value to be associated with the specified key
-  381        * @return the previous value associated with <tt>key</tt>, or
-  382        *         <tt>null</tt> if there was no mapping for <tt>key</tt>.
-  383        *         (A <tt>null</tt> return can also indicate that the map
-  384        *         previously associated <tt>null</tt> with <tt>key</tt>.)
-  385        */
-  386       public V put(K key, V value) {
-  387           if (key == null)
-  388               return putForNullKey(value);
-  389           int hash = hash(key.hashCode());
-  390           int i = indexFor(hash, table.length);
-  391           for (Entry<K,V> e = table[i]; e != null; e = e.next) {
-  392               Object k;
-  393               if (e.hash == hash && ((k = e.key) == key || key.equals(k))) {
-  394                   V oldValue = e.value;
-  395                   e.value = value;
-  396                   e.recordAccess(this);
-  397                   return oldValue;
-  398               }
-  399           }
-  400   
-  401           modCount++;
-  402           addEntry(hash, key, value, i);
-  403           return null;
-  404       }
-  405   
-  406       /**
-  407        * Offloaded version of put for null keys
-  408        */
-  409       private V putForNullKey(V value) {
-  410           for (Entry<K,V> e = table[0]; e != null; e = e.next) {
-  411               if (e.key == null) {
-  412                   V oldValue = e.value;
-  413                   e.value = value;
-  414                   e.recordAccess(this);
-  415                   return oldValue;
-  416               }
-  417           }
-  418           modCount++;
-  419           addEntry(0, null, value, 0);
-  420           return null;
-  421       }
-  422   
-  423       /**
-  424        * This method is used instead of put by constructors and
-  425        * pseudoconstructors (clone, readObject).  It does not resize the table,
-  426        * check for comodification, etc.  It calls createEntry rather than
-  427        * addEntry.
-  428        */
-  429       private void putForCreate(K key, V value) {
-  430           int hash = (key == null) ? 0 : hash(key.hashCode());
-  431           int i = indexFor(hash, table.length);
-  432   
-  433           /**
-  434            * Look for preexisting entry for key.  This will never happen for
-  435            * clone or deserialize.  It will only happen for construction if the
-  436            * input Map is a sorted map whose ordering is inconsistent w/ equals.
-  437            */
-  438           for (Entry<K,V> e = table[i]; e != null; e = e.next) {
-  439               Object k;
-  440               if (e.hash == hash &&
-  441                   ((k = e.key) == key || (key != null && key.equals(k)))) {
-  442                   e.value = value;
-  443                   return;
-  444               }
-  445           }
-  446   
-  447           createEntry(hash, key, value, i);
-  448       }
-  449   
-  450       private void putAllForCreate(Map<? extends K, ? extends V> m) {
-  451           for (Map.Entry<? extends K, ? extends V> e : m.entrySet())
-  452               putForCreate(e.getKey(), e.getValue());
-  453       }
-  454   
-  455       /**
-  456        * Rehashes the contents of this map into a new array with a
-  457        * larger capacity.  This method is called automatically when the
-  458        * number of keys in this map reaches its threshold.
-  459        *
-  460        * If current capacity is MAXIMUM_CAPACITY, this method does not
-  461        * resize the map, but sets threshold to Integer.MAX_VALUE.
-  462        * This has the effect of preventing future calls.
-  463        *
-  464        * @param newCapacity the new capacity, MUST be a power of two;
-  465        *        must be greater than current capacity unless current
-  466        *        capacity is MAXIMUM_CAPACITY (in which case value
-  467        *        is irrelevant).
-  468        */
-  469       void resize(int newCapacity) {
-  470           Entry[] oldTable = table;
-  471           int oldCapacity = oldTable.length;
-  472           if (oldCapacity == MAXIMUM_CAPACITY) {
-  473               threshold = Integer.MAX_VALUE;
-  474               return;
-  475           }
-  476   
-  477           Entry[] newTable = new Entry[newCapacity];
-  478           transfer(newTable);
-  479           table = newTable;
-  480           threshold = (int)(newCapacity * loadFactor);
-  481       }
-  482   
-  483       /**
-  484        * Transfers all entries from current table to newTable.
-  485        */
-  486       void transfer(Entry[] newTable) {
-  487           Entry[] src = table;
-  488           int newCapacity = newTable.length;
-  489           for (int j = 0; j < src.length; j++) {
-  490               Entry<K,V> e = src[j];
-  491               if (e != null) {
-  492                   src[j] = null;
-  493                   do {
-  494                       Entry<K,V> next = e.next;
-  495                       int i = indexFor(e.hash, newCapacity);
-  496                       e.next = newTable[i];
-  497                       newTable[i] = e;
-  498                       e = next;
-  499                   } while (e != null);
-  500               }
-  501           }
-  502       }
-  503   
-  504       /**
-  505        * Copies all of the mappings from the specified map to this map.
-  506        * These mappings will replace any mappings that this map had for
-  507        * any of the keys currently in the specified map.
-  508        *
-  509        * @param m mappings to be stored in this map
-  510        * @throws NullPointerException if the specified map is null
-  511        */
-  512       public void putAll(Map<? extends K, ? extends V> m) {
-  513           int numKeysToBeAdded = m.size();
-  514           if (numKeysToBeAdded == 0)
-  515               return;
-  516   
-  517           /*
-  518            * Expand the map if the map if the number of mappings to be added
-  519            * is greater than or equal to threshold.  This is conservative; the
-  520            * obvious condition is (m.size() + size) >= threshold, but this
-  521            * condition could result in a map with twice the appropriate capacity,
-  522            * if the keys to be added overlap with the keys already in this map.
-  523            * By using the conservative calculation, we subject ourself
-  524            * to at most one extra resize.
-  525            */
-  526           if (numKeysToBeAdded > threshold) {
-  527               int targetCapacity = (int)(numKeysToBeAdded / loadFactor + 1);
-  528               if (targetCapacity > MAXIMUM_CAPACITY)
-  529                   targetCapacity = MAXIMUM_CAPACITY;
-  530               int newCapacity = table.length;
-  531               while (newCapacity < targetCapacity)
-  532                   newCapacity <<= 1;
-  533               if (newCapacity > table.length)
-  534                   resize(newCapacity);
-  535           }
-  536   
-  537           for (Map.Entry<? extends K, ? extends V> e : m.entrySet())
-  538               put(e.getKey(), e.getValue());
-  539       }
-  540   
-  541       /**
-  542        * Removes the mapping for the specified key from this map if present.
-  543        *
-  544        * @param  key key whose mapping is to be removed from the map
-  545        * @return the previous value associated with <tt>key</tt>, or
-  546        *         <tt>null</tt> if there was no mapping for <tt>key</tt>.
-  547        *         (A <tt>null</tt> return can also indicate that the map
-  548        *         previously associated <tt>null</tt> with <tt>key</tt>.)
-  549        */
-  550       public V remove(Object key) {
-  551           Entry<K,V> e = removeEntryForKey(key);
-  552           return (e == null ? null : e.value);
-  553       }
-  554   
-  555       /**
-  556        * Removes and returns the entry associated with the specified key
-  557        * in the HashMap.  Returns null if the HashMap contains no mapping
-  558        * for this key.
-  559        */
-  560       final Entry<K,V> removeEntryForKey(Object key) {
-  561           int hash = (key == null) ? 0 : hash(key.hashCode());
-  562           int i = indexFor(hash, table.length);
-  563           Entry<K,V> prev = table[i];
-  564           Entry<K,V> e = prev;
-  565   
-  566           while (e != null) {
-  567               Entry<K,V> next = e.next;
-  568               Object k;
-  569               if (e.hash == hash &&
-  570                   ((k = e.key) == key || (key != null && key.equals(k)))) {
-  571                   modCount++;
-  572                   size--;
-  573                   if (prev == e)
-  574                       table[i] = next;
-  575                   else
-  576                       prev.next = next;
-  577                   e.recordRemoval(this);
-  578                   return e;
-  579               }
-  580               prev = e;
-  581               e = next;
-  582           }
-  583   
-  584           return e;
-  585       }
-  586   
-  587       /**
-  588        * Special version of remove for EntrySet.
-  589        */
-  590       final Entry<K,V> removeMapping(Object o) {
-  591           if (!(o instanceof Map.Entry))
-  592               return null;
-  593   
-  594           Map.Entry<K,V> entry = (Map.Entry<K,V>) o;
-  595           Object key = entry.getKey();
-  596           int hash = (key == null) ? 0 : hash(key.hashCode());
-  597           int i = indexFor(hash, table.length);
-  598           Entry<K,V> prev = table[i];
-  599           Entry<K,V> e = prev;
-  600   
-  601           while (e != null) {
-  602               Entry<K,V> next = e.next;
-  603               if (e.hash == hash && e.equals(entry)) {
-  604                   modCount++;
-  605                   size--;
-  606                   if (prev == e)
-  607                       table[i] = next;
-  608                   else
-  609                       prev.next = next;
-  610                   e.recordRemoval(this);
-  611                   return e;
-  612               }
-  613               prev = e;
-  614               e = next;
-  615           }
-  616   
-  617           return e;
-  618       }
-  619   
-  620       /**
-  621        * Removes all of the mappings from this map.
-  622        * The map will be empty after this call returns.
-  623        */
-  624       public void clear() {
-  625           modCount++;
-  626           Entry[] tab = table;
-  627           for (int i = 0; i < tab.length; i++)
-  628               tab[i] = null;
-  629           size = 0;
-  630       }
-  631   
-  632       /**
-  633        * Returns <tt>true</tt> if this map maps one or more keys to the
-  634        * specified value.
-  635        *
-  636        * @param value value whose presence in this map is to be tested
-  637        * @return <tt>true</tt> if this map maps one or more keys to the
-  638        *         specified value
-  639        */
-  640       public boolean containsValue(Object value) {
-  641           if (value == null)
-  642               return containsNullValue();
-  643   
-  644           Entry[] tab = table;
-  645           for (int i = 0; i < tab.length ; i++)
-  646               for (Entry e = tab[i] ; e != null ; e = e.next)
-  647                   if (value.equals(e.value))
-  648                       return true;
-  649           return false;
-  650       }
-  651   
-  652       /**
-  653        * Special-case code for containsValue with null argument
-  654        */
-  655       private boolean containsNullValue() {
-  656           Entry[] tab = table;
-  657           for (int i = 0; i < tab.length ; i++)
-  658               for (Entry e = tab[i] ; e != null ; e = e.next)
-  659                   if (e.value == null)
-  660                       return true;
-  661           return false;
-  662       }
-  663   
-  664       /**
-  665        * Returns a shallow copy of this <tt>HashMap</tt> instance: the keys and
-  666        * values themselves are not cloned.
-  667        *
-  668        * @return a shallow copy of this map
-  669        */
-  670       public Object clone() {
-  671           HashMap<K,V> result = null;
-  672           try {
-  673               result = (HashMap<K,V>)super.clone();
-  674           } catch (CloneNotSupportedException e) {
-  675               // assert false;
-  676           }
-  677           result.table = new Entry[table.length];
-  678           result.entrySet = null;
-  679           result.modCount = 0;
-  680           result.size = 0;
-  681           result.init();
-  682           result.putAllForCreate(this);
-  683   
-  684           return result;
-  685       }
-  686   
-  687       static class Entry<K,V> implements Map.Entry<K,V> {
-  688           final K key;
-  689           V value;
-  690           Entry<K,V> next;
-  691           final int hash;
-  692   
-  693           /**
-  694            * Creates new entry.
-  695            */
-  696           Entry(int h, K k, V v, Entry<K,V> n) {
-  697               value = v;
-  698               next = n;
-  699               key = k;
-  700               hash = h;
-  701           }
-  702   
-  703           public final K getKey() {
-  704               return key;
-  705           }
-  706   
-  707           public final V getValue() {
-  708               return value;
-  709           }
-  710   
-  711           public final V setValue(V newValue) {
-  712               V oldValue = value;
-  713               value = newValue;
-  714               return oldValue;
-  715           }
-  716   
-  717           public final boolean equals(Object o) {
-  718               if (!(o instanceof Map.Entry))
-  719                   return false;
-  720               Map.Entry e = (Map.Entry)o;
-  721               Object k1 = getKey();
-  722               Object k2 = e.getKey();
-  723               if (k1 == k2 || (k1 != null && k1.equals(k2))) {
-  724                   Object v1 = getValue();
-  725                   Object v2 = e.getValue();
-  726                   if (v1 == v2 || (v1 != null && v1.equals(v2)))
-  727                       return true;
-  728               }
-  729               return false;
-  730           }
-  731   
-  732           public final int hashCode() {
-  733               return (key==null   ? 0 : key.hashCode()) ^
-  734                      (value==null ? 0 : value.hashCode());
-  735           }
-  736   
-  737           public final String toString() {
-  738               return getKey() + "=" + getValue();
-  739           }
-  740   
-  741           /**
-  742            * This method is invoked whenever the value in an entry is
-  743            * overwritten by an invocation of put(k,v) for a key k that's already
-  744            * in the HashMap.
-  745            */
-  746           void recordAccess(HashMap<K,V> m) {
-  747           }
-  748   
-  749           /**
-  750            * This method is invoked whenever the entry is
-  751            * removed from the table.
-  752            */
-  753           void recordRemoval(HashMap<K,V> m) {
-  754           }
-  755       }
-  756   
-  757       /**
-  758        * Adds a new entry with the specified key, value and hash code to
-  759        * the specified bucket.  It is the responsibility of this
-  760        * method to resize the table if appropriate.
-  761        *
-  762        * Subclass overrides this to alter the behavior of put method.
-  763        */
-  764       void addEntry(int hash, K key, V value, int bucketIndex) {
-  765           Entry<K,V> e = table[bucketIndex];
-  766           table[bucketIndex] = new Entry<>(hash, key, value, e);
-  767           if (size++ >= threshold)
-  768               resize(2 * table.length);
-  769       }
-  770   
-  771       /**
-  772        * Like addEntry except that this version is used when creating entries
-  773        * as part of Map construction or "pseudo-construction" (cloning,
-  774        * deserialization).  This version needn't worry about resizing the table.
-  775        *
-  776        * Subclass overrides this to alter the behavior of HashMap(Map),
-  777        * clone, and readObject.
-  778        */
-  779       void createEntry(int hash, K key, V value, int bucketIndex) {
-  780           Entry<K,V> e = table[bucketIndex];
-  781           table[bucketIndex] = new Entry<>(hash, key, value, e);
-  782           size++;
-  783       }
-  784   
-  785       private abstract class HashIterator<E> implements Iterator<E> {
-  786           Entry<K,V> next;        // next entry to return
-  787           int expectedModCount;   // For fast-fail
-  788           int index;              // current slot
-  789           Entry<K,V> current;     // current entry
-  790   
-  791           HashIterator() {
-  792               expectedModCount = modCount;
-  793               if (size > 0) { // advance to first entry
-  794                   Entry[] t = table;
-  795                   while (index < t.length && (next = t[index++]) == null)
-  796                       ;
-  797               }
-  798           }
-  799   
-  800           public final boolean hasNext() {
-  801               return next != null;
-  802           }
-  803   
-  804           final Entry<K,V> nextEntry() {
-  805               if (modCount != expectedModCount)
-  806                   throw new ConcurrentModificationException();
-  807               Entry<K,V> e = next;
-  808               if (e == null)
-  809                   throw new NoSuchElementException();
-  810   
-  811               if ((next = e.next) == null) {
-  812                   Entry[] t = table;
-  813                   while (index < t.length && (next = t[index++]) == null)
-  814                       ;
-  815               }
-  816               current = e;
-  817               return e;
-  818           }
-  819   
-  820           public void remove() {
-  821               if (current == null)
-  822                   throw new IllegalStateException();
-  823               if (modCount != expectedModCount)
-  824                   throw new ConcurrentModificationException();
-  825               Object k = current.key;
-  826               current = null;
-  827               HashMap.this.removeEntryForKey(k);
-  828               expectedModCount = modCount;
-  829           }
-  830   
-  831       }
-  832   
-  833       private final class ValueIterator extends HashIterator<V> {
-  834           public V next() {
-  835               return nextEntry().value;
-  836           }
-  837       }
-  838   
-  839       private final class KeyIterator extends HashIterator<K> {
-  840           public K next() {
-  841               return nextEntry().getKey();
-  842           }
-  843       }
-  844   
-  845       private final class EntryIterator extends HashIterator<Map.Entry<K,V>> {
-  846           public Map.Entry<K,V> next() {
-  847               return nextEntry();
-  848           }
-  849       }
-  850   
-  851       // Subclass overrides these to alter behavior of views' iterator() method
-  852       Iterator<K> newKeyIterator()   {
-  853           return new KeyIterator();
-  854       }
-  855       Iterator<V> newValueIterator()   {
-  856           return new ValueIterator();
-  857       }
-  858       Iterator<Map.Entry<K,V>> newEntryIterator()   {
-  859           return new EntryIterator();
-  860       }
-  861   
-  862   
-  863       // Views
-  864   
-  865       private transient Set<Map.Entry<K,V>> entrySet = null;
-  866   
-  867       /**
-  868        * Returns a {@link Set} view of the keys contained in this map.
-  869        * The set is backed by the map, so changes to the map are
-  870        * reflected in the set, and vice-versa.  If the map is modified
-  871        * while an iteration over the set is in progress (except through
-  872        * the iterator's own <tt>remove</tt> operation), the results of
-  873        * the iteration are undefined.  The set supports element removal,
-  874        * which removes the corresponding mapping from the map, via the
-  875        * <tt>Iterator.remove</tt>, <tt>Set.remove</tt>,
-  876        * <tt>removeAll</tt>, <tt>retainAll</tt>, and <tt>clear</tt>
-  877        * operations.  It does not support the <tt>add</tt> or <tt>addAll</tt>
-  878        * operations.
-  879        */
-  880       public Set<K> keySet() {
-  881           Set<K> ks = keySet;
-  882           return (ks != null ? ks : (keySet = new KeySet()));
-  883       }
-  884   
-  885       private final class KeySet extends AbstractSet<K> {
-  886           public Iterator<K> iterator() {
-  887               return newKeyIterator();
-  888           }
-  889           public int size() {
-  890               return size;
-  891           }
-  892           public boolean contains(Object o) {
-  893               return containsKey(o);
-  894           }
-  895           public boolean remove(Object o) {
-  896               return HashMap.this.removeEntryForKey(o) != null;
-  897           }
-  898           public void clear() {
-  899               HashMap.this.clear();
-  900           }
-  901       }
-  902   
-  903       /**
-  904        * Returns a {@link Collection} view of the values contained in this map.
-  905        * The collection is backed by the map, so changes to the map are
-  906        * reflected in the collection, and vice-versa.  If the map is
-  907        * modified while an iteration over the collection is in progress
-  908        * (except through the iterator's own <tt>remove</tt> operation),
-  909        * the results of the iteration are undefined.  The collection
-  910        * supports element removal, which removes the corresponding
-  911        * mapping from the map, via the <tt>Iterator.remove</tt>,
-  912        * <tt>Collection.remove</tt>, <tt>removeAll</tt>,
-  913        * <tt>retainAll</tt> and <tt>clear</tt> operations.  It does not
-  914        * support the <tt>add</tt> or <tt>addAll</tt> operations.
-  915        */
-  916       public Collection<V> values() {
-  917           Collection<V> vs = values;
-  918           return (vs != null ? vs : (values = new Values()));
-  919       }
-  920   
-  921       private final class Values extends AbstractCollection<V> {
-  922           public Iterator<V> iterator() {
-  923               return newValueIterator();
-  924           }
-  925           public int size() {
-  926               return size;
-  927           }
-  928           public boolean contains(Object o) {
-  929               return containsValue(o);
-  930           }
-  931           public void clear() {
-  932               HashMap.this.clear();
-  933           }
-  934       }
-  935   
-  936       /**
-  937        * Returns a {@link Set} view of the mappings contained in this map.
-  938        * The set is backed by the map, so changes to the map are
-  939        * reflected in the set, and vice-versa.  If the map is modified
-  940        * while an iteration over the set is in progress (except through
-  941        * the iterator's own <tt>remove</tt> operation, or through the
-  942        * <tt>setValue</tt> operation on a map entry returned by the
-  943        * iterator) the results of the iteration are undefined.  The set
-  944        * supports element removal, which removes the corresponding
-  945        * mapping from the map, via the <tt>Iterator.remove</tt>,
-  946        * <tt>Set.remove</tt>, <tt>removeAll</tt>, <tt>retainAll</tt> and
-  947        * <tt>clear</tt> operations.  It does not support the
-  948        * <tt>add</tt> or <tt>addAll</tt> operations.
-  949        *
-  950        * @return a set view of the mappings contained in this map
-  951        */
-  952       public Set<Map.Entry<K,V>> entrySet() {
-  953           return entrySet0();
-  954       }
-  955   
-  956       private Set<Map.Entry<K,V>> entrySet0() {
-  957           Set<Map.Entry<K,V>> es = entrySet;
-  958           return es != null ? es : (entrySet = new EntrySet());
-  959       }
-  960   
-  961       private final class EntrySet extends AbstractSet<Map.Entry<K,V>> {
-  962           public Iterator<Map.Entry<K,V>> iterator() {
-  963               return newEntryIterator();
-  964           }
-  965           public boolean contains(Object o) {
-  966               if (!(o instanceof Map.Entry))
-  967                   return false;
-  968               Map.Entry<K,V> e = (Map.Entry<K,V>) o;
-  969               Entry<K,V> candidate = getEntry(e.getKey());
-  970               return candidate != null && candidate.equals(e);
-  971           }
-  972           public boolean remove(Object o) {
-  973               return removeMapping(o) != null;
-  974           }
-  975           public int size() {
-  976               return size;
-  977           }
-  978           public void clear() {
-  979               HashMap.this.clear();
-  980           }
-  981       }
-  982   
-  983       /**
-  984        * Save the state of the <tt>HashMap</tt> instance to a stream (i.e.,
-  985        * serialize it).
-  986        *
-  987        * @serialData The <i>capacity</i> of the HashMap (the length of the
-  988        *             bucket array) is emitted (int), followed by the
-  989        *             <i>size</i> (an int, the number of key-value
-  990        *             mappings), followed by the key (Object) and value (Object)
-  991        *             for each key-value mapping.  The key-value mappings are
-  992        *             emitted in no particular order.
-  993        */
-  994       private void writeObject(java.io.ObjectOutputStream s)
-  995           throws IOException
-  996       {
-  997           Iterator<Map.Entry<K,V>> i =
-  998               (size > 0) ? entrySet0().iterator() : null;
-  999   
- 1000           // Write out the threshold, loadfactor, and any hidden stuff
- 1001           s.defaultWriteObject();
- 1002   
- 1003           // Write out number of buckets
- 1004           s.writeInt(table.length);
- 1005   
- 1006           // Write out size (number of Mappings)
- 1007           s.writeInt(size);
- 1008   
- 1009           // Write out keys and values (alternating)
- 1010           if (i != null) {
- 1011               while (i.hasNext()) {
- 1012                   Map.Entry<K,V> e = i.next();
- 1013                   s.writeObject(e.getKey());
- 1014                   s.writeObject(e.getValue());
- 1015               }
- 1016           }
- 1017       }
- 1018   
- 1019       private static final long serialVersionUID = 362498820763181265L;
- 1020   
- 1021       /**
- 1022        * Reconstitute the <tt>HashMap</tt> instance from a stream (i.e.,
- 1023        * deserialize it).
- 1024        */
- 1025       private void readObject(java.io.ObjectInputStream s)
- 1026            throws IOException, ClassNotFoundException
- 1027       {
- 1028           // Read in the threshold, loadfactor, and any hidden stuff
- 1029           s.defaultReadObject();
- 1030   
- 1031           // Read in number of buckets and allocate the bucket array;
- 1032           int numBuckets = s.readInt();
- 1033           table = new Entry[numBuckets];
- 1034   
- 1035           init();  // Give subclass a chance to do its thing.
- 1036   
- 1037           // Read in size (number of Mappings)
- 1038           int size = s.readInt();
- 1039   
- 1040           // Read the keys and values, and put the mappings in the HashMap
- 1041           for (int i=0; i<size; i++) {
- 1042               K key = (K) s.readObject();
- 1043               V value = (V) s.readObject();
- 1044               putForCreate(key, value);
- 1045           }
- 1046       }
- 1047   
- 1048       // These methods are used when serializing HashSets
- 1049       int   capacity()     { return table.length; }
- 1050       float loadFactor()   { return loadFactor;   }
- 1051   }
+package java.util;
+import java.io;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Hash table based implementation of the <tt>Map</tt> interface.  This
+ * implementation provides all of the optional map operations, and permits
+ * <tt>null</tt> values and the <tt>null</tt> key.  (The <tt>HashMap</tt>
+ * class is roughly equivalent to <tt>Hashtable</tt>, except that it is
+ * unsynchronized and permits nulls.)  This class makes no guarantees as to
+ * the order of the map; in particular, it does not guarantee that the order
+ * will remain constant over time.
+ *
+ * <p>This implementation provides constant-time performance for the basic
+ * operations (<tt>get</tt> and <tt>put</tt>), assuming the hash function
+ * disperses the elements properly among the buckets.  Iteration over
+ * collection views requires time proportional to the "capacity" of the
+ * <tt>HashMap</tt> instance (the number of buckets) plus its size (the number
+ * of key-value mappings).  Thus, it's very important not to set the initial
+ * capacity too high (or the load factor too low) if iteration performance is
+ * important.
+ *
+ * <p>An instance of <tt>HashMap</tt> has two parameters that affect its
+ * performance: <i>initial capacity</i> and <i>load factor</i>.  The
+ * <i>capacity</i> is the number of buckets in the hash table, and the initial
+ * capacity is simply the capacity at the time the hash table is created.  The
+ * <i>load factor</i> is a measure of how full the hash table is allowed to
+ * get before its capacity is automatically increased.  When the number of
+ * entries in the hash table exceeds the product of the load factor and the
+ * current capacity, the hash table is <i>rehashed</i> (that is, internal data
+ * structures are rebuilt) so that the hash table has approximately twice the
+ * number of buckets.
+ *
+ * <p>As a general rule, the default load factor (.75) offers a good tradeoff
+ * between time and space costs.  Higher values decrease the space overhead
+ * but increase the lookup cost (reflected in most of the operations of the
+ * <tt>HashMap</tt> class, including <tt>get</tt> and <tt>put</tt>).  The
+ * expected number of entries in the map and its load factor should be taken
+ * into account when setting its initial capacity, so as to minimize the
+ * number of rehash operations.  If the initial capacity is greater
+ * than the maximum number of entries divided by the load factor, no
+ * rehash operations will ever occur.
+ *
+ * <p>If many mappings are to be stored in a <tt>HashMap</tt> instance,
+ * creating it with a sufficiently large capacity will allow the mappings to
+ * be stored more efficiently than letting it perform automatic rehashing as
+ * needed to grow the table.
+ *
+ * <p>Normally a rehash moves every mapping in one pass, so the operation
+ * that triggers it takes time proportional to the size of the map.  A map
+ * created with {@link #HashMap(int, float, boolean) incremental resizing}
+ * instead keeps the old and new tables side by side and moves a bounded
+ * number of buckets on each <tt>get</tt>, <tt>put</tt> and <tt>remove</tt>
+ * until the rehash is complete, which bounds the worst-case latency of
+ * individual operations at a small cost in throughput.  Note that in this
+ * mode <tt>get</tt> may modify the internal structure of the map, so even
+ * read-only access from several threads must be synchronized.
+ *
+ * <p>A map can also be told to {@link #setStatisticsEnabled collect
+ * statistics} on its chain lengths, the probes made by lookups, the
+ * <tt>equals</tt> calls they make and its resizes, to tell badly
+ * distributed hash codes from a poorly sized table.  Without statistics
+ * the only cost is a null check in <tt>get</tt>, <tt>put</tt> and
+ * <tt>containsKey</tt>.
+ *
+ * <p><strong>Note that this implementation is not synchronized.</strong>
+ * If multiple threads access a hash map concurrently, and at least one of
+ * the threads modifies the map structurally, it <i>must</i> be
+ * synchronized externally.  (A structural modification is any operation
+ * that adds or deletes one or more mappings; merely changing the value
+ * associated with a key that an instance already contains is not a
+ * structural modification.)  This is typically accomplished by
+ * synchronizing on some object that naturally encapsulates the map.
+ *
+ * If no such object exists, the map should be "wrapped" using the
+ * {@link Collections#synchronizedMap Collections.synchronizedMap}
+ * method.  This is best done at creation time, to prevent accidental
+ * unsynchronized access to the map:<pre>
+ *   Map m = Collections.synchronizedMap(new HashMap(...));</pre>
+ *
+ * <p>The iterators returned by all of this class's "collection view methods"
+ * are <i>fail-fast</i>: if the map is structurally modified at any time after
+ * the iterator is created, in any way except through the iterator's own
+ * <tt>remove</tt> method, the iterator will throw a
+ * {@link ConcurrentModificationException}.  Thus, in the face of concurrent
+ * modification, the iterator fails quickly and cleanly, rather than risking
+ * arbitrary, non-deterministic behavior at an undetermined time in the
+ * future.
+ *
+ * <p>Note that the fail-fast behavior of an iterator cannot be guaranteed
+ * as it is, generally speaking, impossible to make any hard guarantees in the
+ * presence of unsynchronized concurrent modification.  Fail-fast iterators
+ * throw <tt>ConcurrentModificationException</tt> on a best-effort basis.
+ * Therefore, it would be wrong to write a program that depended on this
+ * exception for its correctness: <i>the fail-fast behavior of iterators
+ * should be used only to detect bugs.</i>
+ *
+ * <p>This class is a member of the
+ * <a href="{@docRoot}/../technotes/guides/collections/index.html">
+ * Java Collections Framework</a>.
+ *
+ * @param <K> the type of keys maintained by this map
+ * @param <V> the type of mapped values
+ *
+ * @author  Doug Lea
+ * @author  Josh Bloch
+ * @author  Arthur van Hoff
+ * @author  Neal Gafter
+ * @see     Object#hashCode()
+ * @see     Collection
+ * @see     Map
+ * @see     TreeMap
+ * @see     Hashtable
+ * @since   1.2
+ */
+
+public class HashMap<K,V>
+    extends AbstractMap<K,V>
+    implements Map<K,V>, Cloneable, Serializable
+{
+
+    /**
+     * The default initial capacity - MUST be a power of two.
+     */
+    static final int DEFAULT_INITIAL_CAPACITY = 16;
+
+    /**
+     * The maximum capacity, used if a higher value is implicitly specified
+     * by either of the constructors with arguments.
+     * MUST be a power of two <= 1<<30.
+     */
+    static final int MAXIMUM_CAPACITY = 1 << 30;
+
+    /**
+     * The load factor used when none specified in constructor.
+     */
+    static final float DEFAULT_LOAD_FACTOR = 0.75f;
+
+    /**
+     * The bucket chain length at which the chain is converted to a tree.
+     * Buckets are treeified when adding an entry to a bucket that already
+     * holds at least this many entries.  With a well-distributed hashCode
+     * chains this long are vanishingly rare (at the default load factor the
+     * expected bucket size follows a Poisson distribution with parameter
+     * about 0.5), so trees only appear for colliding or hostile keys.
+     */
+    static final int TREEIFY_THRESHOLD = 8;
+
+    /**
+     * The tree size at or below which a tree bucket is converted back to
+     * a chain during removal or resize.  Smaller than TREEIFY_THRESHOLD
+     * so that a bucket hovering around the threshold does not flip
+     * between the two forms on every put and remove.
+     */
+    static final int UNTREEIFY_THRESHOLD = 6;
+
+    /**
+     * The smallest table capacity for which buckets may be treeified.
+     * Below this the table is resized instead, since long chains in a
+     * small table are more likely caused by the table being too small
+     * than by genuinely colliding hash codes.
+     */
+    static final int MIN_TREEIFY_CAPACITY = 64;
+
+    /**
+     * The table, resized as necessary. Length MUST Always be a power of two.
+     * A bucket holds either a chain of plain entries linked through
+     * <tt>next</tt>, or a red-black tree of {@link TreeEntry} nodes whose
+     * root is at the head of the bucket.  Tree nodes remain linked through
+     * <tt>next</tt> as well, so code that only needs to visit every entry
+     * (iteration, containsValue, clone) can walk both forms the same way.
+     */
+    transient Entry[] table;
+
+    /**
+     * The number of key-value mappings contained in this map.
+     */
+    transient int size;
+
+    /**
+     * The next size value at which to resize (capacity * load factor).
+     * @serial
+     */
+    int threshold;
+
+    /**
+     * The load factor for the hash table.
+     *
+     * @serial
+     */
+    final float loadFactor;
+
+    /**
+     * The number of times this HashMap has been structurally modified
+     * Structural modifications are those that change the number of mappings in
+     * the HashMap or otherwise modify its internal structure (e.g.,
+     * rehash).  This field is used to make iterators on Collection-views of
+     * the HashMap fail-fast.  (See ConcurrentModificationException).
+     */
+    transient int modCount;
+
+    /**
+     * Whether rehashing is spread over the operations following a resize
+     * rather than done in one pass.
+     *
+     * @serial
+     */
+    boolean incrementalResize;
+
+    /**
+     * The strategy that hashes and compares keys, or null if keys are
+     * hashed and compared by their own hashCode and equals methods.
+     *
+     * @serial
+     */
+    final HashingStrategy<? super K> strategy;
+
+    /**
+     * The capacity below which the table is not shrunk after removals:
+     * the capacity the map was created with.
+     *
+     * @serial
+     */
+    int minCapacity;
+
+    /**
+     * The table being drained by an incremental resize, or null if no
+     * incremental resize is in progress.  Buckets below transferIndex
+     * have already been moved into table; the others are still here.
+     */
+    transient Entry[] oldTable;
+
+    /**
+     * The index of the next bucket of oldTable to be moved into table.
+     */
+    transient int transferIndex;
+
+    /**
+     * The least number of oldTable buckets moved by each operation while
+     * an incremental resize is in progress.
+     */
+    static final int TRANSFER_STRIDE = 8;
+
+    /**
+     * The number of oldTable buckets moved by each operation during the
+     * incremental resize in progress.  A resize from n to 2n buckets
+     * leaves room for only about (n * loadFactor) insertions before the
+     * next one, so the n old buckets are drained in time only if the
+     * stride is at least 1/loadFactor.  It is set by resize to
+     * TRANSFER_STRIDE or twice 1/loadFactor, whichever is larger, the
+     * factor of two absorbing the rounding of thresholds; otherwise a
+     * small load factor would leave the next resize to finish the
+     * transfer in one pass.
+     */
+    transient int transferStride;
+
+    /**
+     * The statistics counters, or null unless statistics are enabled.
+     */
+    transient HashMapStatistics.Counters stats;
+
+    /**
+     * One bit per bucket of table, set once the bucket holds entries of
+     * its own, or null if no bucket is shared with a snapshot.  While
+     * this is non-null, no incremental resize is in progress.
+     */
+    transient long[] ownedBuckets;
+
+    /**
+     * The index from values to keys, or null unless the value index is
+     * enabled.
+     */
+    transient ValueIndex valueIndex;
+
+    /**
+     * Constructs an empty <tt>HashMap</tt> with the specified initial
+     * capacity and load factor.
+     *
+     * @param  initialCapacity the initial capacity
+     * @param  loadFactor      the load factor
+     * @throws IllegalArgumentException if the initial capacity is negative
+     *         or the load factor is nonpositive
+     */
+    public HashMap(int initialCapacity, float loadFactor) {
+        this(initialCapacity, loadFactor, false);
+    }
+
+    /**
+     * Constructs an empty <tt>HashMap</tt> with the specified initial
+     * capacity and load factor, optionally spreading each rehash over
+     * the operations that follow it instead of doing it in one pass.
+     *
+     * @param  initialCapacity   the initial capacity
+     * @param  loadFactor        the load factor
+     * @param  incrementalResize whether to rehash incrementally
+     * @throws IllegalArgumentException if the initial capacity is negative
+     *         or the load factor is nonpositive
+     */
+    public HashMap(int initialCapacity, float loadFactor,
+                   boolean incrementalResize) {
+        this(initialCapacity, loadFactor, incrementalResize, null);
+    }
+
+    /**
+     * Constructs an empty <tt>HashMap</tt> with the default initial
+     * capacity (16) and load factor (0.75) that hashes and compares keys
+     * with the given strategy instead of their <tt>hashCode</tt> and
+     * <tt>equals</tt> methods.
+     *
+     * <p>Such a map violates the general contract of <tt>Map</tt>
+     * wherever that calls for <tt>equals</tt> on keys, as
+     * <tt>IdentityHashMap</tt> does.  Lookups pass their key to the
+     * strategy, so a key of the wrong type may cause a
+     * ClassCastException.  Buckets are never turned into trees, since
+     * that orders keys by <tt>Comparable</tt>; the strategy is expected
+     * to hash well instead.
+     *
+     * @param  strategy the strategy for keys
+     * @throws NullPointerException if the strategy is null
+     */
+    public HashMap(HashingStrategy<? super K> strategy) {
+        this(DEFAULT_INITIAL_CAPACITY, DEFAULT_LOAD_FACTOR, false,
+             Objects.requireNonNull(strategy));
+    }
+
+    /**
+     * Constructs an empty <tt>HashMap</tt> with the specified initial
+     * capacity, load factor, resize mode and strategy for keys.
+     *
+     * @param  initialCapacity   the initial capacity
+     * @param  loadFactor        the load factor
+     * @param  incrementalResize whether to rehash incrementally
+     * @param  strategy          the strategy for keys, or null to use
+     *                           their hashCode and equals methods
+     * @throws IllegalArgumentException if the initial capacity is negative
+     *         or the load factor is nonpositive
+     * @see    #HashMap(HashingStrategy)
+     */
+    public HashMap(int initialCapacity, float loadFactor,
+                   boolean incrementalResize,
+                   HashingStrategy<? super K> strategy) {
+        if (initialCapacity < 0)
+            throw new IllegalArgumentException("Illegal initial capacity: " +
+                                               initialCapacity);
+        if (initialCapacity > MAXIMUM_CAPACITY)
+            initialCapacity = MAXIMUM_CAPACITY;
+        if (loadFactor <= 0 || Float.isNaN(loadFactor))
+            throw new IllegalArgumentException("Illegal load factor: " +
+                                               loadFactor);
+
+        // Find a power of 2 >= initialCapacity
+        int capacity = 1;
+        while (capacity < initialCapacity)
+            capacity <<= 1;
+
+        this.loadFactor = loadFactor;
+        this.incrementalResize = incrementalResize;
+        this.strategy = strategy;
+        minCapacity = capacity;
+        threshold = (int)(capacity * loadFactor);
+        table = new Entry[capacity];
+        init();
+    }
+
+    /**
+     * Constructs an empty <tt>HashMap</tt> with the specified initial
+     * capacity and the default load factor (0.75).
+     *
+     * @param  initialCapacity the initial capacity.
+     * @throws IllegalArgumentException if the initial capacity is negative.
+     */
+    public HashMap(int initialCapacity) {
+        this(initialCapacity, DEFAULT_LOAD_FACTOR);
+    }
+
+    /**
+     * Constructs an empty <tt>HashMap</tt> with the default initial capacity
+     * (16) and the default load factor (0.75).
+     */
+    public HashMap() {
+        this.loadFactor = DEFAULT_LOAD_FACTOR;
+        this.strategy = null;
+        minCapacity = DEFAULT_INITIAL_CAPACITY;
+        threshold = (int)(DEFAULT_INITIAL_CAPACITY * DEFAULT_LOAD_FACTOR);
+        table = new Entry[DEFAULT_INITIAL_CAPACITY];
+        init();
+    }
+
+    /**
+     * Constructs a new <tt>HashMap</tt> with the same mappings as the
+     * specified <tt>Map</tt>.  The <tt>HashMap</tt> is created with
+     * default load factor (0.75) and an initial capacity sufficient to
+     * hold the mappings in the specified <tt>Map</tt>.
+     *
+     * @param   m the map whose mappings are to be placed in this map
+     * @throws  NullPointerException if the specified map is null
+     */
+    public HashMap(Map<? extends K, ? extends V> m) {
+        this(Math.max((int) (m.size() / DEFAULT_LOAD_FACTOR) + 1,
+                      DEFAULT_INITIAL_CAPACITY), DEFAULT_LOAD_FACTOR);
+        minCapacity = DEFAULT_INITIAL_CAPACITY;
+        putAllForCreate(m);
+    }
+
+    // internal utilities
+
+    /**
+     * Initialization hook for subclasses. This method is called
+     * in all constructors and pseudo-constructors (clone, readObject)
+     * after HashMap has been initialized but before any entries have
+     * been inserted.  (In the absence of this method, readObject would
+     * require explicit knowledge of subclasses.)
+     */
+    void init() {
+    }
+
+    /**
+     * Applies a supplemental hash function to a given hashCode, which
+     * defends against poor quality hash functions.  This is critical
+     * because HashMap uses power-of-two length hash tables, that
+     * otherwise encounter collisions for hashCodes that do not differ
+     * in lower bits. Note: Null keys always map to hash 0, thus index 0.
+     */
+    static int hash(int h) {
+        // This function ensures that hashCodes that differ only by
+        // constant multiples at each bit position have a bounded
+        // number of collisions (approximately 8 at default load factor).
+        h ^= (h >>> 20) ^ (h >>> 12);
+        return h ^ (h >>> 7) ^ (h >>> 4);
+    }
+
+    /**
+     * Returns the hash of key as stored in its entry: 0 for the null key,
+     * else the supplemental hash of its hashCode, or of the hash the
+     * strategy gives it.
+     */
+    final int hashOf(Object key) {
+        return hashOf(key, strategy);
+    }
+
+    @SuppressWarnings("unchecked")
+    static int hashOf(Object key, HashingStrategy<?> strategy) {
+        if (key == null)
+            return 0;
+        return hash((strategy == null) ? key.hashCode()
+                    : ((HashingStrategy<Object>) strategy).hashCode(key));
+    }
+
+    /**
+     * Returns whether the non-null key equals k, a key of this map.
+     */
+    final boolean keyEquals(Object key, Object k) {
+        return keyEquals(key, k, strategy);
+    }
+
+    @SuppressWarnings("unchecked")
+    static boolean keyEquals(Object key, Object k, HashingStrategy<?> strategy) {
+        if (strategy == null)
+            return key.equals(k);
+        return k != null && ((HashingStrategy<Object>) strategy).equals(key, k);
+    }
+
+    /**
+     * Returns index for hash code h.
+     */
+    static int indexFor(int h, int length) {
+        return h & (length-1);
+    }
+
+    /**
+     * Returns the table holding the bucket for hash h: oldTable if an
+     * incremental resize is in progress and has not yet moved that
+     * bucket, else table.
+     */
+    final Entry[] tableFor(int h) {
+        Entry[] old = oldTable;
+        if (old != null && indexFor(h, old.length) >= transferIndex)
+            return old;
+        return table;
+    }
+
+    /**
+     * Returns x's Class if it is of the form "class C implements
+     * Comparable<C>", else null.  Used to order keys with equal hashes
+     * inside tree buckets.
+     */
+    static Class<?> comparableClassFor(Object x) {
+        if (x instanceof Comparable) {
+            Class<?> c; Type[] ts, as; Type t; ParameterizedType p;
+            if ((c = x.getClass()) == String.class) // bypass checks
+                return c;
+            if ((ts = c.getGenericInterfaces()) != null) {
+                for (int i = 0; i < ts.length; ++i) {
+                    if (((t = ts[i]) instanceof ParameterizedType) &&
+                        ((p = (ParameterizedType)t).getRawType() ==
+                         Comparable.class) &&
+                        (as = p.getActualTypeArguments()) != null &&
+                        as.length == 1 && as[0] == c) // type arg is c
+                        return c;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns k.compareTo(x) if x matches kc (k's screened comparable
+     * class), else 0.
+     */
+    static int compareComparables(Class<?> kc, Object k, Object x) {
+        return (x == null || x.getClass() != kc ? 0 :
+                ((Comparable)k).compareTo(x));
+    }
+
+    /**
+     * Returns the number of key-value mappings in this map.
+     *
+     * @return the number of key-value mappings in this map
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns <tt>true</tt> if this map contains no key-value mappings.
+     *
+     * @return <tt>true</tt> if this map contains no key-value mappings
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Returns the value to which the specified key is mapped,
+     * or {@code null} if this map contains no mapping for the key.
+     *
+     * <p>More formally, if this map contains a mapping from a key
+     * {@code k} to a value {@code v} such that {@code (key==null ? k==null :
+     * key.equals(k))}, then this method returns {@code v}; otherwise
+     * it returns {@code null}.  (There can be at most one such mapping.)
+     *
+     * <p>A return value of {@code null} does not <i>necessarily</i>
+     * indicate that the map contains no mapping for the key; it's also
+     * possible that the map explicitly maps the key to {@code null}.
+     * The {@link #containsKey containsKey} operation may be used to
+     * distinguish these two cases.
+     *
+     * @see #put(Object, Object)
+     */
+    public V get(Object key) {
+        if (stats != null) {
+            Entry<K,V> e = countedGetEntry(key);
+            return (e == null) ? null : e.value;
+        }
+        if (oldTable != null)
+            transferStep();
+        if (key == null)
+            return getForNullKey();
+        int hash = hashOf(key);
+        Entry[] tab = tableFor(hash);
+        Entry<K,V> first = tab[indexFor(hash, tab.length)];
+        if (first instanceof TreeEntry) {
+            Entry<K,V> e = ((TreeEntry<K,V>)first).getTreeEntry(hash, key);
+            return (e == null ? null : e.value);
+        }
+        for (Entry<K,V> e = first; e != null; e = e.next) {
+            Object k;
+            if (e.hash == hash && ((k = e.key) == key || keyEquals(key, k)))
+                return e.value;
+        }
+        return null;
+    }
+
+    /**
+     * Offloaded version of get() to look up null keys.  Null keys map
+     * to index 0.  This null case is split out into separate methods
+     * for the sake of performance in the two most commonly used
+     * operations (get and put), but incorporated with conditionals in
+     * others.
+     */
+    private V getForNullKey() {
+        for (Entry<K,V> e = tableFor(0)[0]; e != null; e = e.next) {
+            if (e.key == null)
+                return e.value;
+        }
+        return null;
+    }
+
+    /**
+     * Returns <tt>true</tt> if this map contains a mapping for the
+     * specified key.
+     *
+     * @param   key   The key whose presence in this map is to be tested
+     * @return <tt>true</tt> if this map contains a mapping for the specified
+     * key.
+     */
+    public boolean containsKey(Object key) {
+        if (stats != null)
+            return countedGetEntry(key) != null;
+        return getEntry(key) != null;
+    }
+
+    /**
+     * Returns the entry associated with the specified key in the
+     * HashMap.  Returns null if the HashMap contains no mapping
+     * for the key.
+     */
+    final Entry<K,V> getEntry(Object key) {
+        if (oldTable != null)
+            transferStep();
+        int hash = hashOf(key);
+        Entry[] tab = tableFor(hash);
+        Entry<K,V> first = tab[indexFor(hash, tab.length)];
+        if (first instanceof TreeEntry)
+            return ((TreeEntry<K,V>)first).getTreeEntry(hash, key);
+        for (Entry<K,V> e = first; e != null; e = e.next) {
+            Object k;
+            if (e.hash == hash &&
+                ((k = e.key) == key || (key != null && keyEquals(key, k))))
+                return e;
+        }
+        return null;
+    }
+
+    /**
+     * getEntry for get and containsKey with statistics enabled, which
+     * counts the lookup.
+     */
+    private Entry<K,V> countedGetEntry(Object key) {
+        if (oldTable != null)
+            transferStep();
+        int hash = hashOf(key);
+        Entry[] tab = tableFor(hash);
+        return lookupEntry(tab[indexFor(hash, tab.length)], hash, key, false);
+    }
+
+
+    /**
+     * Associates the specified value with the specified key in this map.
+     * If the map previously contained a mapping for the key, the old
+     * value is replaced.
+     *
+     * @param key key with which the specified value is to be associated
+     * @param value value to be associated with the specified key
+     * @return the previous value associated with <tt>key</tt>, or
+     *         <tt>null</tt> if there was no mapping for <tt>key</tt>.
+     *         (A <tt>null</tt> return can also indicate that the map
+     *         previously associated <tt>null</tt> with <tt>key</tt>.)
+     */
+    public V put(K key, V value) {
+        if (oldTable != null)
+            transferStep();
+        if (key == null && stats == null)
+            return putForNullKey(value);
+        int hash = hashOf(key);
+        Entry[] tab = tableFor(hash);
+        int i = indexFor(hash, tab.length);
+        if (ownedBuckets != null)
+            ownBucket(i);
+        Entry<K,V> first = tab[i];
+        if (stats != null) {
+            Entry<K,V> e = lookupEntry(first, hash, key, true);
+            if (e != null) {
+                V oldValue = e.value;
+                setEntryValue(e, value);
+                e.recordAccess(this);
+                return oldValue;
+            }
+        } else if (first instanceof TreeEntry) {
+            Entry<K,V> e = ((TreeEntry<K,V>)first).getTreeEntry(hash, key);
+            if (e != null) {
+                V oldValue = e.value;
+                setEntryValue(e, value);
+                e.recordAccess(this);
+                return oldValue;
+            }
+        } else {
+            for (Entry<K,V> e = first; e != null; e = e.next) {
+                Object k;
+                if (e.hash == hash && ((k = e.key) == key || keyEquals(key, k))) {
+                    V oldValue = e.value;
+                    setEntryValue(e, value);
+                    e.recordAccess(this);
+                    return oldValue;
+                }
+            }
+        }
+
+        modCount++;
+        addEntry(hash, key, value, i);
+        return null;
+    }
+
+    /**
+     * Offloaded version of put for null keys
+     */
+    private V putForNullKey(V value) {
+        if (ownedBuckets != null)
+            ownBucket(0);
+        for (Entry<K,V> e = tableFor(0)[0]; e != null; e = e.next) {
+            if (e.key == null) {
+                V oldValue = e.value;
+                setEntryValue(e, value);
+                e.recordAccess(this);
+                return oldValue;
+            }
+        }
+        modCount++;
+        addEntry(0, null, value, 0);
+        return null;
+    }
+
+    /**
+     * This method is used instead of put by constructors and
+     * pseudoconstructors (clone, readObject).  It does not resize the table,
+     * check for comodification, etc.  It calls createEntry rather than
+     * addEntry.
+     */
+    void putForCreate(K key, V value) {
+        int hash = hashOf(key);
+        Entry[] tab = tableFor(hash);
+        int i = indexFor(hash, tab.length);
+
+        /**
+         * Look for preexisting entry for key.  This will never happen for
+         * clone or deserialize.  It will only happen for construction if the
+         * input Map is a sorted map whose ordering is inconsistent w/ equals.
+         */
+        Entry<K,V> first = tab[i];
+        if (first instanceof TreeEntry) {
+            Entry<K,V> e = ((TreeEntry<K,V>)first).getTreeEntry(hash, key);
+            if (e != null) {
+                setEntryValue(e, value);
+                return;
+            }
+        } else {
+            for (Entry<K,V> e = first; e != null; e = e.next) {
+                Object k;
+                if (e.hash == hash &&
+                    ((k = e.key) == key || (key != null && keyEquals(key, k)))) {
+                    setEntryValue(e, value);
+                    return;
+                }
+            }
+        }
+
+        createEntry(hash, key, value, i);
+    }
+
+    private void putAllForCreate(Map<? extends K, ? extends V> m) {
+        for (Map.Entry<? extends K, ? extends V> e : m.entrySet())
+            putForCreate(e.getKey(), e.getValue());
+    }
+
+    /**
+     * Rehashes the contents of this map into a new array with a
+     * larger capacity.  This method is called automatically when the
+     * number of keys in this map reaches its threshold.
+     *
+     * If current capacity is MAXIMUM_CAPACITY, this method does not
+     * resize the map, but sets threshold to Integer.MAX_VALUE.
+     * This has the effect of preventing future calls.
+     *
+     * In incremental mode the new table is installed immediately and the
+     * old one is kept in oldTable to be drained by transferStep.  Any
+     * incremental resize still in progress is completed first.
+     *
+     * @param newCapacity the new capacity, MUST be a power of two;
+     *        must be greater than current capacity unless current
+     *        capacity is MAXIMUM_CAPACITY (in which case value
+     *        is irrelevant).
+     */
+    void resize(int newCapacity) {
+        HashMapStatistics.Counters c = stats;
+        long start = (c != null) ? System.nanoTime() : 0;
+        if (oldTable != null)
+            finishTransfer();
+        if (ownedBuckets != null)
+            ownAllBuckets();
+        Entry[] oldTab = table;
+        int oldCapacity = oldTab.length;
+        if (oldCapacity == MAXIMUM_CAPACITY) {
+            threshold = Integer.MAX_VALUE;
+            return;
+        }
+
+        Entry[] newTable = new Entry[newCapacity];
+        if (incrementalResize && size > 0) {
+            oldTable = oldTab;
+            transferIndex = 0;
+            transferStride = transferStrideFor(loadFactor);
+        } else {
+            transfer(newTable);
+        }
+        table = newTable;
+        threshold = (int)(newCapacity * loadFactor);
+        if (c != null)
+            c.recordResize(System.nanoTime() - start);
+    }
+
+    /**
+     * Transfers all entries from current table to newTable.  Tree buckets
+     * are split across the new buckets they map to, and each part is
+     * treeified again or turned back into a chain depending on its size.
+     */
+    void transfer(Entry[] newTable) {
+        Entry[] src = table;
+        for (int j = 0; j < src.length; j++)
+            transferBucket(src, j, newTable);
+    }
+
+    /**
+     * Moves the entries of bucket j of src into newTable.
+     */
+    final void transferBucket(Entry[] src, int j, Entry[] newTable) {
+        Entry<K,V> e = src[j];
+        if (e != null) {
+            src[j] = null;
+            if (e instanceof TreeEntry) {
+                ((TreeEntry<K,V>)e).split(this, newTable, j, src.length);
+                return;
+            }
+            int newCapacity = newTable.length;
+            do {
+                Entry<K,V> next = e.next;
+                int i = indexFor(e.hash, newCapacity);
+                e.next = newTable[i];
+                newTable[i] = e;
+                e = next;
+            } while (e != null);
+        }
+    }
+
+    /**
+     * Returns the number of buckets an incremental resize must move per
+     * operation to finish before the next resize at the given load
+     * factor.
+     */
+    static int transferStrideFor(float loadFactor) {
+        double stride = Math.ceil(2 / (double) loadFactor);
+        return (stride > TRANSFER_STRIDE)
+            ? (int) Math.min(stride, MAXIMUM_CAPACITY) : TRANSFER_STRIDE;
+    }
+
+    /**
+     * Moves the next transferStride buckets of an incremental resize in
+     * progress from oldTable into table, dropping oldTable once it has
+     * been drained.
+     */
+    final void transferStep() {
+        Entry[] src = oldTable;
+        int j = transferIndex;
+        int end = (int) Math.min((long) j + transferStride, src.length);
+        for (; j < end; j++) {
+            transferBucket(src, j, table);
+            transferIndex = j + 1;
+        }
+        if (end == src.length)
+            oldTable = null;
+    }
+
+    /**
+     * Completes any incremental resize in progress.  Called before
+     * operations that visit every bucket, which take time proportional
+     * to the capacity anyway.
+     */
+    final void finishTransfer() {
+        while (oldTable != null)
+            transferStep();
+    }
+
+    /**
+     * Halves the table once the map holds fewer than a quarter of the
+     * mappings its threshold allows, unless that would take it below
+     * minCapacity.  Halving leaves the map at most half as full as the
+     * new threshold, so at least a quarter of the threshold of
+     * insertions or removals separates each resize from the next, and a
+     * map that alternately grows and drains does not thrash.
+     */
+    final void shrinkIfSparse() {
+        int n = table.length;
+        if (size < (threshold >>> 2) && n > minCapacity)
+            shrink(n >>> 1);
+    }
+
+    /**
+     * Rehashes the contents of this map into a new array with a smaller
+     * capacity.  This is always done in one pass, since an incremental
+     * resize only ever drains oldTable into a larger table.
+     *
+     * @param newCapacity the new capacity, MUST be a power of two
+     *        smaller than the current capacity
+     */
+    final void shrink(int newCapacity) {
+        HashMapStatistics.Counters c = stats;
+        long start = (c != null) ? System.nanoTime() : 0;
+        if (oldTable != null)
+            finishTransfer();
+        if (ownedBuckets != null)
+            ownAllBuckets();
+        Entry[] src = table;
+        Entry[] newTable = new Entry[newCapacity];
+        transferShrinking(src, newTable);
+        table = newTable;
+        threshold = (int)(newCapacity * loadFactor);
+        if (c != null)
+            c.recordResize(System.nanoTime() - start);
+    }
+
+    /**
+     * Moves all entries of src into newTable, which is smaller.  Each
+     * bucket of newTable gathers the buckets of src whose indices agree
+     * in their low bits.  Tree buckets are turned back into chains on
+     * the way, and any gathered chain long enough to be a tree is
+     * treeified again.
+     */
+    final void transferShrinking(Entry[] src, Entry[] newTable) {
+        int mask = newTable.length - 1;
+        for (int j = 0; j < src.length; j++) {
+            Entry<K,V> e = src[j];
+            if (e == null)
+                continue;
+            src[j] = null;
+            boolean tree = e instanceof TreeEntry;
+            int i = j & mask;
+            do {
+                Entry<K,V> next = e.next;
+                Entry<K,V> p = tree ? replacementEntry(e, null) : e;
+                p.next = newTable[i];
+                newTable[i] = p;
+                e = next;
+            } while (e != null);
+        }
+        if (strategy == null && newTable.length >= MIN_TREEIFY_CAPACITY) {
+            for (int i = 0; i < newTable.length; i++)
+                if (binCount(newTable[i]) >= TREEIFY_THRESHOLD)
+                    treeifyBin(newTable, i);
+        }
+    }
+
+    /**
+     * Shrinks the table to the smallest capacity that holds the current
+     * mappings without exceeding the load factor, and returns the memory
+     * this frees.  Unlike the shrinking done after removals, this may
+     * take the table below the capacity the map was created with.
+     * Only the bucket array is counted; the entries themselves are
+     * unaffected.
+     *
+     * @return the number of bytes by which the bucket array shrank, 0 if
+     *         it was already as small as possible
+     */
+    public long trimToSize() {
+        int n = table.length;
+        int capacity = 1;
+        while (capacity < MAXIMUM_CAPACITY && (int)(capacity * loadFactor) < size)
+            capacity <<= 1;
+        if (capacity >= n)
+            return 0;
+        modCount++;
+        shrink(capacity);
+        return (long)(n - capacity) *
+            jdk.internal.misc.Unsafe.ARRAY_OBJECT_INDEX_SCALE;
+    }
+
+    /**
+     * Copies all of the mappings from the specified map to this map.
+     * These mappings will replace any mappings that this map had for
+     * any of the keys currently in the specified map.
+     *
+     * @param m mappings to be stored in this map
+     * @throws NullPointerException if the specified map is null
+     */
+    public void putAll(Map<? extends K, ? extends V> m) {
+        int numKeysToBeAdded = m.size();
+        if (numKeysToBeAdded == 0)
+            return;
+        expandFor(numKeysToBeAdded);
+
+        for (Map.Entry<? extends K, ? extends V> e : m.entrySet())
+            put(e.getKey(), e.getValue());
+    }
+
+    /**
+     * Grows the table ahead of putting numKeysToBeAdded mappings.
+     */
+    private void expandFor(int numKeysToBeAdded) {
+        /*
+         * Expand the map if the map if the number of mappings to be added
+         * is greater than or equal to threshold.  This is conservative; the
+         * obvious condition is (m.size() + size) >= threshold, but this
+         * condition could result in a map with twice the appropriate capacity,
+         * if the keys to be added overlap with the keys already in this map.
+         * By using the conservative calculation, we subject ourself
+         * to at most one extra resize.
+         */
+        if (numKeysToBeAdded > threshold) {
+            int targetCapacity = (int)(numKeysToBeAdded / loadFactor + 1);
+            if (targetCapacity > MAXIMUM_CAPACITY)
+                targetCapacity = MAXIMUM_CAPACITY;
+            int newCapacity = table.length;
+            while (newCapacity < targetCapacity)
+                newCapacity <<= 1;
+            if (newCapacity > table.length)
+                resize(newCapacity);
+        }
+    }
+
+    /**
+     * The number of keys getAll and putAll(Object[], Object[]) carry
+     * through each phase together.  Large enough for the bucket loads of
+     * one batch to overlap, small enough that the hashes and heads stay
+     * in L1.
+     */
+    static final int BATCH_SIZE = 64;
+
+    /**
+     * Looks up each of the given keys, storing the value mapped to
+     * <tt>keys[j]</tt>, or <tt>null</tt> if there is none, in
+     * <tt>out[j]</tt>.  Each found entry passes through the same
+     * onLookup hook as the single-lookup operations such as
+     * {@link #computeIfAbsent}, so that a subclass sees the lookups as
+     * it sees those of get: a {@link BoundedCache} treats expired
+     * mappings as absent and records hits, misses and accesses.
+     *
+     * <p>Keys are taken in batches, and each batch is looked up in phases:
+     * all of the keys are hashed, then all of their bucket heads are
+     * loaded, then the chains are compared.  The cache misses of a phase
+     * are independent of each other, so on a table much larger than the
+     * cache the processor can overlap them instead of waiting for each
+     * get to finish its chain of dependent loads before starting the
+     * next.
+     *
+     * @param  keys the keys to look up
+     * @param  out receives the values, at the same indices as the keys
+     * @throws IllegalArgumentException if <tt>out</tt> is shorter than
+     *         <tt>keys</tt>
+     */
+    public void getAll(K[] keys, V[] out) {
+        if (out.length < keys.length)
+            throw new IllegalArgumentException("Output array too short: " +
+                                               out.length);
+        int n = keys.length;
+        int[] hashes = new int[Math.min(n, BATCH_SIZE)];
+        Entry[] heads = new Entry[hashes.length];
+        for (int base = 0; base < n; base += BATCH_SIZE) {
+            int end = Math.min(base + BATCH_SIZE, n);
+            for (int j = base; j < end; j++)
+                hashes[j - base] = hashOf(keys[j]);
+            // Buckets must not move between loading the heads and walking them
+            if (oldTable != null)
+                transferStep();
+            for (int j = 0; j < end - base; j++) {
+                int hash = hashes[j];
+                Entry[] tab = tableFor(hash);
+                heads[j] = tab[indexFor(hash, tab.length)];
+            }
+            int mc = modCount;
+            for (int j = base; j < end; j++) {
+                int hash = hashes[j - base];
+                Entry<K,V> head = heads[j - base];
+                if (modCount != mc) {
+                    // onLookup removed an entry, which may have moved
+                    // or shrunk buckets since the heads were loaded
+                    Entry[] tab = tableFor(hash);
+                    head = tab[indexFor(hash, tab.length)];
+                }
+                Entry<K,V> e = onLookup(lookupEntry(head, hash, keys[j], false),
+                                        keys[j]);
+                out[j] = (e == null) ? null : e.value;
+            }
+        }
+    }
+
+    /**
+     * Associates each of the given keys with the value at the same index,
+     * with the same result as calling {@link #put} for each pair in turn.
+     * As with {@link #getAll}, keys are hashed and their bucket heads
+     * loaded a batch at a time before any of them is inserted.
+     *
+     * @param  keys the keys
+     * @param  values the values to associate with the keys
+     * @throws IllegalArgumentException if the arrays differ in length
+     */
+    public void putAll(K[] keys, V[] values) {
+        if (keys.length != values.length)
+            throw new IllegalArgumentException("Length mismatch: " +
+                                               keys.length + " keys, " +
+                                               values.length + " values");
+        int n = keys.length;
+        if (n == 0)
+            return;
+        expandFor(n);
+        int[] hashes = new int[Math.min(n, BATCH_SIZE)];
+        Entry[] heads = new Entry[hashes.length];
+        for (int base = 0; base < n; base += BATCH_SIZE) {
+            int end = Math.min(base + BATCH_SIZE, n);
+            for (int j = base; j < end; j++) {
+                K key = keys[j];
+                hashes[j - base] = hashOf(key);
+            }
+            // Only warms the buckets; an insertion may move or replace
+            // them, so the inserting loop below loads them again.
+            for (int j = 0; j < end - base; j++) {
+                int hash = hashes[j];
+                Entry[] tab = tableFor(hash);
+                heads[j] = tab[indexFor(hash, tab.length)];
+            }
+            for (int j = base; j < end; j++) {
+                K key = keys[j];
+                if (oldTable != null)
+                    transferStep();
+                int hash = hashes[j - base];
+                Entry[] tab = tableFor(hash);
+                int i = indexFor(hash, tab.length);
+                if (ownedBuckets != null)
+                    ownBucket(i);
+                Entry<K,V> e = lookupEntry(tab[i], hash, key, true);
+                if (e != null) {
+                    setEntryValue(e, values[j]);
+                    e.recordAccess(this);
+                } else {
+                    modCount++;
+                    addEntry(hash, key, values[j], i);
+                }
+            }
+        }
+    }
+
+    /**
+     * Removes the mapping for the specified key from this map if present.
+     *
+     * @param  key key whose mapping is to be removed from the map
+     * @return the previous value associated with <tt>key</tt>, or
+     *         <tt>null</tt> if there was no mapping for <tt>key</tt>.
+     *         (A <tt>null</tt> return can also indicate that the map
+     *         previously associated <tt>null</tt> with <tt>key</tt>.)
+     */
+    public V remove(Object key) {
+        Entry<K,V> e = removeEntryForKey(key);
+        return (e == null ? null : e.value);
+    }
+
+    /**
+     * If the specified key is not already associated with a value (or is
+     * mapped to <tt>null</tt>), associates it with the given value.
+     *
+     * @param key key with which the specified value is to be associated
+     * @param value value to be associated with the specified key
+     * @return the previous value associated with <tt>key</tt>, or
+     *         <tt>null</tt> if there was no mapping for <tt>key</tt>.
+     */
+    public V putIfAbsent(K key, V value) {
+        if (oldTable != null)
+            transferStep();
+        int hash = hashOf(key);
+        Entry[] tab = tableFor(hash);
+        int i = indexFor(hash, tab.length);
+        if (ownedBuckets != null)
+            ownBucket(i);
+        Entry<K,V> e = lookupEntry(tab[i], hash, key, true);
+        int lmc = modCount;
+        e = onLookup(e, key);
+        if (modCount != lmc) {
+            // the hook removed the entry, which may have shrunk the table
+            tab = tableFor(hash);
+            i = indexFor(hash, tab.length);
+        }
+        if (e != null) {
+            V oldValue = e.value;
+            if (oldValue == null) {
+                setEntryValue(e, value);
+                e.recordUpdate(this);
+            }
+            return oldValue;
+        }
+        modCount++;
+        addEntry(hash, key, value, i);
+        return null;
+    }
+
+    /**
+     * If the specified key is not already associated with a value (or is
+     * mapped to <tt>null</tt>), computes its value with the given mapping
+     * function and enters it into this map unless <tt>null</tt>.
+     *
+     * <p>The bucket is looked up once.  The mapping function must not
+     * modify this map; if it does, a ConcurrentModificationException is
+     * thrown and the computed value is discarded.
+     *
+     * @param key key with which the specified value is to be associated
+     * @param mappingFunction the function to compute a value
+     * @return the current (existing or computed) value associated with
+     *         the specified key, or <tt>null</tt> if the computed value
+     *         is <tt>null</tt>
+     * @throws ConcurrentModificationException if the mapping function
+     *         modified this map
+     */
+    public V computeIfAbsent(K key,
+                             Function<? super K, ? extends V> mappingFunction) {
+        if (mappingFunction == null)
+            throw new NullPointerException();
+        if (oldTable != null)
+            transferStep();
+        int hash = hashOf(key);
+        Entry[] tab = tableFor(hash);
+        int i = indexFor(hash, tab.length);
+        if (ownedBuckets != null)
+            ownBucket(i);
+        Entry<K,V> e = lookupEntry(tab[i], hash, key, true);
+        int lmc = modCount;
+        e = onLookup(e, key);
+        if (modCount != lmc) {
+            // the hook removed the entry, which may have shrunk the table
+            tab = tableFor(hash);
+            i = indexFor(hash, tab.length);
+        }
+        if (e != null && e.value != null)
+            return e.value;
+        int mc = modCount;
+        Entry[] ot = oldTable;
+        int ti = transferIndex;
+        V v = mappingFunction.apply(key);
+        if (modCount != mc)
+            throw new ConcurrentModificationException();
+        if (v == null)
+            return null;
+        if (oldTable != ot || transferIndex != ti) {
+            // a lookup made by the function moved buckets
+            tab = tableFor(hash);
+            i = indexFor(hash, tab.length);
+            e = findEntry(tab[i], hash, key);
+        }
+        if (e != null) {
+            setEntryValue(e, v);
+            e.recordUpdate(this);
+        } else {
+            modCount++;
+            addEntry(hash, key, v, i);
+        }
+        return v;
+    }
+
+    /**
+     * If the value for the specified key is present and non-null,
+     * computes a new mapping given the key and its current value.  If
+     * the function returns <tt>null</tt>, the mapping is removed.
+     *
+     * @param key key with which the specified value is to be associated
+     * @param remappingFunction the function to compute a value
+     * @return the new value associated with the specified key, or
+     *         <tt>null</tt> if none
+     * @throws ConcurrentModificationException if the remapping function
+     *         modified this map
+     */
+    public V computeIfPresent(K key,
+                              BiFunction<? super K, ? super V, ? extends V> remappingFunction) {
+        if (remappingFunction == null)
+            throw new NullPointerException();
+        if (oldTable != null)
+            transferStep();
+        int hash = hashOf(key);
+        Entry[] tab = tableFor(hash);
+        int i = indexFor(hash, tab.length);
+        if (ownedBuckets != null)
+            ownBucket(i);
+        Entry<K,V> e = lookupEntry(tab[i], hash, key, true);
+        int lmc = modCount;
+        e = onLookup(e, key);
+        if (modCount != lmc) {
+            // the hook removed the entry, which may have shrunk the table
+            tab = tableFor(hash);
+            i = indexFor(hash, tab.length);
+        }
+        V oldValue;
+        if (e == null || (oldValue = e.value) == null)
+            return null;
+        int mc = modCount;
+        Entry[] ot = oldTable;
+        int ti = transferIndex;
+        V v = remappingFunction.apply(key, oldValue);
+        if (modCount != mc)
+            throw new ConcurrentModificationException();
+        if (oldTable != ot || transferIndex != ti) {
+            tab = tableFor(hash);
+            i = indexFor(hash, tab.length);
+            e = findEntry(tab[i], hash, key);
+        }
+        if (v != null) {
+            setEntryValue(e, v);
+            e.recordUpdate(this);
+        } else {
+            removeFoundEntry(tab, i, e);
+        }
+        return v;
+    }
+
+    /**
+     * Computes a mapping for the specified key and its current mapped
+     * value (or <tt>null</tt> if there is none).  If the function returns
+     * <tt>null</tt>, the mapping is removed, or not added.
+     *
+     * @param key key with which the specified value is to be associated
+     * @param remappingFunction the function to compute a value
+     * @return the new value associated with the specified key, or
+     *         <tt>null</tt> if none
+     * @throws ConcurrentModificationException if the remapping function
+     *         modified this map
+     */
+    public V compute(K key,
+                     BiFunction<? super K, ? super V, ? extends V> remappingFunction) {
+        if (remappingFunction == null)
+            throw new NullPointerException();
+        if (oldTable != null)
+            transferStep();
+        int hash = hashOf(key);
+        Entry[] tab = tableFor(hash);
+        int i = indexFor(hash, tab.length);
+        if (ownedBuckets != null)
+            ownBucket(i);
+        Entry<K,V> e = lookupEntry(tab[i], hash, key, true);
+        int lmc = modCount;
+        e = onLookup(e, key);
+        if (modCount != lmc) {
+            // the hook removed the entry, which may have shrunk the table
+            tab = tableFor(hash);
+            i = indexFor(hash, tab.length);
+        }
+        int mc = modCount;
+        Entry[] ot = oldTable;
+        int ti = transferIndex;
+        V v = remappingFunction.apply(key, (e == null) ? null : e.value);
+        if (modCount != mc)
+            throw new ConcurrentModificationException();
+        if (oldTable != ot || transferIndex != ti) {
+            tab = tableFor(hash);
+            i = indexFor(hash, tab.length);
+            e = findEntry(tab[i], hash, key);
+        }
+        if (e != null) {
+            if (v != null) {
+                setEntryValue(e, v);
+                e.recordUpdate(this);
+            } else {
+                removeFoundEntry(tab, i, e);
+            }
+        } else if (v != null) {
+            modCount++;
+            addEntry(hash, key, v, i);
+        }
+        return v;
+    }
+
+    /**
+     * If the specified key is not already associated with a value or is
+     * associated with <tt>null</tt>, associates it with the given value.
+     * Otherwise, replaces the value with the result of the given
+     * remapping function, or removes the mapping if the result is
+     * <tt>null</tt>.  A word count is <tt>map.merge(word, 1, Integer::sum)</tt>.
+     *
+     * @param key key with which the resulting value is to be associated
+     * @param value the non-null value to be merged with the existing value
+     * @param remappingFunction the function to recompute a value if present
+     * @return the new value associated with the specified key, or
+     *         <tt>null</tt> if none
+     * @throws NullPointerException if the value or remapping function is
+     *         null
+     * @throws ConcurrentModificationException if the remapping function
+     *         modified this map
+     */
+    public V merge(K key, V value,
+                   BiFunction<? super V, ? super V, ? extends V> remappingFunction) {
+        if (value == null || remappingFunction == null)
+            throw new NullPointerException();
+        if (oldTable != null)
+            transferStep();
+        int hash = hashOf(key);
+        Entry[] tab = tableFor(hash);
+        int i = indexFor(hash, tab.length);
+        if (ownedBuckets != null)
+            ownBucket(i);
+        Entry<K,V> e = lookupEntry(tab[i], hash, key, true);
+        int lmc = modCount;
+        e = onLookup(e, key);
+        if (modCount != lmc) {
+            // the hook removed the entry, which may have shrunk the table
+            tab = tableFor(hash);
+            i = indexFor(hash, tab.length);
+        }
+        if (e == null) {
+            modCount++;
+            addEntry(hash, key, value, i);
+            return value;
+        }
+        V v;
+        if (e.value == null) {
+            v = value;
+        } else {
+            int mc = modCount;
+            Entry[] ot = oldTable;
+            int ti = transferIndex;
+            v = remappingFunction.apply(e.value, value);
+            if (modCount != mc)
+                throw new ConcurrentModificationException();
+            if (oldTable != ot || transferIndex != ti) {
+                tab = tableFor(hash);
+                i = indexFor(hash, tab.length);
+                e = findEntry(tab[i], hash, key);
+            }
+        }
+        if (v != null) {
+            setEntryValue(e, v);
+            e.recordUpdate(this);
+        } else {
+            removeFoundEntry(tab, i, e);
+        }
+        return v;
+    }
+
+    /**
+     * Called by getAll, putIfAbsent, computeIfAbsent, computeIfPresent,
+     * compute and merge, which look the key up without get and then read
+     * or update the entry in place, with the entry found for key, or
+     * null, at the point where get would record the read.  Returns the
+     * entry to go on with, which is e here.  A subclass that treats some
+     * mappings as absent, as BoundedCache does expired ones, may remove
+     * e and return null; the caller then loads the bucket again, since
+     * the removal may have shrunk the table.
+     */
+    Entry<K,V> onLookup(Entry<K,V> e, Object key) {
+        return e;
+    }
+
+    /**
+     * Returns the entry for key in the bucket headed by first, or null.
+     * hash must be the hash of key, as computed by put.
+     */
+    final Entry<K,V> findEntry(Entry<K,V> first, int hash, Object key) {
+        if (first instanceof TreeEntry)
+            return ((TreeEntry<K,V>)first).getTreeEntry(hash, key);
+        for (Entry<K,V> e = first; e != null; e = e.next) {
+            Object k;
+            if (e.hash == hash &&
+                ((k = e.key) == key || (key != null && keyEquals(key, k))))
+                return e;
+        }
+        return null;
+    }
+
+    /**
+     * Removes e, which findEntry returned for bucket i of tab.  Unlike
+     * removeEntryForKey this does not look the key up again; a chain is
+     * only walked by reference to find the predecessor.
+     */
+    final void removeFoundEntry(Entry[] tab, int i, Entry<K,V> e) {
+        modCount++;
+        size--;
+        if (e instanceof TreeEntry) {
+            ((TreeEntry<K,V>)e).removeTreeEntry(this, tab, true);
+        } else {
+            Entry<K,V> prev = tab[i];
+            if (prev == e) {
+                tab[i] = e.next;
+            } else {
+                while (prev.next != e)
+                    prev = prev.next;
+                prev.next = e.next;
+            }
+        }
+        if (valueIndex != null)
+            valueIndex.remove(e.key, e.value);
+        e.recordRemoval(this);
+        shrinkIfSparse();
+    }
+
+    /**
+     * Removes and returns the entry associated with the specified key
+     * in the HashMap.  Returns null if the HashMap contains no mapping
+     * for this key.
+     */
+    final Entry<K,V> removeEntryForKey(Object key) {
+        return removeEntryForKey(key, true);
+    }
+
+    /**
+     * Implements removeEntryForKey.  If movable is false, a tree bucket
+     * is neither restructured to move its root to the front nor turned
+     * back into a chain, and the table is not shrunk, so that an iterator
+     * positioned inside the bucket stays valid.
+     */
+    final Entry<K,V> removeEntryForKey(Object key, boolean movable) {
+        if (oldTable != null)
+            transferStep();
+        int hash = hashOf(key);
+        Entry[] tab = tableFor(hash);
+        int i = indexFor(hash, tab.length);
+        if (ownedBuckets != null)
+            ownBucket(i);
+        Entry<K,V> prev = tab[i];
+        if (prev instanceof TreeEntry) {
+            TreeEntry<K,V> e = ((TreeEntry<K,V>)prev).getTreeEntry(hash, key);
+            if (e != null) {
+                modCount++;
+                size--;
+                e.removeTreeEntry(this, tab, movable);
+                if (valueIndex != null)
+                    valueIndex.remove(e.key, e.value);
+                e.recordRemoval(this);
+                if (movable)
+                    shrinkIfSparse();
+            }
+            return e;
+        }
+        Entry<K,V> e = prev;
+
+        while (e != null) {
+            Entry<K,V> next = e.next;
+            Object k;
+            if (e.hash == hash &&
+                ((k = e.key) == key || (key != null && keyEquals(key, k)))) {
+                modCount++;
+                size--;
+                if (prev == e)
+                    tab[i] = next;
+                else
+                    prev.next = next;
+                if (valueIndex != null)
+                    valueIndex.remove(e.key, e.value);
+                e.recordRemoval(this);
+                if (movable)
+                    shrinkIfSparse();
+                return e;
+            }
+            prev = e;
+            e = next;
+        }
+
+        return e;
+    }
+
+    /**
+     * Special version of remove for EntrySet.
+     */
+    final Entry<K,V> removeMapping(Object o) {
+        if (!(o instanceof Map.Entry))
+            return null;
+
+        Map.Entry<K,V> entry = (Map.Entry<K,V>) o;
+        Object key = entry.getKey();
+        Object value = entry.getValue();
+        int hash = hashOf(key);
+        Entry[] tab = tableFor(hash);
+        int i = indexFor(hash, tab.length);
+        if (ownedBuckets != null)
+            ownBucket(i);
+        Entry<K,V> prev = tab[i];
+        if (prev instanceof TreeEntry) {
+            TreeEntry<K,V> e = ((TreeEntry<K,V>)prev).getTreeEntry(hash, key);
+            if (e == null || !Objects.equals(e.value, value))
+                return null;
+            modCount++;
+            size--;
+            e.removeTreeEntry(this, tab, true);
+            if (valueIndex != null)
+                valueIndex.remove(e.key, e.value);
+            e.recordRemoval(this);
+            shrinkIfSparse();
+            return e;
+        }
+        Entry<K,V> e = prev;
+
+        while (e != null) {
+            Entry<K,V> next = e.next;
+            Object k;
+            if (e.hash == hash &&
+                ((k = e.key) == key || (key != null && keyEquals(key, k))) &&
+                Objects.equals(e.value, value)) {
+                modCount++;
+                size--;
+                if (prev == e)
+                    tab[i] = next;
+                else
+                    prev.next = next;
+                if (valueIndex != null)
+                    valueIndex.remove(e.key, e.value);
+                e.recordRemoval(this);
+                shrinkIfSparse();
+                return e;
+            }
+            prev = e;
+            e = next;
+        }
+
+        return e;
+    }
+
+    /**
+     * Removes all of the mappings from this map.
+     * The map will be empty after this call returns, and its table is
+     * back to the capacity it was created with.
+     */
+    public void clear() {
+        modCount++;
+        oldTable = null;
+        Entry[] tab = table;
+        if (tab.length > minCapacity) {
+            table = new Entry[minCapacity];
+            threshold = (int)(minCapacity * loadFactor);
+        } else {
+            for (int i = 0; i < tab.length; i++)
+                tab[i] = null;
+        }
+        ownedBuckets = null;
+        if (valueIndex != null)
+            valueIndex = new ValueIndex();
+        size = 0;
+    }
+
+    /**
+     * Returns <tt>true</tt> if this map maps one or more keys to the
+     * specified value.
+     *
+     * @param value value whose presence in this map is to be tested
+     * @return <tt>true</tt> if this map maps one or more keys to the
+     *         specified value
+     */
+    public boolean containsValue(Object value) {
+        if (stats != null)
+            stats.containsValueCalls++;
+        if (valueIndex != null)
+            return valueIndex.find(value) != null;
+        if (value == null)
+            return containsNullValue();
+
+        if (oldTable != null)
+            finishTransfer();
+        Entry[] tab = table;
+        for (int i = 0; i < tab.length ; i++)
+            for (Entry e = tab[i] ; e != null ; e = e.next)
+                if (value.equals(e.value))
+                    return true;
+        return false;
+    }
+
+    /**
+     * Special-case code for containsValue with null argument
+     */
+    private boolean containsNullValue() {
+        if (oldTable != null)
+            finishTransfer();
+        Entry[] tab = table;
+        for (int i = 0; i < tab.length ; i++)
+            for (Entry e = tab[i] ; e != null ; e = e.next)
+                if (e.value == null)
+                    return true;
+        return false;
+    }
+
+    /**
+     * Returns a read-only view of the mappings in this map as of this
+     * call, which later changes to this map do not affect.  The view
+     * shares the entries of this map rather than copying them: the call
+     * copies only the bucket array, and afterwards each bucket is copied
+     * the first time it is changed.  This makes a snapshot much cheaper
+     * than {@link #clone}, and lets another thread iterate the snapshot
+     * while this map keeps changing, provided the snapshot is handed to
+     * that thread safely.  <tt>Map.Entry.setValue</tt> on an entry from
+     * the entry set copies that entry's bucket like any other change;
+     * only resizing the map copies the buckets still shared all at once.
+     *
+     * <p>Taking a snapshot counts as a structural modification, so
+     * iterators over this map created before it fail fast.
+     *
+     * @return an unmodifiable view of the current mappings
+     */
+    public Map<K,V> snapshot() {
+        if (oldTable != null)
+            finishTransfer();
+        modCount++;
+        Entry[] tab = table;
+        table = tab.clone();
+        ownedBuckets = new long[(tab.length + 63) >>> 6];
+        return new Snapshot<>(tab, size, strategy);
+    }
+
+    /**
+     * Copies the entries of bucket i of table unless the bucket already
+     * holds entries of its own.  Called before any change to the bucket
+     * while ownedBuckets is non-null.
+     */
+    final void ownBucket(int i) {
+        long[] owned = ownedBuckets;
+        long bit = 1L << i;
+        if ((owned[i >>> 6] & bit) == 0) {
+            owned[i >>> 6] |= bit;
+            if (table[i] != null)
+                copyBucket(table, i);
+        }
+    }
+
+    /**
+     * Copies every bucket still shared with a snapshot.
+     */
+    final void ownAllBuckets() {
+        for (int i = 0; i < table.length; i++)
+            ownBucket(i);
+        ownedBuckets = null;
+    }
+
+    /**
+     * A read-only map over a bucket array whose entries are no longer
+     * changed by the map that created it.
+     */
+    private static final class Snapshot<K,V> extends AbstractMap<K,V> {
+        private final HashMap.Entry[] tab;
+        private final int size;
+        private final HashingStrategy<?> strategy;
+
+        Snapshot(HashMap.Entry[] tab, int size, HashingStrategy<?> strategy) {
+            this.tab = tab;
+            this.size = size;
+            this.strategy = strategy;
+        }
+
+        private HashMap.Entry<K,V> getEntry(Object key) {
+            int hash = hashOf(key, strategy);
+            HashMap.Entry<K,V> first = tab[indexFor(hash, tab.length)];
+            if (first instanceof TreeEntry)
+                return ((TreeEntry<K,V>)first).getTreeEntry(hash, key);
+            for (HashMap.Entry<K,V> e = first; e != null; e = e.next) {
+                Object k;
+                if (e.hash == hash &&
+                    ((k = e.key) == key ||
+                     (key != null && keyEquals(key, k, strategy))))
+                    return e;
+            }
+            return null;
+        }
+
+        public V get(Object key) {
+            HashMap.Entry<K,V> e = getEntry(key);
+            return (e == null) ? null : e.value;
+        }
+
+        public boolean containsKey(Object key) {
+            return getEntry(key) != null;
+        }
+
+        public int size() {
+            return size;
+        }
+
+        public Set<Map.Entry<K,V>> entrySet() {
+            return new AbstractSet<Map.Entry<K,V>>() {
+                public Iterator<Map.Entry<K,V>> iterator() {
+                    return new SnapshotIterator();
+                }
+                public int size() {
+                    return size;
+                }
+            };
+        }
+
+        private final class SnapshotIterator implements Iterator<Map.Entry<K,V>> {
+            private HashMap.Entry<K,V> next;
+            private int index;
+
+            SnapshotIterator() {
+                advance(null);
+            }
+
+            private void advance(HashMap.Entry<K,V> e) {
+                next = (e == null) ? null : e.next;
+                while (next == null && index < tab.length)
+                    next = tab[index++];
+            }
+
+            public boolean hasNext() {
+                return next != null;
+            }
+
+            public Map.Entry<K,V> next() {
+                HashMap.Entry<K,V> e = next;
+                if (e == null)
+                    throw new NoSuchElementException();
+                advance(e);
+                return new AbstractMap.SimpleImmutableEntry<>(e.key, e.value);
+            }
+        }
+    }
+
+    /**
+     * Returns an immutable copy of this map built over a minimal perfect
+     * hash of its keys, for maps that are filled once and then only read.
+     * Each lookup in the returned map makes one probe and one
+     * <tt>equals</tt> call.  Later changes to this map are not reflected
+     * in the copy.
+     *
+     * @return an immutable copy of this map
+     * @throws UnsupportedOperationException if this map has a
+     *         {@link HashingStrategy}
+     * @see FrozenHashMap
+     */
+    public FrozenHashMap<K,V> freeze() {
+        if (strategy != null)
+            throw new UnsupportedOperationException("Map has a hashing strategy");
+        return new FrozenHashMap<>(this);
+    }
+
+    /**
+     * Returns a shallow copy of this <tt>HashMap</tt> instance: the keys and
+     * values themselves are not cloned.
+     *
+     * @return a shallow copy of this map
+     */
+    public Object clone() {
+        HashMap<K,V> result = null;
+        try {
+            result = (HashMap<K,V>)super.clone();
+        } catch (CloneNotSupportedException e) {
+            // assert false;
+        }
+        if (oldTable != null)
+            finishTransfer();
+        result.table = new Entry[table.length];
+        result.oldTable = null;
+        result.ownedBuckets = null;
+        result.stats = null;
+        result.setStatisticsEnabled(stats != null);
+        result.valueIndex = (valueIndex != null) ? new ValueIndex() : null;
+        result.entrySet = null;
+        result.modCount = 0;
+        result.size = 0;
+        result.init();
+        result.putAllForCreate(this);
+
+        return result;
+    }
+
+    static class Entry<K,V> implements Map.Entry<K,V> {
+        final K key;
+        V value;
+        Entry<K,V> next;
+        final int hash;
+
+        /**
+         * Creates new entry.
+         */
+        Entry(int h, K k, V v, Entry<K,V> n) {
+            value = v;
+            next = n;
+            key = k;
+            hash = h;
+        }
+
+        public final K getKey() {
+            return key;
+        }
+
+        public final V getValue() {
+            return value;
+        }
+
+        public final V setValue(V newValue) {
+            V oldValue = value;
+            value = newValue;
+            return oldValue;
+        }
+
+        public final boolean equals(Object o) {
+            if (!(o instanceof Map.Entry))
+                return false;
+            Map.Entry e = (Map.Entry)o;
+            Object k1 = getKey();
+            Object k2 = e.getKey();
+            if (k1 == k2 || (k1 != null && k1.equals(k2))) {
+                Object v1 = getValue();
+                Object v2 = e.getValue();
+                if (v1 == v2 || (v1 != null && v1.equals(v2)))
+                    return true;
+            }
+            return false;
+        }
+
+        public final int hashCode() {
+            return (key==null   ? 0 : key.hashCode()) ^
+                   (value==null ? 0 : value.hashCode());
+        }
+
+        public final String toString() {
+            return getKey() + "=" + getValue();
+        }
+
+        /**
+         * This method is invoked whenever the value in an entry is
+         * overwritten by an invocation of put(k,v) for a key k that's already
+         * in the HashMap.
+         */
+        void recordAccess(HashMap<K,V> m) {
+        }
+
+        /**
+         * This method is invoked instead of recordAccess when the value
+         * is overwritten by putIfAbsent, computeIfAbsent, computeIfPresent,
+         * compute or merge, which have already passed the entry to
+         * onLookup, so that a subclass that records the access there
+         * does not record it twice.  Calls recordAccess by default.
+         */
+        void recordUpdate(HashMap<K,V> m) {
+            recordAccess(m);
+        }
+
+        /**
+         * This method is invoked whenever the entry is
+         * removed from the table.
+         */
+        void recordRemoval(HashMap<K,V> m) {
+        }
+    }
+
+    /**
+     * Entry for tree buckets.  A tree bucket is a red-black tree ordered
+     * first by hash and then, for keys of the same class implementing
+     * Comparable, by compareTo; remaining ties are broken by class name
+     * and identity hash code.  The nodes also stay linked through
+     * <tt>next</tt> (and <tt>prev</tt>, so that a node can be unlinked in
+     * constant time), with the root always first in the bucket except
+     * transiently during iterator removal.
+     */
+    static class TreeEntry<K,V> extends Entry<K,V> {
+        TreeEntry<K,V> parent;  // red-black tree links
+        TreeEntry<K,V> left;
+        TreeEntry<K,V> right;
+        TreeEntry<K,V> prev;    // needed to unlink next upon deletion
+        boolean red;
+
+        TreeEntry(int h, K k, V v, Entry<K,V> n) {
+            super(h, k, v, n);
+        }
+
+        /**
+         * Returns root of tree containing this node.
+         */
+        final TreeEntry<K,V> root() {
+            for (TreeEntry<K,V> r = this, p;;) {
+                if ((p = r.parent) == null)
+                    return r;
+                r = p;
+            }
+        }
+
+        /**
+         * Ensures that the given root is the first node of its bucket.
+         */
+        static <K,V> void moveRootToFront(Entry[] tab, TreeEntry<K,V> root) {
+            int index = indexFor(root.hash, tab.length);
+            TreeEntry<K,V> first = (TreeEntry<K,V>)tab[index];
+            if (root != first) {
+                Entry<K,V> rn;
+                tab[index] = root;
+                TreeEntry<K,V> rp = root.prev;
+                if ((rn = root.next) != null)
+                    ((TreeEntry<K,V>)rn).prev = rp;
+                if (rp != null)
+                    rp.next = rn;
+                if (first != null)
+                    first.prev = root;
+                root.next = first;
+                root.prev = null;
+            }
+            assert checkInvariants(root);
+        }
+
+        /**
+         * Finds the node starting at root p with the given hash and key.
+         * The kc argument caches comparableClassFor(key) upon first use
+         * comparing keys.
+         */
+        final TreeEntry<K,V> find(int h, Object k, Class<?> kc) {
+            TreeEntry<K,V> p = this;
+            do {
+                int ph, dir; K pk;
+                TreeEntry<K,V> pl = p.left, pr = p.right, q;
+                if ((ph = p.hash) > h)
+                    p = pl;
+                else if (ph < h)
+                    p = pr;
+                else if ((pk = p.key) == k || (k != null && k.equals(pk)))
+                    return p;
+                else if (pl == null)
+                    p = pr;
+                else if (pr == null)
+                    p = pl;
+                else if ((kc != null ||
+                          (kc = comparableClassFor(k)) != null) &&
+                         (dir = compareComparables(kc, k, pk)) != 0)
+                    p = (dir < 0) ? pl : pr;
+                else if ((q = pr.find(h, k, kc)) != null)
+                    return q;
+                else
+                    p = pl;
+            } while (p != null);
+            return null;
+        }
+
+        /**
+         * find, counting in c each node visited as a probe and each call
+         * to equals.  Used by lookupEntry with statistics enabled.
+         */
+        final TreeEntry<K,V> find(int h, Object k, Class<?> kc,
+                                  HashMapStatistics.Counters c) {
+            TreeEntry<K,V> p = this;
+            do {
+                int ph, dir; K pk;
+                TreeEntry<K,V> pl = p.left, pr = p.right, q;
+                c.probes++;
+                if ((ph = p.hash) > h)
+                    p = pl;
+                else if (ph < h)
+                    p = pr;
+                else if ((pk = p.key) == k)
+                    return p;
+                else {
+                    if (k != null) {
+                        c.equals++;
+                        if (k.equals(pk))
+                            return p;
+                    }
+                    if (pl == null)
+                        p = pr;
+                    else if (pr == null)
+                        p = pl;
+                    else if ((kc != null ||
+                              (kc = comparableClassFor(k)) != null) &&
+                             (dir = compareComparables(kc, k, pk)) != 0)
+                        p = (dir < 0) ? pl : pr;
+                    else if ((q = pr.find(h, k, kc, c)) != null)
+                        return q;
+                    else
+                        p = pl;
+                }
+            } while (p != null);
+            return null;
+        }
+
+        /**
+         * Calls find for root node.
+         */
+        final TreeEntry<K,V> getTreeEntry(int h, Object k) {
+            return ((parent != null) ? root() : this).find(h, k, null);
+        }
+
+        /**
+         * Tie-breaking utility for ordering insertions when equal
+         * hashCodes and non-comparable.  We don't require a total
+         * order, just a consistent insertion rule to maintain
+         * equivalence across rebalancings.
+         */
+        static int tieBreakOrder(Object a, Object b) {
+            int d;
+            if (a == null || b == null ||
+                (d = a.getClass().getName().
+                 compareTo(b.getClass().getName())) == 0)
+                d = (System.identityHashCode(a) <= System.identityHashCode(b) ?
+                     -1 : 1);
+            return d;
+        }
+
+        /**
+         * Forms tree of the nodes linked from this node.
+         */
+        final void treeify(Entry[] tab) {
+            TreeEntry<K,V> root = null;
+            for (TreeEntry<K,V> x = this, next; x != null; x = next) {
+                next = (TreeEntry<K,V>)x.next;
+                x.left = x.right = null;
+                if (root == null) {
+                    x.parent = null;
+                    x.red = false;
+                    root = x;
+                }
+                else {
+                    K k = x.key;
+                    int h = x.hash;
+                    Class<?> kc = null;
+                    for (TreeEntry<K,V> p = root;;) {
+                        int dir, ph;
+                        K pk = p.key;
+                        if ((ph = p.hash) > h)
+                            dir = -1;
+                        else if (ph < h)
+                            dir = 1;
+                        else if ((kc == null &&
+                                  (kc = comparableClassFor(k)) == null) ||
+                                 (dir = compareComparables(kc, k, pk)) == 0)
+                            dir = tieBreakOrder(k, pk);
+
+                        TreeEntry<K,V> xp = p;
+                        if ((p = (dir <= 0) ? p.left : p.right) == null) {
+                            x.parent = xp;
+                            if (dir <= 0)
+                                xp.left = x;
+                            else
+                                xp.right = x;
+                            root = balanceInsertion(root, x);
+                            break;
+                        }
+                    }
+                }
+            }
+            moveRootToFront(tab, root);
+        }
+
+        /**
+         * Returns a chain of plain entries replacing those linked from
+         * this node.
+         */
+        final Entry<K,V> untreeify(HashMap<K,V> map) {
+            Entry<K,V> hd = null, tl = null;
+            for (Entry<K,V> q = this; q != null; q = q.next) {
+                Entry<K,V> p = map.replacementEntry(q, null);
+                if (tl == null)
+                    hd = p;
+                else
+                    tl.next = p;
+                tl = p;
+            }
+            return hd;
+        }
+
+        /**
+         * Tree version of putForCreate and addEntry: returns the existing
+         * node for the key if there is one, else inserts a new node and
+         * returns null.
+         */
+        final TreeEntry<K,V> putTreeVal(HashMap<K,V> map, Entry[] tab,
+                                        int h, K k, V v) {
+            Class<?> kc = null;
+            boolean searched = false;
+            TreeEntry<K,V> root = (parent != null) ? root() : this;
+            for (TreeEntry<K,V> p = root;;) {
+                int dir, ph; K pk;
+                if ((ph = p.hash) > h)
+                    dir = -1;
+                else if (ph < h)
+                    dir = 1;
+                else if ((pk = p.key) == k || (k != null && k.equals(pk)))
+                    return p;
+                else if ((kc == null &&
+                          (kc = comparableClassFor(k)) == null) ||
+                         (dir = compareComparables(kc, k, pk)) == 0) {
+                    if (!searched) {
+                        TreeEntry<K,V> q, ch;
+                        searched = true;
+                        if (((ch = p.left) != null &&
+                             (q = ch.find(h, k, kc)) != null) ||
+                            ((ch = p.right) != null &&
+                             (q = ch.find(h, k, kc)) != null))
+                            return q;
+                    }
+                    dir = tieBreakOrder(k, pk);
+                }
+
+                TreeEntry<K,V> xp = p;
+                if ((p = (dir <= 0) ? p.left : p.right) == null) {
+                    Entry<K,V> xpn = xp.next;
+                    TreeEntry<K,V> x = map.newTreeEntry(h, k, v, xpn);
+                    if (dir <= 0)
+                        xp.left = x;
+                    else
+                        xp.right = x;
+                    xp.next = x;
+                    x.parent = x.prev = xp;
+                    if (xpn != null)
+                        ((TreeEntry<K,V>)xpn).prev = x;
+                    moveRootToFront(tab, balanceInsertion(root, x));
+                    return null;
+                }
+            }
+        }
+
+        /**
+         * Removes the given node, that must be present before this call.
+         * This is messier than typical red-black deletion code because we
+         * cannot swap the contents of an interior node with a leaf
+         * successor that is pinned by "next" pointers that are accessible
+         * independently during traversal.  So instead we swap the tree
+         * linkages.  If the current tree appears to have too few nodes,
+         * the bucket is converted back to a plain chain.  (The test
+         * triggers somewhere between 2 and 6 nodes, depending on tree
+         * structure.)
+         */
+        final void removeTreeEntry(HashMap<K,V> map, Entry[] tab,
+                                   boolean movable) {
+            int index = indexFor(hash, tab.length);
+            TreeEntry<K,V> first = (TreeEntry<K,V>)tab[index], root = first, rl;
+            TreeEntry<K,V> succ = (TreeEntry<K,V>)next, pred = prev;
+            if (pred == null)
+                tab[index] = first = succ;
+            else
+                pred.next = succ;
+            if (succ != null)
+                succ.prev = pred;
+            if (first == null)
+                return;
+            if (root.parent != null)
+                root = root.root();
+            if (root == null
+                || (movable
+                    && (root.right == null
+                        || (rl = root.left) == null
+                        || rl.left == null))) {
+                tab[index] = first.untreeify(map);  // too small
+                return;
+            }
+            TreeEntry<K,V> p = this, pl = left, pr = right, replacement;
+            if (pl != null && pr != null) {
+                TreeEntry<K,V> s = pr, sl;
+                while ((sl = s.left) != null) // find successor
+                    s = sl;
+                boolean c = s.red; s.red = p.red; p.red = c; // swap colors
+                TreeEntry<K,V> sr = s.right;
+                TreeEntry<K,V> pp = p.parent;
+                if (s == pr) { // p was s's direct parent
+                    p.parent = s;
+                    s.right = p;
+                }
+                else {
+                    TreeEntry<K,V> sp = s.parent;
+                    if ((p.parent = sp) != null) {
+                        if (s == sp.left)
+                            sp.left = p;
+                        else
+                            sp.right = p;
+                    }
+                    if ((s.right = pr) != null)
+                        pr.parent = s;
+                }
+                p.left = null;
+                if ((p.right = sr) != null)
+                    sr.parent = p;
+                if ((s.left = pl) != null)
+                    pl.parent = s;
+                if ((s.parent = pp) == null)
+                    root = s;
+                else if (p == pp.left)
+                    pp.left = s;
+                else
+                    pp.right = s;
+                if (sr != null)
+                    replacement = sr;
+                else
+                    replacement = p;
+            }
+            else if (pl != null)
+                replacement = pl;
+            else if (pr != null)
+                replacement = pr;
+            else
+                replacement = p;
+            if (replacement != p) {
+                TreeEntry<K,V> pp = replacement.parent = p.parent;
+                if (pp == null)
+                    (root = replacement).red = false;
+                else if (p == pp.left)
+                    pp.left = replacement;
+                else
+                    pp.right = replacement;
+                p.left = p.right = p.parent = null;
+            }
+
+            TreeEntry<K,V> r = p.red ? root : balanceDeletion(root, replacement);
+
+            if (replacement == p) {  // detach
+                TreeEntry<K,V> pp = p.parent;
+                p.parent = null;
+                if (pp != null) {
+                    if (p == pp.left)
+                        pp.left = null;
+                    else if (p == pp.right)
+                        pp.right = null;
+                }
+            }
+            if (movable)
+                moveRootToFront(tab, r);
+        }
+
+        /**
+         * Moves the nodes of this tree bucket, found at index in a table
+         * of length oldCap, into newTab.  Each of the new buckets they
+         * land in is treeified again, or turned back into a plain chain
+         * if it is small enough.  Called only from transfer.
+         */
+        final void split(HashMap<K,V> map, Entry[] newTab, int index, int oldCap) {
+            for (TreeEntry<K,V> e = this, next; e != null; e = next) {
+                next = (TreeEntry<K,V>)e.next;
+                int i = indexFor(e.hash, newTab.length);
+                TreeEntry<K,V> hd = (TreeEntry<K,V>)newTab[i];
+                e.next = hd;
+                e.prev = null;
+                if (hd != null)
+                    hd.prev = e;
+                newTab[i] = e;
+            }
+            for (int i = index; i < newTab.length; i += oldCap) {
+                TreeEntry<K,V> hd = (TreeEntry<K,V>)newTab[i];
+                if (hd != null) {
+                    if (binCount(hd) <= UNTREEIFY_THRESHOLD)
+                        newTab[i] = hd.untreeify(map);
+                    else
+                        hd.treeify(newTab);
+                }
+            }
+        }
+
+        /* ------------------------------------------------------------ */
+        // Red-black tree methods, all adapted from CLR
+
+        static <K,V> TreeEntry<K,V> rotateLeft(TreeEntry<K,V> root,
+                                               TreeEntry<K,V> p) {
+            TreeEntry<K,V> r, pp, rl;
+            if (p != null && (r = p.right) != null) {
+                if ((rl = p.right = r.left) != null)
+                    rl.parent = p;
+                if ((pp = r.parent = p.parent) == null)
+                    (root = r).red = false;
+                else if (pp.left == p)
+                    pp.left = r;
+                else
+                    pp.right = r;
+                r.left = p;
+                p.parent = r;
+            }
+            return root;
+        }
+
+        static <K,V> TreeEntry<K,V> rotateRight(TreeEntry<K,V> root,
+                                                TreeEntry<K,V> p) {
+            TreeEntry<K,V> l, pp, lr;
+            if (p != null && (l = p.left) != null) {
+                if ((lr = p.left = l.right) != null)
+                    lr.parent = p;
+                if ((pp = l.parent = p.parent) == null)
+                    (root = l).red = false;
+                else if (pp.right == p)
+                    pp.right = l;
+                else
+                    pp.left = l;
+                l.right = p;
+                p.parent = l;
+            }
+            return root;
+        }
+
+        static <K,V> TreeEntry<K,V> balanceInsertion(TreeEntry<K,V> root,
+                                                     TreeEntry<K,V> x) {
+            x.red = true;
+            for (TreeEntry<K,V> xp, xpp, xppl, xppr;;) {
+                if ((xp = x.parent) == null) {
+                    x.red = false;
+                    return x;
+                }
+                else if (!xp.red || (xpp = xp.parent) == null)
+                    return root;
+                if (xp == (xppl = xpp.left)) {
+                    if ((xppr = xpp.right) != null && xppr.red) {
+                        xppr.red = false;
+                        xp.red = false;
+                        xpp.red = true;
+                        x = xpp;
+                    }
+                    else {
+                        if (x == xp.right) {
+                            root = rotateLeft(root, x = xp);
+                            xpp = (xp = x.parent) == null ? null : xp.parent;
+                        }
+                        if (xp != null) {
+                            xp.red = false;
+                            if (xpp != null) {
+                                xpp.red = true;
+                                root = rotateRight(root, xpp);
+                            }
+                        }
+                    }
+                }
+                else {
+                    if (xppl != null && xppl.red) {
+                        xppl.red = false;
+                        xp.red = false;
+                        xpp.red = true;
+                        x = xpp;
+                    }
+                    else {
+                        if (x == xp.left) {
+                            root = rotateRight(root, x = xp);
+                            xpp = (xp = x.parent) == null ? null : xp.parent;
+                        }
+                        if (xp != null) {
+                            xp.red = false;
+                            if (xpp != null) {
+                                xpp.red = true;
+                                root = rotateLeft(root, xpp);
+                            }
+                        }
+                    }
+                }
+            }
+        }
+
+        static <K,V> TreeEntry<K,V> balanceDeletion(TreeEntry<K,V> root,
+                                                    TreeEntry<K,V> x) {
+            for (TreeEntry<K,V> xp, xpl, xpr;;) {
+                if (x == null || x == root)
+                    return root;
+                else if ((xp = x.parent) == null) {
+                    x.red = false;
+                    return x;
+                }
+                else if (x.red) {
+                    x.red = false;
+                    return root;
+                }
+                else if ((xpl = xp.left) == x) {
+                    if ((xpr = xp.right) != null && xpr.red) {
+                        xpr.red = false;
+                        xp.red = true;
+                        root = rotateLeft(root, xp);
+                        xpr = (xp = x.parent) == null ? null : xp.right;
+                    }
+                    if (xpr == null)
+                        x = xp;
+                    else {
+                        TreeEntry<K,V> sl = xpr.left, sr = xpr.right;
+                        if ((sr == null || !sr.red) &&
+                            (sl == null || !sl.red)) {
+                            xpr.red = true;
+                            x = xp;
+                        }
+                        else {
+                            if (sr == null || !sr.red) {
+                                if (sl != null)
+                                    sl.red = false;
+                                xpr.red = true;
+                                root = rotateRight(root, xpr);
+                                xpr = (xp = x.parent) == null ?
+                                    null : xp.right;
+                            }
+                            if (xpr != null) {
+                                xpr.red = (xp == null) ? false : xp.red;
+                                if ((sr = xpr.right) != null)
+                                    sr.red = false;
+                            }
+                            if (xp != null) {
+                                xp.red = false;
+                                root = rotateLeft(root, xp);
+                            }
+                            x = root;
+                        }
+                    }
+                }
+                else { // symmetric
+                    if (xpl != null && xpl.red) {
+                        xpl.red = false;
+                        xp.red = true;
+                        root = rotateRight(root, xp);
+                        xpl = (xp = x.parent) == null ? null : xp.left;
+                    }
+                    if (xpl == null)
+                        x = xp;
+                    else {
+                        TreeEntry<K,V> sl = xpl.left, sr = xpl.right;
+                        if ((sl == null || !sl.red) &&
+                            (sr == null || !sr.red)) {
+                            xpl.red = true;
+                            x = xp;
+                        }
+                        else {
+                            if (sl == null || !sl.red) {
+                                if (sr != null)
+                                    sr.red = false;
+                                xpl.red = true;
+                                root = rotateLeft(root, xpl);
+                                xpl = (xp = x.parent) == null ?
+                                    null : xp.left;
+                            }
+                            if (xpl != null) {
+                                xpl.red = (xp == null) ? false : xp.red;
+                                if ((sl = xpl.left) != null)
+                                    sl.red = false;
+                            }
+                            if (xp != null) {
+                                xp.red = false;
+                                root = rotateRight(root, xp);
+                            }
+                            x = root;
+                        }
+                    }
+                }
+            }
+        }
+
+        /**
+         * Recursive invariant check
+         */
+        static <K,V> boolean checkInvariants(TreeEntry<K,V> t) {
+            TreeEntry<K,V> tp = t.parent, tl = t.left, tr = t.right,
+                tb = t.prev, tn = (TreeEntry<K,V>)t.next;
+            if (tb != null && tb.next != t)
+                return false;
+            if (tn != null && tn.prev != t)
+                return false;
+            if (tp != null && t != tp.left && t != tp.right)
+                return false;
+            if (tl != null && (tl.parent != t || tl.hash > t.hash))
+                return false;
+            if (tr != null && (tr.parent != t || tr.hash < t.hash))
+                return false;
+            if (t.red && tl != null && tl.red && tr != null && tr.red)
+                return false;
+            if (tl != null && !checkInvariants(tl))
+                return false;
+            if (tr != null && !checkInvariants(tr))
+                return false;
+            return true;
+        }
+    }
+
+    /**
+     * Adds a new entry with the specified key, value and hash code to
+     * the specified bucket.  It is the responsibility of this
+     * method to resize the table if appropriate.
+     *
+     * Subclass overrides this to alter the behavior of put method.
+     */
+    void addEntry(int hash, K key, V value, int bucketIndex) {
+        Entry[] tab = tableFor(hash);
+        Entry<K,V> e = tab[bucketIndex];
+        if (e instanceof TreeEntry) {
+            ((TreeEntry<K,V>)e).putTreeVal(this, tab, hash, key, value);
+        } else {
+            tab[bucketIndex] = newEntry(hash, key, value, e);
+            if (strategy == null && binCount(e) >= TREEIFY_THRESHOLD - 1) {
+                if (table.length < MIN_TREEIFY_CAPACITY)
+                    resize(2 * table.length);
+                else
+                    treeifyBin(tab, bucketIndex);
+            }
+        }
+        if (valueIndex != null)
+            valueIndex.add(key, value);
+        if (size++ >= threshold)
+            resize(2 * table.length);
+    }
+
+    /**
+     * Like addEntry except that this version is used when creating entries
+     * as part of Map construction or "pseudo-construction" (cloning,
+     * deserialization).  This version needn't worry about resizing the table.
+     *
+     * Subclass overrides this to alter the behavior of HashMap(Map),
+     * clone, and readObject.
+     */
+    void createEntry(int hash, K key, V value, int bucketIndex) {
+        Entry[] tab = tableFor(hash);
+        Entry<K,V> e = tab[bucketIndex];
+        if (e instanceof TreeEntry) {
+            ((TreeEntry<K,V>)e).putTreeVal(this, tab, hash, key, value);
+        } else {
+            tab[bucketIndex] = newEntry(hash, key, value, e);
+            if (strategy == null && binCount(e) >= TREEIFY_THRESHOLD - 1 &&
+                tab.length >= MIN_TREEIFY_CAPACITY)
+                treeifyBin(tab, bucketIndex);
+        }
+        if (valueIndex != null)
+            valueIndex.add(key, value);
+        size++;
+    }
+
+    /**
+     * Returns the length of the chain starting at e, counting no further
+     * than TREEIFY_THRESHOLD.
+     */
+    static int binCount(Entry e) {
+        int n = 0;
+        for (; e != null && n < TREEIFY_THRESHOLD; e = e.next)
+            n++;
+        return n;
+    }
+
+    /**
+     * Replaces the chain in bucket index of tab with a tree holding the
+     * same mappings.
+     */
+    final void treeifyBin(Entry[] tab, int index) {
+        TreeEntry<K,V> hd = null, tl = null;
+        for (Entry<K,V> e = tab[index]; e != null; e = e.next) {
+            TreeEntry<K,V> p = replacementTreeEntry(e, null);
+            if ((p.prev = tl) == null)
+                hd = p;
+            else
+                tl.next = p;
+            tl = p;
+        }
+        if ((tab[index] = hd) != null)
+            hd.treeify(tab);
+    }
+
+    /**
+     * Replaces the entries in bucket index of tab with copies, leaving
+     * the originals to the snapshots that share them.
+     */
+    final void copyBucket(Entry[] tab, int index) {
+        if (tab[index] instanceof TreeEntry) {
+            treeifyBin(tab, index);
+            return;
+        }
+        Entry<K,V> hd = null, tl = null;
+        for (Entry<K,V> e = tab[index]; e != null; e = e.next) {
+            Entry<K,V> p = replacementEntry(e, null);
+            if (tl == null)
+                hd = p;
+            else
+                tl.next = p;
+            tl = p;
+        }
+        tab[index] = hd;
+    }
+
+    // Entry factories, overridden by subclasses that keep extra state in
+    // their entries.  The replacement methods are used when a bucket is
+    // converted between a chain and a tree, and must carry that state
+    // over from p.
+
+    Entry<K,V> newEntry(int hash, K key, V value, Entry<K,V> next) {
+        return new Entry<>(hash, key, value, next);
+    }
+
+    Entry<K,V> replacementEntry(Entry<K,V> p, Entry<K,V> next) {
+        return new Entry<>(p.hash, p.key, p.value, next);
+    }
+
+    TreeEntry<K,V> newTreeEntry(int hash, K key, V value, Entry<K,V> next) {
+        return new TreeEntry<>(hash, key, value, next);
+    }
+
+    TreeEntry<K,V> replacementTreeEntry(Entry<K,V> p, Entry<K,V> next) {
+        return new TreeEntry<>(p.hash, p.key, p.value, next);
+    }
+
+    private abstract class HashIterator<E> implements Iterator<E> {
+        Entry<K,V> next;        // next entry to return
+        int expectedModCount;   // For fast-fail
+        int index;              // current slot
+        Entry<K,V> current;     // current entry
+
+        HashIterator() {
+            if (oldTable != null)
+                finishTransfer();
+            expectedModCount = modCount;
+            if (size > 0) { // advance to first entry
+                Entry[] t = table;
+                while (index < t.length && (next = t[index++]) == null)
+                    ;
+            }
+        }
+
+        public final boolean hasNext() {
+            return next != null;
+        }
+
+        final Entry<K,V> nextEntry() {
+            if (modCount != expectedModCount)
+                throw new ConcurrentModificationException();
+            Entry<K,V> e = next;
+            if (e == null)
+                throw new NoSuchElementException();
+
+            if ((next = e.next) == null) {
+                Entry[] t = table;
+                while (index < t.length && (next = t[index++]) == null)
+                    ;
+            }
+            current = e;
+            return e;
+        }
+
+        public void remove() {
+            if (current == null)
+                throw new IllegalStateException();
+            if (modCount != expectedModCount)
+                throw new ConcurrentModificationException();
+            Object k = current.key;
+            current = null;
+            HashMap.this.removeEntryForKey(k, false);
+            expectedModCount = modCount;
+        }
+
+    }
+
+    private final class ValueIterator extends HashIterator<V> {
+        public V next() {
+            return nextEntry().value;
+        }
+    }
+
+    private final class KeyIterator extends HashIterator<K> {
+        public K next() {
+            return nextEntry().getKey();
+        }
+    }
+
+    private final class EntryIterator extends HashIterator<Map.Entry<K,V>> {
+        public Map.Entry<K,V> next() {
+            Entry<K,V> e = nextEntry();
+            if (valueIndex == null && ownedBuckets == null)
+                return e;
+            return new WrappedEntry(e);
+        }
+    }
+
+    /**
+     * The entry returned by the entry set iterator while the value index
+     * is enabled, so that setValue also updates the index, or while
+     * buckets are shared with a snapshot, so that setValue first copies
+     * the entry's bucket and writes the copy rather than the entry the
+     * snapshot sees.  A mapping removed since it was returned is left
+     * alone.
+     */
+    private final class WrappedEntry implements Map.Entry<K,V> {
+        private Entry<K,V> e;
+        private boolean shared;     // e may belong to a snapshot
+
+        WrappedEntry(Entry<K,V> e) {
+            this.e = e;
+            this.shared = (ownedBuckets != null);
+        }
+
+        public K getKey() {
+            return e.key;
+        }
+
+        public V getValue() {
+            return e.value;
+        }
+
+        public V setValue(V value) {
+            if (shared || ownedBuckets != null) {
+                int hash = e.hash;
+                Entry[] tab = tableFor(hash);
+                int i = indexFor(hash, tab.length);
+                if (ownedBuckets != null)
+                    ownBucket(i);
+                Entry<K,V> live = findEntry(tab[i], hash, e.key);
+                if (live == null)
+                    return e.value;
+                e = live;
+                shared = false;
+            }
+            V oldValue = e.value;
+            setEntryValue(e, value);
+            return oldValue;
+        }
+
+        public boolean equals(Object o) {
+            return e.equals(o);
+        }
+
+        public int hashCode() {
+            return e.hashCode();
+        }
+
+        public String toString() {
+            return e.toString();
+        }
+    }
+
+    // Subclass overrides these to alter behavior of views' iterator() method
+    Iterator<K> newKeyIterator()   {
+        return new KeyIterator();
+    }
+    Iterator<V> newValueIterator()   {
+        return new ValueIterator();
+    }
+    Iterator<Map.Entry<K,V>> newEntryIterator()   {
+        return new EntryIterator();
+    }
+
+
+    // Views
+
+    private transient Set<Map.Entry<K,V>> entrySet = null;
+
+    /**
+     * Returns a {@link Set} view of the keys contained in this map.
+     * The set is backed by the map, so changes to the map are
+     * reflected in the set, and vice-versa.  If the map is modified
+     * while an iteration over the set is in progress (except through
+     * the iterator's own <tt>remove</tt> operation), the results of
+     * the iteration are undefined.  The set supports element removal,
+     * which removes the corresponding mapping from the map, via the
+     * <tt>Iterator.remove</tt>, <tt>Set.remove</tt>,
+     * <tt>removeAll</tt>, <tt>retainAll</tt>, and <tt>clear</tt>
+     * operations.  It does not support the <tt>add</tt> or <tt>addAll</tt>
+     * operations.
+     */
+    public Set<K> keySet() {
+        Set<K> ks = keySet;
+        return (ks != null ? ks : (keySet = new KeySet()));
+    }
+
+    private final class KeySet extends AbstractSet<K> {
+        public Iterator<K> iterator() {
+            return newKeyIterator();
+        }
+        public Spliterator<K> spliterator() {
+            return new KeySpliterator<>(HashMap.this, 0, -1, 0, 0);
+        }
+        public int size() {
+            return size;
+        }
+        public boolean contains(Object o) {
+            return containsKey(o);
+        }
+        public boolean remove(Object o) {
+            return HashMap.this.removeEntryForKey(o) != null;
+        }
+        public void clear() {
+            HashMap.this.clear();
+        }
+    }
+
+    /**
+     * Returns a {@link Collection} view of the values contained in this map.
+     * The collection is backed by the map, so changes to the map are
+     * reflected in the collection, and vice-versa.  If the map is
+     * modified while an iteration over the collection is in progress
+     * (except through the iterator's own <tt>remove</tt> operation),
+     * the results of the iteration are undefined.  The collection
+     * supports element removal, which removes the corresponding
+     * mapping from the map, via the <tt>Iterator.remove</tt>,
+     * <tt>Collection.remove</tt>, <tt>removeAll</tt>,
+     * <tt>retainAll</tt> and <tt>clear</tt> operations.  It does not
+     * support the <tt>add</tt> or <tt>addAll</tt> operations.
+     */
+    public Collection<V> values() {
+        Collection<V> vs = values;
+        return (vs != null ? vs : (values = new Values()));
+    }
+
+    private final class Values extends AbstractCollection<V> {
+        public Iterator<V> iterator() {
+            return newValueIterator();
+        }
+        public Spliterator<V> spliterator() {
+            return new ValueSpliterator<>(HashMap.this, 0, -1, 0, 0);
+        }
+        public int size() {
+            return size;
+        }
+        public boolean contains(Object o) {
+            return containsValue(o);
+        }
+        public void clear() {
+            HashMap.this.clear();
+        }
+    }
+
+    /**
+     * Returns a {@link Set} view of the mappings contained in this map.
+     * The set is backed by the map, so changes to the map are
+     * reflected in the set, and vice-versa.  If the map is modified
+     * while an iteration over the set is in progress (except through
+     * the iterator's own <tt>remove</tt> operation, or through the
+     * <tt>setValue</tt> operation on a map entry returned by the
+     * iterator) the results of the iteration are undefined.  The set
+     * supports element removal, which removes the corresponding
+     * mapping from the map, via the <tt>Iterator.remove</tt>,
+     * <tt>Set.remove</tt>, <tt>removeAll</tt>, <tt>retainAll</tt> and
+     * <tt>clear</tt> operations.  It does not support the
+     * <tt>add</tt> or <tt>addAll</tt> operations.
+     *
+     * @return a set view of the mappings contained in this map
+     */
+    public Set<Map.Entry<K,V>> entrySet() {
+        return entrySet0();
+    }
+
+    private Set<Map.Entry<K,V>> entrySet0() {
+        Set<Map.Entry<K,V>> es = entrySet;
+        return es != null ? es : (entrySet = new EntrySet());
+    }
+
+    private final class EntrySet extends AbstractSet<Map.Entry<K,V>> {
+        public Iterator<Map.Entry<K,V>> iterator() {
+            return newEntryIterator();
+        }
+        public Spliterator<Map.Entry<K,V>> spliterator() {
+            // Only the iterator wraps entries, which setValue needs to
+            // update the value index or to reach no snapshot.
+            if (valueIndex != null || ownedBuckets != null)
+                return Spliterators.spliterator(this, Spliterator.DISTINCT);
+            return new EntrySpliterator<>(HashMap.this, 0, -1, 0, 0);
+        }
+        public boolean contains(Object o) {
+            if (!(o instanceof Map.Entry))
+                return false;
+            Map.Entry<K,V> e = (Map.Entry<K,V>) o;
+            Entry<K,V> candidate = getEntry(e.getKey());
+            return candidate != null && candidate.equals(e);
+        }
+        public boolean remove(Object o) {
+            return removeMapping(o) != null;
+        }
+        public int size() {
+            return size;
+        }
+        public void clear() {
+            HashMap.this.clear();
+        }
+    }
+
+    /**
+     * Base of the view spliterators.  A spliterator covers the table
+     * indices [index, fence); it is late-binding, so the range and the
+     * size estimate are fixed on first use, and splits halve the range.
+     * The size estimate is exact until the first split, after which
+     * each half is assumed to hold half of the entries.
+     */
+    static class HashMapSpliterator<K,V> {
+        final HashMap<K,V> map;
+        Entry<K,V> current;         // current entry
+        int index;                  // current index, modified on advance/split
+        int fence;                  // one past last index, or -1 until bound
+        int est;                    // size estimate
+        int expectedModCount;       // for comodification checks
+
+        HashMapSpliterator(HashMap<K,V> m, int origin,
+                           int fence, int est,
+                           int expectedModCount) {
+            this.map = m;
+            this.index = origin;
+            this.fence = fence;
+            this.est = est;
+            this.expectedModCount = expectedModCount;
+        }
+
+        final int getFence() { // initialize fence and size on first use
+            int hi;
+            if ((hi = fence) < 0) {
+                HashMap<K,V> m = map;
+                if (m.oldTable != null)
+                    m.finishTransfer();
+                est = m.size;
+                expectedModCount = m.modCount;
+                hi = fence = m.table.length;
+            }
+            return hi;
+        }
+
+        public final long estimateSize() {
+            getFence(); // force init
+            return (long) est;
+        }
+    }
+
+    static final class KeySpliterator<K,V>
+        extends HashMapSpliterator<K,V>
+        implements Spliterator<K> {
+        KeySpliterator(HashMap<K,V> m, int origin, int fence, int est,
+                       int expectedModCount) {
+            super(m, origin, fence, est, expectedModCount);
+        }
+
+        public KeySpliterator<K,V> trySplit() {
+            int hi = getFence(), lo = index, mid = (lo + hi) >>> 1;
+            return (lo >= mid || current != null) ? null :
+                new KeySpliterator<>(map, lo, index = mid, est >>>= 1,
+                                     expectedModCount);
+        }
+
+        public void forEachRemaining(Consumer<? super K> action) {
+            int i, hi, mc;
+            if (action == null)
+                throw new NullPointerException();
+            HashMap<K,V> m = map;
+            hi = getFence();
+            mc = expectedModCount;
+            Entry[] tab = m.table;
+            if (tab.length >= hi && (i = index) >= 0 &&
+                (i < (index = hi) || current != null)) {
+                Entry<K,V> p = current;
+                current = null;
+                do {
+                    if (p == null)
+                        p = tab[i++];
+                    else {
+                        action.accept(p.key);
+                        p = p.next;
+                    }
+                } while (p != null || i < hi);
+                if (m.modCount != mc)
+                    throw new ConcurrentModificationException();
+            }
+        }
+
+        public boolean tryAdvance(Consumer<? super K> action) {
+            int hi;
+            if (action == null)
+                throw new NullPointerException();
+            hi = getFence();
+            Entry[] tab = map.table;
+            if (tab.length >= hi && index >= 0) {
+                while (current != null || index < hi) {
+                    if (current == null)
+                        current = tab[index++];
+                    else {
+                        K k = current.key;
+                        current = current.next;
+                        action.accept(k);
+                        if (map.modCount != expectedModCount)
+                            throw new ConcurrentModificationException();
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+
+        public int characteristics() {
+            return (fence < 0 || est == map.size ? Spliterator.SIZED : 0) |
+                Spliterator.DISTINCT;
+        }
+    }
+
+    static final class ValueSpliterator<K,V>
+        extends HashMapSpliterator<K,V>
+        implements Spliterator<V> {
+        ValueSpliterator(HashMap<K,V> m, int origin, int fence, int est,
+                         int expectedModCount) {
+            super(m, origin, fence, est, expectedModCount);
+        }
+
+        public ValueSpliterator<K,V> trySplit() {
+            int hi = getFence(), lo = index, mid = (lo + hi) >>> 1;
+            return (lo >= mid || current != null) ? null :
+                new ValueSpliterator<>(map, lo, index = mid, est >>>= 1,
+                                       expectedModCount);
+        }
+
+        public void forEachRemaining(Consumer<? super V> action) {
+            int i, hi, mc;
+            if (action == null)
+                throw new NullPointerException();
+            HashMap<K,V> m = map;
+            hi = getFence();
+            mc = expectedModCount;
+            Entry[] tab = m.table;
+            if (tab.length >= hi && (i = index) >= 0 &&
+                (i < (index = hi) || current != null)) {
+                Entry<K,V> p = current;
+                current = null;
+                do {
+                    if (p == null)
+                        p = tab[i++];
+                    else {
+                        action.accept(p.value);
+                        p = p.next;
+                    }
+                } while (p != null || i < hi);
+                if (m.modCount != mc)
+                    throw new ConcurrentModificationException();
+            }
+        }
+
+        public boolean tryAdvance(Consumer<? super V> action) {
+            int hi;
+            if (action == null)
+                throw new NullPointerException();
+            hi = getFence();
+            Entry[] tab = map.table;
+            if (tab.length >= hi && index >= 0) {
+                while (current != null || index < hi) {
+                    if (current == null)
+                        current = tab[index++];
+                    else {
+                        V v = current.value;
+                        current = current.next;
+                        action.accept(v);
+                        if (map.modCount != expectedModCount)
+                            throw new ConcurrentModificationException();
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+
+        public int characteristics() {
+            return (fence < 0 || est == map.size ? Spliterator.SIZED : 0);
+        }
+    }
+
+    static final class EntrySpliterator<K,V>
+        extends HashMapSpliterator<K,V>
+        implements Spliterator<Map.Entry<K,V>> {
+        EntrySpliterator(HashMap<K,V> m, int origin, int fence, int est,
+                         int expectedModCount) {
+            super(m, origin, fence, est, expectedModCount);
+        }
+
+        public EntrySpliterator<K,V> trySplit() {
+            int hi = getFence(), lo = index, mid = (lo + hi) >>> 1;
+            return (lo >= mid || current != null) ? null :
+                new EntrySpliterator<>(map, lo, index = mid, est >>>= 1,
+                                       expectedModCount);
+        }
+
+        public void forEachRemaining(Consumer<? super Map.Entry<K,V>> action) {
+            int i, hi, mc;
+            if (action == null)
+                throw new NullPointerException();
+            HashMap<K,V> m = map;
+            hi = getFence();
+            mc = expectedModCount;
+            Entry[] tab = m.table;
+            if (tab.length >= hi && (i = index) >= 0 &&
+                (i < (index = hi) || current != null)) {
+                Entry<K,V> p = current;
+                current = null;
+                do {
+                    if (p == null)
+                        p = tab[i++];
+                    else {
+                        action.accept(p);
+                        p = p.next;
+                    }
+                } while (p != null || i < hi);
+                if (m.modCount != mc)
+                    throw new ConcurrentModificationException();
+            }
+        }
+
+        public boolean tryAdvance(Consumer<? super Map.Entry<K,V>> action) {
+            int hi;
+            if (action == null)
+                throw new NullPointerException();
+            hi = getFence();
+            Entry[] tab = map.table;
+            if (tab.length >= hi && index >= 0) {
+                while (current != null || index < hi) {
+                    if (current == null)
+                        current = tab[index++];
+                    else {
+                        Entry<K,V> e = current;
+                        current = current.next;
+                        action.accept(e);
+                        if (map.modCount != expectedModCount)
+                            throw new ConcurrentModificationException();
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+
+        public int characteristics() {
+            return (fence < 0 || est == map.size ? Spliterator.SIZED : 0) |
+                Spliterator.DISTINCT;
+        }
+    }
+
+    /**
+     * Save the state of the <tt>HashMap</tt> instance to a stream (i.e.,
+     * serialize it).
+     *
+     * @serialData The <i>capacity</i> of the HashMap (the length of the
+     *             bucket array) is emitted (int), followed by the
+     *             <i>size</i> (an int, the number of key-value
+     *             mappings), followed by the key (Object) and value (Object)
+     *             for each key-value mapping.  The key-value mappings are
+     *             emitted in no particular order.
+     */
+    private void writeObject(java.io.ObjectOutputStream s)
+        throws IOException
+    {
+        Iterator<Map.Entry<K,V>> i =
+            (size > 0) ? entrySet0().iterator() : null;
+
+        // Write out the threshold, loadfactor, and any hidden stuff
+        s.defaultWriteObject();
+
+        // Write out number of buckets
+        s.writeInt(table.length);
+
+        // Write out size (number of Mappings)
+        s.writeInt(size);
+
+        // Write out keys and values (alternating)
+        if (i != null) {
+            while (i.hasNext()) {
+                Map.Entry<K,V> e = i.next();
+                s.writeObject(e.getKey());
+                s.writeObject(e.getValue());
+            }
+        }
+    }
+
+    private static final long serialVersionUID = 362498820763181265L;
+
+    /**
+     * Reconstitute the <tt>HashMap</tt> instance from a stream (i.e.,
+     * deserialize it).
+     */
+    private void readObject(java.io.ObjectInputStream s)
+         throws IOException, ClassNotFoundException
+    {
+        // Read in the threshold, loadfactor, and any hidden stuff
+        s.defaultReadObject();
+        if (minCapacity < 1)    // written before minCapacity was kept
+            minCapacity = DEFAULT_INITIAL_CAPACITY;
+
+        // Read in number of buckets and allocate the bucket array;
+        int numBuckets = s.readInt();
+        table = new Entry[numBuckets];
+
+        init();  // Give subclass a chance to do its thing.
+
+        // Read in size (number of Mappings)
+        int size = s.readInt();
+
+        // Read the keys and values, and put the mappings in the HashMap
+        for (int i=0; i<size; i++) {
+            K key = (K) s.readObject();
+            V value = (V) s.readObject();
+            putForCreate(key, value);
+        }
+    }
+
+    /**
+     * Enables or disables the collection of statistics by this map.
+     * Enabling statistics on a map that already collects them has no
+     * effect; disabling them discards the counters.
+     *
+     * <p>With statistics enabled, the operations that look a key up
+     * count the probes and <tt>equals</tt> calls they make as they make
+     * them, and resizes are timed.
+     *
+     * @param enabled whether to collect statistics
+     * @see HashMapStatistics
+     */
+    public void setStatisticsEnabled(boolean enabled) {
+        if (!enabled)
+            stats = null;
+        else if (stats == null)
+            stats = new HashMapStatistics.Counters();
+    }
+
+    /**
+     * Returns a snapshot of the statistics collected by this map.
+     *
+     * @return the statistics
+     * @throws IllegalStateException if statistics are not enabled
+     */
+    public HashMapStatistics statistics() {
+        HashMapStatistics.Counters c = stats;
+        if (c == null)
+            throw new IllegalStateException("Statistics are not enabled");
+        return new HashMapStatistics(this, c);
+    }
+
+    /**
+     * Enables or disables the value index of this map, which makes it
+     * bidirectional.  While enabled, a second hash index from values to
+     * the keys mapped to them is kept up to date by every insertion,
+     * removal and value change, including <tt>Map.Entry.setValue</tt>
+     * on the entry set.  <tt>containsValue</tt> and {@link #getKey} then
+     * take constant time instead of scanning the table, and
+     * {@link #inverse} is available.  The index costs one node per
+     * mapping and is rebuilt from scratch when enabled.  Like the hash
+     * of a key, the hash of a value must not change while it is mapped.
+     *
+     * <p>The index is not serialized.  A clone has the index enabled if
+     * this map has.
+     *
+     * @param enabled whether to keep the value index
+     */
+    public void setValueIndexEnabled(boolean enabled) {
+        if (!enabled) {
+            valueIndex = null;
+        } else if (valueIndex == null) {
+            if (oldTable != null)
+                finishTransfer();
+            ValueIndex index = new ValueIndex();
+            for (Entry e : table)
+                for (; e != null; e = e.next)
+                    index.add(e.key, e.value);
+            valueIndex = index;
+        }
+    }
+
+    /**
+     * Returns a key mapped to the specified value, or <tt>null</tt> if
+     * there is none.  If several keys map to the value, which one is
+     * returned is unspecified.  A <tt>null</tt> return can also indicate
+     * that the value is mapped from the <tt>null</tt> key.
+     *
+     * @param  value value whose key is to be returned
+     * @return a key mapped to the value, or <tt>null</tt>
+     * @throws IllegalStateException if the value index is not enabled
+     */
+    @SuppressWarnings("unchecked")
+    public K getKey(Object value) {
+        ValueIndex.Node n = valueIndex().find(value);
+        return (n == null) ? null : (K) n.key;
+    }
+
+    /**
+     * Returns a read-only view of this map from values to keys, backed
+     * by the value index.  Each distinct value appears once, mapped to
+     * the key {@link #getKey} returns for it, so the view is the exact
+     * inverse of this map when no two keys share a value.  The view
+     * fails with IllegalStateException once the value index is
+     * disabled.
+     *
+     * @return an inverse view of this map
+     * @throws IllegalStateException if the value index is not enabled
+     */
+    public Map<V,K> inverse() {
+        valueIndex();
+        return new Inverse();
+    }
+
+    private ValueIndex valueIndex() {
+        ValueIndex index = valueIndex;
+        if (index == null)
+            throw new IllegalStateException("Value index is not enabled");
+        return index;
+    }
+
+    /**
+     * Sets the value of e, a mapping of this map, keeping the value
+     * index up to date.
+     */
+    final void setEntryValue(Entry<K,V> e, V value) {
+        if (valueIndex != null)
+            valueIndex.update(e.key, e.value, value);
+        e.value = value;
+    }
+
+    private final class Inverse extends AbstractMap<V,K> {
+        public int size() {
+            return valueIndex().distinct;
+        }
+
+        public boolean containsKey(Object value) {
+            return valueIndex().find(value) != null;
+        }
+
+        public K get(Object value) {
+            return getKey(value);
+        }
+
+        public boolean containsValue(Object key) {
+            valueIndex();
+            return HashMap.this.containsKey(key);
+        }
+
+        public Set<Map.Entry<V,K>> entrySet() {
+            return new AbstractSet<Map.Entry<V,K>>() {
+                public Iterator<Map.Entry<V,K>> iterator() {
+                    return new InverseIterator(valueIndex());
+                }
+                public int size() {
+                    return valueIndex().distinct;
+                }
+            };
+        }
+    }
+
+    /**
+     * Iterates the distinct values of the value index: a node is skipped
+     * if an earlier node of its chain holds an equal value.
+     */
+    private final class InverseIterator implements Iterator<Map.Entry<V,K>> {
+        private final ValueIndex index;
+        private final int expectedModCount = modCount;
+        private ValueIndex.Node next;
+        private int slot;
+
+        InverseIterator(ValueIndex index) {
+            this.index = index;
+            advance(null);
+        }
+
+        private void advance(ValueIndex.Node n) {
+            ValueIndex.Node[] tab = index.table;
+            for (;;) {
+                n = (n != null) ? n.next : null;
+                while (n == null && slot < tab.length)
+                    n = tab[slot++];
+                if (n == null || index.isFirst(n))
+                    break;
+            }
+            next = n;
+        }
+
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @SuppressWarnings("unchecked")
+        public Map.Entry<V,K> next() {
+            if (modCount != expectedModCount || valueIndex != index)
+                throw new ConcurrentModificationException();
+            ValueIndex.Node n = next;
+            if (n == null)
+                throw new NoSuchElementException();
+            advance(n);
+            return new AbstractMap.SimpleImmutableEntry<>((V) n.value, (K) n.key);
+        }
+    }
+
+    /**
+     * A hash index of the mappings of a map by value, with one node per
+     * mapping.  Nodes for equal values share a chain, so the number of
+     * distinct values is kept by checking the chain on each change.
+     */
+    static final class ValueIndex {
+        static final class Node {
+            final int hash;
+            final Object value;
+            final Object key;
+            Node next;
+
+            Node(int hash, Object value, Object key, Node next) {
+                this.hash = hash;
+                this.value = value;
+                this.key = key;
+                this.next = next;
+            }
+        }
+
+        Node[] table = new Node[DEFAULT_INITIAL_CAPACITY];
+        int size;
+        int distinct;
+
+        static int hashOf(Object value) {
+            return (value == null) ? 0 : hash(value.hashCode());
+        }
+
+        static boolean eq(Object a, Object b) {
+            return a == b || (a != null && a.equals(b));
+        }
+
+        /**
+         * Returns the first node for value, or null.
+         */
+        Node find(Object value) {
+            int h = hashOf(value);
+            for (Node n = table[indexFor(h, table.length)]; n != null; n = n.next)
+                if (n.hash == h && eq(value, n.value))
+                    return n;
+            return null;
+        }
+
+        /**
+         * Returns whether n is the first node of its chain for its value.
+         */
+        boolean isFirst(Node n) {
+            for (Node p = table[indexFor(n.hash, table.length)]; p != n; p = p.next)
+                if (p.hash == n.hash && eq(n.value, p.value))
+                    return false;
+            return true;
+        }
+
+        void add(Object key, Object value) {
+            if (find(value) == null)
+                distinct++;
+            int h = hashOf(value);
+            int i = indexFor(h, table.length);
+            table[i] = new Node(h, value, key, table[i]);
+            if (++size > table.length * DEFAULT_LOAD_FACTOR)
+                resize();
+        }
+
+        void remove(Object key, Object value) {
+            int h = hashOf(value);
+            int i = indexFor(h, table.length);
+            Node prev = null;
+            for (Node n = table[i]; n != null; prev = n, n = n.next) {
+                if (n.hash == h && eq(value, n.value) && eq(key, n.key)) {
+                    if (prev == null)
+                        table[i] = n.next;
+                    else
+                        prev.next = n.next;
+                    size--;
+                    if (find(value) == null)
+                        distinct--;
+                    return;
+                }
+            }
+        }
+
+        void update(Object key, Object oldValue, Object newValue) {
+            if (oldValue != newValue) {
+                remove(key, oldValue);
+                add(key, newValue);
+            }
+        }
+
+        /**
+         * Doubles the table, keeping the order of each chain so that the
+         * first node of a value stays first.
+         */
+        private void resize() {
+            Node[] oldTab = table;
+            int oldCap = oldTab.length;
+            Node[] newTab = new Node[oldCap * 2];
+            for (int j = 0; j < oldCap; j++) {
+                Node loHead = null, loTail = null, hiHead = null, hiTail = null;
+                for (Node n = oldTab[j]; n != null; n = n.next) {
+                    if ((n.hash & oldCap) == 0) {
+                        if (loTail == null)
+                            loHead = n;
+                        else
+                            loTail.next = n;
+                        loTail = n;
+                    } else {
+                        if (hiTail == null)
+                            hiHead = n;
+                        else
+                            hiTail.next = n;
+                        hiTail = n;
+                    }
+                }
+                if (loTail != null)
+                    loTail.next = null;
+                if (hiTail != null)
+                    hiTail.next = null;
+                newTab[j] = loHead;
+                newTab[j + oldCap] = hiHead;
+            }
+            table = newTab;
+        }
+    }
+
+    /**
+     * Returns the entry for key in the bucket headed by first, or null,
+     * as findEntry does, for an operation that statistics count as a
+     * get, or as a put if put is true.  With statistics enabled, the
+     * probes and equals calls are counted as this lookup makes them, in
+     * a chain or down a tree bin; otherwise this is findEntry.
+     */
+    final Entry<K,V> lookupEntry(Entry<K,V> first, int hash, Object key,
+                                 boolean put) {
+        HashMapStatistics.Counters c = stats;
+        if (c == null)
+            return findEntry(first, hash, key);
+        c.probes = c.equals = 0;
+        Entry<K,V> result = null;
+        if (first instanceof TreeEntry) {
+            TreeEntry<K,V> t = (TreeEntry<K,V>)first;
+            if (t.parent != null)
+                t = t.root();
+            result = t.find(hash, key, null, c);
+        } else {
+            for (Entry<K,V> e = first; e != null; e = e.next) {
+                c.probes++;
+                Object k;
+                if (e.hash == hash) {
+                    if ((k = e.key) == key) {
+                        result = e;
+                        break;
+                    }
+                    if (key != null) {
+                        c.equals++;
+                        if (keyEquals(key, k)) {
+                            result = e;
+                            break;
+                        }
+                    }
+                }
+            }
+        }
+        c.recordLookup(put);
+        return result;
+    }
+
+    // These methods are used when serializing HashSets
+    int   capacity()     { return table.length; }
+    float loadFactor()   { return loadFactor;   }
+}
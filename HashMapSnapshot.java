@@ -0,0 +1,517 @@
+package java.util;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Compact binary snapshots of a {@link HashMap} that can be used straight
+ * from a memory-mapped file.  Restoring a serialized <tt>HashMap</tt>
+ * deserializes and rehashes every mapping before the first lookup; a
+ * snapshot instead keeps the map's bucket layout on disk, so
+ * {@link #open} only maps the file and validates its header, and each
+ * lookup reads the one bucket its key hashes to.
+ *
+ * <p>The map returned by <tt>open</tt> is read-only until it is first
+ * modified.  At that point the mappings are loaded into an ordinary
+ * <tt>HashMap</tt> with the snapshot's capacity and load factor, which
+ * needs no rehashing, and all later operations go to that map.  The
+ * file itself is never written through the returned map.
+ *
+ * <p>Keys and values are converted to bytes by a {@link Codec}.  Lookups
+ * use the hash stored in the snapshot, so keys must have a
+ * <tt>hashCode</tt> that is the same in the writing and the reading
+ * process, as is the case for strings, boxed primitives and enums' names
+ * but not for identity hash codes.
+ *
+ * <p>A snapshot file has the following layout; all numbers are big
+ * endian.
+ * <pre>
+ *   header   int magic, int version, int capacity, int size,
+ *            float loadFactor, int reserved, long tableOffset,
+ *            long recordsOffset, long fileLength (64 bytes in all)
+ *   table    capacity + 1 longs: the file offset of the first record of
+ *            each bucket, then the end of the records
+ *   records  int hash, int keyLength, int valueLength, key bytes,
+ *            value bytes; a length of -1 stands for null
+ * </pre>
+ * The records of each bucket are stored contiguously in bucket order.
+ * Since one mapped buffer covers at most 2GB, the file is mapped in
+ * regions of 1GB and no record crosses a region boundary: the writer
+ * skips to the next region instead, leaving a padding record (key length
+ * -2) if there is room for one.
+ *
+ * @see     HashMap
+ */
+public final class HashMapSnapshot {
+
+    private HashMapSnapshot() {}
+
+    /**
+     * Converts keys or values to bytes and back.  {@link #decode} must
+     * read <tt>buf</tt> with absolute gets only.
+     */
+    public interface Codec<T> {
+        byte[] encode(T value);
+        T decode(ByteBuffer buf, int offset, int length);
+    }
+
+    /**
+     * Codec for strings, as UTF-8.
+     */
+    public static final Codec<String> STRING = new Codec<String>() {
+        public byte[] encode(String s) {
+            return s.getBytes(StandardCharsets.UTF_8);
+        }
+        public String decode(ByteBuffer buf, int offset, int length) {
+            return new String(bytes(buf, offset, length), StandardCharsets.UTF_8);
+        }
+    };
+
+    /**
+     * Codec for byte arrays, stored as they are.
+     */
+    public static final Codec<byte[]> BYTES = new Codec<byte[]>() {
+        public byte[] encode(byte[] b) {
+            return b;
+        }
+        public byte[] decode(ByteBuffer buf, int offset, int length) {
+            return bytes(buf, offset, length);
+        }
+    };
+
+    /**
+     * Returns a codec using Java serialization, for types without a more
+     * compact representation.
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> Codec<T> serialized() {
+        return (Codec<T>) SERIALIZED;
+    }
+
+    private static final Codec<Object> SERIALIZED = new Codec<Object>() {
+        public byte[] encode(Object value) {
+            try {
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                ObjectOutputStream out = new ObjectOutputStream(bytes);
+                out.writeObject(value);
+                out.close();
+                return bytes.toByteArray();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        public Object decode(ByteBuffer buf, int offset, int length) {
+            try {
+                return new ObjectInputStream(new ByteArrayInputStream(
+                    bytes(buf, offset, length))).readObject();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            } catch (ClassNotFoundException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    };
+
+    static byte[] bytes(ByteBuffer buf, int offset, int length) {
+        byte[] b = new byte[length];
+        ByteBuffer d = buf.duplicate();
+        d.position(offset);
+        d.get(b);
+        return b;
+    }
+
+    static final int MAGIC = 0x484d5331;    // "HMS1"
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 64;
+    static final int RECORD_HEADER = 12;
+    static final int NULL_LENGTH = -1;
+    static final int PAD_LENGTH = -2;
+    static final int REGION_SHIFT = 30;
+    static final long REGION_SIZE = 1L << REGION_SHIFT;
+    static final int BUFFER_SIZE = 1 << 16;
+
+    /**
+     * Writes a snapshot of map to ch, starting at position 0 and
+     * truncating whatever follows.
+     *
+     * @throws IllegalArgumentException if an encoded mapping is larger
+     *         than 1GB, or if map has a {@link HashingStrategy}
+     */
+    public static <K,V> void write(HashMap<K,V> map, FileChannel ch,
+                                   Codec<? super K> keyCodec,
+                                   Codec<? super V> valueCodec)
+        throws IOException
+    {
+        if (map.strategy != null)
+            throw new IllegalArgumentException("Map has a hashing strategy");
+        if (map.oldTable != null)
+            map.finishTransfer();
+        HashMap.Entry[] tab = map.table;
+        int capacity = tab.length;
+        long tableOffset = HEADER_SIZE;
+        long recordsOffset = tableOffset + 8L * (capacity + 1);
+
+        Output table = new Output(ch, tableOffset);
+        Output records = new Output(ch, recordsOffset);
+        for (int j = 0; j < capacity; j++) {
+            table.putLong(records.pos);
+            for (HashMap.Entry e = tab[j]; e != null; e = e.next) {
+                @SuppressWarnings("unchecked")
+                byte[] k = (e.key == null) ? null
+                    : ((Codec<Object>) keyCodec).encode(e.key);
+                @SuppressWarnings("unchecked")
+                byte[] v = (e.value == null) ? null
+                    : ((Codec<Object>) valueCodec).encode(e.value);
+                long n = (long)RECORD_HEADER + length(k) + length(v);
+                if (n > REGION_SIZE)
+                    throw new IllegalArgumentException("Mapping too large: " + n);
+                long boundary = ((records.pos >>> REGION_SHIFT) + 1) << REGION_SHIFT;
+                if (records.pos + n > boundary) {
+                    if (boundary - records.pos >= RECORD_HEADER) {
+                        records.putInt(0);
+                        records.putInt(PAD_LENGTH);
+                        records.putInt(0);
+                    }
+                    records.skipTo(boundary);
+                }
+                records.putInt(e.hash);
+                records.putInt(k == null ? NULL_LENGTH : k.length);
+                records.putInt(v == null ? NULL_LENGTH : v.length);
+                records.put(k);
+                records.put(v);
+            }
+        }
+        long fileLength = records.pos;
+        table.putLong(fileLength);
+        table.flush();
+        records.flush();
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC).putInt(VERSION).putInt(capacity).putInt(map.size)
+              .putFloat(map.loadFactor).putInt(0).putLong(tableOffset)
+              .putLong(recordsOffset).putLong(fileLength);
+        header.flip();
+        Output.write(ch, header, 0);
+        ch.truncate(fileLength);
+    }
+
+    private static int length(byte[] b) {
+        return (b == null) ? 0 : b.length;
+    }
+
+    /**
+     * Buffered positional writer.  pos is the file offset of the next
+     * byte to be written.
+     */
+    private static final class Output {
+        final FileChannel ch;
+        final ByteBuffer buf = ByteBuffer.allocate(BUFFER_SIZE);
+        long pos;
+        long bufPos;    // file offset of buf's first byte
+
+        Output(FileChannel ch, long pos) {
+            this.ch = ch;
+            this.pos = pos;
+            this.bufPos = pos;
+        }
+
+        void putInt(int i) throws IOException {
+            if (buf.remaining() < 4)
+                flush();
+            buf.putInt(i);
+            pos += 4;
+        }
+
+        void putLong(long l) throws IOException {
+            if (buf.remaining() < 8)
+                flush();
+            buf.putLong(l);
+            pos += 8;
+        }
+
+        void put(byte[] b) throws IOException {
+            if (b == null)
+                return;
+            if (b.length > buf.remaining()) {
+                flush();
+                if (b.length > buf.capacity()) {
+                    write(ch, ByteBuffer.wrap(b), pos);
+                    pos += b.length;
+                    bufPos = pos;
+                    return;
+                }
+            }
+            buf.put(b);
+            pos += b.length;
+        }
+
+        void skipTo(long newPos) throws IOException {
+            flush();
+            pos = bufPos = newPos;
+        }
+
+        void flush() throws IOException {
+            buf.flip();
+            write(ch, buf, bufPos);
+            buf.clear();
+            bufPos = pos;
+        }
+
+        static void write(FileChannel ch, ByteBuffer b, long position)
+            throws IOException
+        {
+            while (b.hasRemaining())
+                position += ch.write(b, position);
+        }
+    }
+
+    /**
+     * Maps the snapshot in ch and returns a map backed by it.  The
+     * mapping stays valid after ch is closed.
+     *
+     * @throws IOException if ch does not hold a valid snapshot
+     */
+    public static <K,V> Map<K,V> open(FileChannel ch, Codec<K> keyCodec,
+                                      Codec<V> valueCodec)
+        throws IOException
+    {
+        long fileLength = ch.size();
+        if (fileLength < HEADER_SIZE)
+            throw new IOException("Not a HashMap snapshot");
+        ByteBuffer[] regions = new ByteBuffer[(int)((fileLength - 1) >>> REGION_SHIFT) + 1];
+        for (int r = 0; r < regions.length; r++) {
+            long start = (long)r << REGION_SHIFT;
+            regions[r] = ch.map(FileChannel.MapMode.READ_ONLY, start,
+                                Math.min(REGION_SIZE, fileLength - start));
+        }
+        ByteBuffer h = regions[0];
+        int capacity = h.getInt(8);
+        if (h.getInt(0) != MAGIC || h.getInt(4) != VERSION ||
+            h.getLong(40) != fileLength || capacity <= 0 ||
+            capacity > HashMap.MAXIMUM_CAPACITY ||
+            (capacity & (capacity - 1)) != 0 ||
+            h.getLong(24) + 8L * (capacity + 1) > h.getLong(32))
+            throw new IOException("Not a HashMap snapshot");
+        return new MappedMap<>(regions, capacity, h.getInt(12), h.getFloat(16),
+                               h.getLong(24), h.getLong(32), fileLength,
+                               keyCodec, valueCodec);
+    }
+
+    /**
+     * Map backed by a mapped snapshot until its first modification, and
+     * by a HashMap loaded from the snapshot afterwards.
+     */
+    private static final class MappedMap<K,V> extends AbstractMap<K,V> {
+        private final ByteBuffer[] regions;
+        private final int capacity;
+        private final int size;
+        private final float loadFactor;
+        private final long tableOffset;
+        private final long recordsOffset;
+        private final long recordsEnd;
+        private final Codec<K> keyCodec;
+        private final Codec<V> valueCodec;
+
+        /**
+         * The mutable copy, or null while the snapshot is still used.
+         */
+        private HashMap<K,V> map;
+
+        private transient Set<Map.Entry<K,V>> entrySet;
+
+        MappedMap(ByteBuffer[] regions, int capacity, int size, float loadFactor,
+                  long tableOffset, long recordsOffset, long recordsEnd,
+                  Codec<K> keyCodec, Codec<V> valueCodec) {
+            this.regions = regions;
+            this.capacity = capacity;
+            this.size = size;
+            this.loadFactor = loadFactor;
+            this.tableOffset = tableOffset;
+            this.recordsOffset = recordsOffset;
+            this.recordsEnd = recordsEnd;
+            this.keyCodec = keyCodec;
+            this.valueCodec = valueCodec;
+        }
+
+        private ByteBuffer region(long p) {
+            return regions[(int)(p >>> REGION_SHIFT)];
+        }
+
+        private static int offset(long p) {
+            return (int)(p & (REGION_SIZE - 1));
+        }
+
+        private int getInt(long p) {
+            return region(p).getInt(offset(p));
+        }
+
+        /**
+         * Returns the offset of the first record at or after p, skipping
+         * padding at the end of a region.
+         */
+        private long skipPadding(long p) {
+            long boundary = ((p >>> REGION_SHIFT) + 1) << REGION_SHIFT;
+            if (boundary - p < RECORD_HEADER || getInt(p + 4) == PAD_LENGTH)
+                return boundary;
+            return p;
+        }
+
+        private long next(long r) {
+            return r + RECORD_HEADER + Math.max(getInt(r + 4), 0)
+                + Math.max(getInt(r + 8), 0);
+        }
+
+        private K key(long r) {
+            int len = getInt(r + 4);
+            return (len == NULL_LENGTH) ? null
+                : keyCodec.decode(region(r), offset(r) + RECORD_HEADER, len);
+        }
+
+        private V value(long r) {
+            int klen = Math.max(getInt(r + 4), 0);
+            int len = getInt(r + 8);
+            return (len == NULL_LENGTH) ? null
+                : valueCodec.decode(region(r), offset(r) + RECORD_HEADER + klen, len);
+        }
+
+        /**
+         * Returns the offset of the record for key, or -1 if there is
+         * none.
+         */
+        private long find(Object key) {
+            int hash = (key == null) ? 0 : HashMap.hash(key.hashCode());
+            long t = tableOffset + 8L * HashMap.indexFor(hash, capacity);
+            long end = region(t + 8).getLong(offset(t + 8));
+            for (long r = region(t).getLong(offset(t)); r < end; r = next(r)) {
+                r = skipPadding(r);
+                if (r >= end)
+                    break;
+                if (getInt(r) == hash) {
+                    Object k = key(r);
+                    if (k == key || (key != null && key.equals(k)))
+                        return r;
+                }
+            }
+            return -1;
+        }
+
+        /**
+         * Loads the snapshot into a HashMap of the same capacity and load
+         * factor, which is used from then on.
+         */
+        private HashMap<K,V> mutable() {
+            if (map == null) {
+                HashMap<K,V> m = new HashMap<>(capacity, loadFactor);
+                for (long r = recordsOffset; r < recordsEnd; r = next(r)) {
+                    r = skipPadding(r);
+                    if (r >= recordsEnd)
+                        break;
+                    m.putForCreate(key(r), value(r));
+                }
+                map = m;
+            }
+            return map;
+        }
+
+        public int size() {
+            return (map != null) ? map.size() : size;
+        }
+
+        public boolean containsKey(Object key) {
+            return (map != null) ? map.containsKey(key) : find(key) >= 0;
+        }
+
+        public V get(Object key) {
+            if (map != null)
+                return map.get(key);
+            long r = find(key);
+            return (r < 0) ? null : value(r);
+        }
+
+        public V put(K key, V value) {
+            return mutable().put(key, value);
+        }
+
+        public V remove(Object key) {
+            if (map == null && find(key) < 0)
+                return null;
+            return mutable().remove(key);
+        }
+
+        public void putAll(Map<? extends K, ? extends V> m) {
+            mutable().putAll(m);
+        }
+
+        public void clear() {
+            if (map == null)
+                map = new HashMap<>(capacity, loadFactor);
+            else
+                map.clear();
+        }
+
+        public Set<Map.Entry<K,V>> entrySet() {
+            Set<Map.Entry<K,V>> es = entrySet;
+            return (es != null) ? es : (entrySet = new EntrySet());
+        }
+
+        private final class EntrySet extends AbstractSet<Map.Entry<K,V>> {
+            public Iterator<Map.Entry<K,V>> iterator() {
+                return (map != null) ? map.entrySet().iterator()
+                                     : new SnapshotIterator();
+            }
+            public int size() {
+                return MappedMap.this.size();
+            }
+            public void clear() {
+                MappedMap.this.clear();
+            }
+        }
+
+        /**
+         * Iterates the records in file order.  remove and setValue load
+         * the mutable map and apply to it; iteration continues over the
+         * snapshot.
+         */
+        private final class SnapshotIterator implements Iterator<Map.Entry<K,V>> {
+            long r = recordsOffset;
+            K lastKey;
+            boolean canRemove;
+
+            public boolean hasNext() {
+                if (r < recordsEnd)
+                    r = skipPadding(r);
+                return r < recordsEnd;
+            }
+
+            public Map.Entry<K,V> next() {
+                if (!hasNext())
+                    throw new NoSuchElementException();
+                K key = key(r);
+                V value = value(r);
+                r = MappedMap.this.next(r);
+                lastKey = key;
+                canRemove = true;
+                return new AbstractMap.SimpleEntry<K,V>(key, value) {
+                    private static final long serialVersionUID = 1L;
+                    public V setValue(V v) {
+                        mutable().put(getKey(), v);
+                        return super.setValue(v);
+                    }
+                };
+            }
+
+            public void remove() {
+                if (!canRemove)
+                    throw new IllegalStateException();
+                canRemove = false;
+                mutable().remove(lastKey);
+            }
+        }
+    }
+}
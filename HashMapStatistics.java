@@ -0,0 +1,255 @@
+package java.util;
+
+/**
+ * A snapshot of the statistics of a {@link HashMap} with statistics
+ * enabled by {@link HashMap#setStatisticsEnabled}.
+ *
+ * <p>Lookups are counted as gets by <tt>get</tt>, <tt>containsKey</tt>
+ * and <tt>getAll</tt>, and as puts by <tt>put</tt>, <tt>putAll</tt>,
+ * <tt>putIfAbsent</tt>, <tt>computeIfAbsent</tt>,
+ * <tt>computeIfPresent</tt>, <tt>compute</tt> and <tt>merge</tt>; a probe
+ * is one entry examined in a chain, or one node visited in a tree bin,
+ * including both subtrees when the search has to try both.  Only the
+ * <tt>equals</tt> calls made on entries whose cached hash matches are
+ * counted, since those are the only ones a lookup makes.  The
+ * chain-length histogram is computed when the snapshot is taken.
+ *
+ * @see     HashMap#statistics
+ */
+public final class HashMapStatistics {
+    /**
+     * Chains of this many entries or more share the last histogram slot.
+     */
+    public static final int HISTOGRAM_SIZE = HashMap.TREEIFY_THRESHOLD + 1;
+
+    private final int capacity;
+    private final int size;
+    private final long[] chainLengths;
+    private final int maxChainLength;
+    private final int treeBins;
+    private final long getCount;
+    private final long getProbes;
+    private final int maxGetProbes;
+    private final long putCount;
+    private final long putProbes;
+    private final int maxPutProbes;
+    private final long equalsCalls;
+    private final long resizeCount;
+    private final long resizeNanos;
+    private final long maxResizeNanos;
+    private final long containsValueCalls;
+
+    HashMapStatistics(HashMap<?,?> map, Counters c) {
+        HashMap.Entry[] tab = map.table;
+        long[] hist = new long[HISTOGRAM_SIZE];
+        int max = 0, trees = 0;
+        for (HashMap.Entry[] t : new HashMap.Entry[][] { map.oldTable, tab }) {
+            if (t == null)
+                continue;
+            for (int j = 0; j < t.length; j++) {
+                int n = 0;
+                for (HashMap.Entry e = t[j]; e != null; e = e.next)
+                    n++;
+                if (t[j] instanceof HashMap.TreeEntry)
+                    trees++;
+                hist[Math.min(n, HISTOGRAM_SIZE - 1)]++;
+                max = Math.max(max, n);
+            }
+        }
+        this.capacity = tab.length;
+        this.size = map.size;
+        this.chainLengths = hist;
+        this.maxChainLength = max;
+        this.treeBins = trees;
+        this.getCount = c.getCount;
+        this.getProbes = c.getProbes;
+        this.maxGetProbes = c.maxGetProbes;
+        this.putCount = c.putCount;
+        this.putProbes = c.putProbes;
+        this.maxPutProbes = c.maxPutProbes;
+        this.equalsCalls = c.equalsCalls;
+        this.resizeCount = c.resizeCount;
+        this.resizeNanos = c.resizeNanos;
+        this.maxResizeNanos = c.maxResizeNanos;
+        this.containsValueCalls = c.containsValueCalls;
+    }
+
+    /**
+     * Returns the number of buckets.  During an incremental resize this
+     * is the capacity of the new table, though the histogram covers both.
+     */
+    public int capacity() {
+        return capacity;
+    }
+
+    /**
+     * Returns the number of mappings.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the number of buckets holding each number of entries, from
+     * empty buckets at index 0 to chains of HISTOGRAM_SIZE - 1 or more
+     * entries at the last index.
+     */
+    public long[] chainLengthHistogram() {
+        return chainLengths.clone();
+    }
+
+    /**
+     * Returns the length of the longest chain.
+     */
+    public int maxChainLength() {
+        return maxChainLength;
+    }
+
+    /**
+     * Returns the number of buckets that are trees.
+     */
+    public int treeBins() {
+        return treeBins;
+    }
+
+    /**
+     * Returns the number of lookups counted as gets.
+     */
+    public long getCount() {
+        return getCount;
+    }
+
+    /**
+     * Returns the average number of probes per get, or 0 if none.
+     */
+    public double averageGetProbes() {
+        return (getCount == 0) ? 0 : (double) getProbes / getCount;
+    }
+
+    /**
+     * Returns the largest number of probes made by one get.
+     */
+    public int maxGetProbes() {
+        return maxGetProbes;
+    }
+
+    /**
+     * Returns the number of lookups counted as puts.
+     */
+    public long putCount() {
+        return putCount;
+    }
+
+    /**
+     * Returns the average number of probes per put, or 0 if none.
+     */
+    public double averagePutProbes() {
+        return (putCount == 0) ? 0 : (double) putProbes / putCount;
+    }
+
+    /**
+     * Returns the largest number of probes made by one put.
+     */
+    public int maxPutProbes() {
+        return maxPutProbes;
+    }
+
+    /**
+     * Returns the number of key equals calls on entries with a matching
+     * hash.  Many more of these than lookups points to keys whose
+     * hashCode collides even after the supplemental hash.
+     */
+    public long equalsCalls() {
+        return equalsCalls;
+    }
+
+    /**
+     * Returns the number of resizes.
+     */
+    public long resizeCount() {
+        return resizeCount;
+    }
+
+    /**
+     * Returns the total time spent resizing, in nanoseconds.  With
+     * incremental resizing this covers allocating the new table, not
+     * the transfer steps spread over later operations.
+     */
+    public long totalResizeNanos() {
+        return resizeNanos;
+    }
+
+    /**
+     * Returns the time taken by the longest resize, in nanoseconds.
+     */
+    public long maxResizeNanos() {
+        return maxResizeNanos;
+    }
+
+    /**
+     * Returns the number of containsValue calls, each of which scans the
+     * whole table.
+     */
+    public long containsValueCalls() {
+        return containsValueCalls;
+    }
+
+    public String toString() {
+        return "HashMapStatistics[capacity=" + capacity + ", size=" + size +
+            ", chainLengths=" + Arrays.toString(chainLengths) +
+            ", maxChainLength=" + maxChainLength + ", treeBins=" + treeBins +
+            ", gets=" + getCount + ", avgGetProbes=" + averageGetProbes() +
+            ", maxGetProbes=" + maxGetProbes + ", puts=" + putCount +
+            ", avgPutProbes=" + averagePutProbes() +
+            ", maxPutProbes=" + maxPutProbes + ", equalsCalls=" + equalsCalls +
+            ", resizes=" + resizeCount + ", resizeNanos=" + resizeNanos +
+            ", maxResizeNanos=" + maxResizeNanos +
+            ", containsValueCalls=" + containsValueCalls + "]";
+    }
+
+    /**
+     * The live counters of a map with statistics enabled.
+     */
+    static final class Counters {
+        long getCount;
+        long getProbes;
+        int maxGetProbes;
+        long putCount;
+        long putProbes;
+        int maxPutProbes;
+        long equalsCalls;
+        long resizeCount;
+        long resizeNanos;
+        long maxResizeNanos;
+        long containsValueCalls;
+
+        /**
+         * The probes and equals calls made so far by the lookup in
+         * progress, counted by HashMap.lookupEntry.
+         */
+        int probes;
+        int equals;
+
+        void recordLookup(boolean put) {
+            equalsCalls += equals;
+            if (put) {
+                putCount++;
+                putProbes += probes;
+                if (probes > maxPutProbes)
+                    maxPutProbes = probes;
+            } else {
+                getCount++;
+                getProbes += probes;
+                if (probes > maxGetProbes)
+                    maxGetProbes = probes;
+            }
+        }
+
+        void recordResize(long nanos) {
+            resizeCount++;
+            resizeNanos += nanos;
+            if (nanos > maxResizeNanos)
+                maxResizeNanos = nanos;
+        }
+    }
+}
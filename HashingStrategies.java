@@ -0,0 +1,135 @@
+package java.util;
+import java.io.Serializable;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+
+/**
+ * The strategies returned by the HashingStrategy factory methods.  Enum
+ * constants, so that they stay singletons when serialized.
+ */
+@SuppressWarnings("rawtypes")
+enum HashingStrategies implements HashingStrategy, Serializable {
+    IDENTITY {
+        public int hashCode(Object o) {
+            return System.identityHashCode(o);
+        }
+        public boolean equals(Object a, Object b) {
+            return a == b;
+        }
+    },
+
+    BYTE_ARRAYS {
+        public int hashCode(Object o) {
+            return fold(hashBytes((byte[]) o));
+        }
+        public boolean equals(Object a, Object b) {
+            return Arrays.equals((byte[]) a, (byte[]) b);
+        }
+    },
+
+    CHAR_ARRAYS {
+        public int hashCode(Object o) {
+            return fold(hashChars((char[]) o));
+        }
+        public boolean equals(Object a, Object b) {
+            return Arrays.equals((char[]) a, (char[]) b);
+        }
+    };
+
+    // The default secret of wyhash
+    static final long P0 = 0xa0761d6478bd642fL;
+    static final long P1 = 0xe7037ed1a0b428dbL;
+    static final long P2 = 0x8ebc6af09c88c6e3L;
+    static final long P3 = 0x589965cc75374cc3L;
+
+    private static final VarHandle LONGS =
+        MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+    private static final VarHandle INTS =
+        MethodHandles.byteArrayViewVarHandle(int[].class, ByteOrder.LITTLE_ENDIAN);
+
+    /**
+     * Folds the 128-bit product of a and b into 64 bits.
+     */
+    static long mix(long a, long b) {
+        return (a * b) ^ Math.multiplyHigh(a, b);
+    }
+
+    static int fold(long h) {
+        return (int) (h ^ (h >>> 32));
+    }
+
+    private static long r8(byte[] b, int i) {
+        return (long) LONGS.get(b, i);
+    }
+
+    private static long r4(byte[] b, int i) {
+        return (int) INTS.get(b, i) & 0xffffffffL;
+    }
+
+    static long hashBytes(byte[] b) {
+        int len = b.length;
+        long seed = mix(P0, P1);
+        long x, y;
+        if (len <= 16) {
+            if (len >= 4) {
+                int d = (len >>> 3) << 2;
+                x = (r4(b, 0) << 32) | r4(b, d);
+                y = (r4(b, len - 4) << 32) | r4(b, len - 4 - d);
+            } else if (len > 0) {
+                x = ((b[0] & 0xffL) << 16) | ((b[len >>> 1] & 0xffL) << 8) |
+                    (b[len - 1] & 0xffL);
+                y = 0;
+            } else {
+                x = y = 0;
+            }
+        } else {
+            int p = 0, i = len;
+            if (i > 48) {
+                long see1 = seed, see2 = seed;
+                do {
+                    seed = mix(r8(b, p) ^ P1, r8(b, p + 8) ^ seed);
+                    see1 = mix(r8(b, p + 16) ^ P2, r8(b, p + 24) ^ see1);
+                    see2 = mix(r8(b, p + 32) ^ P3, r8(b, p + 40) ^ see2);
+                    p += 48;
+                    i -= 48;
+                } while (i > 48);
+                seed ^= see1 ^ see2;
+            }
+            while (i > 16) {
+                seed = mix(r8(b, p) ^ P1, r8(b, p + 8) ^ seed);
+                p += 16;
+                i -= 16;
+            }
+            x = r8(b, p + i - 16);
+            y = r8(b, p + i - 8);
+        }
+        return finish(x ^ P1, y ^ seed, len);
+    }
+
+    private static long r4(char[] c, int i) {
+        return c[i] | (long) c[i + 1] << 16 | (long) c[i + 2] << 32 |
+            (long) c[i + 3] << 48;
+    }
+
+    static long hashChars(char[] c) {
+        int len = c.length;
+        long seed = mix(P0, P1);
+        int p = 0;
+        for (; len - p > 8; p += 8)
+            seed = mix(r4(c, p) ^ P1, r4(c, p + 4) ^ seed);
+        long x = 0, y = 0;
+        for (int i = p; i < len; i++) {
+            if (i - p < 4)
+                x |= (long) c[i] << ((i - p) << 4);
+            else
+                y |= (long) c[i] << ((i - p - 4) << 4);
+        }
+        return finish(x ^ P1, y ^ seed, 2 * len);
+    }
+
+    private static long finish(long x, long y, int len) {
+        long lo = x * y, hi = Math.multiplyHigh(x, y);
+        return mix(lo ^ P0 ^ len, hi ^ P1);
+    }
+}
@@ -0,0 +1,58 @@
+package java.util;
+
+/**
+ * Hashes and compares keys on behalf of a {@link HashMap}, in place of
+ * their own <tt>hashCode</tt> and <tt>equals</tt> methods.  A strategy
+ * lets arrays be used as keys by content without wrapping each one in
+ * an object, or any key be compared by identity.  The map applies its
+ * supplemental hash function to the result of {@link #hashCode}, as it
+ * does to <tt>Object.hashCode</tt>.
+ *
+ * <p>The two methods must be consistent: keys equal under
+ * {@link #equals} must have the same hash.  Neither is called with a
+ * <tt>null</tt> key; the map handles the <tt>null</tt> key itself.
+ * Strategies used by a serializable map must be serializable.
+ *
+ * @param <T> the type of keys hashed
+ *
+ * @see     HashMap#HashMap(HashingStrategy)
+ */
+public interface HashingStrategy<T> {
+    /**
+     * Returns the hash code of o.
+     */
+    int hashCode(T o);
+
+    /**
+     * Returns whether a and b are the same key.
+     */
+    boolean equals(T a, T b);
+
+    /**
+     * Returns a strategy comparing keys by reference and hashing them
+     * with <tt>System.identityHashCode</tt>.
+     */
+    @SuppressWarnings("unchecked")
+    static <T> HashingStrategy<T> identity() {
+        return (HashingStrategy<T>) HashingStrategies.IDENTITY;
+    }
+
+    /**
+     * Returns a strategy comparing byte arrays by content and hashing
+     * their contents with a wyhash-style function, which reads eight
+     * bytes at a time and mixes them with 64x64-bit multiplies.
+     */
+    @SuppressWarnings("unchecked")
+    static HashingStrategy<byte[]> byteArrays() {
+        return HashingStrategies.BYTE_ARRAYS;
+    }
+
+    /**
+     * Returns a strategy comparing char arrays by content and hashing
+     * them as byteArrays() does, four chars at a time.
+     */
+    @SuppressWarnings("unchecked")
+    static HashingStrategy<char[]> charArrays() {
+        return HashingStrategies.CHAR_ARRAYS;
+    }
+}
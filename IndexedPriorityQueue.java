@@ -0,0 +1,349 @@
+package java.util;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+
+/**
+ * A priority queue that knows where each of its elements is, so that an
+ * element can be found, removed or re-prioritized without a scan.  The
+ * heap holds one node per element, which records the node's index in
+ * the heap and is kept up to date as nodes are sifted; a map from each
+ * element to its node finds it.  In a queue of n elements:
+ *
+ * <ul>
+ * <li><code>contains</code> takes constant time;
+ * <li><code>offer</code>, <code>poll</code> and <code>remove</code> take
+ *     O(log n) time;
+ * <li><code>update</code> restores the heap order around an element whose
+ *     priority has changed, in either direction, in O(log n) time.
+ * </ul>
+ *
+ * <p>An element's priority is what the comparator, or its natural
+ * ordering, makes of it.  When that changes while the element is queued,
+ * for example because the comparator reads a distance table that has
+ * just been lowered, <code>update</code> must be called before the queue
+ * is used again.  The element's <code>hashCode</code> and
+ * <code>equals</code> must not depend on its priority.
+ *
+ * <p>The queue holds each element at most once: offering an element
+ * equal to one already queued returns false and leaves the queue as it
+ * was.  Null elements are not permitted.
+ *
+ * @see PriorityQueue
+ */
+public class IndexedPriorityQueue<E> extends AbstractQueue<E>
+  implements Serializable
+{
+  private static final int DEFAULT_CAPACITY = 11;
+
+  private static final long serialVersionUID = 4650193811462713525L;
+
+  /** An element and its current index in the heap.  */
+  static final class Node<E>
+  {
+    final E element;
+    int index;
+
+    Node(E element, int index)
+    {
+      this.element = element;
+      this.index = index;
+    }
+  }
+
+  /** Number of elements in the heap.  */
+  transient int used;
+
+  /**
+   * The binary heap of nodes.  A node at index N (0-based) has two
+   * direct children, at nodes 2N+1 and 2N+2, and is not greater than
+   * either.  The heap is dense, and each node's INDEX is its position.
+   */
+  transient Node<E>[] heap;
+
+  /** The node of each element in the heap.  */
+  transient HashMap<E,Node<E>> nodes;
+
+  /**
+   * The comparator we're using, or null for natural ordering.
+   */
+  Comparator<? super E> comparator;
+
+  /**
+   * Count of modifications that add, remove or move nodes, for the
+   * iterator.
+   */
+  transient int modCount;
+
+  public IndexedPriorityQueue()
+  {
+    this(DEFAULT_CAPACITY, null);
+  }
+
+  public IndexedPriorityQueue(int cap)
+  {
+    this(cap, null);
+  }
+
+  public IndexedPriorityQueue(int cap, Comparator<? super E> comp)
+  {
+    if (cap < 1)
+      throw new IllegalArgumentException();
+    this.heap = (Node<E>[]) new Node[cap];
+    this.nodes = new HashMap<E,Node<E>>(Math.max((int) (cap / .75f) + 1, 16));
+    this.comparator = comp;
+  }
+
+  public Comparator<? super E> comparator()
+  {
+    return comparator;
+  }
+
+  public int size()
+  {
+    return used;
+  }
+
+  public void clear()
+  {
+    Arrays.fill(heap, 0, used, null);
+    used = 0;
+    nodes.clear();
+    ++modCount;
+  }
+
+  /**
+   * Adds O to the queue unless an equal element is already queued.
+   *
+   * @return true if O was added, false if the queue already held it
+   * @throws NullPointerException if O is null
+   */
+  public boolean offer(E o)
+  {
+    if (o == null)
+      throw new NullPointerException();
+    Node<E> n = new Node<E>(o, used);
+    if (nodes.putIfAbsent(o, n) != null)
+      return false;
+    if (used == heap.length)
+      heap = Arrays.copyOf(heap, 2 * heap.length);
+    heap[used] = n;
+    bubbleUp(used++);
+    ++modCount;
+    return true;
+  }
+
+  public E peek()
+  {
+    return used == 0 ? null : heap[0].element;
+  }
+
+  public E poll()
+  {
+    if (used == 0)
+      return null;
+    E result = heap[0].element;
+    nodes.remove(result);
+    removeAt(0);
+    return result;
+  }
+
+  /**
+   * Returns true if an element equal to O is queued, in constant time.
+   */
+  public boolean contains(Object o)
+  {
+    return o != null && nodes.containsKey(o);
+  }
+
+  /**
+   * Removes the element equal to O, if queued, in O(log n) time.
+   */
+  public boolean remove(Object o)
+  {
+    if (o == null)
+      return false;
+    Node<E> n = nodes.remove(o);
+    if (n == null)
+      return false;
+    removeAt(n.index);
+    return true;
+  }
+
+  /**
+   * Moves the element equal to O to its place in the heap after its
+   * priority has changed, up if it decreased and down if it increased.
+   *
+   * @return true if O is queued, false if it is not
+   */
+  public boolean update(Object o)
+  {
+    Node<E> n = (o == null) ? null : nodes.get(o);
+    if (n == null)
+      return false;
+    int index = n.index;
+    siftDown(index);
+    if (heap[index] == n)
+      bubbleUp(index);
+    ++modCount;
+    return true;
+  }
+
+  public Iterator<E> iterator()
+  {
+    return new Iterator<E>()
+    {
+      int index = -1;
+      // Nodes moved from the unvisited end of the heap to before
+      // INDEX by a removal, to be returned once the array is done.
+      ArrayList<Node<E>> moved;
+      int movedIndex;
+      Node<E> last;
+      int expectedModCount = modCount;
+
+      public boolean hasNext()
+      {
+        return index + 1 < used || (moved != null && movedIndex < moved.size());
+      }
+
+      public E next()
+      {
+        if (modCount != expectedModCount)
+          throw new ConcurrentModificationException();
+        if (index + 1 < used)
+          return (last = heap[++index]).element;
+        if (moved != null && movedIndex < moved.size())
+          {
+            index = used;
+            return (last = moved.get(movedIndex++)).element;
+          }
+        throw new NoSuchElementException();
+      }
+
+      public void remove()
+      {
+        if (last == null)
+          throw new IllegalStateException();
+        if (modCount != expectedModCount)
+          throw new ConcurrentModificationException();
+        nodes.remove(last.element);
+        if (index < used)
+          {
+            // As in PriorityQueue: the last node takes the removed
+            // one's place, and is remembered if it moves up past INDEX.
+            Node<E> up = removeAt(index);
+            if (up == null)
+              index--;
+            else
+              {
+                if (moved == null)
+                  moved = new ArrayList<Node<E>>();
+                moved.add(up);
+              }
+          }
+        else
+          removeAt(last.index);
+        last = null;
+        expectedModCount = modCount;
+      }
+    };
+  }
+
+  /**
+   * Removes the node at INDEX, whose element has already been taken out
+   * of NODES, by moving the last node into its place and sifting that
+   * down or up.  Returns the moved node if it ended up above INDEX, else
+   * null.
+   */
+  Node<E> removeAt(int index)
+  {
+    ++modCount;
+    int last = --used;
+    Node<E> moved = heap[last];
+    heap[last] = null;
+    if (index == last)
+      return null;
+    heap[index] = moved;
+    moved.index = index;
+    siftDown(index);
+    if (heap[index] == moved)
+      {
+        bubbleUp(index);
+        if (heap[index] != moved)
+          return moved;
+      }
+    return null;
+  }
+
+  void siftDown(int index)
+  {
+    // Move the node at INDEX down the tree, promoting the lesser child
+    // into its place, until neither child is less than it.
+    Node<E> n = heap[index];
+    E val = n.element;
+    int half = used >>> 1;      // Nodes below HALF have a child.
+    while (index < half)
+      {
+        int child = 2 * index + 1;
+        if (child + 1 < used
+            && Collections.compare(heap[child].element,
+                                   heap[child + 1].element, comparator) > 0)
+          ++child;
+        Node<E> c = heap[child];
+        if (Collections.compare(val, c.element, comparator) <= 0)
+          break;
+        heap[index] = c;
+        c.index = index;
+        index = child;
+      }
+    heap[index] = n;
+    n.index = index;
+  }
+
+  void bubbleUp(int index)
+  {
+    // Move the node at INDEX up the tree, shifting each larger parent
+    // down into the hole it leaves.
+    Node<E> n = heap[index];
+    E val = n.element;
+    while (index > 0)
+      {
+        int parent = (index - 1) / 2;
+        Node<E> p = heap[parent];
+        if (Collections.compare(p.element, val, comparator) <= 0)
+          break;
+        heap[index] = p;
+        p.index = index;
+        index = parent;
+      }
+    heap[index] = n;
+    n.index = index;
+  }
+
+  /**
+   * Writes the comparator, the number of elements and then the
+   * elements in heap order.
+   */
+  private void writeObject(ObjectOutputStream s) throws IOException
+  {
+    s.defaultWriteObject();
+    s.writeInt(used);
+    for (int i = 0; i < used; ++i)
+      s.writeObject(heap[i].element);
+  }
+
+  private void readObject(ObjectInputStream s)
+    throws IOException, ClassNotFoundException
+  {
+    s.defaultReadObject();
+    int n = s.readInt();
+    if (n < 0)
+      throw new java.io.InvalidObjectException("Illegal size: " + n);
+    heap = (Node<E>[]) new Node[Math.max(n, 1)];
+    nodes = new HashMap<E,Node<E>>(Math.max((int) (n / .75f) + 1, 16));
+    for (int i = 0; i < n; ++i)
+      offer((E) s.readObject());
+  }
+}
@@ -0,0 +1,422 @@
+package java.util;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+
+/**
+ * Hash table mapping primitive <tt>long</tt> keys to primitive <tt>long</tt>
+ * values.  Unlike <tt>HashMap&lt;Long,Long&gt;</tt>, neither keys nor values
+ * are boxed and no per-mapping
+ * entry objects are allocated: keys and values are stored in two flat
+ * parallel arrays and collisions are resolved by linear probing, so a
+ * lookup usually touches one slot of each array.  Since a <tt>long</tt>
+ * value cannot be <tt>null</tt>, {@link #get get} returns 0 for keys with
+ * no mapping; use {@link #containsKey containsKey} or
+ * {@link #getOrDefault getOrDefault} to tell the two apart.
+ *
+ * <p>The table capacity is always a power of two, and keys are spread
+ * with the same supplemental hash function and index masking as
+ * {@link HashMap}, applied to the same 32-bit value as
+ * {@link Long#hashCode}.  The key <tt>0</tt> marks an empty slot, so a mapping
+ * for key <tt>0</tt> is kept outside the table.  Removal shifts later
+ * entries of the probe sequence back into the freed slot rather than
+ * leaving a tombstone, so lookups never slow down after removals.
+ *
+ * <p>Open addressing degrades more steeply than chaining as the table
+ * fills, so the default load factor is 0.5 rather than
+ * <tt>HashMap</tt>'s 0.75.
+ *
+ * <p><strong>Note that this implementation is not synchronized.</strong>
+ *
+ * @see     HashMap
+ * @see     IntObjectHashMap
+ * @see     LongObjectHashMap
+ */
+public class LongLongHashMap implements Cloneable, Serializable
+{
+    /**
+     * The default initial capacity - MUST be a power of two.
+     */
+    static final int DEFAULT_INITIAL_CAPACITY = 16;
+
+    /**
+     * The maximum capacity.  MUST be a power of two <= 1<<30.
+     */
+    static final int MAXIMUM_CAPACITY = 1 << 30;
+
+    /**
+     * The load factor used when none specified in constructor.
+     */
+    static final float DEFAULT_LOAD_FACTOR = 0.5f;
+
+    /**
+     * The keys, with 0 marking a free slot.  Length MUST always be a
+     * power of two and equal to vals.length.
+     */
+    transient long[] keys;
+
+    /**
+     * The values, at the same index as their keys.
+     */
+    transient long[] vals;
+
+    /**
+     * Whether there is a mapping for key 0, and its value.
+     */
+    transient boolean hasZeroKey;
+    transient long zeroValue;
+
+    /**
+     * The number of key-value mappings contained in this map.
+     */
+    transient int size;
+
+    /**
+     * The next size value at which to resize (capacity * load factor).
+     */
+    transient int threshold;
+
+    /**
+     * The load factor for the hash table.
+     *
+     * @serial
+     */
+    final float loadFactor;
+
+    /**
+     * Constructs an empty map with the specified initial capacity and
+     * load factor.
+     *
+     * @param  initialCapacity the initial capacity
+     * @param  loadFactor      the load factor
+     * @throws IllegalArgumentException if the initial capacity is negative
+     *         or the load factor is not in (0, 1)
+     */
+    public LongLongHashMap(int initialCapacity, float loadFactor) {
+        if (initialCapacity < 0)
+            throw new IllegalArgumentException("Illegal initial capacity: " +
+                                               initialCapacity);
+        if (initialCapacity > MAXIMUM_CAPACITY)
+            initialCapacity = MAXIMUM_CAPACITY;
+        if (!(loadFactor > 0 && loadFactor < 1))
+            throw new IllegalArgumentException("Illegal load factor: " +
+                                               loadFactor);
+        this.loadFactor = loadFactor;
+        allocate(tableSizeFor(initialCapacity, loadFactor));
+    }
+
+    /**
+     * Constructs an empty map with the specified initial capacity and
+     * the default load factor (0.5).
+     *
+     * @param  initialCapacity the initial capacity.
+     * @throws IllegalArgumentException if the initial capacity is negative.
+     */
+    public LongLongHashMap(int initialCapacity) {
+        this(initialCapacity, DEFAULT_LOAD_FACTOR);
+    }
+
+    /**
+     * Constructs an empty map with the default initial capacity (16) and
+     * the default load factor (0.5).
+     */
+    public LongLongHashMap() {
+        this(DEFAULT_INITIAL_CAPACITY, DEFAULT_LOAD_FACTOR);
+    }
+
+    /**
+     * Returns the power of two capacity able to hold n mappings without
+     * resizing at the given load factor.
+     */
+    static int tableSizeFor(int n, float loadFactor) {
+        int capacity = 2;
+        while (capacity < MAXIMUM_CAPACITY && (int)(capacity * loadFactor) < n)
+            capacity <<= 1;
+        return capacity;
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        vals = new long[capacity];
+        threshold = (capacity == MAXIMUM_CAPACITY)
+            ? MAXIMUM_CAPACITY - 1
+            : (int)(capacity * loadFactor);
+    }
+
+    /**
+     * Returns the table hash of a key: HashMap's supplemental hash of
+     * the key's {@link Long#hashCode}.
+     */
+    static int hash(long key) {
+        return HashMap.hash((int)(key ^ (key >>> 32)));
+    }
+
+    /**
+     * Returns the number of key-value mappings in this map.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns <tt>true</tt> if this map contains no key-value mappings.
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Returns the slot holding key, which must not be 0, or -1 if there
+     * is none.
+     */
+    final int slotFor(long key) {
+        long[] tab = keys;
+        int mask = tab.length - 1;
+        long k;
+        for (int i = HashMap.indexFor(hash(key), tab.length); ;
+             i = (i + 1) & mask) {
+            if ((k = tab[i]) == key)
+                return i;
+            if (k == 0)
+                return -1;
+        }
+    }
+
+    /**
+     * Returns the value to which the specified key is mapped, or 0 if
+     * this map contains no mapping for the key.
+     */
+    public long get(long key) {
+        return getOrDefault(key, 0L);
+    }
+
+    /**
+     * Returns the value to which the specified key is mapped, or
+     * defaultValue if this map contains no mapping for the key.
+     */
+    public long getOrDefault(long key, long defaultValue) {
+        if (key == 0)
+            return hasZeroKey ? zeroValue : defaultValue;
+        int i = slotFor(key);
+        return (i < 0) ? defaultValue : vals[i];
+    }
+
+    /**
+     * Returns <tt>true</tt> if this map contains a mapping for the
+     * specified key.
+     */
+    public boolean containsKey(long key) {
+        return (key == 0) ? hasZeroKey : slotFor(key) >= 0;
+    }
+
+    /**
+     * Associates the specified value with the specified key in this map.
+     *
+     * @return the previous value associated with <tt>key</tt>, or 0 if
+     *         there was no mapping for <tt>key</tt>.
+     */
+    public long put(long key, long value) {
+        if (key == 0) {
+            long oldValue = zeroValue;
+            zeroValue = value;
+            if (!hasZeroKey) {
+                hasZeroKey = true;
+                size++;
+            }
+            return oldValue;
+        }
+        long[] tab = keys;
+        int mask = tab.length - 1;
+        int i = HashMap.indexFor(hash(key), tab.length);
+        for (long k; (k = tab[i]) != 0; i = (i + 1) & mask) {
+            if (k == key) {
+                long oldValue = vals[i];
+                vals[i] = value;
+                return oldValue;
+            }
+        }
+        tab[i] = key;
+        vals[i] = value;
+        if (++size > threshold)
+            resize(2 * tab.length);
+        return 0L;
+    }
+
+    /**
+     * Removes the mapping for the specified key from this map if present.
+     *
+     * @return the previous value associated with <tt>key</tt>, or 0 if
+     *         there was no mapping for <tt>key</tt>.
+     */
+    public long remove(long key) {
+        if (key == 0) {
+            long oldValue = zeroValue;
+            if (hasZeroKey) {
+                hasZeroKey = false;
+                zeroValue = 0L;
+                size--;
+            }
+            return oldValue;
+        }
+        int i = slotFor(key);
+        if (i < 0)
+            return 0L;
+        long oldValue = vals[i];
+        size--;
+        shiftKeys(i);
+        return oldValue;
+    }
+
+    /**
+     * Frees slot pos by moving back every later entry of its probe run
+     * whose home slot is not between the gap and the entry itself.
+     */
+    private void shiftKeys(int pos) {
+        long[] tab = keys;
+        long[] vs = vals;
+        int mask = tab.length - 1;
+        for (;;) {
+            int last = pos;
+            long k;
+            pos = (pos + 1) & mask;
+            for (;;) {
+                if ((k = tab[pos]) == 0) {
+                    tab[last] = 0;
+                    vs[last] = 0L;
+                    return;
+                }
+                int slot = HashMap.indexFor(hash(k), tab.length);
+                if (last <= pos ? last >= slot || slot > pos
+                                : last >= slot && slot > pos)
+                    break;
+                pos = (pos + 1) & mask;
+            }
+            tab[last] = k;
+            vs[last] = vs[pos];
+        }
+    }
+
+    /**
+     * Rehashes the contents of this map into new arrays of the given
+     * power of two capacity.
+     */
+    void resize(int newCapacity) {
+        long[] oldKeys = keys;
+        long[] oldVals = vals;
+        if (oldKeys.length == MAXIMUM_CAPACITY) {
+            if (size >= MAXIMUM_CAPACITY - 1)
+                throw new IllegalStateException("Map is full");
+            return;
+        }
+        allocate(newCapacity);
+        long[] tab = keys;
+        int mask = newCapacity - 1;
+        for (int j = 0; j < oldKeys.length; j++) {
+            long k = oldKeys[j];
+            if (k != 0) {
+                int i = HashMap.indexFor(hash(k), newCapacity);
+                while (tab[i] != 0)
+                    i = (i + 1) & mask;
+                tab[i] = k;
+                vals[i] = oldVals[j];
+            }
+        }
+    }
+
+    /**
+     * Removes all of the mappings from this map.  The capacity is kept.
+     */
+    public void clear() {
+        Arrays.fill(keys, 0);
+        Arrays.fill(vals, 0L);
+        hasZeroKey = false;
+        zeroValue = 0L;
+        size = 0;
+    }
+
+    /**
+     * Returns a new array holding the keys of this map, in no particular
+     * order.
+     */
+    public long[] keys() {
+        long[] result = new long[size];
+        int n = 0;
+        if (hasZeroKey)
+            result[n++] = 0;
+        for (long k : keys)
+            if (k != 0)
+                result[n++] = k;
+        return result;
+    }
+
+    /**
+     * Returns a copy of this map.
+     */
+    public Object clone() {
+        LongLongHashMap result;
+        try {
+            result = (LongLongHashMap)super.clone();
+        } catch (CloneNotSupportedException e) {
+            throw new InternalError();
+        }
+        result.keys = keys.clone();
+        result.vals = vals.clone();
+        return result;
+    }
+
+    public String toString() {
+        StringBuilder sb = new StringBuilder("{");
+        if (hasZeroKey)
+            sb.append(0).append('=').append(zeroValue);
+        for (int j = 0; j < keys.length; j++) {
+            if (keys[j] != 0) {
+                if (sb.length() > 1)
+                    sb.append(", ");
+                sb.append(keys[j]).append('=').append(vals[j]);
+            }
+        }
+        return sb.append('}').toString();
+    }
+
+    private static final long serialVersionUID = 6590273946113208519L;
+
+    /**
+     * Save the state of this map to a stream.
+     *
+     * @serialData The <i>size</i> (int) is emitted, followed by the key
+     *             (long) and value (long) for each mapping, in no
+     *             particular order.
+     */
+    private void writeObject(ObjectOutputStream s) throws IOException {
+        s.defaultWriteObject();
+        s.writeInt(size);
+        if (hasZeroKey) {
+            s.writeLong(0);
+            s.writeLong(zeroValue);
+        }
+        for (int j = 0; j < keys.length; j++) {
+            if (keys[j] != 0) {
+                s.writeLong(keys[j]);
+                s.writeLong(vals[j]);
+            }
+        }
+    }
+
+    /**
+     * Reconstitute this map from a stream.
+     */
+    private void readObject(ObjectInputStream s)
+        throws IOException, ClassNotFoundException
+    {
+        s.defaultReadObject();
+        int n = s.readInt();
+        if (n < 0)
+            throw new java.io.InvalidObjectException("Illegal size: " + n);
+        allocate(tableSizeFor(n, loadFactor));
+        for (int i = 0; i < n; i++) {
+            long key = s.readLong();
+            put(key, s.readLong());
+        }
+    }
+}
@@ -0,0 +1,623 @@
+package java.util;
+import java.io.Closeable;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Hash table mapping variable-length binary keys to binary values, with
+ * all of its data held outside the Java heap.  It is intended for maps
+ * with a very large number of small records, where tracing the
+ * per-mapping <tt>Entry</tt> objects of a {@link HashMap} dominates
+ * garbage collection pauses: an instance of this class is a handful of
+ * heap objects regardless of its size.
+ *
+ * <p>Records are allocated from an arena of direct buffers
+ * (<i>chunks</i>) by bumping an offset, and each record holds its cached
+ * hash, the address of the next record in its bucket, the key bytes and
+ * the value bytes.  The bucket table is an array of record addresses,
+ * itself stored in direct buffers.  Hashing, bucket indexing, the load
+ * factor and the doubling resize policy are those of <tt>HashMap</tt>;
+ * a resize only relinks records and never copies them.
+ *
+ * <p>Removing a mapping, or replacing a value by one of a different
+ * length, leaves its old record in the arena as garbage.  The amount is
+ * reported by {@link #garbageBytes()} and reclaimed by {@link #compact()}.
+ *
+ * <p>Keys and values are passed as the remaining bytes of a
+ * <tt>ByteBuffer</tt>, whose position is left unchanged.  The
+ * {@link #get(ByteBuffer, ByteBuffer)} variant copies the value into a
+ * buffer supplied by the caller, so lookups allocate nothing on the
+ * heap; the <tt>byte[]</tt> variants are provided for convenience.
+ * Copies are fastest between buffers in {@link ByteOrder#nativeOrder()
+ * native byte order}.
+ *
+ * <p>The off-heap memory is released by {@link #close()}, after which
+ * every operation except <tt>close</tt> itself, including <tt>size</tt>,
+ * throws <tt>IllegalStateException</tt>.  A map that is not closed holds
+ * its memory until its buffers are garbage collected.
+ *
+ * <p><strong>Note that this implementation is not synchronized.</strong>
+ *
+ * @see     HashMap
+ */
+public class OffHeapHashMap implements Closeable
+{
+    /**
+     * The default initial capacity - MUST be a power of two.
+     */
+    static final int DEFAULT_INITIAL_CAPACITY = 16;
+
+    /**
+     * The maximum capacity.  MUST be a power of two <= 1<<30.
+     */
+    static final int MAXIMUM_CAPACITY = 1 << 30;
+
+    /**
+     * The load factor used when none specified in constructor.
+     */
+    static final float DEFAULT_LOAD_FACTOR = 0.75f;
+
+    /**
+     * The default size of an arena chunk.
+     */
+    static final int DEFAULT_CHUNK_SIZE = 1 << 20;
+
+    /**
+     * The bucket table is split into pages of 1<<PAGE_SHIFT addresses,
+     * so that it is not limited by the 2GB capacity of one buffer.
+     */
+    static final int PAGE_SHIFT = 16;
+    static final int PAGE_MASK = (1 << PAGE_SHIFT) - 1;
+
+    /**
+     * Record layout.  Records are aligned to 8 bytes.
+     */
+    static final int NEXT = 0;          // long: address of next record
+    static final int HASH = 8;          // int: cached hash of the key
+    static final int KEY_LENGTH = 12;   // int: length of the key
+    static final int VALUE_LENGTH = 16; // int: length of the value
+    static final int HEADER = 20;       // key bytes, then value bytes
+
+    /**
+     * The bucket table pages.  Each bucket holds the address of the
+     * first record of its chain, or 0.
+     */
+    private ByteBuffer[] table;
+
+    /**
+     * The number of buckets.  MUST always be a power of two.
+     */
+    private int capacity;
+
+    /**
+     * The arena chunks; chunks[chunkCount - 1] is the one being filled.
+     * A record address is the chunk index in the high 32 bits and the
+     * offset within the chunk in the low 32 bits.  The first 8 bytes of
+     * chunk 0 are never used, so address 0 means "no record".
+     */
+    private ByteBuffer[] chunks;
+    private int chunkCount;
+
+    /**
+     * The offset of the next free byte in the current chunk.
+     */
+    private int top;
+
+    /**
+     * The size of a regular chunk.  Records larger than this get a
+     * chunk of their own.
+     */
+    private final int chunkSize;
+
+    /**
+     * The number of key-value mappings contained in this map.
+     */
+    private int size;
+
+    /**
+     * The next size value at which to resize (capacity * load factor).
+     */
+    private int threshold;
+
+    /**
+     * The load factor for the hash table.
+     */
+    private final float loadFactor;
+
+    /**
+     * The number of arena bytes held by dead records.
+     */
+    private long garbage;
+
+    /**
+     * Constructs an empty map with the specified initial capacity, load
+     * factor and arena chunk size.
+     *
+     * @param  initialCapacity the initial capacity
+     * @param  loadFactor      the load factor
+     * @param  chunkSize       the size in bytes of each arena chunk
+     * @throws IllegalArgumentException if the initial capacity is negative,
+     *         the load factor is nonpositive or the chunk size is less
+     *         than 64
+     */
+    public OffHeapHashMap(int initialCapacity, float loadFactor, int chunkSize) {
+        if (initialCapacity < 0)
+            throw new IllegalArgumentException("Illegal initial capacity: " +
+                                               initialCapacity);
+        if (initialCapacity > MAXIMUM_CAPACITY)
+            initialCapacity = MAXIMUM_CAPACITY;
+        if (loadFactor <= 0 || Float.isNaN(loadFactor))
+            throw new IllegalArgumentException("Illegal load factor: " +
+                                               loadFactor);
+        if (chunkSize < 64)
+            throw new IllegalArgumentException("Illegal chunk size: " +
+                                               chunkSize);
+
+        // Find a power of 2 >= initialCapacity
+        int capacity = 1;
+        while (capacity < initialCapacity)
+            capacity <<= 1;
+
+        this.loadFactor = loadFactor;
+        this.chunkSize = chunkSize;
+        table = newTable(capacity);
+        this.capacity = capacity;
+        threshold = (int)Math.min(capacity * loadFactor, MAXIMUM_CAPACITY + 1);
+        chunks = new ByteBuffer[4];
+        chunks[0] = allocateDirect(chunkSize);
+        chunkCount = 1;
+        top = 8;
+    }
+
+    /**
+     * Constructs an empty map with the specified initial capacity and
+     * the default load factor (0.75) and chunk size (1MB).
+     *
+     * @param  initialCapacity the initial capacity.
+     * @throws IllegalArgumentException if the initial capacity is negative.
+     */
+    public OffHeapHashMap(int initialCapacity) {
+        this(initialCapacity, DEFAULT_LOAD_FACTOR, DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * Constructs an empty map with the default initial capacity (16),
+     * load factor (0.75) and chunk size (1MB).
+     */
+    public OffHeapHashMap() {
+        this(DEFAULT_INITIAL_CAPACITY, DEFAULT_LOAD_FACTOR, DEFAULT_CHUNK_SIZE);
+    }
+
+    private static ByteBuffer allocateDirect(int bytes) {
+        return ByteBuffer.allocateDirect(bytes).order(ByteOrder.nativeOrder());
+    }
+
+    private static ByteBuffer[] newTable(int capacity) {
+        int pages = (capacity + PAGE_MASK) >>> PAGE_SHIFT;
+        ByteBuffer[] tab = new ByteBuffer[pages];
+        int pageBytes = Math.min(capacity, 1 << PAGE_SHIFT) << 3;
+        for (int p = 0; p < pages; p++)
+            tab[p] = allocateDirect(pageBytes);
+        return tab;
+    }
+
+    /**
+     * Releases the memory of a direct buffer now instead of when the
+     * buffer is collected.
+     */
+    private static void free(ByteBuffer buf) {
+        ((sun.nio.ch.DirectBuffer) buf).cleaner().clean();
+    }
+
+    // Addressing
+
+    private static long bucket(ByteBuffer[] tab, int i) {
+        return tab[i >>> PAGE_SHIFT].getLong((i & PAGE_MASK) << 3);
+    }
+
+    private static void setBucket(ByteBuffer[] tab, int i, long addr) {
+        tab[i >>> PAGE_SHIFT].putLong((i & PAGE_MASK) << 3, addr);
+    }
+
+    private ByteBuffer chunk(long addr) {
+        return chunks[(int)(addr >>> 32)];
+    }
+
+    private static int offset(long addr) {
+        return (int)addr;
+    }
+
+    private long next(long addr) {
+        return chunk(addr).getLong(offset(addr) + NEXT);
+    }
+
+    private void setNext(long addr, long next) {
+        chunk(addr).putLong(offset(addr) + NEXT, next);
+    }
+
+    private static int recordSize(int keyLength, int valueLength) {
+        long n = (long)HEADER + keyLength + valueLength;
+        if (n > Integer.MAX_VALUE - 7)
+            throw new IllegalArgumentException("Record too large: " + n);
+        return ((int)n + 7) & ~7;
+    }
+
+    private int recordSize(long addr) {
+        ByteBuffer c = chunk(addr);
+        int off = offset(addr);
+        return recordSize(c.getInt(off + KEY_LENGTH), c.getInt(off + VALUE_LENGTH));
+    }
+
+    /**
+     * Allocates bytes from the arena and returns their address.
+     */
+    private long allocate(int bytes) {
+        ByteBuffer c = chunks[chunkCount - 1];
+        if (bytes > c.capacity() - top) {
+            if (chunkCount == chunks.length)
+                chunks = Arrays.copyOf(chunks, chunkCount * 2);
+            chunks[chunkCount++] = allocateDirect(Math.max(bytes, chunkSize));
+            top = 0;
+        }
+        long addr = ((long)(chunkCount - 1) << 32) | top;
+        top += bytes;
+        return addr;
+    }
+
+    // Hashing and comparison
+
+    /**
+     * Returns HashMap's supplemental hash of the polynomial hash of the
+     * remaining bytes of b, which is the hash Arrays.hashCode would give.
+     */
+    static int hash(ByteBuffer b) {
+        int h = 1;
+        for (int i = b.position(), end = b.limit(); i < end; i++)
+            h = 31 * h + b.get(i);
+        return HashMap.hash(h);
+    }
+
+    /**
+     * Copies len bytes between absolute offsets of two buffers without
+     * allocating, eight at a time when the byte orders agree.
+     */
+    static void copy(ByteBuffer src, int srcOff, ByteBuffer dst, int dstOff, int len) {
+        int i = 0;
+        if (src.order() == dst.order()) {
+            for (; i <= len - 8; i += 8)
+                dst.putLong(dstOff + i, src.getLong(srcOff + i));
+        }
+        for (; i < len; i++)
+            dst.put(dstOff + i, src.get(srcOff + i));
+    }
+
+    /**
+     * Returns true if the key of the record at addr equals the remaining
+     * bytes of key, whose length is len.
+     */
+    private boolean keyEquals(long addr, ByteBuffer key, int len) {
+        ByteBuffer c = chunk(addr);
+        int off = offset(addr);
+        if (c.getInt(off + KEY_LENGTH) != len)
+            return false;
+        off += HEADER;
+        int pos = key.position(), i = 0;
+        if (c.order() == key.order()) {
+            for (; i <= len - 8; i += 8)
+                if (c.getLong(off + i) != key.getLong(pos + i))
+                    return false;
+        }
+        for (; i < len; i++)
+            if (c.get(off + i) != key.get(pos + i))
+                return false;
+        return true;
+    }
+
+    private void ensureOpen() {
+        if (chunks == null)
+            throw new IllegalStateException("Map is closed");
+    }
+
+    /**
+     * Returns the address of the record for key, or 0 if there is none.
+     */
+    private long find(ByteBuffer key) {
+        ensureOpen();
+        int h = hash(key);
+        int len = key.remaining();
+        for (long e = bucket(table, HashMap.indexFor(h, capacity)); e != 0; e = next(e)) {
+            if (chunk(e).getInt(offset(e) + HASH) == h && keyEquals(e, key, len))
+                return e;
+        }
+        return 0;
+    }
+
+    // Public operations
+
+    /**
+     * Returns the number of key-value mappings in this map.
+     */
+    public int size() {
+        ensureOpen();
+        return size;
+    }
+
+    /**
+     * Returns <tt>true</tt> if this map contains no key-value mappings.
+     */
+    public boolean isEmpty() {
+        ensureOpen();
+        return size == 0;
+    }
+
+    /**
+     * Returns <tt>true</tt> if this map contains a mapping for the
+     * remaining bytes of key.
+     */
+    public boolean containsKey(ByteBuffer key) {
+        return find(key) != 0;
+    }
+
+    public boolean containsKey(byte[] key) {
+        return containsKey(wrap(key));
+    }
+
+    /**
+     * Returns the length of the value mapped to the remaining bytes of
+     * key, or -1 if this map contains no mapping for the key.
+     */
+    public int valueLength(ByteBuffer key) {
+        long e = find(key);
+        return (e == 0) ? -1 : chunk(e).getInt(offset(e) + VALUE_LENGTH);
+    }
+
+    /**
+     * Copies the value mapped to the remaining bytes of key into dst at
+     * its current position, and advances the position past it.
+     *
+     * @return the length of the value, or -1 if this map contains no
+     *         mapping for the key, in which case dst is unchanged
+     * @throws BufferOverflowException if the value is longer than
+     *         <tt>dst.remaining()</tt>; dst is then unchanged
+     */
+    public int get(ByteBuffer key, ByteBuffer dst) {
+        long e = find(key);
+        if (e == 0)
+            return -1;
+        ByteBuffer c = chunk(e);
+        int off = offset(e);
+        int klen = c.getInt(off + KEY_LENGTH);
+        int vlen = c.getInt(off + VALUE_LENGTH);
+        if (vlen > dst.remaining())
+            throw new BufferOverflowException();
+        int pos = dst.position();
+        copy(c, off + HEADER + klen, dst, pos, vlen);
+        dst.position(pos + vlen);
+        return vlen;
+    }
+
+    /**
+     * Returns a copy of the value mapped to key, or <tt>null</tt> if this
+     * map contains no mapping for the key.
+     */
+    public byte[] get(byte[] key) {
+        ByteBuffer k = wrap(key);
+        int vlen = valueLength(k);
+        if (vlen < 0)
+            return null;
+        byte[] value = new byte[vlen];
+        get(k, wrap(value));
+        return value;
+    }
+
+    /**
+     * Associates the remaining bytes of value with the remaining bytes of
+     * key.  A value of the same length as the old one is overwritten in
+     * place; otherwise a new record replaces the old one.
+     *
+     * @return <tt>true</tt> if there was no mapping for the key
+     */
+    public boolean put(ByteBuffer key, ByteBuffer value) {
+        ensureOpen();
+        int h = hash(key);
+        int klen = key.remaining();
+        int vlen = value.remaining();
+        int i = HashMap.indexFor(h, capacity);
+        long prev = 0;
+        for (long e = bucket(table, i); e != 0; prev = e, e = next(e)) {
+            ByteBuffer c = chunk(e);
+            int off = offset(e);
+            if (c.getInt(off + HASH) == h && keyEquals(e, key, klen)) {
+                if (c.getInt(off + VALUE_LENGTH) == vlen) {
+                    copy(value, value.position(), c, off + HEADER + klen, vlen);
+                    return false;
+                }
+                long r = newRecord(h, key, klen, value, vlen, next(e));
+                if (prev == 0)
+                    setBucket(table, i, r);
+                else
+                    setNext(prev, r);
+                garbage += recordSize(e);
+                return false;
+            }
+        }
+        setBucket(table, i, newRecord(h, key, klen, value, vlen, bucket(table, i)));
+        if (size++ >= threshold)
+            resize(2 * capacity);
+        return true;
+    }
+
+    public boolean put(byte[] key, byte[] value) {
+        return put(wrap(key), wrap(value));
+    }
+
+    private long newRecord(int h, ByteBuffer key, int klen,
+                           ByteBuffer value, int vlen, long next) {
+        long r = allocate(recordSize(klen, vlen));
+        ByteBuffer c = chunk(r);
+        int off = offset(r);
+        c.putLong(off + NEXT, next);
+        c.putInt(off + HASH, h);
+        c.putInt(off + KEY_LENGTH, klen);
+        c.putInt(off + VALUE_LENGTH, vlen);
+        copy(key, key.position(), c, off + HEADER, klen);
+        copy(value, value.position(), c, off + HEADER + klen, vlen);
+        return r;
+    }
+
+    /**
+     * Removes the mapping for the remaining bytes of key if present.
+     *
+     * @return <tt>true</tt> if there was a mapping for the key
+     */
+    public boolean remove(ByteBuffer key) {
+        ensureOpen();
+        int h = hash(key);
+        int klen = key.remaining();
+        int i = HashMap.indexFor(h, capacity);
+        long prev = 0;
+        for (long e = bucket(table, i); e != 0; prev = e, e = next(e)) {
+            if (chunk(e).getInt(offset(e) + HASH) == h && keyEquals(e, key, klen)) {
+                if (prev == 0)
+                    setBucket(table, i, next(e));
+                else
+                    setNext(prev, next(e));
+                garbage += recordSize(e);
+                size--;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public boolean remove(byte[] key) {
+        return remove(wrap(key));
+    }
+
+    private static ByteBuffer wrap(byte[] b) {
+        return ByteBuffer.wrap(b).order(ByteOrder.nativeOrder());
+    }
+
+    /**
+     * Rehashes the contents of this map into a new bucket table with the
+     * given capacity, relinking the records where they are.
+     */
+    void resize(int newCapacity) {
+        if (capacity == MAXIMUM_CAPACITY) {
+            threshold = Integer.MAX_VALUE;
+            return;
+        }
+        ByteBuffer[] oldTable = table;
+        ByteBuffer[] newTable = newTable(newCapacity);
+        for (int j = 0; j < capacity; j++) {
+            long e = bucket(oldTable, j);
+            while (e != 0) {
+                long next = next(e);
+                int i = HashMap.indexFor(chunk(e).getInt(offset(e) + HASH), newCapacity);
+                setNext(e, bucket(newTable, i));
+                setBucket(newTable, i, e);
+                e = next;
+            }
+        }
+        table = newTable;
+        capacity = newCapacity;
+        threshold = (int)Math.min(newCapacity * loadFactor, MAXIMUM_CAPACITY + 1);
+        for (ByteBuffer page : oldTable)
+            free(page);
+    }
+
+    /**
+     * Removes all of the mappings from this map and releases all but the
+     * first arena chunk.  The capacity is kept.
+     */
+    public void clear() {
+        ensureOpen();
+        for (ByteBuffer page : table)
+            for (int i = 0; i < page.capacity(); i += 8)
+                page.putLong(i, 0);
+        for (int k = 1; k < chunkCount; k++) {
+            free(chunks[k]);
+            chunks[k] = null;
+        }
+        chunkCount = 1;
+        top = 8;
+        size = 0;
+        garbage = 0;
+    }
+
+    /**
+     * Returns the number of off-heap bytes held by this map, for the
+     * bucket table and the arena.
+     */
+    public long memoryUsed() {
+        ensureOpen();
+        long n = 0;
+        for (ByteBuffer page : table)
+            n += page.capacity();
+        for (int k = 0; k < chunkCount; k++)
+            n += chunks[k].capacity();
+        return n;
+    }
+
+    /**
+     * Returns the number of arena bytes held by records of removed or
+     * replaced mappings.
+     */
+    public long garbageBytes() {
+        ensureOpen();
+        return garbage;
+    }
+
+    /**
+     * Copies the live records into a fresh arena and releases the old
+     * one, reclaiming the space reported by {@link #garbageBytes()}.
+     */
+    public void compact() {
+        ensureOpen();
+        ByteBuffer[] oldChunks = chunks;
+        int oldCount = chunkCount;
+        chunks = new ByteBuffer[4];
+        chunks[0] = allocateDirect(chunkSize);
+        chunkCount = 1;
+        top = 8;
+        for (int j = 0; j < capacity; j++) {
+            long prev = 0;
+            for (long e = bucket(table, j); e != 0; ) {
+                ByteBuffer c = oldChunks[(int)(e >>> 32)];
+                int off = offset(e);
+                int n = recordSize(c.getInt(off + KEY_LENGTH),
+                                   c.getInt(off + VALUE_LENGTH));
+                long r = allocate(n);
+                copy(c, off, chunk(r), offset(r), n);
+                setNext(r, 0);
+                if (prev == 0)
+                    setBucket(table, j, r);
+                else
+                    setNext(prev, r);
+                prev = r;
+                e = c.getLong(off + NEXT);
+            }
+        }
+        garbage = 0;
+        for (int k = 0; k < oldCount; k++)
+            free(oldChunks[k]);
+    }
+
+    /**
+     * Releases the off-heap memory of this map.  Calling this method on
+     * a map that is already closed has no effect.
+     */
+    public void close() {
+        if (chunks == null)
+            return;
+        for (ByteBuffer page : table)
+            free(page);
+        for (int k = 0; k < chunkCount; k++)
+            free(chunks[k]);
+        table = null;
+        chunks = null;
+        size = 0;
+        garbage = 0;
+    }
+}
@@ -0,0 +1,682 @@
+package java.util;
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+
+/**
+ * An immutable map whose updates return a new version of the map and
+ * leave the original unchanged.  The versions share structure: an update
+ * copies only the O(log<sub>32</sub> n) nodes on the path to the changed
+ * mapping, so keeping every version of a map costs memory in proportion
+ * to the changes made rather than to the size of each version.  This
+ * replaces copying a <tt>HashMap</tt> with <tt>clone()</tt> to give
+ * readers a stable snapshot.
+ *
+ * <p>The map is a compressed hash-array mapped prefix tree (CHAMP).
+ * Each node consumes five bits of the key's hash and holds two bitmaps:
+ * one marking the slots that hold a key and value inline, the other the
+ * slots that hold a child node.  Inline entries are stored at the front
+ * of the node's array and children at the back, so a node has no empty
+ * slots, and removals restore the canonical shape, so two maps with the
+ * same mappings have the same tree.  Hashes come from HashMap's
+ * supplemental hash function; keys whose hashes are equal in all 32 bits
+ * share a collision node at the bottom of the tree.
+ *
+ * <p>{@link #with} and {@link #without} return the new version.  The
+ * <tt>Map</tt> mutators throw <tt>UnsupportedOperationException</tt>.
+ * For bulk loading, a {@link Builder} updates nodes it created itself in
+ * place instead of copying them, and shares them with the maps it
+ * builds until it next changes them.
+ *
+ * <p>This class permits <tt>null</tt> values and the <tt>null</tt> key.
+ * Iteration order is unspecified, but the same for equal maps except
+ * among keys whose hashes are equal.
+ *
+ * @param <K> the type of keys maintained by this map
+ * @param <V> the type of mapped values
+ *
+ * @see     HashMap
+ */
+public final class PersistentHashMap<K,V>
+    extends AbstractMap<K,V>
+    implements Map<K,V>, Serializable
+{
+    static final int BITS = 5;
+
+    /**
+     * The shift at which every bit of the hash has been consumed.
+     */
+    static final int HASH_BITS = 32;
+
+    /**
+     * Returned by lookups for a missing key, since a value may be null.
+     */
+    static final Object NOT_FOUND = new Object();
+
+    private static final PersistentHashMap<?,?> EMPTY =
+        new PersistentHashMap<>(BitmapNode.EMPTY, 0);
+
+    private transient Node root;
+    private transient int size;
+
+    private PersistentHashMap(Node root, int size) {
+        this.root = root;
+        this.size = size;
+    }
+
+    /**
+     * Returns the empty map.
+     */
+    @SuppressWarnings("unchecked")
+    public static <K,V> PersistentHashMap<K,V> empty() {
+        return (PersistentHashMap<K,V>) EMPTY;
+    }
+
+    /**
+     * Returns a persistent map with the mappings of m.
+     */
+    public static <K,V> PersistentHashMap<K,V> copyOf(Map<? extends K, ? extends V> m) {
+        if (m instanceof PersistentHashMap) {
+            @SuppressWarnings("unchecked")
+            PersistentHashMap<K,V> p = (PersistentHashMap<K,V>) m;
+            return p;
+        }
+        return new Builder<K,V>().putAll(m).build();
+    }
+
+    /**
+     * Returns a builder holding the mappings of this map.
+     */
+    public Builder<K,V> toBuilder() {
+        return new Builder<>(root, size);
+    }
+
+    static int hashOf(Object key) {
+        return (key == null) ? 0 : HashMap.hash(key.hashCode());
+    }
+
+    static int mask(int hash, int shift) {
+        return (hash >>> shift) & ((1 << BITS) - 1);
+    }
+
+    static int bitpos(int hash, int shift) {
+        return 1 << mask(hash, shift);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    @SuppressWarnings("unchecked")
+    public V get(Object key) {
+        Object v = root.find(key, hashOf(key), 0);
+        return (v == NOT_FOUND) ? null : (V) v;
+    }
+
+    public boolean containsKey(Object key) {
+        return root.find(key, hashOf(key), 0) != NOT_FOUND;
+    }
+
+    /**
+     * Returns a map with the mappings of this one, in which key is mapped
+     * to value.  Returns this map if it already maps key to that same
+     * value object.
+     *
+     * @param key key with which the specified value is to be associated
+     * @param value value to be associated with the specified key
+     * @return the new version of the map
+     */
+    public PersistentHashMap<K,V> with(K key, V value) {
+        Change c = new Change();
+        Node r = root.put(null, key, hashOf(key), value, 0, c);
+        if (r == root)
+            return this;
+        return new PersistentHashMap<>(r, c.added ? size + 1 : size);
+    }
+
+    /**
+     * Returns a map with the mappings of this one except for the mapping
+     * for key, if any.  Returns this map if it has no mapping for key.
+     *
+     * @param key key whose mapping is to be left out
+     * @return the new version of the map
+     */
+    public PersistentHashMap<K,V> without(Object key) {
+        Change c = new Change();
+        Node r = root.remove(null, key, hashOf(key), 0, c);
+        if (!c.removed)
+            return this;
+        return new PersistentHashMap<>(r, size - 1);
+    }
+
+    /**
+     * Returns a map with the mappings of this one and of m, with those of
+     * m taking precedence.
+     */
+    public PersistentHashMap<K,V> withAll(Map<? extends K, ? extends V> m) {
+        return toBuilder().putAll(m).build();
+    }
+
+    /**
+     * A mutable map for building a PersistentHashMap without allocating
+     * each intermediate version.  Nodes created by the builder carry its
+     * current edit token and are updated in place; nodes it shares with
+     * an existing map are copied on first change as usual.  Each call to
+     * {@link #build} takes a new token, so the nodes of a built map are
+     * never changed afterwards.  A builder is not thread-safe.
+     */
+    public static final class Builder<K,V> {
+        private Node root;
+        private int size;
+        private Object edit = new Object();
+
+        /**
+         * Creates an empty builder.
+         */
+        public Builder() {
+            this(BitmapNode.EMPTY, 0);
+        }
+
+        Builder(Node root, int size) {
+            this.root = root;
+            this.size = size;
+        }
+
+        /**
+         * Maps key to value, returning this builder.
+         */
+        public Builder<K,V> put(K key, V value) {
+            Change c = new Change();
+            root = root.put(edit, key, hashOf(key), value, 0, c);
+            if (c.added)
+                size++;
+            return this;
+        }
+
+        /**
+         * Adds the mappings of m, returning this builder.
+         */
+        public Builder<K,V> putAll(Map<? extends K, ? extends V> m) {
+            for (Map.Entry<? extends K, ? extends V> e : m.entrySet())
+                put(e.getKey(), e.getValue());
+            return this;
+        }
+
+        /**
+         * Removes the mapping for key, if any, returning this builder.
+         */
+        public Builder<K,V> remove(Object key) {
+            Change c = new Change();
+            root = root.remove(edit, key, hashOf(key), 0, c);
+            if (c.removed)
+                size--;
+            return this;
+        }
+
+        /**
+         * Returns the number of mappings added so far.
+         */
+        public int size() {
+            return size;
+        }
+
+        /**
+         * Returns a map with the current mappings.  The builder may be
+         * used further; its later changes do not affect the map.
+         */
+        public PersistentHashMap<K,V> build() {
+            edit = new Object();
+            return new PersistentHashMap<>(root, size);
+        }
+    }
+
+    /**
+     * The outcome of a put or remove on the tree.
+     */
+    static final class Change {
+        boolean added;
+        boolean removed;
+    }
+
+    // Tree nodes
+
+    abstract static class Node {
+        /**
+         * Returns the value of key, or NOT_FOUND.
+         */
+        abstract Object find(Object key, int hash, int shift);
+
+        /**
+         * Returns the node with key mapped to value: this node if it
+         * already was, or if edit owns this node and it was updated in
+         * place.
+         */
+        abstract Node put(Object edit, Object key, int hash, Object value,
+                          int shift, Change c);
+
+        /**
+         * Returns the node without a mapping for key, setting c.removed
+         * if there was one.  A node left with a single entry and no
+         * children is returned for the parent to inline.
+         */
+        abstract Node remove(Object edit, Object key, int hash, int shift,
+                             Change c);
+
+        abstract int payloadArity();
+        abstract Object keyAt(int i);
+        abstract Object valueAt(int i);
+        abstract int nodeArity();
+        abstract Node nodeAt(int i);
+    }
+
+    static final class BitmapNode extends Node {
+        static final BitmapNode EMPTY = new BitmapNode(null, 0, 0, new Object[0]);
+
+        final Object edit;
+        int dataMap;
+        int nodeMap;
+
+        /**
+         * The inline keys and values, interleaved, followed by the child
+         * nodes in reverse bit order.
+         */
+        Object[] content;
+
+        BitmapNode(Object edit, int dataMap, int nodeMap, Object[] content) {
+            this.edit = edit;
+            this.dataMap = dataMap;
+            this.nodeMap = nodeMap;
+            this.content = content;
+        }
+
+        int dataIndex(int bit) {
+            return Integer.bitCount(dataMap & (bit - 1));
+        }
+
+        int nodeIndex(int bit) {
+            return content.length - 1 - Integer.bitCount(nodeMap & (bit - 1));
+        }
+
+        boolean isEditable(Object edit) {
+            return edit != null && edit == this.edit;
+        }
+
+        Object find(Object key, int hash, int shift) {
+            int bit = bitpos(hash, shift);
+            if ((dataMap & bit) != 0) {
+                int i = 2 * dataIndex(bit);
+                return Objects.equals(key, content[i]) ? content[i + 1] : NOT_FOUND;
+            }
+            if ((nodeMap & bit) != 0)
+                return ((Node) content[nodeIndex(bit)]).find(key, hash, shift + BITS);
+            return NOT_FOUND;
+        }
+
+        Node put(Object edit, Object key, int hash, Object value,
+                 int shift, Change c) {
+            int bit = bitpos(hash, shift);
+            if ((dataMap & bit) != 0) {
+                int i = 2 * dataIndex(bit);
+                Object k = content[i];
+                if (Objects.equals(key, k)) {
+                    if (content[i + 1] == value)
+                        return this;
+                    if (isEditable(edit)) {
+                        content[i + 1] = value;
+                        return this;
+                    }
+                    Object[] a = content.clone();
+                    a[i + 1] = value;
+                    return new BitmapNode(edit, dataMap, nodeMap, a);
+                }
+                c.added = true;
+                Node sub = pair(edit, k, hashOf(k), content[i + 1],
+                                key, hash, value, shift + BITS);
+                return inlineToNode(edit, bit, i, sub);
+            }
+            if ((nodeMap & bit) != 0) {
+                int j = nodeIndex(bit);
+                Node sub = (Node) content[j];
+                Node newSub = sub.put(edit, key, hash, value, shift + BITS, c);
+                return (newSub == sub) ? this : setNode(edit, j, newSub);
+            }
+            c.added = true;
+            int i = 2 * dataIndex(bit);
+            Object[] a = new Object[content.length + 2];
+            System.arraycopy(content, 0, a, 0, i);
+            a[i] = key;
+            a[i + 1] = value;
+            System.arraycopy(content, i, a, i + 2, content.length - i);
+            return update(edit, dataMap | bit, nodeMap, a);
+        }
+
+        Node remove(Object edit, Object key, int hash, int shift, Change c) {
+            int bit = bitpos(hash, shift);
+            if ((dataMap & bit) != 0) {
+                int i = 2 * dataIndex(bit);
+                if (!Objects.equals(key, content[i]))
+                    return this;
+                c.removed = true;
+                if (content.length == 4 && nodeMap == 0) {
+                    // Left with one entry: the parent inlines it, and at
+                    // any depth but the root it shares level 0 with key
+                    int newDataMap = (shift == 0) ? (dataMap ^ bit) : bitpos(hash, 0);
+                    Object[] a = (i == 0)
+                        ? new Object[] { content[2], content[3] }
+                        : new Object[] { content[0], content[1] };
+                    return new BitmapNode(edit, newDataMap, 0, a);
+                }
+                Object[] a = new Object[content.length - 2];
+                System.arraycopy(content, 0, a, 0, i);
+                System.arraycopy(content, i + 2, a, i, content.length - i - 2);
+                return update(edit, dataMap ^ bit, nodeMap, a);
+            }
+            if ((nodeMap & bit) != 0) {
+                int j = nodeIndex(bit);
+                Node sub = (Node) content[j];
+                Node newSub = sub.remove(edit, key, hash, shift + BITS, c);
+                if (!c.removed)
+                    return this;
+                if (newSub.nodeArity() == 0 && newSub.payloadArity() == 1) {
+                    if (dataMap == 0 && Integer.bitCount(nodeMap) == 1)
+                        return newSub;
+                    return nodeToInline(edit, bit, j, newSub);
+                }
+                return setNode(edit, j, newSub);
+            }
+            return this;
+        }
+
+        private Node update(Object edit, int dataMap, int nodeMap, Object[] a) {
+            if (isEditable(edit)) {
+                this.dataMap = dataMap;
+                this.nodeMap = nodeMap;
+                this.content = a;
+                return this;
+            }
+            return new BitmapNode(edit, dataMap, nodeMap, a);
+        }
+
+        private Node setNode(Object edit, int j, Node sub) {
+            if (isEditable(edit)) {
+                content[j] = sub;
+                return this;
+            }
+            Object[] a = content.clone();
+            a[j] = sub;
+            return new BitmapNode(edit, dataMap, nodeMap, a);
+        }
+
+        /**
+         * Replaces the inline entry at i with the node sub.
+         */
+        private Node inlineToNode(Object edit, int bit, int i, Node sub) {
+            int j = content.length - 2 - Integer.bitCount(nodeMap & (bit - 1));
+            Object[] a = new Object[content.length - 1];
+            System.arraycopy(content, 0, a, 0, i);
+            System.arraycopy(content, i + 2, a, i, j - i);
+            a[j] = sub;
+            System.arraycopy(content, j + 2, a, j + 1, content.length - j - 2);
+            return update(edit, dataMap ^ bit, nodeMap | bit, a);
+        }
+
+        /**
+         * Replaces the child at j with the single entry of sub.
+         */
+        private Node nodeToInline(Object edit, int bit, int j, Node sub) {
+            int i = 2 * dataIndex(bit);
+            Object[] a = new Object[content.length + 1];
+            System.arraycopy(content, 0, a, 0, i);
+            a[i] = sub.keyAt(0);
+            a[i + 1] = sub.valueAt(0);
+            System.arraycopy(content, i, a, i + 2, j - i);
+            System.arraycopy(content, j + 1, a, j + 2, content.length - j - 1);
+            return update(edit, dataMap | bit, nodeMap ^ bit, a);
+        }
+
+        int payloadArity() {
+            return Integer.bitCount(dataMap);
+        }
+
+        Object keyAt(int i) {
+            return content[2 * i];
+        }
+
+        Object valueAt(int i) {
+            return content[2 * i + 1];
+        }
+
+        int nodeArity() {
+            return Integer.bitCount(nodeMap);
+        }
+
+        Node nodeAt(int i) {
+            return (Node) content[content.length - 1 - i];
+        }
+    }
+
+    /**
+     * Returns a node holding the two given entries, whose keys differ,
+     * from the level at shift down.
+     */
+    static Node pair(Object edit, Object k1, int h1, Object v1,
+                     Object k2, int h2, Object v2, int shift) {
+        if (shift >= HASH_BITS)
+            return new CollisionNode(edit, h1, new Object[] { k1, v1, k2, v2 });
+        int m1 = mask(h1, shift), m2 = mask(h2, shift);
+        if (m1 != m2) {
+            Object[] a = (m1 < m2)
+                ? new Object[] { k1, v1, k2, v2 }
+                : new Object[] { k2, v2, k1, v1 };
+            return new BitmapNode(edit, (1 << m1) | (1 << m2), 0, a);
+        }
+        Node sub = pair(edit, k1, h1, v1, k2, h2, v2, shift + BITS);
+        return new BitmapNode(edit, 0, 1 << m1, new Object[] { sub });
+    }
+
+    /**
+     * The entries of keys whose hashes are equal in all 32 bits, in a
+     * plain array searched linearly.  Only found below the last bitmap
+     * level, so every key reaching it has the same hash.
+     */
+    static final class CollisionNode extends Node {
+        final Object edit;
+        final int hash;
+        Object[] content;
+
+        CollisionNode(Object edit, int hash, Object[] content) {
+            this.edit = edit;
+            this.hash = hash;
+            this.content = content;
+        }
+
+        int indexOf(Object key) {
+            for (int i = 0; i < content.length; i += 2)
+                if (Objects.equals(key, content[i]))
+                    return i;
+            return -1;
+        }
+
+        Object find(Object key, int hash, int shift) {
+            if (hash != this.hash)
+                return NOT_FOUND;
+            int i = indexOf(key);
+            return (i < 0) ? NOT_FOUND : content[i + 1];
+        }
+
+        Node put(Object edit, Object key, int hash, Object value,
+                 int shift, Change c) {
+            int i = indexOf(key);
+            Object[] a;
+            if (i >= 0) {
+                if (content[i + 1] == value)
+                    return this;
+                if (edit != null && edit == this.edit) {
+                    content[i + 1] = value;
+                    return this;
+                }
+                a = content.clone();
+                a[i + 1] = value;
+            } else {
+                c.added = true;
+                a = Arrays.copyOf(content, content.length + 2);
+                a[content.length] = key;
+                a[content.length + 1] = value;
+            }
+            if (edit != null && edit == this.edit) {
+                content = a;
+                return this;
+            }
+            return new CollisionNode(edit, hash, a);
+        }
+
+        Node remove(Object edit, Object key, int hash, int shift, Change c) {
+            int i = (hash == this.hash) ? indexOf(key) : -1;
+            if (i < 0)
+                return this;
+            c.removed = true;
+            if (content.length == 4) {
+                Object[] a = (i == 0)
+                    ? new Object[] { content[2], content[3] }
+                    : new Object[] { content[0], content[1] };
+                return new BitmapNode(edit, bitpos(hash, 0), 0, a);
+            }
+            Object[] a = new Object[content.length - 2];
+            System.arraycopy(content, 0, a, 0, i);
+            System.arraycopy(content, i + 2, a, i, content.length - i - 2);
+            if (edit != null && edit == this.edit) {
+                content = a;
+                return this;
+            }
+            return new CollisionNode(edit, hash, a);
+        }
+
+        int payloadArity() {
+            return content.length / 2;
+        }
+
+        Object keyAt(int i) {
+            return content[2 * i];
+        }
+
+        Object valueAt(int i) {
+            return content[2 * i + 1];
+        }
+
+        int nodeArity() {
+            return 0;
+        }
+
+        Node nodeAt(int i) {
+            throw new IndexOutOfBoundsException();
+        }
+    }
+
+    // Views
+
+    private transient Set<Map.Entry<K,V>> entrySet = null;
+
+    public Set<Map.Entry<K,V>> entrySet() {
+        Set<Map.Entry<K,V>> es = entrySet;
+        return es != null ? es : (entrySet = new EntrySet());
+    }
+
+    private final class EntrySet extends AbstractSet<Map.Entry<K,V>> {
+        public Iterator<Map.Entry<K,V>> iterator() {
+            return new EntryIterator<>(root);
+        }
+        public boolean contains(Object o) {
+            if (!(o instanceof Map.Entry))
+                return false;
+            Map.Entry<?,?> e = (Map.Entry<?,?>) o;
+            Object key = e.getKey();
+            Object v = root.find(key, hashOf(key), 0);
+            return v != NOT_FOUND && Objects.equals(v, e.getValue());
+        }
+        public int size() {
+            return size;
+        }
+    }
+
+    /**
+     * Visits the inline entries of each node before descending into its
+     * children, keeping the path from the root on a stack.
+     */
+    static final class EntryIterator<K,V> implements Iterator<Map.Entry<K,V>> {
+        private final Node[] nodes = new Node[HASH_BITS / BITS + 2];
+        private final int[] nextChild = new int[nodes.length];
+        private int depth;
+        private Node current;
+        private int nextEntry;
+
+        EntryIterator(Node root) {
+            nodes[0] = root;
+            current = root;
+        }
+
+        public boolean hasNext() {
+            while (nextEntry >= current.payloadArity()) {
+                // Descend into the next child, or climb when there is none
+                while (nextChild[depth] >= nodes[depth].nodeArity()) {
+                    if (depth == 0)
+                        return false;
+                    depth--;
+                }
+                Node n = nodes[depth].nodeAt(nextChild[depth]++);
+                depth++;
+                nodes[depth] = n;
+                nextChild[depth] = 0;
+                current = n;
+                nextEntry = 0;
+            }
+            return true;
+        }
+
+        @SuppressWarnings("unchecked")
+        public Map.Entry<K,V> next() {
+            if (!hasNext())
+                throw new NoSuchElementException();
+            int i = nextEntry++;
+            return new AbstractMap.SimpleImmutableEntry<>((K) current.keyAt(i),
+                                                          (V) current.valueAt(i));
+        }
+    }
+
+    private static final long serialVersionUID = -6127354109217349238L;
+
+    /**
+     * Save the state of the map to a stream.
+     *
+     * @serialData The <i>size</i> (int) is emitted, followed by the key
+     *             (Object) and value (Object) for each mapping, in no
+     *             particular order.
+     */
+    private void writeObject(ObjectOutputStream s) throws IOException {
+        s.defaultWriteObject();
+        s.writeInt(size);
+        for (Map.Entry<K,V> e : entrySet()) {
+            s.writeObject(e.getKey());
+            s.writeObject(e.getValue());
+        }
+    }
+
+    /**
+     * Reconstitute the map from a stream.
+     */
+    @SuppressWarnings("unchecked")
+    private void readObject(ObjectInputStream s)
+        throws IOException, ClassNotFoundException
+    {
+        s.defaultReadObject();
+        int n = s.readInt();
+        if (n < 0)
+            throw new InvalidObjectException("Illegal size: " + n);
+        Builder<K,V> b = new Builder<>();
+        for (int i = 0; i < n; i++)
+            b.put((K) s.readObject(), (V) s.readObject());
+        root = b.root;
+        size = b.size;
+    }
+}
@@ -1,298 +1,518 @@
-  39: package java.util;
-  40: 
-  41: import java.io.Serializable;
-  42: 
-  43: /**
-  44:  * @author Tom Tromey (tromey@redhat.com)
-  45:  * @author Andrew John Hughes (gnu_andrew@member.fsf.org)
-  46:  * @since 1.5
-  47:  */
-  48: public class PriorityQueue<E> extends AbstractQueue<E> implements Serializable
-  49: {
-  50:   private static final int DEFAULT_CAPACITY = 11;
-  51: 
-  52:   private static final long serialVersionUID = -7720805057305804111L;
-  53: 
-  54:   /** Number of elements actually used in the storage array.  */
-  55:   int used;
-  56: 
-  57:   /**
-  58:    * This is the storage for the underlying binomial heap.
-  59:    * The idea is, each node is less than or equal to its children.
-  60:    * A node at index N (0-based) has two direct children, at
-  61:    * nodes 2N+1 and 2N+2.
-  62:    */
-  63:   E[] storage;
-  64: 
-  65:   /**
-  66:    * The comparator we're using, or null for natural ordering.
-  67:    */
-  68:   Comparator<? super E> comparator;
-  69: 
-  70:   public PriorityQueue()
-  71:   {
-  72:     this(DEFAULT_CAPACITY, null);
-  73:   }
-  74: 
-  75:   public PriorityQueue(Collection<? extends E> c)
-  76:   {
-  77:     this(Math.max(1, (int) (1.1 * c.size())), null);
-  78: 
-  79:     // Special case where we can find the comparator to use.
-  80:     if (c instanceof SortedSet)
-  81:       {
-  82:         SortedSet<? extends E> ss = (SortedSet<? extends E>) c;
-  83:         this.comparator = (Comparator<? super E>) ss.comparator();
-  84:         // We can insert the elements directly, since they are sorted.
-  85:         int i = 0;
-  86:         for (E val : ss)
-  87:           {
-  88:             if (val == null)
-  89:               throw new NullPointerException();
-  90:             storage[i++] = val;
-  91:           }
-  92:       }
-  93:     else if (c instanceof PriorityQueue)
-  94:       {
-  95:         PriorityQueue<? extends E> pq = (PriorityQueue<? extends E>) c;
-  96:         this.comparator = (Comparator<? super E>)pq.comparator();
-  97:         // We can just copy the contents.
-  98:         System.arraycopy(pq.storage, 0, storage, 0, pq.storage.length);
-  99:       }
- 100: 
- 101:     addAll(c);
- 102:   }
- 103: 
- 104:   public PriorityQueue(int cap)
- 105:   {
- 106:     this(cap, null);
- 107:   }
- 108: 
- 109:   public PriorityQueue(int cap, Comparator<? super E> comp)
- 110:   {
- 111:     if (cap < 1)
- 112:       throw new IllegalArgumentException();      
- 113:     this.used = 0;
- 114:     this.storage = (E[]) new Object[cap];
- 115:     this.comparator = comp;
- 116:   }
- 117: 
- 118:   public PriorityQueue(PriorityQueue<? extends E> c)
- 119:   {
- 120:     this(Math.max(1, (int) (1.1 * c.size())),
- 121:          (Comparator<? super E>)c.comparator());
- 122:     // We can just copy the contents.
- 123:     System.arraycopy(c.storage, 0, storage, 0, c.storage.length);
- 124:   }
- 125: 
- 126:   public PriorityQueue(SortedSet<? extends E> c)
- 127:   {
- 128:     this(Math.max(1, (int) (1.1 * c.size())),
- 129:          (Comparator<? super E>)c.comparator());
- 130:     // We can insert the elements directly, since they are sorted.
- 131:     int i = 0;
- 132:     for (E val : c)
- 133:       {
- 134:         if (val == null)
- 135:           throw new NullPointerException();
- 136:         storage[i++] = val;
- 137:       }
- 138:   }
- 139: 
- 140:   public void clear()
- 141:   {
- 142:     Arrays.fill(storage, null);
- 143:     used = 0;
- 144:   }
- 145: 
- 146:   public Comparator<? super E> comparator()
- 147:   {
- 148:     return comparator;
- 149:   }
- 150: 
- 151:   public Iterator<E> iterator()
- 152:   {
- 153:     return new Iterator<E>()
- 154:     {
- 155:       int index = -1;
- 156:       int count = 0;
- 157: 
- 158:       public boolean hasNext()
- 159:       {
- 160:         return count < used;
- 161:       }
- 162: 
- 163:       public E next()
- 164:       {
- 165:         while (storage[++index] == null)
- 166:           ;
- 167: 
- 168:         ++count;
- 169:         return storage[index];
- 170:       }
- 171: 
- 172:       public void remove()
- 173:       {
- 174:         PriorityQueue.this.remove(index);
- 175:     index--;
- 176:       }
- 177:     };
- 178:   }
- 179: 
- 180:   public boolean offer(E o)
- 181:   {
- 182:     if (o == null)
- 183:       throw new NullPointerException();
- 184: 
- 185:     int slot = findSlot(-1);
- 186: 
- 187:     storage[slot] = o;
- 188:     ++used;
- 189:     bubbleUp(slot);
- 190: 
- 191:     return true;
- 192:   }
- 193: 
- 194:   public E peek()
- 195:   {
- 196:     return used == 0 ? null : storage[0];
- 197:   }
- 198: 
- 199:   public E poll()
- 200:   {
- 201:     if (used == 0)
- 202:       return null;
- 203:     E result = storage[0];
- 204:     remove(0);
- 205:     return result;
- 206:   }
- 207: 
- 208:   public boolean remove(Object o)
- 209:   {
- 210:     if (o != null)
- 211:       {
- 212:         for (int i = 0; i < storage.length; ++i)
- 213:           {
- 214:             if (o.equals(storage[i]))
- 215:               {
- 216:                 remove(i);
- 217:                 return true;
- 218:               }
- 219:           }
- 220:       }
- 221:     return false;
- 222:   }
- 223: 
- 224:   public int size()
- 225:   {
- 226:     return used;
- 227:   }
- 228: 
- 229:   // It is more efficient to implement this locally -- less searching
- 230:   // for free slots.
- 231:   public boolean addAll(Collection<? extends E> c)
- 232:   {
- 233:     if (c == this)
- 234:       throw new IllegalArgumentException();
- 235: 
- 236:     int newSlot = -1;
- 237:     int save = used;
- 238:     for (E val : c)
- 239:       {
- 240:         if (val == null)
- 241:           throw new NullPointerException();
- 242:         newSlot = findSlot(newSlot);
- 243:         storage[newSlot] = val;
- 244:         ++used;
- 245:         bubbleUp(newSlot);
- 246:       }
- 247: 
- 248:     return save != used;
- 249:   }
- 250: 
- 251:   int findSlot(int start)
- 252:   {
- 253:     int slot;
- 254:     if (used == storage.length)
- 255:       {
- 256:         resize();
- 257:         slot = used;
- 258:       }
- 259:     else
- 260:       {
- 261:         for (slot = start + 1; slot < storage.length; ++slot)
- 262:           {
- 263:             if (storage[slot] == null)
- 264:               break;
- 265:           }
- 266:         // We'll always find a slot.
- 267:       }
- 268:     return slot;
- 269:   }
- 270: 
- 271:   void remove(int index)
- 272:   {
- 273:     // Remove the element at INDEX.  We do this by finding the least
- 274:     // child and moving it into place, then iterating until we reach
- 275:     // the bottom of the tree.
- 276:     while (storage[index] != null)
- 277:       {
- 278:         int child = 2 * index + 1;
- 279: 
- 280:         // See if we went off the end.
- 281:         if (child >= storage.length)
- 282:           {
- 283:             storage[index] = null;
- 284:             break;
- 285:           }
- 286: 
- 287:         // Find which child we want to promote.  If one is not null,
- 288:         // we pick it.  If both are null, it doesn't matter, we're
- 289:         // about to leave.  If neither is null, pick the lesser.
- 290:         if (child + 1 >= storage.length || storage[child + 1] == null)
- 291:           {
- 292:             // Nothing.
- 293:           }
- 294:         else if (storage[child] == null
- 295:                  || (Collections.compare(storage[child], storage[child + 1],
- 296:                                          comparator) > 0))
- 297:           ++child;
- 298:         storage[index] = storage[child];
- 299:         index = child;
- 300:       }
- 301:     --used;
- 302:   }
- 303: 
- 304:   void bubbleUp(int index)
- 305:   {
- 306:     // The element at INDEX was inserted into a blank spot.  Now move
- 307:     // it up the tree to its natural resting place.
- 308:     while (index > 0)
- 309:       {
- 310:         // This works regardless of whether we're at 2N+1 or 2N+2.
- 311:         int parent = (index - 1) / 2;
- 312:         if (Collections.compare(storage[parent], storage[index], comparator)
- 313:             <= 0)
- 314:           {
- 315:             // Parent is the same or smaller than this element, so the
- 316:             // invariant is preserved.  Note that if the new element
- 317:             // is smaller than the parent, then it is necessarily
- 318:             // smaller than the parent's other child.
- 319:             break;
- 320:           }
- 321: 
- 322:         E temp = storage[index];
- 323:         storage[index] = storage[parent];
- 324:         storage[parent] = temp;
- 325: 
- 326:         index = parent;
- 327:       }
- 328:   }
- 329: 
- 330:   void resize()
- 331:   {
- 332:     E[] new_data = (E[]) new Object[2 * storage.length];
- 333:     System.arraycopy(storage, 0, new_data, 0, storage.length);
- 334:     storage = new_data;
- 335:   }
- 336: }
+package java.util;
+
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.io.Serializable;
+
+/**
+ * @author Tom Tromey (tromey@redhat.com)
+ * @author Andrew John Hughes (gnu_andrew@member.fsf.org)
+ * @since 1.5
+ */
+public class PriorityQueue<E> extends AbstractQueue<E> implements Serializable
+{
+  private static final int DEFAULT_CAPACITY = 11;
+
+  /** The largest number of children a node may have.  */
+  static final int MAXIMUM_ARITY = 64;
+
+  private static final long serialVersionUID = -7720805057305804111L;
+
+  /** Number of elements actually used in the storage array.  */
+  int used;
+
+  /**
+   * This is the storage for the underlying d-ary heap.
+   * The idea is, each node is less than or equal to its children.
+   * A node at index N (0-based) has D direct children, at
+   * nodes D*N+1 to D*N+D; in the default binary heap these are
+   * 2N+1 and 2N+2.  The heap is dense: the elements are at
+   * indices 0 to USED - 1 and every slot from USED on is null.
+   */
+  E[] storage;
+
+  /**
+   * The base 2 logarithm of the number of children D of each node,
+   * less one: 0 for a binary heap, 1 for a 4-ary heap, 2 for an
+   * 8-ary heap.  Kept this way so that queues serialized before
+   * the arity could be chosen, which lack the field, read back as
+   * binary heaps; readObject rebuilds the heap either way.
+   */
+  int arityShift;
+
+  /**
+   * The comparator we're using, or null for natural ordering.
+   */
+  Comparator<? super E> comparator;
+
+  public PriorityQueue()
+  {
+    this(DEFAULT_CAPACITY, null);
+  }
+
+  public PriorityQueue(Collection<? extends E> c)
+  {
+    this(Math.max(1, (int) (1.1 * c.size())), null);
+
+    // Special case where we can find the comparator to use.
+    if (c instanceof SortedSet)
+      {
+        SortedSet<? extends E> ss = (SortedSet<? extends E>) c;
+        this.comparator = (Comparator<? super E>) ss.comparator();
+        // We can insert the elements directly, since they are sorted.
+        for (E val : ss)
+          {
+            if (val == null)
+              throw new NullPointerException();
+            storage[used++] = val;
+          }
+      }
+    else if (c instanceof PriorityQueue)
+      {
+        PriorityQueue<? extends E> pq = (PriorityQueue<? extends E>) c;
+        this.comparator = (Comparator<? super E>)pq.comparator();
+        this.arityShift = pq.arityShift;
+        // We can just copy the contents.
+        System.arraycopy(pq.storage, 0, storage, 0, pq.used);
+        used = pq.used;
+      }
+    else
+      addAll(c);
+  }
+
+  public PriorityQueue(int cap)
+  {
+    this(cap, null);
+  }
+
+  public PriorityQueue(int cap, Comparator<? super E> comp)
+  {
+    if (cap < 1)
+      throw new IllegalArgumentException();      
+    this.used = 0;
+    this.storage = (E[]) new Object[cap];
+    this.comparator = comp;
+  }
+
+  /**
+   * Creates a queue whose heap gives each node ARITY children rather
+   * than two.  The children of a node are then adjacent in the array
+   * and, for an arity of 4 to 16, usually share a cache line, so the
+   * heap is only log_d(n) levels deep.  Each level of a poll compares
+   * all the children, so a wider heap makes more comparisons but takes
+   * fewer cache misses; it pays off for large queues that are polled
+   * often.  Offers make fewer comparisons than in a binary heap.
+   *
+   * @param cap the initial capacity
+   * @param comp the comparator, or null for natural ordering
+   * @param arity the number of children of each node: a power of two
+   *        from 2 to MAXIMUM_ARITY (64)
+   * @throws IllegalArgumentException if cap is less than 1 or arity is
+   *         not a power of two in that range
+   */
+  public PriorityQueue(int cap, Comparator<? super E> comp, int arity)
+  {
+    this(cap, comp);
+    if (arity < 2 || arity > MAXIMUM_ARITY || (arity & (arity - 1)) != 0)
+      throw new IllegalArgumentException("Illegal arity: " + arity);
+    this.arityShift = Integer.numberOfTrailingZeros(arity) - 1;
+  }
+
+  /**
+   * Returns the number of children of each node of the heap.
+   */
+  public int arity()
+  {
+    return 2 << arityShift;
+  }
+
+  public PriorityQueue(PriorityQueue<? extends E> c)
+  {
+    this(Math.max(1, (int) (1.1 * c.size())),
+         (Comparator<? super E>)c.comparator());
+    arityShift = c.arityShift;
+    // We can just copy the contents.
+    System.arraycopy(c.storage, 0, storage, 0, c.used);
+    used = c.used;
+  }
+
+  public PriorityQueue(SortedSet<? extends E> c)
+  {
+    this(Math.max(1, (int) (1.1 * c.size())),
+         (Comparator<? super E>)c.comparator());
+    // We can insert the elements directly, since they are sorted.
+    for (E val : c)
+      {
+        if (val == null)
+          throw new NullPointerException();
+        storage[used++] = val;
+      }
+  }
+
+  public void clear()
+  {
+    Arrays.fill(storage, 0, used, null);
+    used = 0;
+  }
+
+  public Comparator<? super E> comparator()
+  {
+    return comparator;
+  }
+
+  public Iterator<E> iterator()
+  {
+    return new Iterator<E>()
+    {
+      int index = -1;
+      // Elements moved from the unvisited end of the heap to before
+      // INDEX by a removal, to be returned once the array is done.
+      ArrayList<E> moved;
+      int movedIndex;
+      E last;
+
+      public boolean hasNext()
+      {
+        return index + 1 < used || (moved != null && movedIndex < moved.size());
+      }
+
+      public E next()
+      {
+        if (index + 1 < used)
+          return last = storage[++index];
+        if (moved != null && movedIndex < moved.size())
+          {
+            index = used;
+            return last = moved.get(movedIndex++);
+          }
+        throw new NoSuchElementException();
+      }
+
+      public void remove()
+      {
+        if (last == null)
+          throw new IllegalStateException();
+        if (index < used)
+          {
+            // The last element takes the removed one's place.  If it
+            // stays at or below INDEX it is visited from INDEX again;
+            // if it moves up past INDEX, an already visited element
+            // takes its place and it would be missed, so remember it.
+            E up = PriorityQueue.this.remove(index);
+            if (up == null)
+              index--;
+            else
+              {
+                if (moved == null)
+                  moved = new ArrayList<E>();
+                moved.add(up);
+              }
+          }
+        else
+          removeEq(last);
+        last = null;
+      }
+    };
+  }
+
+  public boolean offer(E o)
+  {
+    if (o == null)
+      throw new NullPointerException();
+
+    if (used == storage.length)
+      resize();
+    storage[used] = o;
+    bubbleUp(used++);
+
+    return true;
+  }
+
+  public E peek()
+  {
+    return used == 0 ? null : storage[0];
+  }
+
+  public E poll()
+  {
+    if (used == 0)
+      return null;
+    E result = storage[0];
+    remove(0);
+    return result;
+  }
+
+  public boolean remove(Object o)
+  {
+    if (o != null)
+      {
+        for (int i = 0; i < used; ++i)
+          {
+            if (o.equals(storage[i]))
+              {
+                remove(i);
+                return true;
+              }
+          }
+      }
+    return false;
+  }
+
+  /**
+   * Removes the element identical to O, for an iterator that has
+   * already returned it from outside the array.
+   */
+  void removeEq(Object o)
+  {
+    for (int i = 0; i < used; ++i)
+      {
+        if (storage[i] == o)
+          {
+            remove(i);
+            return;
+          }
+      }
+  }
+
+  public int size()
+  {
+    return used;
+  }
+
+  // It is more efficient to implement this locally -- the array
+  // grows at most once, and the new elements are put in heap order
+  // together by heapify rather than bubbled up one at a time.
+  public boolean addAll(Collection<? extends E> c)
+  {
+    if (c == this)
+      throw new IllegalArgumentException();
+
+    int save = used;
+    int size = c.size();
+    if (size > storage.length - used)
+      resize(used + size);
+    for (E val : c)
+      {
+        if (val == null)
+          {
+            heapify(save);
+            throw new NullPointerException();
+          }
+        if (used == storage.length)
+          resize();
+        storage[used++] = val;
+      }
+    heapify(save);
+
+    return save != used;
+  }
+
+  /**
+   * Adds the LEN elements of SRC starting at OFF.  The storage array
+   * is reallocated at most once, and a batch at least as large as the
+   * queue is heapified in linear time, so this is the fastest way to
+   * fill a queue from an array.
+   *
+   * @throws IndexOutOfBoundsException if OFF or LEN is negative or
+   *         OFF + LEN is greater than the length of SRC
+   * @throws NullPointerException if any of the elements is null; the
+   *         elements before it have been added
+   */
+  public void offerAll(E[] src, int off, int len)
+  {
+    if (off < 0 || len < 0 || off > src.length - len)
+      throw new IndexOutOfBoundsException();
+    if (len > storage.length - used)
+      resize(used + len);
+    int save = used;
+    for (int end = off + len; off < end; ++off)
+      {
+        E val = src[off];
+        if (val == null)
+          {
+            heapify(save);
+            throw new NullPointerException();
+          }
+        storage[used++] = val;
+      }
+    heapify(save);
+  }
+
+  void heapify(int save)
+  {
+    // The elements before SAVE are a heap; those from SAVE to USED
+    // were just appended.  If they are at least as many as the rest,
+    // rebuild the whole heap bottom-up (Floyd's method): sifting down
+    // each node with a child, last first, takes O(USED) comparisons
+    // in all, since most nodes are near the bottom.  Otherwise bubble
+    // up each new element, which is cheaper for a few.
+    if (used - save >= save)
+      {
+        // The last node with a child is the parent of the last node.
+        for (int i = (used - 2) >> (arityShift + 1); i >= 0; --i)
+          siftDown(i);
+      }
+    else
+      {
+        for (int i = save; i < used; ++i)
+          bubbleUp(i);
+      }
+  }
+
+  E remove(int index)
+  {
+    // Remove the element at INDEX.  We do this by moving the last
+    // element into its place and sifting that down, or up if it is
+    // less than the removed element's parent, so the heap stays
+    // dense.  Returns the moved element if it ended up above INDEX,
+    // else null.
+    int last = --used;
+    E moved = storage[last];
+    storage[last] = null;
+    if (index == last)
+      return null;
+    storage[index] = moved;
+    siftDown(index);
+    if (storage[index] == moved)
+      {
+        bubbleUp(index);
+        if (storage[index] != moved)
+          return moved;
+      }
+    return null;
+  }
+
+  void siftDown(int index)
+  {
+    if (arityShift == 0)
+      {
+        siftDownBinary(index);
+        return;
+      }
+    // Move the element at INDEX down the tree, promoting the least
+    // child into its place, until no child is less than it.
+    int shift = arityShift + 1;
+    E val = storage[index];
+    while (true)
+      {
+        // Nodes past the parent of the last node have no child.
+        if (index > (used - 2) >> shift)
+          break;
+        int first = (index << shift) + 1;
+        int end = Math.min(first + (1 << shift), used);
+        int child = first;
+        E least = storage[first];
+        for (int i = first + 1; i < end; ++i)
+          {
+            if (Collections.compare(least, storage[i], comparator) > 0)
+              {
+                child = i;
+                least = storage[i];
+              }
+          }
+        if (Collections.compare(val, least, comparator) <= 0)
+          break;
+        storage[index] = least;
+        index = child;
+      }
+    storage[index] = val;
+  }
+
+  void siftDownBinary(int index)
+  {
+    // Move the element at INDEX down the tree, promoting the lesser
+    // child into its place, until neither child is less than it.
+    E val = storage[index];
+    int half = used >>> 1;      // Nodes below HALF have a child.
+    while (index < half)
+      {
+        int child = 2 * index + 1;
+        if (child + 1 < used
+            && Collections.compare(storage[child], storage[child + 1],
+                                   comparator) > 0)
+          ++child;
+        if (Collections.compare(val, storage[child], comparator) <= 0)
+          break;
+        storage[index] = storage[child];
+        index = child;
+      }
+    storage[index] = val;
+  }
+
+  void bubbleUp(int index)
+  {
+    // The element at INDEX was inserted into a blank spot.  Now move
+    // it up the tree to its natural resting place, shifting each
+    // larger parent down into the hole it leaves.
+    E val = storage[index];
+    int shift = arityShift + 1;
+    while (index > 0)
+      {
+        // This works for each of the children DN+1 to DN+D.
+        int parent = (index - 1) >> shift;
+        if (Collections.compare(storage[parent], val, comparator) <= 0)
+          {
+            // Parent is the same or smaller than this element, so the
+            // invariant is preserved.  Note that if the new element
+            // is smaller than the parent, then it is necessarily
+            // smaller than the parent's other child.
+            break;
+          }
+
+        storage[index] = storage[parent];
+        index = parent;
+      }
+    storage[index] = val;
+  }
+
+  void resize()
+  {
+    E[] new_data = (E[]) new Object[2 * storage.length];
+    System.arraycopy(storage, 0, new_data, 0, storage.length);
+    storage = new_data;
+  }
+
+  void resize(int min)
+  {
+    // Grow in one step to hold at least MIN elements, or to double
+    // the size if that is more.
+    if (min < 0)
+      throw new OutOfMemoryError();
+    int cap = Math.max(min, 2 * storage.length);
+    E[] new_data = (E[]) new Object[cap < 0 ? min : cap];
+    System.arraycopy(storage, 0, new_data, 0, used);
+    storage = new_data;
+  }
+
+  /**
+   * Reads the default fields and makes the heap dense again.  Queues
+   * written before the heap was kept dense may hold nulls among their
+   * elements, and elements at or past USED, so every non-null slot is
+   * moved to the front, USED is set to their count, and the heap is
+   * rebuilt from scratch.
+   */
+  private void readObject(ObjectInputStream s)
+    throws IOException, ClassNotFoundException
+  {
+    s.defaultReadObject();
+    if (storage == null)
+      throw new InvalidObjectException("Missing storage");
+    if (arityShift < 0 || 2 << arityShift > MAXIMUM_ARITY)
+      throw new InvalidObjectException("Illegal arity shift: " + arityShift);
+    int n = 0;
+    for (int i = 0; i < storage.length; ++i)
+      {
+        E val = storage[i];
+        if (val != null)
+          {
+            storage[i] = null;
+            storage[n++] = val;
+          }
+      }
+    if (storage.length == 0)
+      storage = (E[]) new Object[DEFAULT_CAPACITY];
+    used = n;
+    heapify(0);
+  }
+}
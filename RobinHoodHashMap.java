@@ -0,0 +1,644 @@
+package java.util;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+
+/**
+ * Hash table based implementation of the <tt>Map</tt> interface using
+ * open addressing instead of entry chains.  Hashes, keys and values are
+ * kept in three parallel arrays, so no object is allocated per mapping
+ * and a probe sequence walks consecutive array slots instead of chasing
+ * <tt>next</tt> pointers across the heap.  Like {@link HashMap} this class
+ * permits <tt>null</tt> values and the <tt>null</tt> key and makes no
+ * guarantees as to the order of the map.
+ *
+ * <p>Collisions are resolved by linear probing with Robin Hood
+ * insertion: an entry being inserted takes over any slot whose occupant
+ * is closer to its own home slot, and the displaced entry continues
+ * probing in its place.  This keeps the variance of probe lengths low,
+ * so lookups stay short even at load factors around 0.9, and a lookup
+ * for a missing key can stop as soon as it meets an entry closer to home
+ * than itself.  Removal shifts the following entries of the run back by
+ * one slot instead of leaving a tombstone.
+ *
+ * <p>Each slot caches the 32-bit hash of its key (as produced by
+ * HashMap's supplemental hash function), so a lookup calls
+ * <tt>equals</tt> only on entries whose full hash matches.  The value 0
+ * is reserved to mark empty slots; keys hashing to 0 are stored with
+ * hash 1.
+ *
+ * <p><strong>Note that this implementation is not synchronized.</strong>
+ * The iterators returned by this class's collection view methods are
+ * fail-fast in the same way as those of <tt>HashMap</tt>.
+ *
+ * @param <K> the type of keys maintained by this map
+ * @param <V> the type of mapped values
+ *
+ * @see     HashMap
+ */
+public class RobinHoodHashMap<K,V>
+    extends AbstractMap<K,V>
+    implements Map<K,V>, Cloneable, Serializable
+{
+    /**
+     * The default initial capacity - MUST be a power of two.
+     */
+    static final int DEFAULT_INITIAL_CAPACITY = 16;
+
+    /**
+     * The maximum capacity.  MUST be a power of two <= 1<<30.
+     */
+    static final int MAXIMUM_CAPACITY = 1 << 30;
+
+    /**
+     * The load factor used when none specified in constructor.
+     */
+    static final float DEFAULT_LOAD_FACTOR = 0.875f;
+
+    /**
+     * The cached hash of each slot's key, or 0 for an empty slot.
+     * Length MUST always be a power of two.
+     */
+    transient int[] hashes;
+
+    /**
+     * The keys, at the same index as their hashes.
+     */
+    transient Object[] keys;
+
+    /**
+     * The values, at the same index as their hashes.
+     */
+    transient Object[] vals;
+
+    /**
+     * The number of key-value mappings contained in this map.
+     */
+    transient int size;
+
+    /**
+     * The next size value at which to resize (capacity * load factor).
+     */
+    transient int threshold;
+
+    /**
+     * The load factor for the hash table.
+     *
+     * @serial
+     */
+    final float loadFactor;
+
+    /**
+     * The number of times this map has been structurally modified.
+     */
+    transient int modCount;
+
+    /**
+     * Constructs an empty map with the specified initial capacity and
+     * load factor.
+     *
+     * @param  initialCapacity the initial capacity
+     * @param  loadFactor      the load factor
+     * @throws IllegalArgumentException if the initial capacity is negative
+     *         or the load factor is not in (0, 1)
+     */
+    public RobinHoodHashMap(int initialCapacity, float loadFactor) {
+        if (initialCapacity < 0)
+            throw new IllegalArgumentException("Illegal initial capacity: " +
+                                               initialCapacity);
+        if (initialCapacity > MAXIMUM_CAPACITY)
+            initialCapacity = MAXIMUM_CAPACITY;
+        if (!(loadFactor > 0 && loadFactor < 1))
+            throw new IllegalArgumentException("Illegal load factor: " +
+                                               loadFactor);
+
+        // Find a power of 2 >= initialCapacity
+        int capacity = 2;
+        while (capacity < initialCapacity)
+            capacity <<= 1;
+
+        this.loadFactor = loadFactor;
+        allocate(capacity);
+    }
+
+    /**
+     * Constructs an empty map with the specified initial capacity and
+     * the default load factor (0.875).
+     *
+     * @param  initialCapacity the initial capacity.
+     * @throws IllegalArgumentException if the initial capacity is negative.
+     */
+    public RobinHoodHashMap(int initialCapacity) {
+        this(initialCapacity, DEFAULT_LOAD_FACTOR);
+    }
+
+    /**
+     * Constructs an empty map with the default initial capacity (16) and
+     * the default load factor (0.875).
+     */
+    public RobinHoodHashMap() {
+        this(DEFAULT_INITIAL_CAPACITY, DEFAULT_LOAD_FACTOR);
+    }
+
+    /**
+     * Constructs a new map with the same mappings as the specified
+     * <tt>Map</tt>, with the default load factor and a capacity
+     * sufficient to hold them.
+     *
+     * @param   m the map whose mappings are to be placed in this map
+     * @throws  NullPointerException if the specified map is null
+     */
+    public RobinHoodHashMap(Map<? extends K, ? extends V> m) {
+        this(Math.max((int) (m.size() / DEFAULT_LOAD_FACTOR) + 1,
+                      DEFAULT_INITIAL_CAPACITY), DEFAULT_LOAD_FACTOR);
+        putAll(m);
+    }
+
+    private void allocate(int capacity) {
+        hashes = new int[capacity];
+        keys = new Object[capacity];
+        vals = new Object[capacity];
+        threshold = (capacity == MAXIMUM_CAPACITY)
+            ? MAXIMUM_CAPACITY - 1
+            : Math.min((int)(capacity * loadFactor), capacity - 1);
+    }
+
+    /**
+     * Returns the slot hash of key: HashMap's supplemental hash of its
+     * hashCode, with 0 (which marks empty slots) mapped to 1.
+     */
+    static int hash(Object key) {
+        int h = (key == null) ? 0 : HashMap.hash(key.hashCode());
+        return (h == 0) ? 1 : h;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Returns the slot holding key, or -1 if there is none.  The probe
+     * stops at an empty slot or at an entry closer to its home slot than
+     * key would be, since Robin Hood insertion would have placed key
+     * before it.
+     */
+    final int indexOf(Object key) {
+        int h = hash(key);
+        int[] hs = hashes;
+        int mask = hs.length - 1;
+        for (int i = h & mask, dist = 0; ; i = (i + 1) & mask, dist++) {
+            int sh = hs[i];
+            if (sh == 0 || ((i - sh) & mask) < dist)
+                return -1;
+            if (sh == h) {
+                Object k = keys[i];
+                if (k == key || (key != null && key.equals(k)))
+                    return i;
+            }
+        }
+    }
+
+    /**
+     * Returns the value to which the specified key is mapped,
+     * or {@code null} if this map contains no mapping for the key.
+     */
+    @SuppressWarnings("unchecked")
+    public V get(Object key) {
+        int i = indexOf(key);
+        return (i < 0) ? null : (V)vals[i];
+    }
+
+    public boolean containsKey(Object key) {
+        return indexOf(key) >= 0;
+    }
+
+    /**
+     * Associates the specified value with the specified key in this map.
+     * If the map previously contained a mapping for the key, the old
+     * value is replaced.
+     *
+     * @return the previous value associated with <tt>key</tt>, or
+     *         <tt>null</tt> if there was no mapping for <tt>key</tt>.
+     */
+    @SuppressWarnings("unchecked")
+    public V put(K key, V value) {
+        int i = indexOf(key);
+        if (i >= 0) {
+            Object oldValue = vals[i];
+            vals[i] = value;
+            return (V)oldValue;
+        }
+        modCount++;
+        if (size >= threshold)
+            resize(2 * hashes.length);
+        insert(hash(key), key, value);
+        size++;
+        return null;
+    }
+
+    /**
+     * Places a mapping known to be absent, taking over the slot of any
+     * entry found closer to its home slot and carrying that entry on.
+     */
+    private void insert(int h, Object key, Object value) {
+        int[] hs = hashes;
+        Object[] ks = keys, vs = vals;
+        int mask = hs.length - 1;
+        for (int i = h & mask, dist = 0; ; i = (i + 1) & mask, dist++) {
+            int sh = hs[i];
+            if (sh == 0) {
+                hs[i] = h;
+                ks[i] = key;
+                vs[i] = value;
+                return;
+            }
+            int sd = (i - sh) & mask;
+            if (sd < dist) {
+                Object k = ks[i], v = vs[i];
+                hs[i] = h;
+                ks[i] = key;
+                vs[i] = value;
+                h = sh;
+                key = k;
+                value = v;
+                dist = sd;
+            }
+        }
+    }
+
+    /**
+     * Rehashes the contents of this map into new arrays with the given
+     * capacity.
+     */
+    void resize(int newCapacity) {
+        int[] oldHashes = hashes;
+        if (oldHashes.length == MAXIMUM_CAPACITY) {
+            if (size >= threshold)
+                throw new IllegalStateException("Map is full");
+            return;
+        }
+        Object[] oldKeys = keys, oldVals = vals;
+        allocate(newCapacity);
+        for (int j = 0; j < oldHashes.length; j++) {
+            if (oldHashes[j] != 0)
+                insert(oldHashes[j], oldKeys[j], oldVals[j]);
+        }
+    }
+
+    /**
+     * Copies all of the mappings from the specified map to this map,
+     * growing the table at most once beforehand.
+     */
+    public void putAll(Map<? extends K, ? extends V> m) {
+        int n = m.size();
+        if (n == 0)
+            return;
+        if (n > threshold) {
+            int targetCapacity = (int)(n / loadFactor + 1);
+            if (targetCapacity > MAXIMUM_CAPACITY)
+                targetCapacity = MAXIMUM_CAPACITY;
+            int newCapacity = hashes.length;
+            while (newCapacity < targetCapacity)
+                newCapacity <<= 1;
+            if (newCapacity > hashes.length)
+                resize(newCapacity);
+        }
+        for (Map.Entry<? extends K, ? extends V> e : m.entrySet())
+            put(e.getKey(), e.getValue());
+    }
+
+    /**
+     * Removes the mapping for the specified key from this map if present.
+     *
+     * @return the previous value associated with <tt>key</tt>, or
+     *         <tt>null</tt> if there was no mapping for <tt>key</tt>.
+     */
+    @SuppressWarnings("unchecked")
+    public V remove(Object key) {
+        int i = indexOf(key);
+        if (i < 0)
+            return null;
+        Object oldValue = vals[i];
+        removeAt(i, null);
+        return (V)oldValue;
+    }
+
+    /**
+     * Empties slot i and shifts the rest of its run back by one slot,
+     * stopping at an empty slot or an entry already in its home slot.
+     * Entries that wrap from the start of the table to its end are
+     * reported to the iterator it, if any, which would otherwise miss
+     * them.
+     */
+    final void removeAt(int i, HashIterator<?> it) {
+        modCount++;
+        size--;
+        int[] hs = hashes;
+        Object[] ks = keys, vs = vals;
+        int mask = hs.length - 1;
+        for (int j = (i + 1) & mask; ; i = j, j = (j + 1) & mask) {
+            int sh = hs[j];
+            if (sh == 0 || ((j - sh) & mask) == 0) {
+                hs[i] = 0;
+                ks[i] = null;
+                vs[i] = null;
+                return;
+            }
+            if (j < i && it != null)
+                it.wrapped(ks[j], vs[j]);
+            hs[i] = sh;
+            ks[i] = ks[j];
+            vs[i] = vs[j];
+        }
+    }
+
+    /**
+     * Removes all of the mappings from this map.  The capacity is kept.
+     */
+    public void clear() {
+        modCount++;
+        Arrays.fill(hashes, 0);
+        Arrays.fill(keys, null);
+        Arrays.fill(vals, null);
+        size = 0;
+    }
+
+    /**
+     * Returns <tt>true</tt> if this map maps one or more keys to the
+     * specified value.
+     */
+    public boolean containsValue(Object value) {
+        int[] hs = hashes;
+        Object[] vs = vals;
+        for (int i = 0; i < hs.length; i++) {
+            if (hs[i] != 0) {
+                Object v = vs[i];
+                if (v == value || (value != null && value.equals(v)))
+                    return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns a shallow copy of this map: the keys and values themselves
+     * are not cloned.
+     */
+    @SuppressWarnings("unchecked")
+    public Object clone() {
+        RobinHoodHashMap<K,V> result;
+        try {
+            result = (RobinHoodHashMap<K,V>)super.clone();
+        } catch (CloneNotSupportedException e) {
+            throw new InternalError();
+        }
+        result.hashes = hashes.clone();
+        result.keys = keys.clone();
+        result.vals = vals.clone();
+        result.keySet = null;
+        result.values = null;
+        result.entrySet = null;
+        result.modCount = 0;
+        return result;
+    }
+
+    /**
+     * Iterates the table from the last slot down.  Removing the entry
+     * just returned shifts entries from higher, already visited slots
+     * down into it, so it need not be revisited; only entries that wrap
+     * from the low end of the table to the high end would be missed, and
+     * removeAt hands those back to be returned after the table scan.
+     */
+    private abstract class HashIterator<E> implements Iterator<E> {
+        int pos = hashes.length;    // next slot to examine is below pos
+        int remaining = size;       // entries not yet returned
+        int last = -1;              // slot of last entry, -1 if none
+        Object lastKey, lastValue;  // last entry returned
+        ArrayList<Object> wrapped;  // wrapped keys and values, alternating
+        int wrappedIndex;           // next key in wrapped
+        boolean canRemove;
+        int expectedModCount = modCount;
+
+        public final boolean hasNext() {
+            return remaining != 0;
+        }
+
+        final void nextEntry() {
+            if (modCount != expectedModCount)
+                throw new ConcurrentModificationException();
+            if (remaining == 0)
+                throw new NoSuchElementException();
+            remaining--;
+            canRemove = true;
+            while (--pos >= 0) {
+                if (hashes[pos] != 0) {
+                    last = pos;
+                    lastKey = keys[pos];
+                    lastValue = vals[pos];
+                    return;
+                }
+            }
+            last = -1;
+            lastKey = wrapped.get(wrappedIndex++);
+            lastValue = wrapped.get(wrappedIndex++);
+        }
+
+        final void wrapped(Object key, Object value) {
+            if (wrapped == null)
+                wrapped = new ArrayList<>(4);
+            wrapped.add(key);
+            wrapped.add(value);
+        }
+
+        public void remove() {
+            if (!canRemove)
+                throw new IllegalStateException();
+            if (modCount != expectedModCount)
+                throw new ConcurrentModificationException();
+            canRemove = false;
+            if (last >= 0)
+                removeAt(last, this);
+            else
+                RobinHoodHashMap.this.remove(lastKey);
+            expectedModCount = modCount;
+        }
+    }
+
+    private final class KeyIterator extends HashIterator<K> {
+        @SuppressWarnings("unchecked")
+        public K next() {
+            nextEntry();
+            return (K)lastKey;
+        }
+    }
+
+    private final class ValueIterator extends HashIterator<V> {
+        @SuppressWarnings("unchecked")
+        public V next() {
+            nextEntry();
+            return (V)lastValue;
+        }
+    }
+
+    private final class EntryIterator extends HashIterator<Map.Entry<K,V>> {
+        @SuppressWarnings("unchecked")
+        public Map.Entry<K,V> next() {
+            nextEntry();
+            return new MapEntry((K)lastKey, (V)lastValue);
+        }
+    }
+
+    /**
+     * Entry returned by the entry set iterator.  Since entries move
+     * between slots, setValue finds the key's current slot.
+     */
+    private final class MapEntry extends AbstractMap.SimpleEntry<K,V> {
+        private static final long serialVersionUID = -5237614412361546018L;
+
+        MapEntry(K key, V value) {
+            super(key, value);
+        }
+
+        public V setValue(V value) {
+            int i = indexOf(getKey());
+            if (i >= 0)
+                vals[i] = value;
+            return super.setValue(value);
+        }
+    }
+
+    // Views
+
+    private transient Set<Map.Entry<K,V>> entrySet = null;
+
+    public Set<K> keySet() {
+        Set<K> ks = keySet;
+        return (ks != null ? ks : (keySet = new KeySet()));
+    }
+
+    private final class KeySet extends AbstractSet<K> {
+        public Iterator<K> iterator() {
+            return new KeyIterator();
+        }
+        public int size() {
+            return size;
+        }
+        public boolean contains(Object o) {
+            return containsKey(o);
+        }
+        public boolean remove(Object o) {
+            int i = indexOf(o);
+            if (i < 0)
+                return false;
+            removeAt(i, null);
+            return true;
+        }
+        public void clear() {
+            RobinHoodHashMap.this.clear();
+        }
+    }
+
+    public Collection<V> values() {
+        Collection<V> vs = values;
+        return (vs != null ? vs : (values = new Values()));
+    }
+
+    private final class Values extends AbstractCollection<V> {
+        public Iterator<V> iterator() {
+            return new ValueIterator();
+        }
+        public int size() {
+            return size;
+        }
+        public boolean contains(Object o) {
+            return containsValue(o);
+        }
+        public void clear() {
+            RobinHoodHashMap.this.clear();
+        }
+    }
+
+    public Set<Map.Entry<K,V>> entrySet() {
+        Set<Map.Entry<K,V>> es = entrySet;
+        return es != null ? es : (entrySet = new EntrySet());
+    }
+
+    private final class EntrySet extends AbstractSet<Map.Entry<K,V>> {
+        public Iterator<Map.Entry<K,V>> iterator() {
+            return new EntryIterator();
+        }
+        public boolean contains(Object o) {
+            if (!(o instanceof Map.Entry))
+                return false;
+            Map.Entry<?,?> e = (Map.Entry<?,?>) o;
+            int i = indexOf(e.getKey());
+            return i >= 0 && Objects.equals(vals[i], e.getValue());
+        }
+        public boolean remove(Object o) {
+            if (!(o instanceof Map.Entry))
+                return false;
+            Map.Entry<?,?> e = (Map.Entry<?,?>) o;
+            int i = indexOf(e.getKey());
+            if (i < 0 || !Objects.equals(vals[i], e.getValue()))
+                return false;
+            removeAt(i, null);
+            return true;
+        }
+        public int size() {
+            return size;
+        }
+        public void clear() {
+            RobinHoodHashMap.this.clear();
+        }
+    }
+
+    private static final long serialVersionUID = -2937145613718297265L;
+
+    /**
+     * Save the state of the map to a stream.
+     *
+     * @serialData The <i>capacity</i> (int) is emitted, followed by the
+     *             <i>size</i> (int), followed by the key (Object) and
+     *             value (Object) for each mapping, in no particular order.
+     */
+    private void writeObject(ObjectOutputStream s) throws IOException {
+        s.defaultWriteObject();
+        s.writeInt(hashes.length);
+        s.writeInt(size);
+        for (int i = 0; i < hashes.length; i++) {
+            if (hashes[i] != 0) {
+                s.writeObject(keys[i]);
+                s.writeObject(vals[i]);
+            }
+        }
+    }
+
+    /**
+     * Reconstitute the map from a stream.
+     */
+    private void readObject(ObjectInputStream s)
+        throws IOException, ClassNotFoundException
+    {
+        s.defaultReadObject();
+        int capacity = s.readInt();
+        if (capacity < 2 || capacity > MAXIMUM_CAPACITY ||
+            (capacity & (capacity - 1)) != 0)
+            throw new java.io.InvalidObjectException(
+                "Illegal capacity: " + capacity);
+        allocate(capacity);
+        int n = s.readInt();
+        for (int i = 0; i < n; i++) {
+            Object key = s.readObject();
+            Object value = s.readObject();
+            if (size >= threshold)
+                resize(2 * hashes.length);
+            insert(hash(key), key, value);
+            size++;
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package org.openjdk.bench.java.util;
+
+import java.util.HashMap;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Compares the batched {@link HashMap#getAll} and {@link HashMap#putAll(
+ * Object[], Object[])} with a plain loop of get or put calls over the
+ * same keys.  Each invocation handles one batch of BATCH keys, drawn at
+ * random from a map of SIZE mappings; the scores are per key.  The
+ * larger sizes put the table and its entries well beyond the last level
+ * cache, where the phased lookups of the batched calls can overlap
+ * their cache misses.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 3, jvmArgsAppend = { "-Xmx4g" })
+@OperationsPerInvocation(HashMapBatch.BATCH)
+public class HashMapBatch {
+
+    static final int BATCH = 256;
+
+    /** Number of batches cycled through, so that runs do not repeat. */
+    private static final int BATCHES = 4096;
+
+    @Param({ "10000", "1000000", "8000000" })
+    private int size;
+
+    private HashMap<Integer,Integer> map;
+    private Integer[][] keys;
+    private Integer[] values;
+    private Integer[] out;
+    private int next;
+
+    @Setup
+    public void setup() {
+        Random r = new Random(42);
+        Integer[] all = new Integer[size];
+        map = new HashMap<>();
+        for (int i = 0; i < size; i++) {
+            all[i] = r.nextInt();
+            map.put(all[i], i);
+        }
+        keys = new Integer[BATCHES][BATCH];
+        for (Integer[] batch : keys)
+            for (int j = 0; j < BATCH; j++)
+                batch[j] = all[r.nextInt(size)];
+        values = new Integer[BATCH];
+        for (int j = 0; j < BATCH; j++)
+            values[j] = j;
+        out = new Integer[BATCH];
+    }
+
+    private Integer[] nextBatch() {
+        Integer[] batch = keys[next];
+        next = (next + 1) & (BATCHES - 1);
+        return batch;
+    }
+
+    @Benchmark
+    public void getLoop(Blackhole bh) {
+        Integer[] batch = nextBatch();
+        for (Integer k : batch)
+            bh.consume(map.get(k));
+    }
+
+    @Benchmark
+    public void getAll(Blackhole bh) {
+        map.getAll(nextBatch(), out);
+        bh.consume(out);
+    }
+
+    /** Replaces the values of existing keys, so the map does not grow. */
+    @Benchmark
+    public void putLoop() {
+        Integer[] batch = nextBatch();
+        for (int j = 0; j < BATCH; j++)
+            map.put(batch[j], values[j]);
+    }
+
+    @Benchmark
+    public void putAll() {
+        map.putAll(nextBatch(), values);
+    }
+}
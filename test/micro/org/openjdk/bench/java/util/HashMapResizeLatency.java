@@ -0,0 +1,69 @@
+package org.openjdk.bench.java.util;
+
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the latency of single put calls on a growing
+ * {@link HashMap}, with resizes done in one pass or incrementally.  The
+ * map starts at the default capacity and grows to LIMIT mappings, so
+ * every resize up to a table of several million buckets falls inside
+ * the measurement, after which it is replaced by an empty one.  The
+ * mean barely differs between the two modes; compare the p0.9999 and
+ * p1.0 (maximum) percentiles of the sampled times.  Collector pauses
+ * land in those percentiles in both modes, so run with a heap and
+ * collector that keep them short, or check them against a GC log.
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 3, jvmArgsAppend = { "-Xmx4g" })
+public class HashMapResizeLatency {
+
+    @Param({ "false", "true" })
+    private boolean incremental;
+
+    @Param({ "4000000" })
+    private int limit;
+
+    private HashMap<Integer,Integer> map;
+    private Integer[] keys;
+    private int next;
+
+    @Setup
+    public void setupKeys() {
+        keys = new Integer[limit];
+        for (int i = 0; i < limit; i++)
+            keys[i] = i;
+    }
+
+    @Setup(Level.Iteration)
+    public void setupMap() {
+        map = new HashMap<>(16, 0.75f, incremental);
+        next = 0;
+    }
+
+    @Benchmark
+    public Integer put() {
+        if (next == limit) {
+            map = new HashMap<>(16, 0.75f, incremental);
+            next = 0;
+        }
+        Integer k = keys[next++];
+        return map.put(k, k);
+    }
+}